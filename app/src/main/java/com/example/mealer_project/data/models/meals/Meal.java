@@ -5,6 +5,7 @@ import com.example.mealer_project.utils.Utilities;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -411,4 +412,46 @@ public class Meal implements Serializable {
         // now that we have raw data, extract and return the keywords
         return Utilities.getKeywords(rawData);
     }
+
+    /**
+     * Get the searchable keywords of the meal and its chef, separately for each field
+     * so that matches can be ranked by the field they occur in
+     * @param chefName space separated firstname and lastname of the chef
+     * @param chefAddress address of the chef
+     * @return list of keywords for each field, in the order of MealSearchField
+     */
+    public List<List<String>> getSearchMealItemFieldKeywords(String chefName, String chefAddress) {
+        List<String> fieldTexts = getSearchMealItemFieldTexts(chefName, chefAddress);
+        List<List<String>> fieldKeywords = new ArrayList<>(fieldTexts.size());
+        for (String rawData : fieldTexts) {
+            fieldKeywords.add(Utilities.getKeywords(Collections.singletonList(rawData)));
+        }
+        return fieldKeywords;
+    }
+
+    /**
+     * Get the searchable text of the meal and its chef for each field, the keywords are extracted from
+     * @param chefName space separated firstname and lastname of the chef
+     * @param chefAddress address of the chef
+     * @return text of each field, null for an empty field, in the order of MealSearchField
+     */
+    public List<String> getSearchMealItemFieldTexts(String chefName, String chefAddress) {
+        List<String> fieldTexts = new ArrayList<>(MealSearchField.values().length);
+        for (MealSearchField field : MealSearchField.values()) {
+            // raw data of the field before keyword generation
+            String rawData;
+            switch (field) {
+                case NAME: rawData = getName(); break;
+                case CUISINE_TYPE: rawData = getCuisineType(); break;
+                case MEAL_TYPE: rawData = getMealType(); break;
+                case INGREDIENTS: rawData = getIngredients(); break;
+                case ALLERGENS: rawData = (getAllergens() == null) ? null : getAllergens().toString(); break;
+                case CHEF_NAME: rawData = chefName; break;
+                case CHEF_ADDRESS: rawData = chefAddress; break;
+                default: rawData = getDescription();
+            }
+            fieldTexts.add(rawData);
+        }
+        return fieldTexts;
+    }
 }
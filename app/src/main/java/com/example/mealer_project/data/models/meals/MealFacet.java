@@ -0,0 +1,31 @@
+package com.example.mealer_project.data.models.meals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Attributes of a meal clients can filter search results on, ex: only Italian meals, or no meal containing peanuts
+ * Unlike MealSearchField, a facet is matched on its whole values rather than on keywords
+ */
+public enum MealFacet {
+    CUISINE_TYPE,
+    MEAL_TYPE,
+    ALLERGEN;
+
+    /**
+     * Get the values of this facet for a meal
+     * @param meal meal to get the values of
+     * @return values of the facet, empty if the meal has none
+     */
+    public List<String> getValues(Meal meal) {
+        switch (this) {
+            case CUISINE_TYPE:
+                return (meal.getCuisineType() == null) ? new ArrayList<>() : Collections.singletonList(meal.getCuisineType());
+            case MEAL_TYPE:
+                return (meal.getMealType() == null) ? new ArrayList<>() : Collections.singletonList(meal.getMealType());
+            default:
+                return (meal.getAllergens() == null) ? new ArrayList<>() : new ArrayList<>(meal.getAllergens());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mealer_project.data.models.meals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Searchable fields of a meal offered to clients, with the weight of a match in each field when ranking results
+ * and the name clients scope query words to the field with (ex: "cuisine:thai")
+ * A match in the meal's name or cuisine says more about the meal than a match in its description
+ */
+public enum MealSearchField {
+    NAME(3.0f, "name"),
+    CUISINE_TYPE(2.5f, "cuisine"),
+    MEAL_TYPE(1.5f, "type"),
+    INGREDIENTS(1.2f, "ingredient"),
+    ALLERGENS(1.0f, "allergen"),
+    CHEF_NAME(1.5f, "chef"),
+    CHEF_ADDRESS(0.5f, "address"),
+    DESCRIPTION(0.6f, "description");
+
+    private final float weight;
+
+    private final String queryName;
+
+    MealSearchField(float weight, String queryName) {
+        this.weight = weight;
+        this.queryName = queryName;
+    }
+
+    /**
+     * @return weight of a match in this field
+     */
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return name of the field in search queries, ex: "cuisine" in "cuisine:thai"
+     */
+    public String getQueryName() {
+        return queryName;
+    }
+
+    /**
+     * @return field of each name in search queries, fields numbered in their order
+     */
+    public static Map<String, Integer> getQueryNames() {
+        Map<String, Integer> queryNames = new HashMap<>();
+        for (MealSearchField field : values()) {
+            queryNames.put(field.getQueryName(), field.ordinal());
+        }
+        return queryNames;
+    }
+
+    /**
+     * @return weight of each field, in the order of the fields
+     */
+    public static float[] getWeights() {
+        MealSearchField[] fields = values();
+        float[] weights = new float[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            weights[i] = fields[i].getWeight();
+        }
+        return weights;
+    }
+}
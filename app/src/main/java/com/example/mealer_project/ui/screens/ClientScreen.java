@@ -17,8 +17,11 @@ import com.example.mealer_project.ui.core.StatefulView;
 import com.example.mealer_project.ui.core.UIScreen;
 import com.example.mealer_project.ui.screens.completed_orders.CompletedOrdersScreen;
 import com.example.mealer_project.ui.screens.pending_orders.PendingOrdersClientScreen;
+import com.example.mealer_project.ui.screens.search.SearchMeals;
 import com.example.mealer_project.ui.screens.search.SearchScreen;
 
+import java.io.File;
+
 public class ClientScreen extends UIScreen implements StatefulView {
 
     @Override
@@ -26,6 +29,12 @@ public class ClientScreen extends UIScreen implements StatefulView {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_client_screen);
 
+        // search the meals saved by the previous session until they are loaded from the database
+        if (App.getClient() != null) {
+            App.getClient().getSearchMeals().enableSnapshot(new File(getFilesDir(), SearchMeals.SNAPSHOT_FILE_NAME));
+            // keep a local record of how fast searches are on this device, and of the queries finding nothing
+            App.getClient().getSearchMeals().enableMetrics(new File(getFilesDir(), SearchMeals.METRICS_FILE_NAME));
+        }
         // initiate loading of searchable meals (so we have them before client goes to search screen)
         App.MEAL_HANDLER.dispatch(MealHandler.dbOperations.ADD_MEALS_TO_SEARCH_LIST, null, this);
 
@@ -2,9 +2,14 @@ package com.example.mealer_project.ui.screens.search;
 
 import com.example.mealer_project.data.models.Chef;
 import com.example.mealer_project.data.models.meals.Meal;
+import com.example.mealer_project.data.models.meals.MealFacet;
 import com.example.mealer_project.data.models.orders.ChefInfo;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class SearchMealItem implements Serializable {
@@ -13,13 +18,20 @@ public class SearchMealItem implements Serializable {
     private ChefInfo chef;
 
     public SearchMealItem(Meal meal, ChefInfo chef) {
-        this.setId();
         this.setMeal(meal);
         this.setChef(chef);
+        this.setId();
     }
 
     public void setId() {
-        this.id = UUID.randomUUID();
+        // derive the id from the meal's database ids when it has some, so the same meal keeps the same id
+        // across sessions and a saved search snapshot can be reconciled with meals loaded from the database
+        if (meal != null && meal.getMealID() != null) {
+            String mealKey = meal.getChefID() + "/" + meal.getMealID();
+            this.id = UUID.nameUUIDFromBytes(mealKey.getBytes(StandardCharsets.UTF_8));
+        } else {
+            this.id = UUID.randomUUID();
+        }
     }
 
     public String getId() {
@@ -45,4 +57,40 @@ public class SearchMealItem implements Serializable {
     public void setChef(ChefInfo chef) {
         this.chef = chef;
     }
+
+    /**
+     * Get the searchable keywords of the meal and its chef, separately for each MealSearchField
+     * @return list of keywords for each field, in the order of MealSearchField
+     */
+    public List<List<String>> getFieldKeywords() {
+        return meal.getSearchMealItemFieldKeywords(getChefName(), getChefAddress());
+    }
+
+    /**
+     * Get the searchable text of the meal and its chef for each MealSearchField, as displayed to the client
+     * @return text of each field, null for an empty field, in the order of MealSearchField
+     */
+    public List<String> getFieldTexts() {
+        return meal.getSearchMealItemFieldTexts(getChefName(), getChefAddress());
+    }
+
+    private String getChefName() {
+        return (chef == null) ? null : chef.getChefName();
+    }
+
+    private String getChefAddress() {
+        return (chef == null || chef.getChefAddress() == null) ? null : chef.getChefAddress().toString();
+    }
+
+    /**
+     * Get the values of each facet of the meal, clients can filter search results on
+     * @return values of each MealFacet
+     */
+    public Map<MealFacet, List<String>> getFacetValues() {
+        Map<MealFacet, List<String>> facetValues = new EnumMap<>(MealFacet.class);
+        for (MealFacet facet : MealFacet.values()) {
+            facetValues.put(facet, facet.getValues(meal));
+        }
+        return facetValues;
+    }
 }
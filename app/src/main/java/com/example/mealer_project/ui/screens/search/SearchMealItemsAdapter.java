@@ -4,6 +4,10 @@ import static androidx.core.content.ContextCompat.startActivity;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,13 +21,20 @@ import androidx.annotation.Nullable;
 
 import com.example.mealer_project.R;
 import com.example.mealer_project.data.models.meals.Meal;
+import com.example.mealer_project.data.models.meals.MealSearchField;
 import com.example.mealer_project.data.models.orders.ChefInfo;
 import com.example.mealer_project.ui.screens.OrderScreen;
+import com.example.mealer_project.utils.TrieSearch.Highlight;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class SearchMealItemsAdapter extends ArrayAdapter<SearchMealItem> {
 
+    // characters of each item matching the search query, by item id
+    private Map<String, List<Highlight>> highlights = Collections.emptyMap();
+
     /**
      * Constructor
      *
@@ -36,6 +47,14 @@ public class SearchMealItemsAdapter extends ArrayAdapter<SearchMealItem> {
         super(context, resource, objects);
     }
 
+    /**
+     * Set the characters of each item to highlight, found by the search which returned the items
+     * @param highlights highlights of each item by id (see SearchMeals.getHighlights)
+     */
+    public void setHighlights(@NonNull Map<String, List<Highlight>> highlights) {
+        this.highlights = highlights;
+    }
+
     @NonNull
     @Override
     public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
@@ -50,11 +69,13 @@ public class SearchMealItemsAdapter extends ArrayAdapter<SearchMealItem> {
             // using activity_meals_list_item view
             convertView = LayoutInflater.from(getContext()).inflate(R.layout.activity_search_meal_item, parent, false);
         }
+        // the matches of the search query, offsets in the text of each field
+        List<Highlight> itemHighlights = highlights.get(sMItem.getId());
         // Populate the meal data
         ((TextView) convertView.findViewById(R.id.smMealId)).setText(meal.getMealID());
-        ((TextView) convertView.findViewById(R.id.smMealName)).setText(meal.getName());
-        ((TextView) convertView.findViewById(R.id.smMealDescription)).setText(meal.getDescription());
-        ((TextView) convertView.findViewById(R.id.smChef)).setText(chefInfo.getChefName());
+        ((TextView) convertView.findViewById(R.id.smMealName)).setText(highlight(meal.getName(), itemHighlights, MealSearchField.NAME));
+        ((TextView) convertView.findViewById(R.id.smMealDescription)).setText(highlight(meal.getDescription(), itemHighlights, MealSearchField.DESCRIPTION));
+        ((TextView) convertView.findViewById(R.id.smChef)).setText(highlight(chefInfo.getChefName(), itemHighlights, MealSearchField.CHEF_NAME));
         ((RatingBar) convertView.findViewById(R.id.smChefRating)).setRating((float) chefInfo.getChefRating());
         // attach on click listener to the meal item
         LinearLayout mealItemContainer = convertView.findViewById(R.id.smItemContainer);
@@ -77,4 +98,29 @@ public class SearchMealItemsAdapter extends ArrayAdapter<SearchMealItem> {
         });
         return convertView;
     }
-}
\ No newline at end of file
+
+    /**
+     * Make the characters of a field matching the search query bold
+     * @param text text of the field, as it was indexed
+     * @param itemHighlights highlights of the item, null if none
+     * @param field field the text belongs to
+     * @return the text, with bold spans over its matches if it has any
+     */
+    private static CharSequence highlight(String text, List<Highlight> itemHighlights, MealSearchField field) {
+        if (text == null || itemHighlights == null) {
+            return text;
+        }
+        SpannableString highlighted = null;
+        for (Highlight match : itemHighlights) {
+            // offsets come from the index, no need to search the text
+            if (match.getField() == field.ordinal() && match.getEnd() <= text.length()) {
+                if (highlighted == null) {
+                    highlighted = new SpannableString(text);
+                }
+                highlighted.setSpan(new StyleSpan(Typeface.BOLD), match.getStart(), match.getEnd(),
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+        return (highlighted == null) ? text : highlighted;
+    }
+}
@@ -1,59 +1,1054 @@
 package com.example.mealer_project.ui.screens.search;
 
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
+import com.example.mealer_project.data.models.meals.MealFacet;
+import com.example.mealer_project.data.models.meals.MealSearchField;
+import com.example.mealer_project.utils.PostalCodes.PostalCodeComparator;
+import com.example.mealer_project.utils.TrieSearch.Analyzer;
+import com.example.mealer_project.utils.TrieSearch.FacetFilter;
+import com.example.mealer_project.utils.TrieSearch.Highlight;
+import com.example.mealer_project.utils.TrieSearch.QueryParser;
+import com.example.mealer_project.utils.TrieSearch.QueryMode;
+import com.example.mealer_project.utils.TrieSearch.QueryPlan;
+import com.example.mealer_project.utils.TrieSearch.SearchCounts;
+import com.example.mealer_project.utils.TrieSearch.SearchCursor;
+import com.example.mealer_project.utils.TrieSearch.SearchQuery;
+import com.example.mealer_project.utils.TrieSearch.ShardIndex;
+import com.example.mealer_project.utils.TrieSearch.SynonymMap;
 import com.example.mealer_project.utils.TrieSearch.TriesSearch;
+import com.example.mealer_project.utils.TrieSearch.TriesSearchSnapshot;
+import com.example.mealer_project.utils.Utilities;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Searchable meals offered to a client
+ * Meals are added from Firestore callbacks and searched by SearchService on a worker thread. The meals and their
+ * index form an immutable catalog behind an atomic reference: searches read the current catalog without locking,
+ * while writers (synchronized among themselves) build the next catalog from a copy and swap it in.
+ * Meals arrive one chef at a time, so deliveries are queued and indexed together by a single writer pass on a
+ * background thread: the catalog is copied once per pass rather than per chef, and searches keep reading the
+ * previous catalog until the pass publishes the next one
+ */
 public class SearchMeals {
 
-    // map to store SearchMealItem with their id's as the key value
-    Map<String, SearchMealItem> searchMealItems;
-    // instance of TrieSearch - the utility we use for search
-    TriesSearch triesSearch;
+    /**
+     * A version of the searchable meals, never modified once published
+     */
+    static final class Catalog {
+        // SearchMealItems by id, unmodifiable
+        final Map<String, SearchMealItem> items;
+        // index of the items, searched by id
+        final TriesSearch triesSearch;
+
+        Catalog(Map<String, SearchMealItem> items, TriesSearch triesSearch) {
+            this.items = Collections.unmodifiableMap(items);
+            this.triesSearch = triesSearch;
+            // the prices of a batch of items are sorted once, before searches read them
+            triesSearch.sortValues();
+        }
+
+        Catalog(Catalog previous, TriesSearch triesSearch) {
+            // same items, already unmodifiable
+            this.items = previous.items;
+            this.triesSearch = triesSearch;
+            triesSearch.sortValues();
+        }
+
+        /**
+         * @return generation of the catalog, which changes whenever items are added or removed
+         */
+        long getGeneration() {
+            return triesSearch.getGeneration();
+        }
+    }
+
+    /**
+     * Client's postal code, and the distance from it to each postal district of the catalog's meals
+     * The same instance serves every search until the client moves, so the districts are ordered by distance
+     * once per version of the catalog (see ShardIndex.getRings)
+     */
+    private static final class Origin implements ShardIndex.Distance {
+        final PostalCodeComparator postalCodes;
+
+        Origin(String postalCode) throws IllegalArgumentException {
+            this.postalCodes = new PostalCodeComparator(postalCode);
+        }
+
+        @Override
+        public int get(String shard) {
+            return this.postalCodes.getFSADistance(shard);
+        }
+    }
+
+    // maximum number of meals returned while the client types a query, best matches first
+    public static final int RESULT_LIMIT = 50;
+
+    // name of the numeric attribute holding meal prices, to filter on a price range (see FacetFilter.requireRange)
+    public static final String PRICE = "price";
+
+    // maximum number of completions suggested for the word being typed
+    public static final int SUGGESTION_LIMIT = 5;
+
+    // minimum number of new meals in a batch for them to be indexed in parallel, and of meals indexed since the
+    // index was last frozen for it to be frozen again
+    static final int BULK_INDEX_MIN_ITEMS = 2 * TriesSearch.BULK_SHARD_SIZE;
+
+    // time a writer pass waits for the rest of a burst of deliveries (ex: every chef's meals when the app starts),
+    // so the burst is indexed as one batch, in milliseconds; searches made meanwhile read the previous catalog
+    static final long DELIVERY_BATCH_MS = 200;
+
+    // name of the file, in the app's files directory, holding the meals saved for the next session
+    public static final String SNAPSHOT_FILE_NAME = "search_meals.snapshot";
+
+    // name of the file, in the app's files directory, receiving the search metrics
+    public static final String METRICS_FILE_NAME = "search_metrics.log";
+
+    // parses queries scoped to fields, with negations, phrases and price ranges, ex: cuisine:thai -peanut price<20
+    private static final QueryParser QUERY_PARSER = new QueryParser(MealSearchField.getQueryNames(),
+            Collections.singletonList(PRICE));
+
+    // current catalog: SearchMealItems with their id's as the key value, and their TriesSearch index
+    private final AtomicReference<Catalog> catalog;
     // store a reference to the SearchMealScreen so it could be notified of the updates to the list
     SearchScreen searchScreen;
+    // whether meals matching the query within a few typos are also returned
+    volatile boolean fuzzyMatching;
+    // saves the meals for the next session, null until enableSnapshot is called
+    SearchMealsSnapshot snapshot;
+    // ids of the items loaded from the snapshot by chef id, until the chef's meals are loaded from the database
+    Map<String, List<String>> unconfirmedItemIds;
+    // meals delivered by the database one chef at a time, waiting for the next writer pass (see addItems)
+    private final Queue<List<SearchMealItem>> pendingDeliveries;
+    // number of deliveries not published in a catalog yet, those being indexed included
+    private final AtomicInteger unpublishedDeliveries;
+    // whether a writer pass is already waiting to index the pending deliveries
+    private final AtomicBoolean deliveriesScheduled;
+    // indexes the pending deliveries and compacts the index in the background, created when first needed
+    private ScheduledExecutorService writerExecutor;
+    // number of meals in the index when it was last frozen, and number of meals indexed since then
+    private int frozenItems;
+    private int unfrozenItems;
+    // handler announcing the indexed meals to the search screen on the UI thread
+    private final Handler uiHandler;
+    // whether a compaction is already waiting to run
+    private boolean compactionScheduled;
+    // ranked results of recent searches, for the catalog generation they were computed on
+    private final SearchResultCache resultCache;
+    // indexes large batches of meals on every core, created when first needed
+    private ForkJoinPool indexingPool;
+    // latencies, result counts and queries finding nothing of the searches
+    private final SearchMetrics metrics;
+    // searches of each word not folded into the index yet, folded by the next writer: publishing a catalog
+    // copies the index, which costs as much as the rows indexed (see TriesSearch.copy), so searches never publish
+    private final SearchCounts searchCounts;
+    // closeness to the client's postal code, searches list meals of the closest postal districts first;
+    // null to rank meals from every postal district together
+    private volatile Origin origin;
 
     public SearchMeals() {
-        this.searchMealItems = new HashMap<>();
-        this.triesSearch = new TriesSearch();
+        this.metrics = new SearchMetrics(RESULT_LIMIT);
+        this.catalog = new AtomicReference<>(new Catalog(new HashMap<>(), newIndex(this.metrics)));
+        this.fuzzyMatching = true;
+        this.unconfirmedItemIds = new HashMap<>();
+        this.resultCache = new SearchResultCache(SearchResultCache.DEFAULT_CAPACITY);
+        this.searchCounts = new SearchCounts();
+        this.pendingDeliveries = new ConcurrentLinkedQueue<>();
+        this.unpublishedDeliveries = new AtomicInteger();
+        this.deliveriesScheduled = new AtomicBoolean();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Create an empty index for meal items
+     * @param metrics metrics receiving the time spent ranking the results of each search
+     * @return a new index
+     */
+    private static TriesSearch newIndex(SearchMetrics metrics) {
+        // each meal is indexed as weighted fields, so matches in the name rank above matches in the description
+        TriesSearch triesSearch = new TriesSearch(0, MealSearchField.getWeights());
+        triesSearch.setRankLatencies(metrics.getRankLatencies());
+        // find words containing the query anywhere, ex: "naan" in "garlicnaan"
+        triesSearch.enableSubstringSearch();
+        // meals are indexed under the synonyms of their words, ex: a "pop" is found by "soda"
+        try {
+            triesSearch.setSynonyms(SynonymMap.getBundled());
+        } catch (IOException e) {
+            Log.e("searchMeals", "unreadable synonyms: " + e.getMessage());
+        }
+        return triesSearch;
     }
 
+    /**
+     * @return the current SearchMealItems by id, an unmodifiable map which never changes
+     */
     public Map<String, SearchMealItem> getSearchMealItems() {
-        return searchMealItems;
+        return this.catalog.get().items;
     }
 
+    /**
+     * Add the meals of a chef delivered by the database, replacing their previous versions
+     * The meals are queued and indexed by a writer pass in the background, along with the meals of other chefs
+     * delivered meanwhile; searches find them once that pass publishes its catalog. Returns without waiting for the index
+     * @param items every meal the chef offers
+     */
     public void addItems(List<SearchMealItem> items) {
-        // TODO test
-        Log.e("searchMeals", "adding new items: " + items.size());
+        Log.d("searchMeals", "adding new items: " + items.size());
+        this.unpublishedDeliveries.incrementAndGet();
+        this.pendingDeliveries.add(new ArrayList<>(items));
+        if (this.deliveriesScheduled.compareAndSet(false, true)) {
+            getWriterExecutor().schedule(() -> {
+                // deliveries queued from now on need another pass
+                this.deliveriesScheduled.set(false);
+                indexPendingDeliveries();
+            }, DELIVERY_BATCH_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return single background thread running the writer passes, created when first needed
+     */
+    private ScheduledExecutorService getWriterExecutor() {
+        // not the writers' lock, so the UI thread never waits for a writer pass
+        synchronized (this.pendingDeliveries) {
+            if (this.writerExecutor == null) {
+                this.writerExecutor = Executors.newSingleThreadScheduledExecutor();
+            }
+            return this.writerExecutor;
+        }
+    }
+
+    /**
+     * Wait for the meals delivered so far to be indexed and published by the writer thread
+     * Searches never wait for deliveries, this is for writers and tests which need the meals indexed
+     */
+    void awaitPendingDeliveries() {
+        // the writer thread runs one task at a time, so this pass follows any pass already running
+        Future<?> pass = getWriterExecutor().submit(this::indexPendingDeliveries);
+        try {
+            pass.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("indexing delivered meals failed", e.getCause());
+        }
+    }
+
+    /**
+     * Index every pending delivery in a single pass, publishing one new catalog, run by the writer thread
+     */
+    private synchronized void indexPendingDeliveries() {
+        // the latest version of each meal, in the order the meals were delivered
+        Map<String, SearchMealItem> delivered = new LinkedHashMap<>();
+        int deliveryCount = 0;
+        for (List<SearchMealItem> delivery = this.pendingDeliveries.poll(); delivery != null;
+             delivery = this.pendingDeliveries.poll()) {
+            deliveryCount++;
+            for (SearchMealItem item : delivery) {
+                delivered.remove(item.getId());
+                delivered.put(item.getId(), item);
+            }
+        }
+        // another pass indexed them already
+        if (deliveryCount == 0) {
+            return;
+        }
+        try {
+            addDeliveredItems(new ArrayList<>(delivered.values()));
+        } finally {
+            // searches waiting for these deliveries now read the catalog holding them
+            this.unpublishedDeliveries.addAndGet(-deliveryCount);
+        }
+    }
+
+    /**
+     * Publish a catalog holding the delivered meals, replacing their previous versions
+     * @param items meals of one or more chefs, each chef's meals all delivered together
+     */
+    private void addDeliveredItems(List<SearchMealItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        // build the next catalog from a copy of the current one, searches keep reading the current one meanwhile
+        Catalog current = this.catalog.get();
+        Map<String, SearchMealItem> searchMealItems = new HashMap<>(current.items);
+        TriesSearch triesSearch = current.triesSearch.copy();
+        // items which weren't known yet, as opposed to items already loaded from the snapshot
+        List<SearchMealItem> newItems = new ArrayList<>(items.size());
+        // meals of these chefs loaded from the snapshot but no longer offered are removed
+        removeUnconfirmedItems(items, searchMealItems, triesSearch);
         for (SearchMealItem item: items) {
-            // store the item in our map
-            this.searchMealItems.put(item.getId(), item);
-            // add meal's keywords to the TriesSearch dataset with an associated SearchMealItem id
-            // if there is a match in these keywords, we would get the corresponding SearchMealItem id
-            this.triesSearch.addData(item.getId(), item.getMeal().getKeywords());
+            // store the item in our map, replacing the snapshot's copy of the same meal
+            SearchMealItem previousItem = searchMealItems.put(item.getId(), item);
+            if (previousItem == null) {
+                // indexed below, with the other new items
+                newItems.add(item);
+            } else if (!previousItem.getFieldTexts().equals(item.getFieldTexts())
+                    || !previousItem.getFacetValues().equals(item.getFacetValues())
+                    || previousItem.getMeal().getPrice() != item.getMeal().getPrice()) {
+                // the meal was edited since the snapshot was saved
+                triesSearch.updateFieldData(item.getId(), item.getFieldKeywords());
+                addFilterValues(triesSearch, item);
+            }
         }
+        // add meal's keywords to the TriesSearch dataset with an associated SearchMealItem id
+        // if there is a match in these keywords, we would get the corresponding SearchMealItem id
+        indexItems(triesSearch, newItems);
+        Map<String, Integer> searches = addSearchCounts(triesSearch);
+        this.catalog.set(new Catalog(searchMealItems, triesSearch));
+        this.searchCounts.remove(searches);
+        scheduleCompaction(triesSearch);
+        // report the index memory cost per meal, so growth of the catalog can be tracked
+        Log.d("searchMeals", "index size: " + triesSearch.getEstimatedMemoryBytes() + " bytes, "
+                + triesSearch.getEstimatedBytesPerItem() + " bytes per meal");
+        // save the updated meals for the next session
+        if (this.snapshot != null) {
+            this.snapshot.scheduleSave();
+        }
+        this.uiHandler.post(() -> notifyItemsAdded(newItems));
+    }
+
+    /**
+     * Index new items, in parallel when there are enough of them (ex: the first load of the catalog)
+     * @param triesSearch index to add the items to
+     * @param newItems items not indexed yet
+     */
+    private void indexItems(TriesSearch triesSearch, List<SearchMealItem> newItems) {
+        // on a single core, merging the shards would only add work
+        if (newItems.size() >= BULK_INDEX_MIN_ITEMS && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && Runtime.getRuntime().availableProcessors() > 1) {
+            if (this.indexingPool == null) {
+                this.indexingPool = new ForkJoinPool();
+            }
+            // keywords are extracted by the worker threads too
+            triesSearch.addAllFieldData(new TriesSearch.RowSource() {
+                @Override
+                public int size() {
+                    return newItems.size();
+                }
+
+                @Override
+                public String getId(int index) {
+                    return newItems.get(index).getId();
+                }
+
+                @Override
+                public List<List<String>> getFieldKeywords(int index) {
+                    return newItems.get(index).getFieldKeywords();
+                }
+            }, this.indexingPool);
+        } else {
+            for (SearchMealItem item : newItems) {
+                triesSearch.addFieldData(item.getId(), item.getFieldKeywords());
+            }
+        }
+        for (SearchMealItem item : newItems) {
+            addFilterValues(triesSearch, item);
+        }
+        // meals are mostly searched once loaded, and meals indexed later are held apart until enough of them
+        // were added, whether in one batch or many: freezing costs the whole index, so it waits until the index
+        // doubled since it was last frozen
+        this.unfrozenItems += newItems.size();
+        if (this.unfrozenItems >= Math.max(BULK_INDEX_MIN_ITEMS, this.frozenItems)) {
+            freeze(triesSearch);
+        }
+    }
+
+    /**
+     * Freeze the words of an index into its compact dictionary (see TriesSearch.freeze)
+     * @param triesSearch index to freeze
+     */
+    private void freeze(TriesSearch triesSearch) {
+        triesSearch.freeze();
+        this.frozenItems = triesSearch.size();
+        this.unfrozenItems = 0;
+        Log.d("searchMeals", "froze index dictionary: " + triesSearch.getFrozenDictionary().size() + " words, "
+                + triesSearch.getFrozenDictionary().getStateCount() + " states");
+    }
+
+    /**
+     * Index the facet values and the price of an item, so searches can be filtered on them,
+     * and the positions of its words, so it can match phrases and have its matches highlighted
+     * @param triesSearch index the item was added to
+     * @param item meal item
+     */
+    private static void addFilterValues(TriesSearch triesSearch, SearchMealItem item) {
+        for (Map.Entry<MealFacet, List<String>> facet : item.getFacetValues().entrySet()) {
+            triesSearch.addFacetValues(item.getId(), facet.getKey().name(), facet.getValue());
+        }
+        triesSearch.addValue(item.getId(), PRICE, item.getMeal().getPrice());
+        triesSearch.addPositions(item.getId(), item.getFieldTexts(), Analyzer.INDEX);
+        // meals of unknown districts are left without a shard, they are searched after every district
+        String shard = getShard(item);
+        if (shard != null) {
+            triesSearch.setShard(item.getId(), shard);
+        }
+    }
+
+    /**
+     * Get the shard of an item in the index: the Forward Sortation Area of its chef's postal code
+     * @param item meal item
+     * @return first three characters of the chef's postal code in upper case (ex: "K1N"), null if unknown
+     */
+    @Nullable
+    static String getShard(SearchMealItem item) {
+        if (item.getChef() == null || item.getChef().getChefAddress() == null
+                || item.getChef().getChefAddress().getPostalCode() == null) {
+            return null;
+        }
+        String postalCode = item.getChef().getChefAddress().getPostalCode().replaceAll("\\s+", "");
+        return (postalCode.length() < 3) ? null : postalCode.substring(0, 3).toUpperCase(Locale.US);
+    }
+
+    /**
+     * Notify the subscribed search screen of new items, must be called on the UI thread
+     * @param newItems items added
+     */
+    void notifyItemsAdded(List<SearchMealItem> newItems) {
         // if we have a subscribed search screen observing data changes
-        if (this.searchScreen != null) {
+        if (this.searchScreen != null && !newItems.isEmpty()) {
             // notify search screen of changes
-            this.searchScreen.newSearchItemsAdded(items);
+            this.searchScreen.newSearchItemsAdded(newItems);
         }
     }
 
+    /**
+     * Remove a meal item, it is no longer returned by searches
+     * @param sMItemId id of the SearchMealItem
+     * @return true if the item existed
+     */
+    public boolean removeItem(String sMItemId) {
+        // the meal may still be waiting to be indexed, the writer thread needs the writers' lock to index it
+        awaitPendingDeliveries();
+        synchronized (this) {
+            Catalog current = this.catalog.get();
+            if (!current.items.containsKey(sMItemId)) {
+                return false;
+            }
+            Map<String, SearchMealItem> searchMealItems = new HashMap<>(current.items);
+            searchMealItems.remove(sMItemId);
+            TriesSearch triesSearch = current.triesSearch.copy();
+            triesSearch.remove(sMItemId);
+            Map<String, Integer> searches = addSearchCounts(triesSearch);
+            this.catalog.set(new Catalog(searchMealItems, triesSearch));
+            this.searchCounts.remove(searches);
+            scheduleCompaction(triesSearch);
+            if (this.snapshot != null) {
+                this.snapshot.scheduleSave();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Remove the items loaded from the snapshot for the chefs of a batch of items from the database, which
+     * aren't in the batch: each batch holds all the meals a chef offers, so these meals are no longer offered
+     * @param items items loaded from the database
+     * @param searchMealItems next SearchMealItems by id, to remove from
+     * @param triesSearch next index, to remove from
+     */
+    private void removeUnconfirmedItems(List<SearchMealItem> items, Map<String, SearchMealItem> searchMealItems,
+                                        TriesSearch triesSearch) {
+        if (this.unconfirmedItemIds.isEmpty()) {
+            return;
+        }
+        Set<String> itemIds = new HashSet<>();
+        for (SearchMealItem item : items) {
+            itemIds.add(item.getId());
+        }
+        for (SearchMealItem item : items) {
+            // the snapshot's items of this chef are confirmed (or removed) once
+            List<String> chefItemIds = this.unconfirmedItemIds.remove(getChefId(item));
+            if (chefItemIds == null) {
+                continue;
+            }
+            for (String sMItemId : chefItemIds) {
+                if (!itemIds.contains(sMItemId) && searchMealItems.remove(sMItemId) != null) {
+                    triesSearch.remove(sMItemId);
+                }
+            }
+        }
+    }
+
+    private static String getChefId(SearchMealItem item) {
+        return (item.getChef() == null) ? null : item.getChef().getChefId();
+    }
+
+    /**
+     * Compact the index in the background once enough meals were removed or edited
+     * @param triesSearch index just published
+     */
+    private void scheduleCompaction(TriesSearch triesSearch) {
+        if (this.compactionScheduled || !triesSearch.needsCompaction()) {
+            return;
+        }
+        this.compactionScheduled = true;
+        getWriterExecutor().execute(() -> {
+            synchronized (SearchMeals.this) {
+                this.compactionScheduled = false;
+                Catalog current = this.catalog.get();
+                if (current.triesSearch.needsCompaction()) {
+                    Log.d("searchMeals", "compacting index: " + current.triesSearch.getDeletedCount() + " removed meals");
+                    // compaction builds a new Trie, searches keep reading the current one meanwhile
+                    TriesSearch compacted = current.triesSearch.copy();
+                    compacted.compact();
+                    if (current.triesSearch.getFrozenDictionary() != null) {
+                        // compaction moved the frozen words back into the Trie
+                        freeze(compacted);
+                    }
+                    Map<String, Integer> searches = addSearchCounts(compacted);
+                    this.catalog.set(new Catalog(current, compacted));
+                    this.searchCounts.remove(searches);
+                }
+            }
+        });
+    }
+
+    /**
+     * Save the meal items to a snapshot file in the background, and load the previous session's snapshot
+     * so meals can be searched right away, before they are loaded from the database
+     * Meals later loaded from the database replace their saved copies
+     * @param file file holding the snapshot
+     */
+    public void enableSnapshot(File file) {
+        synchronized (this) {
+            if (this.snapshot != null) {
+                return;
+            }
+            this.snapshot = new SearchMealsSnapshot(this, file);
+        }
+        this.snapshot.load();
+    }
+
+    /**
+     * Write the latencies and result counts of the searches, and the queries finding nothing, to a local file
+     * every minute in the background (see SearchMetrics), so they can be pulled from the device for analysis
+     * Searches are measured even when this isn't called, they are just never written
+     * @param file file receiving the metrics, older metrics are rotated to files next to it
+     */
+    public void enableMetrics(File file) {
+        this.metrics.enable(file);
+    }
+
+    /**
+     * @return recorder of the metrics of the searches
+     */
+    SearchMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return index of the current catalog
+     */
+    TriesSearch getTriesSearch() {
+        return this.catalog.get().triesSearch;
+    }
+
+    /**
+     * Load meal items and their index from a snapshot file
+     * The snapshot is ignored if meals were already added, and deleted if it is stale or corrupt
+     * @param file file holding the snapshot
+     * @return the meal items loaded, empty if none
+     */
+    synchronized List<SearchMealItem> loadSnapshot(File file) {
+        // meals already loaded from the database are more recent than any snapshot
+        if (!this.catalog.get().items.isEmpty() || this.unpublishedDeliveries.get() > 0) {
+            return Collections.emptyList();
+        }
+        try {
+            TriesSearch triesSearch = newIndex(this.metrics);
+            ByteBuffer attachment = TriesSearchSnapshot.read(file, triesSearch);
+            List<SearchMealItem> items = (attachment == null) ? null : readItems(attachment);
+            if (items == null || !isIndexOf(items, triesSearch)) {
+                discardSnapshot(file);
+                return Collections.emptyList();
+            }
+            // the snapshot's meals are only searched until the database loads them again
+            freeze(triesSearch);
+            Map<String, SearchMealItem> searchMealItems = new HashMap<>();
+            for (SearchMealItem item : items) {
+                searchMealItems.put(item.getId(), item);
+                // positions and shards aren't saved in the snapshot, they are cheaper to compute again than to store
+                triesSearch.addPositions(item.getId(), item.getFieldTexts(), Analyzer.INDEX);
+                String shard = getShard(item);
+                if (shard != null) {
+                    triesSearch.setShard(item.getId(), shard);
+                }
+                // until the chef's meals are loaded from the database, the item may no longer be offered
+                String chefId = getChefId(item);
+                if (!this.unconfirmedItemIds.containsKey(chefId)) {
+                    this.unconfirmedItemIds.put(chefId, new ArrayList<>());
+                }
+                this.unconfirmedItemIds.get(chefId).add(item.getId());
+            }
+            this.catalog.set(new Catalog(searchMealItems, triesSearch));
+            Log.i("searchMeals", "loaded search snapshot: " + items.size() + " meals");
+            return items;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // ex: the meal classes changed since the snapshot was saved
+            Log.e("searchMeals", "unreadable search snapshot: " + e.getMessage());
+            discardSnapshot(file);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Check that the index holds exactly the ids of the items, each indexed meal having its item
+     * @param items meal items
+     * @param triesSearch index loaded with the items
+     * @return true if the index and the items match
+     */
+    private static boolean isIndexOf(List<SearchMealItem> items, TriesSearch triesSearch) {
+        if (items.size() != triesSearch.size()) {
+            return false;
+        }
+        for (SearchMealItem item : items) {
+            if (!triesSearch.contains(item.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void discardSnapshot(File file) {
+        Log.w("searchMeals", "discarding stale or corrupt search snapshot");
+        file.delete();
+    }
+
+    /**
+     * Save the meal items and their index to a snapshot file
+     * The current catalog never changes, so it is saved without blocking searches or writers
+     * @param file file holding the snapshot
+     * @throws IOException if the snapshot can't be written
+     */
+    void saveSnapshot(File file) throws IOException {
+        Catalog current = this.catalog.get();
+        ByteArrayOutputStream itemsBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(itemsBytes)) {
+            out.writeObject(new ArrayList<>(current.items.values()));
+        }
+        TriesSearchSnapshot.write(current.triesSearch, itemsBytes.toByteArray(), file);
+        Log.d("searchMeals", "saved search snapshot: " + current.items.size() + " meals");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SearchMealItem> readItems(ByteBuffer attachment) throws IOException, ClassNotFoundException {
+        byte[] bytes = new byte[attachment.remaining()];
+        attachment.get(bytes);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (List<SearchMealItem>) in.readObject();
+        }
+    }
+
+    /**
+     * Search the meal items matching every term of a query
+     * @param query query entered by the client
+     * @return list of matching SearchMealItems, empty if no match
+     */
     public List<SearchMealItem> searchMealItems(String query) {
-        // use TriesSearch to perform a pattern match and
-        // get a list containing ids of SearchMealItems which have a match
-        List<String> triesSearchResult = this.triesSearch.pMatch(query);
+        return searchMealItems(query, QueryMode.AND);
+    }
+
+    /**
+     * Search the meal items matching a query
+     * @param query query entered by the client
+     * @param mode whether items must match every term of the query (AND) or any term (OR)
+     * @return list of matching SearchMealItems, empty if no match
+     */
+    public List<SearchMealItem> searchMealItems(String query, QueryMode mode) {
+        return search(query, current -> {
+            List<String> terms = getQueryTerms(query);
+            // use TriesSearch to perform a pattern match for each term and
+            // get a list containing ids of SearchMealItems which have a match, most relevant first
+            List<String> exactMatches = current.triesSearch.topMatches(terms, mode, Integer.MAX_VALUE, null);
+            return getRankedSearchMealItems(current, terms, mode, exactMatches, Integer.MAX_VALUE, null, null,
+                    this.fuzzyMatching);
+        });
+    }
+
+    /**
+     * Search the meal items matching a query, as the client types it
+     * The cursor remembers the previous query, so when the client only appends characters
+     * the previous result is narrowed down instead of searching all meals again
+     * @param query query entered by the client
+     * @param cursor cursor obtained from newSearchCursor, holding the state of the previous query
+     * @param order order of items equally relevant to the query, null to keep index order
+     * @return at most RESULT_LIMIT matching SearchMealItems, most relevant exact matches first then
+     *         fuzzy matches, empty if no match
+     */
+    public List<SearchMealItem> searchMealItems(String query, SearchCursor cursor, @Nullable Comparator<SearchMealItem> order) {
+        return searchMealItems(query, cursor, order, null);
+    }
+
+    /**
+     * Search the meal items matching a query and a filter, as the client types the query
+     * Queries using the query language (see QueryParser, ex: cuisine:thai -peanut "green curry" price<20) are
+     * evaluated by a QueryPlan, without infix or fuzzy matches. Once the client's postal code is set (see setOrigin),
+     * exact matches are listed by postal district, nearest first, then by relevance
+     * @param query query entered by the client
+     * @param cursor cursor obtained from newSearchCursor, holding the state of the previous query
+     * @param order order of items equally relevant to the query, null to keep index order
+     * @param filter facet values (see MealFacet) the items must have or must not have, null for no filter
+     * @return at most RESULT_LIMIT matching SearchMealItems, most relevant exact matches first then
+     *         fuzzy matches, empty if no match
+     */
+    public List<SearchMealItem> searchMealItems(String query, SearchCursor cursor, @Nullable Comparator<SearchMealItem> order,
+                                                @Nullable FacetFilter filter) {
+        return search(query, current -> searchMealItems(current, query, cursor, order, filter));
+    }
+
+    private List<SearchMealItem> searchMealItems(Catalog current, String query, SearchCursor cursor,
+                                                 @Nullable Comparator<SearchMealItem> order, @Nullable FacetFilter filter) {
+        SearchQuery parsedQuery = QUERY_PARSER.parse(query);
+        boolean simple = parsedQuery.isSimple();
+        List<String> terms = simple ? getQueryTerms(query) : Collections.singletonList(parsedQuery.toString());
+        boolean fuzzyMatching = this.fuzzyMatching && simple;
+        // repeated searches are answered from the cache until the catalog changes
+        Origin origin = this.origin;
+        String ranking = !simple ? "query" : (origin == null) ? "relevance" : "nearest:" + origin.postalCodes.getOrigin();
+        SearchResultCache.Key key = new SearchResultCache.Key(terms, ranking, filter, order, fuzzyMatching);
+        String[] cachedIds = this.resultCache.get(key, current.getGeneration());
+        if (cachedIds != null) {
+            return getSearchMealItems(current, Arrays.asList(cachedIds));
+        }
+        Comparator<String> tieBreaker = getTieBreaker(current, order);
+        List<SearchMealItem> sMItems;
+        if (!simple) {
+            // clauses are evaluated most selective first
+            sMItems = getSearchMealItems(current, current.triesSearch.plan(parsedQuery).execute(RESULT_LIMIT, tieBreaker, filter));
+        } else if (origin == null) {
+            sMItems = getRankedSearchMealItems(current, terms, QueryMode.AND,
+                    cursor.topMatches(current.triesSearch, terms, RESULT_LIMIT, tieBreaker, filter), RESULT_LIMIT,
+                    tieBreaker, filter, fuzzyMatching);
+        } else {
+            // meals of the closest postal districts are searched first, farther ones only until the page is full
+            sMItems = getRankedSearchMealItems(current, terms, QueryMode.AND,
+                    cursor.topMatchesNearestFirst(current.triesSearch, terms, RESULT_LIMIT, origin, tieBreaker, filter),
+                    RESULT_LIMIT, tieBreaker, filter, fuzzyMatching);
+        }
+        this.resultCache.put(key, current.getGeneration(), getIds(sMItems));
+        return sMItems;
+    }
+
+    /**
+     * Search the meal items matching a query and a filter, sorted by price instead of relevance
+     * @param query query entered by the client, empty to list every meal allowed by the filter
+     * @param filter facet values and price range (see PRICE) the items must have, null for no filter
+     * @param cheapestFirst true to list the cheapest meals first, false for the most expensive first
+     * @return at most RESULT_LIMIT matching SearchMealItems, empty if no match
+     */
+    public List<SearchMealItem> searchMealItemsByPrice(String query, @Nullable FacetFilter filter, boolean cheapestFirst) {
+        return search(query, current -> {
+            List<String> terms = getQueryTerms(query);
+            SearchResultCache.Key key = new SearchResultCache.Key(terms, cheapestFirst ? "price" : "-price", filter,
+                    null, false);
+            String[] cachedIds = this.resultCache.get(key, current.getGeneration());
+            if (cachedIds != null) {
+                return getSearchMealItems(current, Arrays.asList(cachedIds));
+            }
+            List<SearchMealItem> sMItems = getSearchMealItems(current,
+                    current.triesSearch.topMatchesByValue(terms, QueryMode.AND, RESULT_LIMIT, PRICE, cheapestFirst, filter));
+            this.resultCache.put(key, current.getGeneration(), getIds(sMItems));
+            return sMItems;
+        });
+    }
+
+    /**
+     * A search reading one version of the catalog
+     */
+    private interface Search {
+        List<SearchMealItem> run(Catalog current);
+    }
+
+    /**
+     * Run a search, every public search goes through here so each one is measured (see getMetrics)
+     * @param query query entered by the client
+     * @param search the search, reading the catalog it is given
+     * @return items found by the search
+     */
+    private List<SearchMealItem> search(String query, Search search) {
+        long start = System.nanoTime();
+        // the whole search reads the same version of the catalog
+        List<SearchMealItem> sMItems = search.run(this.catalog.get());
+        this.metrics.recordSearch(query, System.nanoTime() - start, sMItems.size());
+        return sMItems;
+    }
+
+    /**
+     * Find the characters of each meal item matching a query, to highlight them in the search results
+     * Offsets are read from the index, in the text of each MealSearchField (see SearchMealItem.getFieldTexts)
+     * @param query query the items were found with
+     * @param sMItems items found
+     * @return highlights of each item by id, sorted by field then offset; empty lists for items matching the
+     *         query by synonym, infix or typo
+     */
+    public Map<String, List<Highlight>> getHighlights(String query, List<SearchMealItem> sMItems) {
+        TriesSearch triesSearch = this.catalog.get().triesSearch;
+        SearchQuery parsedQuery = QUERY_PARSER.parse(query);
+        List<String> terms = getQueryTerms(query);
+        Map<String, List<Highlight>> highlights = new HashMap<>();
+        for (SearchMealItem sMItem : sMItems) {
+            highlights.put(sMItem.getId(), parsedQuery.isSimple() ? triesSearch.getHighlights(sMItem.getId(), terms, false)
+                    : triesSearch.getHighlights(sMItem.getId(), parsedQuery));
+        }
+        return highlights;
+    }
+
+    /**
+     * Explain how a query is evaluated, ex: for support staff investigating a slow or surprising search
+     * The query is planned and executed on the current catalog
+     * @param query query in the query language (see QueryParser)
+     * @return each clause in evaluation order with its estimated rows, the candidates left after it and the time
+     *         it took, then the ranking of the remaining candidates
+     */
+    public String explainQuery(String query) {
+        QueryPlan plan = this.catalog.get().triesSearch.plan(QUERY_PARSER.parse(query));
+        plan.execute(RESULT_LIMIT, null, null);
+        return plan.explain();
+    }
+
+    /**
+     * @return fraction of searches answered from the result cache, 0 if nothing was searched yet
+     */
+    public double getResultCacheHitRate() {
+        return this.resultCache.getHitRate();
+    }
+
+    /**
+     * @return estimated heap used by the result cache, in bytes
+     */
+    public long getResultCacheMemoryBytes() {
+        return this.resultCache.getEstimatedMemoryBytes();
+    }
+
+    /**
+     * Get the meal items allowed by a filter, whatever the query
+     * @param filter facet values (see MealFacet) the items must have or must not have, null for no filter
+     * @return the SearchMealItems allowed by the filter
+     */
+    public List<SearchMealItem> filterMealItems(@Nullable FacetFilter filter) {
+        Catalog current = this.catalog.get();
+        if (filter == null || filter.isEmpty()) {
+            return new ArrayList<>(current.items.values());
+        }
+        return getSearchMealItems(current, current.triesSearch.filter(filter));
+    }
+
+    /**
+     * Count the meal items having each value of a facet, ex: to label filter chips
+     * @param facet facet to count the values of
+     * @param filter facet values the counted items must have or must not have, null to count every item
+     * @return number of items having each value, values sorted alphabetically
+     */
+    public Map<String, Integer> getFacetCounts(MealFacet facet, @Nullable FacetFilter filter) {
+        return this.catalog.get().triesSearch.getFacetCounts(facet.name(), filter);
+    }
+
+    /**
+     * Suggest completions of the word being typed, the last word of the query
+     * @param query query entered by the client
+     * @param n maximum number of suggestions
+     * @return suggested words, most popular first, empty if the client isn't typing a word
+     */
+    public List<String> getSuggestions(String query, int n) {
+        // the client finished the last word
+        if (query == null || query.isEmpty() || Character.isWhitespace(query.charAt(query.length() - 1))) {
+            return new ArrayList<>();
+        }
+        List<String> terms = getQueryTerms(query.substring(query.lastIndexOf(' ') + 1));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return this.catalog.get().triesSearch.suggest(terms.get(terms.size() - 1), n, this.searchCounts);
+    }
+
+    /**
+     * Record the terms of a query the client searched, so they are suggested before less searched words
+     * The counts are kept apart from the index until meals change (see SearchCounts), so searches neither
+     * copy the index nor invalidate the cached results
+     * @param query query searched by the client
+     */
+    public void recordSearch(String query) {
+        TriesSearch triesSearch = this.catalog.get().triesSearch;
+        // the words as they were indexed, only words of offered meals are suggested
+        for (String term : Utilities.getKeywords(Collections.singletonList(query))) {
+            if (triesSearch.containsWord(term)) {
+                this.searchCounts.record(term);
+            }
+        }
+    }
+
+    /**
+     * Add the searches recorded apart from the index to the next version of the index, before it is published
+     * @param triesSearch next version of the index
+     * @return the counts added, to remove from the recorded searches once the index is published
+     */
+    private Map<String, Integer> addSearchCounts(TriesSearch triesSearch) {
+        Map<String, Integer> searches = this.searchCounts.getCounts();
+        triesSearch.recordSearches(searches);
+        return searches;
+    }
+
+    /**
+     * Create a cursor to search meal items as the client types
+     * @return a new cursor, matching every term of the query
+     */
+    public SearchCursor newSearchCursor() {
+        return this.catalog.get().triesSearch.newCursor(QueryMode.AND);
+    }
+
+    /**
+     * Set the client's postal code, so searches list the meals of the closest postal districts first
+     * Meals are then searched one postal district at a time, nearest first, and farther districts are only
+     * searched until a page of results is filled
+     * @param postalCode client's postal code, ex: "K1N 6N5"; null to rank meals from every postal district together
+     * @throws IllegalArgumentException if the postal code is invalid
+     */
+    public void setOrigin(@Nullable String postalCode) throws IllegalArgumentException {
+        this.origin = (postalCode == null) ? null : new Origin(postalCode);
+    }
+
+    /**
+     * Enable or disable typo-tolerant matching, enabled by default
+     * @param fuzzyMatching true to also return meals matching the query within a few typos
+     */
+    public void setFuzzyMatching(boolean fuzzyMatching) {
+        this.fuzzyMatching = fuzzyMatching;
+    }
+
+    /**
+     * Get the SearchMealItems matching a query, exact prefix matches ranked above infix matches,
+     * themselves ranked above fuzzy matches
+     * @param current catalog searched
+     * @param terms list of query terms
+     * @param mode how the terms are combined
+     * @param exactMatches ids of SearchMealItems matching the terms exactly, best first, may be null
+     * @param limit maximum number of items returned
+     * @param tieBreaker order of ids equally relevant to the query, null to keep index order
+     * @param filter facet values the items must have or must not have, null for no filter
+     * @param fuzzyMatching whether to add typo-tolerant matches
+     * @return list of SearchMealItems, empty if no match
+     */
+    private static List<SearchMealItem> getRankedSearchMealItems(Catalog current, List<String> terms, QueryMode mode,
+                                                                 List<String> exactMatches, int limit,
+                                                                 @Nullable Comparator<String> tieBreaker,
+                                                                 @Nullable FacetFilter filter, boolean fuzzyMatching) {
+        List<SearchMealItem> sMItems = getSearchMealItems(current, exactMatches);
+        // no data indexed yet, invalid query, or no room left for other matches
+        if (exactMatches == null || sMItems.size() >= limit) {
+            return sMItems;
+        }
+        int exactCount = sMItems.size();
+        // infix matches (ex: "burger" in "cheeseburger") rank below every exact match
+        sMItems.addAll(getSearchMealItems(current, current.triesSearch.topSubstringMatches(terms, mode, limit - exactCount, tieBreaker, filter)));
+        // fuzzy matching disabled, or no room left for fuzzy matches
+        if (!fuzzyMatching || sMItems.size() >= limit) {
+            return sMItems;
+        }
+        // fuzzy matches rank below every exact and infix match, skipping the infix matches already listed
+        Set<SearchMealItem> infixMatches = new HashSet<>(sMItems.subList(exactCount, sMItems.size()));
+        for (SearchMealItem sMItem : getSearchMealItems(current, current.triesSearch.topFuzzyMatches(terms, mode, limit - exactCount, tieBreaker, filter))) {
+            if (sMItems.size() >= limit) {
+                break;
+            }
+            if (!infixMatches.contains(sMItem)) {
+                sMItems.add(sMItem);
+            }
+        }
+        return sMItems;
+    }
+
+    /**
+     * Turn an order of SearchMealItems into an order of their ids, used to break ties between equally relevant meals
+     * @param current catalog searched
+     * @param order order of SearchMealItems, may be null
+     * @return order of SearchMealItem ids, null if order is null
+     */
+    private static Comparator<String> getTieBreaker(Catalog current, @Nullable Comparator<SearchMealItem> order) {
+        if (order == null) {
+            return null;
+        }
+        return (sMItemId1, sMItemId2) -> order.compare(current.items.get(sMItemId1), current.items.get(sMItemId2));
+    }
+
+    /**
+     * Split a query into terms, the same way meal keywords were extracted
+     * @param query query entered by the client
+     * @return list of query terms
+     */
+    private List<String> getQueryTerms(String query) {
+        List<String> terms = Utilities.getQueryTerms(query);
+        // if the query only contains stop words (ex: while typing "a"), match it as it was typed
+        if (terms.isEmpty() && query != null && !query.trim().isEmpty()) {
+            terms = Collections.singletonList(query.trim());
+        }
+        return terms;
+    }
+
+    /**
+     * Get the ids of SearchMealItems, to cache a search result
+     * @param sMItems list of SearchMealItems
+     * @return their ids, in the same order
+     */
+    private static String[] getIds(List<SearchMealItem> sMItems) {
+        String[] ids = new String[sMItems.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sMItems.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Get the SearchMealItems for a list of ids returned by TriesSearch
+     * @param current catalog searched
+     * @param triesSearchResult list of SearchMealItem ids, may be null
+     * @return list of SearchMealItems, empty if no ids
+     */
+    private static List<SearchMealItem> getSearchMealItems(Catalog current, List<String> triesSearchResult) {
         // store result
         List<SearchMealItem> sMItems = new ArrayList<>();
+        // no data indexed yet or invalid query
+        if (triesSearchResult == null) {
+            return sMItems;
+        }
         // for each id in search result
         for (String sMItemId: triesSearchResult) {
             // get the corresponding SearchMealItem from our local map and add to result list
-            sMItems.add(this.searchMealItems.get(sMItemId));
+            sMItems.add(current.items.get(sMItemId));
         }
         // return result list, will be empty if no match
         return sMItems;
@@ -0,0 +1,79 @@
+package com.example.mealer_project.ui.screens.search;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a snapshot file of the searchable meals and their index, so the next session can search right away
+ * The snapshot is loaded and saved on a background thread. Saving is delayed until meals stopped arriving
+ * for SAVE_DELAY_MS, so a burst of meals loaded from the database is saved once
+ */
+class SearchMealsSnapshot {
+
+    // time to wait after meals were added before saving them, in milliseconds
+    static final long SAVE_DELAY_MS = 2000;
+
+    // meals to load and save
+    private final SearchMeals searchMeals;
+
+    // file holding the snapshot
+    private final File file;
+
+    // single worker thread: loading and saving never overlap
+    private final ScheduledExecutorService executor;
+
+    // handler posting loaded meals to the UI thread
+    private final Handler uiHandler;
+
+    // pending save, replaced by a later one
+    private ScheduledFuture<?> pendingSave;
+
+    /**
+     * Create a snapshot of meals
+     * @param searchMeals meals to load and save
+     * @param file file holding the snapshot
+     */
+    SearchMealsSnapshot(SearchMeals searchMeals, File file) {
+        this.searchMeals = searchMeals;
+        this.file = file;
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Load the snapshot in the background, loaded meals are announced to the search screen on the UI thread
+     */
+    void load() {
+        executor.execute(() -> {
+            List<SearchMealItem> items = searchMeals.loadSnapshot(file);
+            if (!items.isEmpty()) {
+                uiHandler.post(() -> searchMeals.notifyItemsAdded(items));
+            }
+        });
+    }
+
+    /**
+     * Save the meals in the background once they stopped changing, replacing any pending save
+     */
+    synchronized void scheduleSave() {
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = executor.schedule(() -> {
+            try {
+                searchMeals.saveSnapshot(file);
+            } catch (IOException e) {
+                Log.e("searchMeals", "Unable to save search snapshot: " + e.getMessage());
+            }
+        }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+}
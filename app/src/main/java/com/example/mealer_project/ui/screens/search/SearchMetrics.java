@@ -0,0 +1,237 @@
+package com.example.mealer_project.ui.screens.search;
+
+import android.util.Log;
+
+import com.example.mealer_project.utils.TrieSearch.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records how searches perform on the device: latencies of searches and of the ranking of their candidates,
+ * number of results, and a sample of the queries finding nothing
+ * Searches record from any thread without locks. Once enabled, what was recorded since the previous flush is
+ * appended every FLUSH_INTERVAL_MS to a local file as one JSON line, the file being rotated when it grows past
+ * MAX_FILE_BYTES, so the last few hours of telemetry can be pulled from the device for analysis
+ */
+class SearchMetrics {
+
+    // time between two flushes to the file, in milliseconds
+    static final long FLUSH_INTERVAL_MS = 60 * 1000;
+
+    // size of the file above which it is rotated
+    static final long MAX_FILE_BYTES = 256 * 1024;
+
+    // number of rotated files kept besides the current one: file.1 (most recent) to file.3
+    static final int ROTATED_FILES = 3;
+
+    // number of queries finding nothing kept per flush
+    static final int ZERO_RESULT_SAMPLE_SIZE = 20;
+
+    // latencies above a minute are counted as a minute
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // percentiles written for each histogram, and their names
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    // time each search took, in nanoseconds
+    private final Histogram searchLatencies;
+
+    // time spent ranking the candidates of each query, in nanoseconds
+    private final Histogram rankLatencies;
+
+    // number of results of each search
+    private final Histogram resultCounts;
+
+    // uniform sample of the queries which found nothing since the last flush (reservoir sampling)
+    private final AtomicReferenceArray<String> zeroResultQueries;
+
+    // number of searches which found nothing since the last flush
+    private final AtomicLong zeroResultCount;
+
+    // picks the sampled queries replaced, thread safe
+    private final Random random;
+
+    // time of the last flush, in milliseconds
+    private long lastFlushMillis;
+
+    // file receiving the metrics, null until enabled
+    private File file;
+
+    // flushes the metrics periodically, created when enabled
+    private ScheduledExecutorService executor;
+
+    /**
+     * Create a recorder of search metrics, recording until the process ends but not flushed until enabled
+     * @param maxResultCount largest number of results a search returns
+     */
+    SearchMetrics(int maxResultCount) {
+        this.searchLatencies = new Histogram(MAX_LATENCY_NANOS);
+        this.rankLatencies = new Histogram(MAX_LATENCY_NANOS);
+        this.resultCounts = new Histogram(maxResultCount);
+        this.zeroResultQueries = new AtomicReferenceArray<>(ZERO_RESULT_SAMPLE_SIZE);
+        this.zeroResultCount = new AtomicLong();
+        this.random = new Random();
+        this.lastFlushMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return histogram the index records its ranking times in (see TriesSearch.setRankLatencies)
+     */
+    Histogram getRankLatencies() {
+        return this.rankLatencies;
+    }
+
+    /**
+     * Record a search
+     * @param query query entered by the client
+     * @param nanos time the search took, in nanoseconds
+     * @param resultCount number of results returned
+     */
+    void recordSearch(String query, long nanos, int resultCount) {
+        this.searchLatencies.record(nanos);
+        this.resultCounts.record(resultCount);
+        // an empty search box isn't a query finding nothing
+        if (resultCount == 0 && query != null && !query.trim().isEmpty()) {
+            long seen = this.zeroResultCount.incrementAndGet();
+            // every query has the same chance to be in the sample, however many queries found nothing
+            long slot = (seen <= ZERO_RESULT_SAMPLE_SIZE) ? seen - 1 : (long) (this.random.nextDouble() * seen);
+            if (slot < ZERO_RESULT_SAMPLE_SIZE) {
+                this.zeroResultQueries.set((int) slot, query.trim());
+            }
+        }
+    }
+
+    /**
+     * Flush the metrics to a file every FLUSH_INTERVAL_MS from now on, on a background thread
+     * @param file file receiving the metrics, rotated files are next to it (ex: search_metrics.log.1)
+     */
+    synchronized void enable(File file) {
+        if (this.executor != null) {
+            return;
+        }
+        this.file = file;
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                Log.e("searchMetrics", "Unable to save search metrics: " + e.getMessage());
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append what was recorded since the last flush to the file, unless nothing was searched
+     * @throws IOException if the file can't be written
+     */
+    synchronized void flush() throws IOException {
+        String report = takeReport();
+        if (report == null || this.file == null) {
+            return;
+        }
+        if (this.file.length() > MAX_FILE_BYTES) {
+            rotate();
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8)) {
+            out.write(report);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Describe what was recorded since the last report, and start recording the next one
+     * @return one line of JSON, ex: {"time":..., "searches":12, "search_latency_us":{"p50":850, ...}, ...};
+     *         null if nothing was searched since the last report
+     */
+    synchronized String takeReport() {
+        Histogram searchLatencies = this.searchLatencies.copyAndReset();
+        Histogram rankLatencies = this.rankLatencies.copyAndReset();
+        Histogram resultCounts = this.resultCounts.copyAndReset();
+        long zeroResultCount = this.zeroResultCount.getAndSet(0);
+        String[] zeroResultQueries = new String[ZERO_RESULT_SAMPLE_SIZE];
+        for (int i = 0; i < zeroResultQueries.length; i++) {
+            zeroResultQueries[i] = this.zeroResultQueries.getAndSet(i, null);
+        }
+        long now = System.currentTimeMillis();
+        long intervalMillis = now - this.lastFlushMillis;
+        this.lastFlushMillis = now;
+        if (searchLatencies.getCount() == 0) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder("{\"time\":").append(now)
+                .append(",\"interval_ms\":").append(intervalMillis)
+                .append(",\"searches\":").append(searchLatencies.getCount());
+        appendHistogram(report, "search_latency_us", searchLatencies, 1000);
+        appendHistogram(report, "rank_latency_us", rankLatencies, 1000);
+        appendHistogram(report, "result_count", resultCounts, 1);
+        report.append(",\"zero_results\":").append(zeroResultCount).append(",\"zero_result_queries\":[");
+        boolean first = true;
+        for (String query : zeroResultQueries) {
+            if (query != null) {
+                report.append(first ? "" : ",");
+                appendString(report, query);
+                first = false;
+            }
+        }
+        return report.append("]}").toString();
+    }
+
+    /**
+     * Append a histogram's count, percentiles, mean and maximum as a JSON object
+     * @param unit number of recorded units per unit written (ex: 1000 to write nanoseconds as microseconds)
+     */
+    private static void appendHistogram(StringBuilder report, String name, Histogram histogram, long unit) {
+        report.append(",\"").append(name).append("\":{\"count\":").append(histogram.getCount());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            report.append(",\"").append(PERCENTILE_NAMES[i]).append("\":")
+                    .append(histogram.getValueAtPercentile(PERCENTILES[i]) / unit);
+        }
+        report.append(",\"mean\":").append(String.format(Locale.ROOT, "%.1f", histogram.getMean() / unit))
+                .append(",\"max\":").append(histogram.getMax() / unit).append('}');
+    }
+
+    /**
+     * Append a string as a JSON string
+     */
+    private static void appendString(StringBuilder report, String value) {
+        report.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                report.append('\\').append(c);
+            } else if (c < ' ') {
+                report.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                report.append(c);
+            }
+        }
+        report.append('"');
+    }
+
+    /**
+     * Shift the rotated files by one, dropping the oldest, and make the current file the most recent rotated one
+     */
+    private void rotate() {
+        new File(this.file.getPath() + "." + ROTATED_FILES).delete();
+        for (int i = ROTATED_FILES - 1; i >= 1; i--) {
+            new File(this.file.getPath() + "." + i).renameTo(new File(this.file.getPath() + "." + (i + 1)));
+        }
+        if (!this.file.renameTo(new File(this.file.getPath() + ".1"))) {
+            Log.e("searchMetrics", "Unable to rotate search metrics, starting over");
+            this.file.delete();
+        }
+    }
+}
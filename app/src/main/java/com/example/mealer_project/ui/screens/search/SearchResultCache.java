@@ -0,0 +1,169 @@
+package com.example.mealer_project.ui.screens.search;
+
+import androidx.annotation.Nullable;
+
+import com.example.mealer_project.utils.TrieSearch.FacetFilter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used cache of search results, so queries clients repeat (ex: "pizza") are ranked once
+ * Results are cached as the final ranked ids, with the generation of the catalog they were computed on: a result
+ * is only returned for the same generation, so any meal added or removed invalidates every cached result
+ */
+class SearchResultCache {
+
+    /**
+     * Number of results kept by default
+     */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Identifies a search: its normalized query and everything else changing its result
+     */
+    static final class Key {
+        // query terms, joined by a space
+        private final String query;
+        // how results are ordered, ex: by relevance or by price
+        private final String sort;
+        // copy of the filter, null for no filter
+        private final FacetFilter filter;
+        // order of equally relevant results, compared by identity
+        private final Object order;
+        // whether typo-tolerant matches were included
+        private final boolean fuzzyMatching;
+
+        /**
+         * Create the key of a search
+         * @param terms normalized query terms
+         * @param sort how results are ordered
+         * @param filter filter of the search, copied, null for no filter
+         * @param order order of equally relevant results, null for index order
+         * @param fuzzyMatching whether typo-tolerant matches are included
+         */
+        Key(List<String> terms, String sort, @Nullable FacetFilter filter, @Nullable Object order, boolean fuzzyMatching) {
+            this.query = String.join(" ", terms);
+            this.sort = sort;
+            this.filter = (filter == null || filter.isEmpty()) ? null : new FacetFilter(filter);
+            this.order = order;
+            this.fuzzyMatching = fuzzyMatching;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return query.equals(other.query) && sort.equals(other.sort) && Objects.equals(filter, other.filter)
+                    && order == other.order && fuzzyMatching == other.fuzzyMatching;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, sort, filter, System.identityHashCode(order), fuzzyMatching);
+        }
+    }
+
+    /**
+     * Result of a search on a generation of the catalog
+     */
+    private static final class Entry {
+        final long generation;
+        final String[] ids;
+
+        Entry(long generation, String[] ids) {
+            this.generation = generation;
+            this.ids = ids;
+        }
+    }
+
+    // results in access order, least recently used first
+    private final LinkedHashMap<Key, Entry> entries;
+
+    // number of lookups answered from the cache, and not
+    private long hits;
+    private long misses;
+
+    /**
+     * Create an empty cache
+     * @param capacity maximum number of results kept
+     */
+    SearchResultCache(int capacity) {
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SearchResultCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the cached result of a search
+     * @param key search
+     * @param generation generation of the catalog searched
+     * @return ranked ids of the result, null if the search isn't cached for this generation
+     */
+    synchronized String[] get(Key key, long generation) {
+        Entry entry = this.entries.get(key);
+        if (entry == null || entry.generation != generation) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.ids;
+    }
+
+    /**
+     * Cache the result of a search, results of older generations are dropped
+     * @param key search
+     * @param generation generation of the catalog searched
+     * @param ids ranked ids of the result, must not be modified afterwards
+     */
+    synchronized void put(Key key, long generation, String[] ids) {
+        // results of older generations can never be returned again
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().generation < generation) {
+                iterator.remove();
+            }
+        }
+        this.entries.put(key, new Entry(generation, ids));
+    }
+
+    /**
+     * @return fraction of lookups answered from the cache, 0 if there was no lookup
+     */
+    synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (lookups == 0) ? 0 : (double) this.hits / lookups;
+    }
+
+    /**
+     * @return number of results cached
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Estimate the heap used by the cached results, in bytes
+     * Ids are shared with the catalog, so only the references to them are counted
+     * @return estimated size in bytes
+     */
+    synchronized long getEstimatedMemoryBytes() {
+        long bytes = 0;
+        for (Map.Entry<Key, Entry> entry : this.entries.entrySet()) {
+            // map entry, key with its query string, entry with its array of references
+            bytes += 48 + 40 + 40 + 2L * entry.getKey().query.length() + 24 + 16 + 4L * entry.getValue().ids.length;
+        }
+        return bytes;
+    }
+}
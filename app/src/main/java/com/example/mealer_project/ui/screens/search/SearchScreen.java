@@ -7,8 +7,10 @@ import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.view.inputmethod.EditorInfo;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 
@@ -17,10 +19,12 @@ import com.example.mealer_project.app.App;
 import com.example.mealer_project.ui.core.UIScreen;
 import com.example.mealer_project.ui.screens.checkout.CheckoutScreen;
 import com.example.mealer_project.utils.PostalCodes.PostalCodeComparator;
+import com.example.mealer_project.utils.TrieSearch.Highlight;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class SearchScreen extends UIScreen {
@@ -37,6 +41,9 @@ public class SearchScreen extends UIScreen {
     ListView sMList;
     EditText searchBox;
     TextView noSearchResultMessage;
+    // completions of the word being typed, most popular first
+    View searchSuggestionsScroll;
+    LinearLayout searchSuggestions;
 
     // adapter to handle list view
     private SearchMealItemsAdapter sMItemsAdapter;
@@ -45,6 +52,12 @@ public class SearchScreen extends UIScreen {
     // closeness to Client's postal code
     PostalCodeComparator postalCodeComparator;
 
+    // order of equally relevant search results: closeness to client, null if it can't be determined
+    Comparator<SearchMealItem> resultOrder;
+
+    // runs searches in the background as the client types, posting back only the latest result
+    SearchService searchService;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -58,6 +71,8 @@ public class SearchScreen extends UIScreen {
         sMList = findViewById(R.id.smMealsList);
         searchBox = (EditText) findViewById(R.id.searchBox);
         noSearchResultMessage = (TextView) findViewById(R.id.noSearchResultMessage);
+        searchSuggestionsScroll = findViewById(R.id.searchSuggestionsScroll);
+        searchSuggestions = (LinearLayout) findViewById(R.id.searchSuggestions);
 
         attachOnClickListeners();
 
@@ -67,9 +82,17 @@ public class SearchScreen extends UIScreen {
         populateListView();
         // subscribe to SearchMeals for data updates
         subscribeToDataChanges();
+        // create the service used to search as the client types
+        if (App.getClient() != null) {
+            searchService = new SearchService(App.getClient().getSearchMeals());
+        }
 
         try {
             postalCodeComparator = new PostalCodeComparator(App.getClient().getAddress().getPostalCode());
+            // sort equally relevant search results by closeness to client (based on postal codes)
+            resultOrder = (sR1, sR2) -> postalCodeComparator.comparePostalCodes(sR1.getChef().getChefAddress().getPostalCode(), sR2.getChef().getChefAddress().getPostalCode());
+            // search the meals of the postal districts closest to the client first
+            App.getClient().getSearchMeals().setOrigin(App.getClient().getAddress().getPostalCode());
         } catch (Exception e) {
             Log.e("searchMeals", "Unable to create instance of postal code comparator: " + e.getMessage());
             displayErrorToast("Unable to sort results by closeness to client");
@@ -107,17 +130,75 @@ public class SearchScreen extends UIScreen {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
+                // suggest completions of the word being typed, a cheap lookup done right away
+                displaySuggestions(s.toString());
                 // if nothing in search box
                 if(s.length() != 0) {
-                    // display search results based on the query entered by client
-                    displaySearchResult(s.toString());
+                    // search in the background, search results are displayed once the client pauses typing
+                    if (searchService != null) {
+                        searchService.search(s.toString(), resultOrder, SearchScreen.this::displaySearchResult);
+                    }
                 } else {
+                    // drop any pending search, the next query starts from scratch
+                    if (searchService != null) {
+                        searchService.cancel();
+                    }
                     // display all meals
                     populateListView();
                 }
                 Log.e("searchR", "Search box text changed: " + s);
             }
         });
+
+        // the client submitted the query: its terms become more popular suggestions
+        searchBox.setOnEditorActionListener((view, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH && searchService != null) {
+                searchService.recordSearch(view.getText().toString());
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Display the most popular completions of the word being typed, hide them if there are none
+     * @param query query entered by client
+     */
+    private void displaySuggestions(String query) {
+        searchSuggestions.removeAllViews();
+        List<String> suggestions = new ArrayList<>();
+        if (App.getClient() != null) {
+            suggestions = App.getClient().getSearchMeals().getSuggestions(query, SearchMeals.SUGGESTION_LIMIT);
+        }
+        // nothing to complete, or the word is already complete
+        if (suggestions.isEmpty() || (suggestions.size() == 1 && query.toLowerCase(Locale.ROOT).endsWith(suggestions.get(0)))) {
+            searchSuggestionsScroll.setVisibility(View.GONE);
+            return;
+        }
+        for (String suggestion : suggestions) {
+            TextView suggestionView = new TextView(this);
+            suggestionView.setText(suggestion);
+            suggestionView.setTextSize(18);
+            suggestionView.setPadding(20, 10, 20, 10);
+            suggestionView.setOnClickListener(view -> selectSuggestion(suggestion));
+            searchSuggestions.addView(suggestionView);
+        }
+        searchSuggestionsScroll.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Replace the word being typed by a suggestion, and search the completed query
+     * @param suggestion suggestion picked by the client
+     */
+    private void selectSuggestion(String suggestion) {
+        String query = searchBox.getText().toString();
+        String completedQuery = query.substring(0, query.lastIndexOf(' ') + 1) + suggestion + " ";
+        // picking a suggestion searches it
+        if (searchService != null) {
+            searchService.recordSearch(completedQuery);
+        }
+        // triggers the search and clears the suggestions, as the client finished the word
+        searchBox.setText(completedQuery);
+        searchBox.setSelection(completedQuery.length());
     }
 
     public void newSearchItemsAdded(List<SearchMealItem> newItems) {
@@ -170,34 +251,39 @@ public class SearchScreen extends UIScreen {
         }
     }
 
-    private void displaySearchResult(String query) {
-        if (App.getClient() != null) {
-            // get the list of SearchMealItems matching the query entered in search box
-            List<SearchMealItem> searchResult = App.getClient().getSearchMeals().searchMealItems(query);
-
-            // if there are no matching results, display a message indicating so and return
-            if (searchResult.isEmpty()) {
-                setNoSearchResultMessageVisibility(true);
-                return;
-            } else {
-                // hide the no search result message and continue processing
-                setNoSearchResultMessageVisibility(false);
-            }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // stop the search worker thread
+        if (searchService != null) {
+            searchService.shutdown();
+        }
+    }
 
-            // sort the search results by closeness to client (based on postal codes)
-            if (postalCodeComparator != null) {
-                Collections.sort(searchResult, (sR1, sR2) -> postalCodeComparator.comparePostalCodes(sR1.getChef().getChefAddress().getPostalCode(), sR2.getChef().getChefAddress().getPostalCode()));
-                Log.e("searchMeals", "search results sorted");
-            }
-            // clear current items in sMItems
-            this.sMItems = new ArrayList<>();
-            // get the adapter
-            this.sMItemsAdapter = new SearchMealItemsAdapter(this, R.layout.activity_search_meal_item, this.sMItems);
-            // attach adapter to list view
-            sMList.setAdapter(this.sMItemsAdapter);
-            // load the result meals
-            this.sMItems.addAll(searchResult);
+    /**
+     * Display the result of a search, called on the UI thread by SearchService with the latest query's result
+     * @param query query entered by client
+     * @param searchResult list of SearchMealItems matching the query, most relevant first
+     * @param highlights characters of each SearchMealItem matching the query, by id
+     */
+    private void displaySearchResult(String query, List<SearchMealItem> searchResult,
+                                     Map<String, List<Highlight>> highlights) {
+        // if there are no matching results, display a message indicating so and return
+        if (searchResult.isEmpty()) {
+            setNoSearchResultMessageVisibility(true);
+            return;
+        } else {
+            // hide the no search result message and continue processing
+            setNoSearchResultMessageVisibility(false);
         }
+
+        // reuse the current adapter: clear current items in sMItems and load the result meals
+        this.sMItemsAdapter.setNotifyOnChange(false);
+        this.sMItemsAdapter.clear();
+        this.sMItemsAdapter.setHighlights(highlights);
+        this.sMItemsAdapter.addAll(searchResult);
+        // inform adapter of the change once all items are loaded
+        this.sMItemsAdapter.notifyDataSetChanged();
     }
 
     private void setNoSearchResultMessageVisibility(boolean visible) {
@@ -0,0 +1,163 @@
+package com.example.mealer_project.ui.screens.search;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.mealer_project.utils.TrieSearch.FacetFilter;
+import com.example.mealer_project.utils.TrieSearch.Highlight;
+import com.example.mealer_project.utils.TrieSearch.SearchCursor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs meal searches on a background thread, so typing never waits for a search to finish
+ * Keystrokes are debounced: a query only runs once the client stopped typing for DEBOUNCE_MS.
+ * A newer query cancels the pending one, and results of a query made stale by a newer keystroke
+ * are dropped, so only the latest result is ever posted back to the UI thread
+ */
+public class SearchService {
+
+    /**
+     * Listener receiving search results on the UI thread
+     */
+    public interface ResultListener {
+        /**
+         * Called on the UI thread with the result of the latest query
+         * @param query query which was searched
+         * @param result matching SearchMealItems, empty if no match
+         * @param highlights characters of each SearchMealItem matching the query, by id (see SearchMeals.getHighlights)
+         */
+        void onSearchResult(String query, List<SearchMealItem> result, Map<String, List<Highlight>> highlights);
+    }
+
+    // time to wait after a keystroke before searching, in milliseconds
+    public static final long DEBOUNCE_MS = 150;
+
+    // meals to search
+    private final SearchMeals searchMeals;
+
+    // search-as-you-type cursor, only ever used on the worker thread
+    private final SearchCursor searchCursor;
+
+    // single worker thread: queries run one at a time, in the order they were typed
+    private final ScheduledExecutorService executor;
+
+    // handler posting results to the UI thread
+    private final Handler uiHandler;
+
+    // sequence number of the latest query, a query is stale once a newer one was submitted
+    private final AtomicLong latestQuery;
+
+    // pending (debounced or running) query, cancelled by a newer one
+    private ScheduledFuture<?> pendingQuery;
+
+    /**
+     * Create a search service
+     * @param searchMeals meals to search
+     */
+    public SearchService(SearchMeals searchMeals) {
+        this.searchMeals = searchMeals;
+        this.searchCursor = searchMeals.newSearchCursor();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+        this.latestQuery = new AtomicLong();
+    }
+
+    /**
+     * Search meals in the background, replacing any pending query
+     * Must be called from the UI thread
+     * @param query query entered by the client
+     * @param order order of meals equally relevant to the query, null to keep index order
+     * @param listener listener receiving the result on the UI thread, unless a newer query was submitted
+     */
+    public void search(String query, @Nullable Comparator<SearchMealItem> order, ResultListener listener) {
+        search(query, order, null, listener);
+    }
+
+    /**
+     * Search meals allowed by a filter in the background, replacing any pending query
+     * Must be called from the UI thread
+     * @param query query entered by the client
+     * @param order order of meals equally relevant to the query, null to keep index order
+     * @param filter facet values the meals must have or must not have, null for no filter; must not be
+     *               modified afterwards, pass a copy
+     * @param listener listener receiving the result on the UI thread, unless a newer query was submitted
+     */
+    public void search(String query, @Nullable Comparator<SearchMealItem> order, @Nullable FacetFilter filter,
+                       ResultListener listener) {
+        long sequence = latestQuery.incrementAndGet();
+        cancelPendingQuery();
+        pendingQuery = executor.schedule(() -> {
+            // a newer keystroke arrived while this query was waiting
+            if (isStale(sequence)) {
+                return;
+            }
+            List<SearchMealItem> result = searchMeals.searchMealItems(query, searchCursor, order, filter);
+            // highlights are read from the index here too, so the UI thread only applies them
+            Map<String, List<Highlight>> highlights = searchMeals.getHighlights(query, result);
+            // only post the result if no newer query was submitted while searching
+            if (!isStale(sequence)) {
+                uiHandler.post(() -> {
+                    // checked again on the UI thread, a newer query may have been submitted meanwhile
+                    if (!isStale(sequence)) {
+                        listener.onSearchResult(query, result, highlights);
+                    }
+                });
+            }
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record a query the client searched in the background, making its terms more popular suggestions
+     * @param query query searched by the client
+     */
+    public void recordSearch(String query) {
+        if (!executor.isShutdown()) {
+            executor.execute(() -> searchMeals.recordSearch(query));
+        }
+    }
+
+    /**
+     * Cancel any pending query, its result will not be posted
+     * The next query runs from scratch. Must be called from the UI thread
+     */
+    public void cancel() {
+        latestQuery.incrementAndGet();
+        cancelPendingQuery();
+        // reset on the worker thread, the only thread using the cursor
+        if (!executor.isShutdown()) {
+            executor.execute(searchCursor::reset);
+        }
+    }
+
+    /**
+     * Stop the worker thread, no more queries can be submitted
+     */
+    public void shutdown() {
+        latestQuery.incrementAndGet();
+        executor.shutdownNow();
+        Log.d("searchService", "search service shut down");
+    }
+
+    private boolean isStale(long sequence) {
+        return sequence != latestQuery.get() || Thread.currentThread().isInterrupted();
+    }
+
+    private void cancelPendingQuery() {
+        if (pendingQuery != null) {
+            // interrupt a running query as well, its result is stale
+            pendingQuery.cancel(true);
+            pendingQuery = null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.mealer_project.utils.PostalCodes;
 
 import java.util.Comparator;
+import java.util.Locale;
 
 /**
  * Class to compare Canadian Postal Codes to closeness
@@ -233,6 +234,33 @@ public class PostalCodeComparator implements Comparator<String> {
         return comparePostalCodes(new PostalCode(firstPostalCodeStr), new PostalCode(secondPostalCodeStr));
     }
 
+    /**
+     * Get how far a Forward Sortation Area (first three characters of a postal code) is from the origin
+     * Distances are ordered like comparePostalCodes orders postal codes: by postal district first,
+     * then by urban rural identifier, then by region identifier
+     * @param fsa Forward Sortation Area, ex: "K1N" or "k1n"
+     * @return 0 for the origin's FSA, larger for farther FSAs; Integer.MAX_VALUE if the FSA is invalid
+     */
+    public int getFSADistance(String fsa) {
+        // guard-clause
+        if (fsa == null || fsa.length() != 3 || origin == null) {
+            return Integer.MAX_VALUE;
+        }
+        fsa = fsa.toUpperCase(Locale.US);
+        char postalDistrict = fsa.charAt(0);
+        int urbanRuralIdentifier = fsa.charAt(1) - '0';
+        char regionIdentifier = fsa.charAt(2);
+        if (!PostalCode.isValidFSAPostalDistrict(postalDistrict) || !PostalCode.isValidFSADigit(urbanRuralIdentifier)
+                || !PostalCode.isValidPostalCodeLetter(regionIdentifier)) {
+            return Integer.MAX_VALUE;
+        }
+        int districtDistance = Math.abs(getPDDigit(origin.getPostalDistrictCharacter()) - getPDDigit(postalDistrict));
+        int uriDistance = Math.abs(origin.getUrbanRuralIdentifier() - urbanRuralIdentifier);
+        int regionDistance = getLetterDistance(origin.getRegionIdentifier(), regionIdentifier);
+        // at most 9 digits apart and 19 letters apart, so a closer district always wins
+        return (districtDistance * 10 + uriDistance) * 20 + regionDistance;
+    }
+
     /**
      * Method to allow comparison (and sorting) of postal codes
      * Important: requires that you initialize an instance of PostalCodeComparator providing it the origin postal code
@@ -0,0 +1,236 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Chain of filters turning the words found by KeywordTokenizer into the keywords indexed or searched
+ * The tokenizer already lower cases words and folds accents (ex: "Crêpe" gives "crepe"), each filter then
+ * rewrites or drops the word in place, in order. Filters are stateless, so an analyzer can be shared by threads
+ */
+public class Analyzer {
+
+    /**
+     * Step of an analysis chain
+     */
+    public interface TokenFilter {
+        /**
+         * Rewrite a word in place, only shortening it
+         * @param chars buffer holding the lower case word
+         * @param length number of characters of the word, from the start of the buffer
+         * @return new length of the word, 0 to drop it
+         */
+        int filter(char[] chars, int length);
+    }
+
+    /**
+     * Step of an analysis chain which tells words written with accents from the same words written without
+     * (ex: "thé", tea, from the English stop word "the"), the tokenizer having folded the accents already
+     */
+    public interface AccentAwareFilter extends TokenFilter {
+        /**
+         * Rewrite a word in place, only shortening it
+         * @param chars buffer holding the lower case word, accents folded
+         * @param length number of characters of the word, from the start of the buffer
+         * @param accentsFolded true if the word was written with accents
+         * @return new length of the word, 0 to drop it
+         */
+        int filter(char[] chars, int length, boolean accentsFolded);
+    }
+
+    /**
+     * Languages of the meals offered: the Canadian market is English and French
+     */
+    private static final Locale[] CANADIAN_LANGUAGES = {Locale.ENGLISH, Locale.FRENCH};
+
+    /**
+     * Analysis of meal data: elisions and stop words removed, words otherwise indexed as written
+     */
+    public static final Analyzer INDEX = new Analyzer(new ElisionFilter(), new StopFilter(CANADIAN_LANGUAGES));
+
+    /**
+     * Analysis of search queries: as meal data. Plurals are kept as typed, a plural term matching the words having
+     * the same singular rather than the words it starts (see TriesSearch.getTermPostings), so "peas" finds "pea"
+     * but not "peanut"
+     */
+    public static final Analyzer QUERY = new Analyzer(new ElisionFilter(), new StopFilter(CANADIAN_LANGUAGES));
+
+    // filters, applied in order
+    private final TokenFilter[] filters;
+
+    /**
+     * Constructor to initialize an analysis chain
+     * @param filters filters applied to each word, in order
+     */
+    public Analyzer(TokenFilter... filters) {
+        this.filters = filters.clone();
+    }
+
+    /**
+     * Apply the chain to a word
+     * @param chars buffer holding the lower case word, rewritten in place
+     * @param length number of characters of the word
+     * @param accentsFolded true if the word was written with accents, folded by the tokenizer
+     * @return new length of the word, 0 if it was dropped
+     */
+    int analyze(char[] chars, int length, boolean accentsFolded) {
+        for (TokenFilter filter : this.filters) {
+            if (length == 0) {
+                break;
+            }
+            length = (filter instanceof AccentAwareFilter)
+                    ? ((AccentAwareFilter) filter).filter(chars, length, accentsFolded) : filter.filter(chars, length);
+        }
+        return length;
+    }
+
+    /**
+     * Drops stop words (ex: "the", "avec", "été")
+     * Words are compared as written: a word written with accents is only dropped if a stop word is written with
+     * accents too, so foods spelled like a stop word once their accents are folded are kept
+     * (ex: "thé" isn't "the", "maïs" isn't "mais")
+     */
+    public static class StopFilter implements AccentAwareFilter {
+
+        // stop words of every language analyzed written without accents, and those written with accents folded
+        private final KeywordFst stopWords;
+        private final KeywordFst accentedStopWords;
+
+        /**
+         * @param languages languages of the stop words to drop, see StopWords.forLanguages
+         */
+        public StopFilter(Locale... languages) {
+            this.stopWords = StopWords.forLanguages(languages);
+            this.accentedStopWords = StopWords.accentedForLanguages(languages);
+        }
+
+        @Override
+        public int filter(char[] chars, int length) {
+            return filter(chars, length, false);
+        }
+
+        @Override
+        public int filter(char[] chars, int length, boolean accentsFolded) {
+            KeywordFst stopWords = accentsFolded ? this.accentedStopWords : this.stopWords;
+            return (stopWords.getWordId(chars, length) >= 0) ? 0 : length;
+        }
+    }
+
+    /**
+     * Removes French elided articles and pronouns (ex: "l'erable" gives "erable", "d'agneau" gives "agneau")
+     */
+    public static class ElisionFilter implements TokenFilter {
+
+        // elided words, without their apostrophe
+        private static final String[] ELISIONS = {"c", "d", "j", "l", "m", "n", "qu", "s", "t"};
+
+        @Override
+        public int filter(char[] chars, int length) {
+            for (String elision : ELISIONS) {
+                int prefix = elision.length() + 1;
+                // the word must go on after the apostrophe
+                if (length > prefix && chars[prefix - 1] == '\'' && startsWith(chars, elision)) {
+                    System.arraycopy(chars, prefix, chars, 0, length - prefix);
+                    return length - prefix;
+                }
+            }
+            return length;
+        }
+
+        private static boolean startsWith(char[] chars, String prefix) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (chars[i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Light English and French plural stemmer: only removes endings, so the singular is always a prefix of the
+     * plural (ex: "peaches" gives "peach", "crepes" gives "crepe", "gateaux" gives "gateau", "chef's" gives "chef").
+     * Words ending in "ss", "us" or "is" (ex: "couscous", "hummus") and short words are left as they are
+     */
+    public static class PluralFilter implements TokenFilter {
+
+        // endings dropping "es" rather than "s"
+        private static final String[] ES_ENDINGS = {"ches", "shes", "sses", "xes", "zes"};
+
+        // endings a singular may take in the plural, all the endings removed by the filter
+        private static final String[] PLURAL_ENDINGS = {"s", "es", "x", "'s"};
+
+        /**
+         * @param word lower case word
+         * @return singular of the word, the word itself if the filter leaves it as it is
+         */
+        public static String singular(String word) {
+            char[] chars = word.toCharArray();
+            int length = singularLength(chars, chars.length);
+            return (length == chars.length) ? word : word.substring(0, length);
+        }
+
+        /**
+         * Get every word the filter reduces to a singular (ex: "pea" and "peas" for "pea", but not "peanut")
+         * @param singular lower case singular
+         * @return the words having that singular, the singular itself first if it is one of them
+         */
+        public static List<String> getForms(String singular) {
+            List<String> forms = new ArrayList<>(PLURAL_ENDINGS.length + 1);
+            if (singular(singular).equals(singular)) {
+                forms.add(singular);
+            }
+            for (String ending : PLURAL_ENDINGS) {
+                String form = singular + ending;
+                if (singular(form).equals(singular)) {
+                    forms.add(form);
+                }
+            }
+            return forms;
+        }
+
+        @Override
+        public int filter(char[] chars, int length) {
+            return singularLength(chars, length);
+        }
+
+        private static int singularLength(char[] chars, int length) {
+            if (endsWith(chars, length, "'s")) {
+                return length - 2;
+            }
+            if (length > 4 && endsWith(chars, length, "eaux")) {
+                return length - 1;
+            }
+            if (length > 5 && endsWith(chars, length, "oes")) {
+                // ex: "tomatoes", "potatoes", but not "shoes"
+                return length - 2;
+            }
+            for (String ending : ES_ENDINGS) {
+                if (length > ending.length() && endsWith(chars, length, ending)) {
+                    return length - 2;
+                }
+            }
+            if (length > 3 && chars[length - 1] == 's' && !isLetterIn(chars[length - 2], "sui")) {
+                return length - 1;
+            }
+            return length;
+        }
+
+        private static boolean endsWith(char[] chars, int length, String suffix) {
+            if (length < suffix.length()) {
+                return false;
+            }
+            for (int i = 0; i < suffix.length(); i++) {
+                if (chars[length - suffix.length() + i] != suffix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isLetterIn(char c, String letters) {
+            return letters.indexOf(c) >= 0;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facet values a row must have or must not have to be returned by a query (ex: cuisine "italian", without "peanuts")
+ * A row must have one of the required values of each facet (OR within a facet, AND across facets),
+ * none of the excluded values, and a value within each required range of a numeric attribute (ex: price under 15)
+ */
+public class FacetFilter {
+
+    // values required for each facet, normalized
+    final Map<String, Set<String>> required;
+
+    // values excluded for each facet, normalized
+    final Map<String, Set<String>> excluded;
+
+    // smallest and largest value allowed for each numeric attribute
+    final Map<String, double[]> ranges;
+
+    /**
+     * Constructor to initialize a filter allowing every row
+     */
+    public FacetFilter() {
+        this.required = new HashMap<>();
+        this.excluded = new HashMap<>();
+        this.ranges = new HashMap<>();
+    }
+
+    /**
+     * Constructor to copy a filter
+     * @param other filter to copy
+     */
+    public FacetFilter(FacetFilter other) {
+        this();
+        for (Map.Entry<String, Set<String>> facet : other.required.entrySet()) {
+            this.required.put(facet.getKey(), new HashSet<>(facet.getValue()));
+        }
+        for (Map.Entry<String, Set<String>> facet : other.excluded.entrySet()) {
+            this.excluded.put(facet.getKey(), new HashSet<>(facet.getValue()));
+        }
+        for (Map.Entry<String, double[]> range : other.ranges.entrySet()) {
+            this.ranges.put(range.getKey(), range.getValue().clone());
+        }
+    }
+
+    /**
+     * Require rows to have a value of a facet, or another required value of the same facet
+     * @param facet name of the facet
+     * @param value required value, matched ignoring case
+     * @return this filter
+     */
+    public FacetFilter require(String facet, String value) {
+        getValues(this.required, facet).add(FacetIndex.normalize(value));
+        return this;
+    }
+
+    /**
+     * Exclude the rows having a value of a facet
+     * @param facet name of the facet
+     * @param value excluded value, matched ignoring case
+     * @return this filter
+     */
+    public FacetFilter exclude(String facet, String value) {
+        getValues(this.excluded, facet).add(FacetIndex.normalize(value));
+        return this;
+    }
+
+    /**
+     * Stop requiring or excluding a value of a facet
+     * @param facet name of the facet
+     * @param value value to remove from the filter
+     * @return this filter
+     */
+    public FacetFilter remove(String facet, String value) {
+        value = FacetIndex.normalize(value);
+        removeValue(this.required, facet, value);
+        removeValue(this.excluded, facet, value);
+        return this;
+    }
+
+    /**
+     * Require rows to have a value of a numeric attribute within a range, replacing any range of the attribute
+     * @param attribute name of the attribute (ex: "price")
+     * @param min smallest value allowed, Double.NEGATIVE_INFINITY for no minimum
+     * @param max largest value allowed, Double.POSITIVE_INFINITY for no maximum
+     * @return this filter
+     */
+    public FacetFilter requireRange(String attribute, double min, double max) {
+        this.ranges.put(attribute, new double[]{min, max});
+        return this;
+    }
+
+    /**
+     * Stop requiring a range of a numeric attribute
+     * @param attribute name of the attribute
+     * @return this filter
+     */
+    public FacetFilter removeRange(String attribute) {
+        this.ranges.remove(attribute);
+        return this;
+    }
+
+    /**
+     * @return true if the filter allows every row
+     */
+    public boolean isEmpty() {
+        return this.required.isEmpty() && this.excluded.isEmpty() && this.ranges.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FacetFilter)) {
+            return false;
+        }
+        FacetFilter other = (FacetFilter) o;
+        if (!this.required.equals(other.required) || !this.excluded.equals(other.excluded)
+                || !this.ranges.keySet().equals(other.ranges.keySet())) {
+            return false;
+        }
+        // arrays don't compare their content
+        for (Map.Entry<String, double[]> range : this.ranges.entrySet()) {
+            if (!Arrays.equals(range.getValue(), other.ranges.get(range.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * this.required.hashCode() + this.excluded.hashCode();
+        for (Map.Entry<String, double[]> range : this.ranges.entrySet()) {
+            // sum, so the order of the entries doesn't matter
+            hash += range.getKey().hashCode() ^ Arrays.hashCode(range.getValue());
+        }
+        return hash;
+    }
+
+    private static Set<String> getValues(Map<String, Set<String>> values, String facet) {
+        Set<String> facetValues = values.get(facet);
+        if (facetValues == null) {
+            facetValues = new HashSet<>();
+            values.put(facet, facetValues);
+        }
+        return facetValues;
+    }
+
+    private static void removeValue(Map<String, Set<String>> values, String facet, String value) {
+        Set<String> facetValues = values.get(facet);
+        if (facetValues != null && facetValues.remove(value) && facetValues.isEmpty()) {
+            // a facet without values would otherwise require a value no row can have
+            values.remove(facet);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps of the rows having each value of each facet (ex: facet "cuisine", value "italian")
+ * A bitmap holds a bit per row ordinal, so filtering the rows matching a query is a bitwise AND (required values)
+ * or AND NOT (excluded values), and counting the rows having a value is a population count, never a scan of the rows
+ */
+public class FacetIndex {
+
+    // rows having each value, by facet then value
+    private final Map<String, Map<String, BitSet>> facets;
+
+    // bitmaps belonging to this index, the other ones are shared with the index this one was copied from
+    // and are copied before being modified, null if this index owns every bitmap
+    private final Set<BitSet> ownedRows;
+
+    /**
+     * Constructor to initialize an empty index
+     */
+    public FacetIndex() {
+        this.facets = new HashMap<>();
+        this.ownedRows = null;
+    }
+
+    /**
+     * Constructor to copy an index, sharing its bitmaps until they are modified
+     * @param other index to copy
+     */
+    private FacetIndex(FacetIndex other) {
+        this.facets = new HashMap<>();
+        for (Map.Entry<String, Map<String, BitSet>> facet : other.facets.entrySet()) {
+            this.facets.put(facet.getKey(), new HashMap<>(facet.getValue()));
+        }
+        this.ownedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Create a copy of this index which can be modified while this one is being searched
+     * This index must not be modified anymore
+     * @return a modifiable copy
+     */
+    FacetIndex copy() {
+        return new FacetIndex(this);
+    }
+
+    /**
+     * Record that a row has values of a facet
+     * @param ordinal row ordinal
+     * @param facet name of the facet
+     * @param values values of the facet for the row, matched ignoring case
+     */
+    void add(int ordinal, String facet, Collection<String> values) {
+        Map<String, BitSet> facetValues = this.facets.get(facet);
+        if (facetValues == null) {
+            facetValues = new HashMap<>();
+            this.facets.put(facet, facetValues);
+        }
+        for (String value : values) {
+            if (value == null || value.trim().isEmpty()) {
+                continue;
+            }
+            value = normalize(value);
+            BitSet rows = facetValues.get(value);
+            if (rows == null) {
+                rows = new BitSet();
+                facetValues.put(value, rows);
+                if (this.ownedRows != null) {
+                    this.ownedRows.add(rows);
+                }
+            } else if (this.ownedRows != null && !this.ownedRows.contains(rows)) {
+                // first change of a bitmap shared with the index this one was copied from
+                rows = (BitSet) rows.clone();
+                facetValues.put(value, rows);
+                this.ownedRows.add(rows);
+            }
+            rows.set(ordinal);
+        }
+    }
+
+    /**
+     * Get the rows allowed by a filter
+     * @param filter values required and excluded for each facet
+     * @param rowCount number of rows, removed or not
+     * @return rows having a required value of every facet with required values, and none of the excluded values
+     */
+    BitSet filter(FacetFilter filter, int rowCount) {
+        BitSet allowed = new BitSet(rowCount);
+        allowed.set(0, rowCount);
+        // a row must have one of the required values of each facet
+        for (Map.Entry<String, Set<String>> required : filter.required.entrySet()) {
+            BitSet facetRows = new BitSet(rowCount);
+            for (String value : required.getValue()) {
+                BitSet rows = getRows(required.getKey(), value);
+                if (rows != null) {
+                    facetRows.or(rows);
+                }
+            }
+            allowed.and(facetRows);
+        }
+        // and none of the excluded values
+        for (Map.Entry<String, Set<String>> excluded : filter.excluded.entrySet()) {
+            for (String value : excluded.getValue()) {
+                BitSet rows = getRows(excluded.getKey(), value);
+                if (rows != null) {
+                    allowed.andNot(rows);
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Count the rows having each value of a facet, among a set of rows
+     * @param facet name of the facet
+     * @param rows rows to count
+     * @return number of rows having each value, values sorted alphabetically, values no row has are left out
+     */
+    Map<String, Integer> getCounts(String facet, BitSet rows) {
+        Map<String, Integer> counts = new TreeMap<>();
+        Map<String, BitSet> facetValues = this.facets.get(facet);
+        if (facetValues == null) {
+            return counts;
+        }
+        for (Map.Entry<String, BitSet> value : facetValues.entrySet()) {
+            BitSet valueRows = (BitSet) value.getValue().clone();
+            valueRows.and(rows);
+            int count = valueRows.cardinality();
+            if (count > 0) {
+                counts.put(value.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Copy this index with renumbered row ordinals, dropping removed rows and the values no row has anymore
+     * @param newOrdinals new ordinal of each current ordinal, -1 for removed rows
+     * @return compacted copy
+     */
+    FacetIndex remap(int[] newOrdinals) {
+        FacetIndex remapped = new FacetIndex();
+        for (Map.Entry<String, Map<String, BitSet>> facet : this.facets.entrySet()) {
+            Map<String, BitSet> facetValues = new HashMap<>();
+            for (Map.Entry<String, BitSet> value : facet.getValue().entrySet()) {
+                BitSet rows = new BitSet();
+                BitSet oldRows = value.getValue();
+                for (int i = oldRows.nextSetBit(0); i >= 0 && i < newOrdinals.length; i = oldRows.nextSetBit(i + 1)) {
+                    if (newOrdinals[i] >= 0) {
+                        rows.set(newOrdinals[i]);
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    facetValues.put(value.getKey(), rows);
+                }
+            }
+            remapped.facets.put(facet.getKey(), facetValues);
+        }
+        return remapped;
+    }
+
+    /**
+     * @param facet name of the facet
+     * @param value value of the facet
+     * @return rows having the value, null if none
+     */
+    BitSet getRows(String facet, String value) {
+        Map<String, BitSet> facetValues = this.facets.get(facet);
+        return (facetValues == null) ? null : facetValues.get(normalize(value));
+    }
+
+    /**
+     * @return rows having each value, by facet then value, must not be modified
+     */
+    Map<String, Map<String, BitSet>> getFacets() {
+        return this.facets;
+    }
+
+    /**
+     * Replace the bitmap of a facet value, used when loading a snapshot into an empty index
+     * @param facet name of the facet
+     * @param value normalized value of the facet
+     * @param rows rows having the value
+     */
+    void putRows(String facet, String value, BitSet rows) {
+        Map<String, BitSet> facetValues = this.facets.get(facet);
+        if (facetValues == null) {
+            facetValues = new HashMap<>();
+            this.facets.put(facet, facetValues);
+        }
+        facetValues.put(value, rows);
+    }
+
+    /**
+     * Estimate the heap used by the index, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = 0;
+        for (Map<String, BitSet> facetValues : this.facets.values()) {
+            // each value: map entry + value string + bitmap object and words
+            for (Map.Entry<String, BitSet> value : facetValues.entrySet()) {
+                bytes += 48 + 40 + 2L * value.getKey().length() + 40 + value.getValue().size() / 8;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Normalize a facet value, so values are matched ignoring case and surrounding spaces
+     */
+    static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable dictionary of the words of an index with the rows containing each word, built by TriesSearch.freeze
+ * Words are held in a minimal automaton (see KeywordFst) mapping each word to an id, and the posting lists of
+ * all words are concatenated into flat arrays in id order: the rows of word w are at [offsets[w], offsets[w + 1]).
+ * A frozen dictionary costs a few arrays instead of a posting list object (and its slack capacity) per word.
+ * Posting lists are returned as views over the flat arrays, so looking a word up copies nothing. Prefixes shared
+ * by several words keep their merged posting list in the Trie: the rows of a word range aren't sorted as a whole
+ */
+public class FrozenDictionary {
+
+    // words, mapped to their id
+    final KeywordFst words;
+
+    // index of the first posting of each word, offsets[words.size()] is the number of postings
+    private final int[] offsets;
+
+    // row ordinals of every word, sorted within each word
+    private final int[] ordinals;
+
+    // packed per-field term frequencies, payloads[i] belongs to ordinals[i]
+    private final int[] payloads;
+
+    /**
+     * Build the dictionary of a set of words
+     * @param words distinct words, sorted in ascending order
+     * @param postings rows containing each word, postings.get(i) belongs to words.get(i)
+     */
+    FrozenDictionary(List<String> words, List<PostingList> postings) {
+        this.words = new KeywordFst(words);
+        this.offsets = new int[words.size() + 1];
+        int total = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            this.offsets[i] = total;
+            total += postings.get(i).size();
+        }
+        this.offsets[words.size()] = total;
+        this.ordinals = new int[total];
+        this.payloads = new int[total];
+        for (int i = 0; i < postings.size(); i++) {
+            PostingList wordPostings = postings.get(i);
+            System.arraycopy(wordPostings.ordinals, wordPostings.offset, this.ordinals, this.offsets[i],
+                    wordPostings.size());
+            System.arraycopy(wordPostings.payloads, wordPostings.offset, this.payloads, this.offsets[i],
+                    wordPostings.size());
+        }
+    }
+
+    /**
+     * @param word lower case word
+     * @return id of the word, -1 if the word isn't in the dictionary
+     */
+    int getWordId(CharSequence word) {
+        return this.words.getWordId(word);
+    }
+
+    /**
+     * Get the rows containing a word
+     * @param wordId id of the word
+     * @return rows containing the word, a view over the flat arrays (nothing is copied)
+     */
+    PostingList getPostings(int wordId) {
+        int from = this.offsets[wordId];
+        return new PostingList(this.ordinals, this.payloads, from, this.offsets[wordId + 1] - from);
+    }
+
+    /**
+     * Count the rows containing a word
+     * @param wordId id of the word
+     * @param deleted removed rows, which aren't counted
+     * @return number of rows containing the word
+     */
+    int getRowCount(int wordId, BitSet deleted) {
+        int count = 0;
+        for (int i = this.offsets[wordId]; i < this.offsets[wordId + 1]; i++) {
+            if (!deleted.get(this.ordinals[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return this.words.size();
+    }
+
+    /**
+     * @return number of automaton states holding the words
+     */
+    public int getStateCount() {
+        return this.words.getStateCount();
+    }
+
+    /**
+     * Estimate the heap used by the dictionary, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // the automaton, plus three arrays
+        return this.words.estimateBytes() + 3 * 16L + 4L * this.offsets.length + 4L * this.ordinals.length
+                + 4L * this.payloads.length;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+/**
+ * Characters of a row's field matching a query, to be highlighted where the field is displayed
+ * Offsets are those of the text the row's positions were indexed from (see TriesSearch.addPositions)
+ */
+public final class Highlight {
+
+    private final int field;
+    private final int start;
+    private final int end;
+
+    /**
+     * Constructor to initialize a highlight
+     * @param field field of the row, in the order of the field weights
+     * @param start offset of the first character highlighted
+     * @param end offset after the last character highlighted
+     */
+    public Highlight(int field, int start, int end) {
+        this.field = field;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return field of the row, in the order of the field weights
+     */
+    public int getField() {
+        return field;
+    }
+
+    /**
+     * @return offset in the field's text of the first character highlighted
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return offset in the field's text after the last character highlighted
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Highlight)) {
+            return false;
+        }
+        Highlight highlight = (Highlight) other;
+        return field == highlight.field && start == highlight.start && end == highlight.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return (field * 31 + start) * 31 + end;
+    }
+
+    @Override
+    public String toString() {
+        return field + ":" + start + "-" + end;
+    }
+}
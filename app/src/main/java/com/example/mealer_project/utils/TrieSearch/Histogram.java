@@ -0,0 +1,153 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values (ex: latencies in nanoseconds, result counts), recorded without locks
+ * Values are counted in log-linear buckets like an HDR histogram: values below SUB_BUCKET_COUNT have a bucket
+ * each, and every power of two above is split into SUB_BUCKET_COUNT / 2 buckets of equal width, so a percentile
+ * is reported within 1 / 64 of the recorded value whatever its magnitude, from a fixed number of counters.
+ * Recording is a few atomic increments, so any thread can record while another one reads or resets
+ */
+public class Histogram {
+
+    // number of buckets per power of two, values below it are counted exactly
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // largest value counted in its own bucket, larger values are counted in the last bucket
+    private final long highestTrackableValue;
+
+    // number of values recorded in each bucket
+    private final AtomicLongArray counts;
+
+    private final AtomicLong totalCount;
+    private final AtomicLong totalValue;
+    // largest value recorded, exact even above highestTrackableValue
+    private final AtomicLong maxValue;
+
+    /**
+     * Constructor to initialize an empty histogram
+     * @param highestTrackableValue largest value told apart from larger ones (ex: a minute in nanoseconds)
+     */
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("Invalid highest trackable value: " + highestTrackableValue);
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(getBucket(highestTrackableValue) + 1);
+        this.totalCount = new AtomicLong();
+        this.totalValue = new AtomicLong();
+        this.maxValue = new AtomicLong();
+    }
+
+    /**
+     * Record a value
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.counts.incrementAndGet(getBucket(Math.min(value, this.highestTrackableValue)));
+        this.totalCount.incrementAndGet();
+        this.totalValue.addAndGet(value);
+        // raise the maximum unless another thread raised it higher meanwhile
+        long max = this.maxValue.get();
+        while (value > max && !this.maxValue.compareAndSet(max, value)) {
+            max = this.maxValue.get();
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * @return largest value recorded, 0 if none
+     */
+    public long getMax() {
+        return this.maxValue.get();
+    }
+
+    /**
+     * @return mean of the values recorded, 0 if none
+     */
+    public double getMean() {
+        long count = this.totalCount.get();
+        return (count == 0) ? 0 : (double) this.totalValue.get() / count;
+    }
+
+    /**
+     * Get the value below which a percentage of the recorded values are
+     * @param percentile percentage of values, from 0 to 100 (ex: 99 for the p99)
+     * @return largest value of the bucket holding the percentile, never above the largest value recorded;
+     *         0 if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        long[] counts = new long[this.counts.length()];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = this.counts.get(bucket);
+            count += counts[bucket];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // rank of the value at the percentile, at least the first value
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(getHighestValue(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Copy this histogram and reset it, so the copy holds the values recorded since the last reset
+     * Values recorded while the histogram is being reset are either in the copy or in the next one
+     * @return copy of the values recorded until now
+     */
+    public Histogram copyAndReset() {
+        Histogram copy = new Histogram(this.highestTrackableValue);
+        for (int bucket = 0; bucket < this.counts.length(); bucket++) {
+            copy.counts.set(bucket, this.counts.getAndSet(bucket, 0));
+        }
+        copy.totalCount.set(this.totalCount.getAndSet(0));
+        copy.totalValue.set(this.totalValue.getAndSet(0));
+        copy.maxValue.set(this.maxValue.getAndSet(0));
+        return copy;
+    }
+
+    /**
+     * @param value value between 0 and highestTrackableValue
+     * @return bucket counting the value
+     */
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // the value's highest bit and the SUB_BUCKET_BITS - 1 bits after it select the bucket
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @param bucket bucket of the histogram
+     * @return largest value counted in the bucket
+     */
+    private static long getHighestValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = bucket - (long) shift * HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable minimal acyclic automaton (a finite state transducer) over a sorted set of words
+ * Unlike a Trie, equivalent states are merged, so common suffixes ("-ing", "-ed", "sauce") are stored once.
+ * Each word is mapped to its rank in the set (0 for the smallest word), computed from the number of words
+ * accepted below each state, so the words starting with a prefix have consecutive ranks.
+ * States and arcs are held in flat primitive arrays: the arcs of state s are at [firstArc[s], firstArc[s + 1]),
+ * sorted by label
+ */
+public class KeywordFst {
+
+    // index of the first arc of each state, firstArc[stateCount] is the number of arcs
+    private final int[] firstArc;
+
+    // label of each arc
+    private final char[] labels;
+
+    // state each arc leads to
+    private final int[] targets;
+
+    // number of words accepted from each state
+    private final int[] wordCounts;
+
+    // whether a word ends at each state
+    private final boolean[] finals;
+
+    /**
+     * State of the automaton while it is built
+     */
+    private static final class State {
+        boolean isFinal;
+        char[] labels = new char[0];
+        State[] targets = new State[0];
+        int arcCount;
+        // number of words accepted from the state, -1 until counted
+        int wordCount = -1;
+
+        void addArc(char label, State target) {
+            if (arcCount == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(2, arcCount * 2));
+                targets = Arrays.copyOf(targets, labels.length);
+            }
+            labels[arcCount] = label;
+            targets[arcCount] = target;
+            arcCount++;
+        }
+
+        State lastTarget() {
+            return (arcCount == 0) ? null : targets[arcCount - 1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            if (isFinal != other.isFinal || arcCount != other.arcCount) {
+                return false;
+            }
+            // targets are already unique, so they are compared by identity
+            for (int i = 0; i < arcCount; i++) {
+                if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = isFinal ? 1 : 0;
+            for (int i = 0; i < arcCount; i++) {
+                hash = 31 * (31 * hash + labels[i]) + System.identityHashCode(targets[i]);
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Build the automaton of a set of words
+     * Words are added in order and the states of the previous word's suffix are merged with equivalent states
+     * as soon as no later word can change them, so the automaton is minimal without building the full Trie first
+     * @param words distinct words, sorted in ascending order
+     * @throws IllegalArgumentException if the words aren't sorted or distinct
+     */
+    public KeywordFst(List<String> words) {
+        State root = new State();
+        // unique state of each equivalence class
+        Map<State, State> register = new HashMap<>();
+        String previous = null;
+        for (String word : words) {
+            if (previous != null && previous.compareTo(word) >= 0) {
+                throw new IllegalArgumentException("Words not sorted or not distinct: " + previous + ", " + word);
+            }
+            int common = 0;
+            if (previous != null) {
+                int max = Math.min(previous.length(), word.length());
+                while (common < max && previous.charAt(common) == word.charAt(common)) {
+                    common++;
+                }
+            }
+            // the previous word's states after the common prefix can't change anymore
+            State state = root;
+            for (int i = 0; i < common; i++) {
+                state = state.lastTarget();
+            }
+            if (state.arcCount > 0) {
+                replaceOrRegister(state, register);
+            }
+            // add the rest of the word
+            for (int i = common; i < word.length(); i++) {
+                State next = new State();
+                state.addArc(word.charAt(i), next);
+                state = next;
+            }
+            state.isFinal = true;
+            previous = word;
+        }
+        if (root.arcCount > 0) {
+            replaceOrRegister(root, register);
+        }
+
+        // number the states depth first, so the root is state 0
+        Map<State, Integer> numbers = new IdentityHashMap<>();
+        List<State> states = new ArrayList<>();
+        number(root, numbers, states);
+        int arcCount = 0;
+        for (State state : states) {
+            arcCount += state.arcCount;
+        }
+        this.firstArc = new int[states.size() + 1];
+        this.labels = new char[arcCount];
+        this.targets = new int[arcCount];
+        this.wordCounts = new int[states.size()];
+        this.finals = new boolean[states.size()];
+        int arc = 0;
+        for (int s = 0; s < states.size(); s++) {
+            State state = states.get(s);
+            this.firstArc[s] = arc;
+            this.finals[s] = state.isFinal;
+            this.wordCounts[s] = countWords(state);
+            for (int i = 0; i < state.arcCount; i++) {
+                this.labels[arc] = state.labels[i];
+                this.targets[arc] = numbers.get(state.targets[i]);
+                arc++;
+            }
+        }
+        this.firstArc[states.size()] = arc;
+    }
+
+    /**
+     * Merge the last child of a state, and the states below it, with equivalent registered states
+     */
+    private static void replaceOrRegister(State state, Map<State, State> register) {
+        State child = state.lastTarget();
+        if (child.arcCount > 0) {
+            replaceOrRegister(child, register);
+        }
+        State equivalent = register.get(child);
+        if (equivalent != null) {
+            state.targets[state.arcCount - 1] = equivalent;
+        } else {
+            register.put(child, child);
+        }
+    }
+
+    private static int countWords(State state) {
+        if (state.wordCount < 0) {
+            int count = state.isFinal ? 1 : 0;
+            for (int i = 0; i < state.arcCount; i++) {
+                count += countWords(state.targets[i]);
+            }
+            state.wordCount = count;
+        }
+        return state.wordCount;
+    }
+
+    private static void number(State state, Map<State, Integer> numbers, List<State> states) {
+        numbers.put(state, states.size());
+        states.add(state);
+        for (int i = 0; i < state.arcCount; i++) {
+            if (!numbers.containsKey(state.targets[i])) {
+                number(state.targets[i], numbers, states);
+            }
+        }
+    }
+
+    /**
+     * Follow the arc of a state labelled with a character
+     * @return state reached, -1 if the state has no such arc
+     */
+    private int step(int state, char c) {
+        int low = this.firstArc[state];
+        int high = this.firstArc[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.labels[middle] < c) {
+                low = middle + 1;
+            } else if (this.labels[middle] > c) {
+                high = middle - 1;
+            } else {
+                return this.targets[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of words smaller than any word going through an arc: words ending at the state,
+     * and words going through the state's arcs with a smaller label
+     */
+    private int countBefore(int state, char c) {
+        int count = this.finals[state] ? 1 : 0;
+        for (int a = this.firstArc[state]; a < this.firstArc[state + 1] && this.labels[a] < c; a++) {
+            count += this.wordCounts[this.targets[a]];
+        }
+        return count;
+    }
+
+    /**
+     * Get the id of a word
+     * @param word word to look up
+     * @return rank of the word in the set, -1 if the word isn't in the set
+     */
+    public int getWordId(CharSequence word) {
+        if (this.wordCounts.length == 0 || this.wordCounts[0] == 0) {
+            return -1;
+        }
+        int state = 0;
+        int rank = 0;
+        for (int i = 0; i < word.length(); i++) {
+            rank += countBefore(state, word.charAt(i));
+            state = step(state, word.charAt(i));
+            if (state < 0) {
+                return -1;
+            }
+        }
+        return this.finals[state] ? rank : -1;
+    }
+
+    /**
+     * Get the id of a word held in a character buffer, without creating a String
+     * @param chars buffer holding the word
+     * @param length number of characters of the word, from the start of the buffer
+     * @return rank of the word in the set, -1 if the word isn't in the set
+     */
+    public int getWordId(char[] chars, int length) {
+        if (this.wordCounts.length == 0 || this.wordCounts[0] == 0) {
+            return -1;
+        }
+        int state = 0;
+        int rank = 0;
+        for (int i = 0; i < length; i++) {
+            rank += countBefore(state, chars[i]);
+            state = step(state, chars[i]);
+            if (state < 0) {
+                return -1;
+            }
+        }
+        return this.finals[state] ? rank : -1;
+    }
+
+    /**
+     * Get the ids of the words starting with a prefix, which are consecutive
+     * @param prefix prefix of the words
+     * @return {first id, last id + 1}, an empty range if no word starts with the prefix
+     */
+    public int[] getPrefixRange(CharSequence prefix) {
+        if (this.wordCounts.length == 0) {
+            return new int[]{0, 0};
+        }
+        int state = 0;
+        int rank = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            rank += countBefore(state, prefix.charAt(i));
+            state = step(state, prefix.charAt(i));
+            if (state < 0) {
+                return new int[]{rank, rank};
+            }
+        }
+        return new int[]{rank, rank + this.wordCounts[state]};
+    }
+
+    /**
+     * Get the word having an id
+     * @param id rank of the word, between 0 and size() - 1
+     * @return the word
+     */
+    public String getWord(int id) {
+        if (id < 0 || id >= size()) {
+            throw new IndexOutOfBoundsException("Invalid word id: " + id);
+        }
+        StringBuilder word = new StringBuilder();
+        int state = 0;
+        int remaining = id;
+        while (true) {
+            if (this.finals[state]) {
+                if (remaining == 0) {
+                    return word.toString();
+                }
+                remaining--;
+            }
+            for (int a = this.firstArc[state]; a < this.firstArc[state + 1]; a++) {
+                int count = this.wordCounts[this.targets[a]];
+                if (remaining < count) {
+                    word.append(this.labels[a]);
+                    state = this.targets[a];
+                    break;
+                }
+                remaining -= count;
+            }
+        }
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return (this.wordCounts.length == 0) ? 0 : this.wordCounts[0];
+    }
+
+    /**
+     * @return number of states, after merging equivalent ones
+     */
+    public int getStateCount() {
+        return this.wordCounts.length;
+    }
+
+    /**
+     * Estimate the heap used by the automaton, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // five arrays
+        return 5 * 16L + 4L * this.firstArc.length + 2L * this.labels.length + 4L * this.targets.length
+                + 4L * this.wordCounts.length + this.finals.length;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits text into lower case keywords in a single pass over its characters
+ * Words are separated by whitespace, only letters, digits, apostrophes and hyphens are kept within a word
+ * (ex: "Garlic-Naan," gives "garlic-naan"). Characters outside of ASCII are put in Unicode compatibility decomposed
+ * form one by one, so accents are folded (ex: "Crème brûlée" gives "creme brulee") while the offsets of each word
+ * in the text are kept, then each word goes through an analysis chain (see Analyzer) which may rewrite or drop it.
+ * Each word is normalized into a buffer reused from word to word and handed to a sink, so nothing is allocated
+ * for words the sink doesn't keep, nor for plain ASCII or Latin text.
+ * A tokenizer isn't thread safe, use one per thread
+ */
+public class KeywordTokenizer {
+
+    /**
+     * Receives the keywords of a text
+     */
+    public interface TokenSink {
+        /**
+         * Receive a keyword, the buffer is reused for the next keyword
+         * @param chars buffer holding the lower case keyword
+         * @param length number of characters of the keyword, from the start of the buffer
+         * @param start offset in the text of the first character of the word the keyword was read from
+         * @param end offset in the text after the last character of the word, punctuation around it left out
+         */
+        void token(char[] chars, int length, int start, int end);
+    }
+
+    // first character whose decomposition isn't cached
+    private static final char LATIN_END = '\u0250';
+
+    // compatibility decomposition of the Latin characters outside of ASCII, the most frequent in meal data
+    private static final String[] LATIN_DECOMPOSITIONS = new String[LATIN_END - 0x80];
+
+    static {
+        for (char c = 0x80; c < LATIN_END; c++) {
+            LATIN_DECOMPOSITIONS[c - 0x80] = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKD);
+        }
+    }
+
+    // analysis chain applied to each word
+    private final Analyzer analyzer;
+
+    // characters of the word being read
+    private char[] buffer = new char[32];
+
+    // whether accents were folded out of the word being read (ex: "the" for "thé")
+    private boolean accentsFolded;
+
+    /**
+     * Constructor to initialize a tokenizer
+     * @param analyzer analysis chain applied to each word, ex: Analyzer.INDEX for meal data
+     */
+    public KeywordTokenizer(Analyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Split a text into keywords
+     * @param text text to split, may be null
+     * @param sink receives the keywords in the order they appear, duplicates included
+     */
+    public void tokenize(CharSequence text, TokenSink sink) {
+        if (text == null) {
+            return;
+        }
+        int length = 0;
+        // offsets of the word being read, from its first to its last character kept
+        int start = -1;
+        int end = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+                    || (c >= 0x80 && (Character.isWhitespace(c) || Character.isSpaceChar(c)))) {
+                // end of a word, unless it was only punctuation
+                length = (length == 0) ? 0 : this.analyzer.analyze(this.buffer, length, this.accentsFolded);
+                if (length > 0) {
+                    sink.token(this.buffer, length, start, end);
+                }
+                length = 0;
+                start = -1;
+                this.accentsFolded = false;
+                continue;
+            }
+            int previousLength = length;
+            if (c >= 'A' && c <= 'Z') {
+                length = append(length, (char) (c + ('a' - 'A')));
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '\'' || c == '-') {
+                length = append(length, c);
+            } else if (c >= 0x80) {
+                // accented letters become a letter followed by combining marks, which are left out
+                String decomposition = (c < LATIN_END) ? LATIN_DECOMPOSITIONS[c - 0x80]
+                        : Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKD);
+                for (int j = 0; j < decomposition.length(); j++) {
+                    length = appendFolded(length, decomposition.charAt(j));
+                }
+            }
+            // ex: commas and semicolons are left out
+            if (length > previousLength) {
+                start = (start < 0) ? i : start;
+                end = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Append a character outside of ASCII to the word being read, folded to ASCII when it is a Latin letter
+     * @return new length of the word
+     */
+    private int appendFolded(int length, char c) {
+        if (Character.getType(c) == Character.NON_SPACING_MARK) {
+            // accent of the previous letter
+            this.accentsFolded = true;
+            return length;
+        }
+        c = Character.toLowerCase(c);
+        switch (c) {
+            // typographic apostrophes, ex: "l’érable"
+            case '\u2018': case '\u2019': case '\u02BC': return append(length, '\'');
+            // Latin letters without a decomposition
+            case '\u00E6': return append(append(length, 'a'), 'e');
+            case '\u0153': return append(append(length, 'o'), 'e');
+            case '\u00DF': return append(append(length, 's'), 's');
+            case '\u00F8': return append(length, 'o');
+            case '\u0142': return append(length, 'l');
+            case '\u0111': case '\u00F0': return append(length, 'd');
+            default:
+                // other scripts are kept as they are, punctuation and symbols are left out
+                return Character.isLetterOrDigit(c) ? append(length, c) : length;
+        }
+    }
+
+    private int append(int length, char c) {
+        if (length == this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, length * 2);
+        }
+        this.buffer[length] = c;
+        return length + 1;
+    }
+
+    /**
+     * Sink collecting the distinct keywords of one or more texts, in the order they first appear
+     * A String is only created for the first occurrence of a keyword. Call clear to reuse the list
+     */
+    public static class KeywordList implements TokenSink {
+
+        // distinct keywords
+        private final List<String> keywords = new ArrayList<>();
+
+        // open addressing table of indexes into keywords, plus one, 0 for an empty slot
+        private int[] table = new int[16];
+
+        @Override
+        public void token(char[] chars, int length, int start, int end) {
+            add(chars, length);
+        }
+
+        /**
+         * Add a keyword unless the list already holds it
+         * @param chars buffer holding the keyword
+         * @param length number of characters of the keyword
+         * @return index of the keyword in the list
+         */
+        public int add(char[] chars, int length) {
+            // same hash as String.hashCode
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = this.table.length - 1;
+            int slot = hash & mask;
+            while (this.table[slot] != 0) {
+                if (matches(this.keywords.get(this.table[slot] - 1), chars, length)) {
+                    return this.table[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            this.keywords.add(new String(chars, 0, length));
+            this.table[slot] = this.keywords.size();
+            if (this.keywords.size() * 2 > this.table.length) {
+                rehash(this.table.length * 2);
+            }
+            return this.keywords.size() - 1;
+        }
+
+        private static boolean matches(String keyword, char[] chars, int length) {
+            if (keyword.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (keyword.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash(int capacity) {
+            this.table = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < this.keywords.size(); i++) {
+                int slot = this.keywords.get(i).hashCode() & mask;
+                while (this.table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.table[slot] = i + 1;
+            }
+        }
+
+        /**
+         * @return the distinct keywords received since the list was created or cleared, must not be modified
+         */
+        public List<String> getKeywords() {
+            return this.keywords;
+        }
+
+        /**
+         * Forget the keywords received, keeping the table for the next texts
+         */
+        public void clear() {
+            this.keywords.clear();
+            Arrays.fill(this.table, 0);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Levenshtein automaton accepting every word which starts with a prefix within a bounded
+ * edit distance (insertions, deletions, substitutions) of a query
+ * A state is one row of the edit distance table between the query and the characters consumed so far.
+ * Only the diagonal band of width 2 * maxEdits + 1 is computed, so a transition costs O(maxEdits).
+ * Walking the automaton along the Trie lets whole subtrees be skipped as soon as no state can match
+ */
+public class LevenshteinAutomaton {
+
+    // characters of the query
+    private final char[] query;
+
+    // maximum number of edits allowed
+    private final int maxEdits;
+
+    /**
+     * Create an automaton for a query
+     * @param query query to match approximately
+     * @param maxEdits maximum number of edits allowed
+     */
+    public LevenshteinAutomaton(String query, int maxEdits) {
+        this.query = query.toLowerCase(Locale.ROOT).toCharArray();
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * @return the state before any character is consumed
+     */
+    public int[] start() {
+        int[] state = new int[query.length + 1];
+        for (int i = 0; i < state.length; i++) {
+            // deleting the first i query characters, capped as anything above maxEdits is equivalent
+            state[i] = Math.min(i, maxEdits + 1);
+        }
+        return state;
+    }
+
+    /**
+     * Consume one character
+     * @param state current state
+     * @param c character consumed
+     * @param depth number of characters consumed before this one
+     * @return the next state
+     */
+    public int[] step(int[] state, char c, int depth) {
+        int[] next = new int[state.length];
+        int row = depth + 1;
+        // cells outside the band can't be within maxEdits
+        Arrays.fill(next, maxEdits + 1);
+        int from = Math.max(0, row - maxEdits);
+        int to = Math.min(query.length, row + maxEdits);
+        if (from == 0) {
+            next[0] = Math.min(row, maxEdits + 1);
+            from = 1;
+        }
+        for (int i = from; i <= to; i++) {
+            int substitution = state[i - 1] + (query[i - 1] == c ? 0 : 1);
+            int insertion = state[i] + 1;
+            int deletion = next[i - 1] + 1;
+            next[i] = Math.min(maxEdits + 1, Math.min(substitution, Math.min(insertion, deletion)));
+        }
+        return next;
+    }
+
+    /**
+     * Check if the characters consumed are within maxEdits of the whole query
+     * @param state current state
+     * @return true if matching
+     */
+    public boolean isMatch(int[] state) {
+        return state[query.length] <= maxEdits;
+    }
+
+    /**
+     * @param state current state
+     * @return edit distance between the query and the characters consumed, maxEdits + 1 if above the bound
+     */
+    public int distance(int[] state) {
+        return state[query.length];
+    }
+
+    /**
+     * Check if consuming more characters could still lead to a match
+     * @param state current state
+     * @return true if any cell is within maxEdits
+     */
+    public boolean canMatch(int[] state) {
+        for (int cell : state) {
+            if (cell <= maxEdits) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
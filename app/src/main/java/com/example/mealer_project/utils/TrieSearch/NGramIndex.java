@@ -0,0 +1,188 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the distinct words of a Trie, used to find words containing a substring
+ * Every word is split into its overlapping 3-character grams ("burger": bur, urg, rge, ger), and each gram keeps
+ * a posting list of the words containing it. A substring query intersects the lists of its own grams, which
+ * yields the candidate words; candidates are then verified, since holding every gram doesn't mean holding them
+ * next to each other. The index is over words rather than rows: the rows of a word are found in the Trie
+ */
+public class NGramIndex {
+
+    /**
+     * Number of characters in a gram, shorter substrings can't be looked up
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    // distinct words, indexed by word id
+    private final List<String> words;
+
+    // id of each word
+    private final Map<String, Integer> wordIds;
+
+    // ids of the words containing each gram, keyed by the gram's characters packed in a long
+    private final Map<Long, PostingList> grams;
+
+    // grams whose posting list belongs to this index, the other ones are shared with the index this one was
+    // copied from and are copied before being modified
+    private final Set<Long> ownedGrams;
+
+    /**
+     * Constructor to initialize an empty index
+     */
+    public NGramIndex() {
+        this.words = new ArrayList<>();
+        this.wordIds = new HashMap<>();
+        this.grams = new HashMap<>();
+        this.ownedGrams = null;
+    }
+
+    /**
+     * Constructor to copy an index, sharing its posting lists until they are modified
+     * @param other index to copy
+     */
+    private NGramIndex(NGramIndex other) {
+        this.words = new ArrayList<>(other.words);
+        this.wordIds = new HashMap<>(other.wordIds);
+        this.grams = new HashMap<>(other.grams);
+        this.ownedGrams = new HashSet<>();
+    }
+
+    /**
+     * Create a copy of this index which can be modified while this one is being searched
+     * This index must not be modified anymore
+     * @return a modifiable copy
+     */
+    NGramIndex copy() {
+        return new NGramIndex(this);
+    }
+
+    /**
+     * Build the index of every complete word of a Trie
+     * @param root root of the Trie
+     * @return a new index
+     */
+    static NGramIndex build(TrieNode root) {
+        NGramIndex index = new NGramIndex();
+        index.addWords(root, new StringBuilder());
+        return index;
+    }
+
+    private void addWords(TrieNode node, StringBuilder path) {
+        if (node.hasWord()) {
+            addWord(path.toString());
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            path.append(node.keys[i]);
+            addWords(node.childNodes[i], path);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    /**
+     * Add a word to the index, nothing happens if the word is already indexed
+     * @param word lower case word
+     */
+    void addWord(String word) {
+        if (word.length() < GRAM_LENGTH || this.wordIds.containsKey(word)) {
+            return;
+        }
+        // ids are assigned in increasing order, so they are appended to the posting lists
+        int wordId = this.words.size();
+        this.words.add(word);
+        this.wordIds.put(word, wordId);
+        for (int i = 0; i + GRAM_LENGTH <= word.length(); i++) {
+            Long gram = getGram(word, i);
+            PostingList wordList = this.grams.get(gram);
+            if (wordList == null) {
+                wordList = new PostingList();
+                this.grams.put(gram, wordList);
+                if (this.ownedGrams != null) {
+                    this.ownedGrams.add(gram);
+                }
+            } else if (this.ownedGrams != null && this.ownedGrams.add(gram)) {
+                // first change of a list shared with the index this one was copied from
+                wordList = wordList.copy();
+                this.grams.put(gram, wordList);
+            }
+            // a gram repeated in the word (ex: "ana" in "bananas") is recorded once
+            if (wordList.size() == 0 || wordList.get(wordList.size() - 1) != wordId) {
+                wordList.add(wordId);
+            }
+        }
+    }
+
+    /**
+     * Find the words containing a substring
+     * @param substring lower case substring, at least GRAM_LENGTH characters long
+     * @return the words containing the substring
+     */
+    List<String> getWordsContaining(String substring) {
+        if (substring.length() < GRAM_LENGTH) {
+            throw new IllegalArgumentException("Substring shorter than " + GRAM_LENGTH + " characters: " + substring);
+        }
+        // posting list of every gram of the substring, the substring can't match if one gram is missing
+        List<PostingList> gramLists = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= substring.length(); i++) {
+            PostingList wordList = this.grams.get(getGram(substring, i));
+            if (wordList == null) {
+                return Collections.emptyList();
+            }
+            gramLists.add(wordList);
+        }
+        // intersect starting from the rarest gram
+        Collections.sort(gramLists, (p1, p2) -> Integer.compare(p1.size(), p2.size()));
+        int[] candidates = gramLists.get(0).toArray();
+        for (int i = 1; i < gramLists.size() && candidates.length > 0; i++) {
+            candidates = PostingLists.intersect(candidates, candidates.length, gramLists.get(i));
+        }
+        // verify the candidates: the grams must also be contiguous and in order
+        List<String> matches = new ArrayList<>(candidates.length);
+        for (int wordId : candidates) {
+            String word = this.words.get(wordId);
+            if (word.contains(substring)) {
+                matches.add(word);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return number of distinct words indexed
+     */
+    public int size() {
+        return this.words.size();
+    }
+
+    /**
+     * Estimate the heap used by the index, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // each word: list slot + map entry + boxed id (the word itself is counted once)
+        long bytes = this.words.size() * (4L + 48L + 16L);
+        for (String word : this.words) {
+            bytes += 40 + 2L * word.length();
+        }
+        // each gram: map entry + boxed key + posting list
+        for (PostingList wordList : this.grams.values()) {
+            bytes += 48 + 24 + wordList.estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Pack the GRAM_LENGTH characters starting at an index into a long, avoiding a String per gram
+     */
+    private static Long getGram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
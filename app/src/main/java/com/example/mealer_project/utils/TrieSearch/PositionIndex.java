@@ -0,0 +1,323 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Words of each row in the order they appear, with their offsets in the row's texts, answering phrase queries
+ * (ex: "butter chicken" as adjacent words) and telling which characters of a row match a query
+ * A row's tokens are numbered in field order then text order, so two words are adjacent when their tokens are
+ * consecutive within the same field; the tokens matching each query term form a sorted position list, and a phrase
+ * is found by merging the position lists of its terms. Stop words aren't tokens, so "chicken with rice" matches
+ * the phrase "chicken rice"
+ */
+public class PositionIndex {
+
+    // initial capacity of the rows array
+    private static final int INITIAL_CAPACITY = 16;
+
+    // ints describing a token: field, word, start offset, end offset
+    private static final int TOKEN_SIZE = 4;
+
+    /**
+     * Tokens of a row, never modified once built
+     */
+    static final class Row {
+        // distinct words of the row
+        final String[] words;
+        // TOKEN_SIZE ints per token: field, index in words, offsets of the word in the field's text
+        final int[] tokens;
+
+        Row(String[] words, int[] tokens) {
+            this.words = words;
+            this.tokens = tokens;
+        }
+
+        int size() {
+            return tokens.length / TOKEN_SIZE;
+        }
+
+        int getField(int token) {
+            return tokens[token * TOKEN_SIZE];
+        }
+
+        int getStart(int token) {
+            return tokens[token * TOKEN_SIZE + 2];
+        }
+
+        int getEnd(int token) {
+            return tokens[token * TOKEN_SIZE + 3];
+        }
+    }
+
+    /**
+     * Sink collecting the tokens of the fields of a row
+     */
+    private static final class RowBuilder implements KeywordTokenizer.TokenSink {
+        private final KeywordTokenizer.KeywordList words = new KeywordTokenizer.KeywordList();
+        private int[] tokens = new int[16 * TOKEN_SIZE];
+        private int size;
+        // field being tokenized
+        private int field;
+
+        @Override
+        public void token(char[] chars, int length, int start, int end) {
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            tokens[size++] = field;
+            tokens[size++] = words.add(chars, length);
+            tokens[size++] = start;
+            tokens[size++] = end;
+        }
+
+        Row build() {
+            return new Row(words.getKeywords().toArray(new String[0]), Arrays.copyOf(tokens, size));
+        }
+    }
+
+    // tokens of each row by ordinal, null for rows without positions; rows are shared between copies
+    private Row[] rows;
+
+    /**
+     * Constructor to initialize an empty index
+     */
+    public PositionIndex() {
+        this(new Row[INITIAL_CAPACITY]);
+    }
+
+    private PositionIndex(Row[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Copy this index, the copy can be modified without changing this one
+     * Rows never change, so only the array referencing them is copied
+     * @return copy of the index
+     */
+    PositionIndex copy() {
+        return new PositionIndex(this.rows.clone());
+    }
+
+    /**
+     * Split the texts of a row into tokens
+     * @param fieldTexts text of each field, null for an empty field
+     * @param analyzer analysis chain the row's keywords were extracted with
+     * @return tokens of the row
+     */
+    static Row tokenize(List<String> fieldTexts, Analyzer analyzer) {
+        KeywordTokenizer tokenizer = new KeywordTokenizer(analyzer);
+        RowBuilder builder = new RowBuilder();
+        for (int field = 0; field < fieldTexts.size(); field++) {
+            builder.field = field;
+            tokenizer.tokenize(fieldTexts.get(field), builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Set the tokens of a row, replacing any previous ones
+     * @param ordinal row ordinal
+     * @param row tokens of the row
+     */
+    void set(int ordinal, Row row) {
+        if (ordinal >= this.rows.length) {
+            this.rows = Arrays.copyOf(this.rows, Math.max(ordinal + 1, this.rows.length * 2));
+        }
+        this.rows[ordinal] = row;
+    }
+
+    /**
+     * Drop the tokens of a row
+     * @param ordinal row ordinal
+     */
+    void remove(int ordinal) {
+        if (ordinal < this.rows.length) {
+            this.rows[ordinal] = null;
+        }
+    }
+
+    /**
+     * Check whether a row holds the terms of a phrase as adjacent words of a field
+     * @param ordinal row ordinal
+     * @param terms terms of the phrase in order, each matched as a prefix
+     * @param field field the phrase must be in, -1 for any field
+     * @return true if the row holds the phrase, false if it doesn't or has no positions
+     */
+    boolean matchesPhrase(int ordinal, List<String> terms, int field) {
+        Row row = get(ordinal);
+        return row != null && phraseEnds(row, terms, field).length > 0;
+    }
+
+    /**
+     * Find the characters of a row matching a query
+     * @param ordinal row ordinal
+     * @param terms query terms, each matched as a prefix
+     * @param phrase true to only highlight the terms where they appear as a phrase, each occurrence of the phrase
+     *               being a single highlight; false to highlight every word matching a term
+     * @param field field to highlight, -1 for every field
+     * @return highlights sorted by field then offset, empty if the row has no positions
+     */
+    List<Highlight> highlight(int ordinal, List<String> terms, boolean phrase, int field) {
+        List<Highlight> highlights = new ArrayList<>();
+        Row row = get(ordinal);
+        if (row == null || terms.isEmpty()) {
+            return highlights;
+        }
+        if (phrase) {
+            for (int end : phraseEnds(row, terms, field)) {
+                addHighlight(highlights, row, end - (terms.size() - 1), end);
+            }
+        } else {
+            // tokens matching any term, in order
+            boolean[] matching = new boolean[row.size()];
+            for (String term : terms) {
+                for (int token : match(row, term)) {
+                    matching[token] = field < 0 || row.getField(token) == field;
+                }
+            }
+            for (int token = 0; token < matching.length; token++) {
+                if (matching[token]) {
+                    addHighlight(highlights, row, token, token);
+                }
+            }
+        }
+        return highlights;
+    }
+
+    /**
+     * Add the highlight of consecutive tokens of a field, merged with the previous highlight when they overlap
+     */
+    private static void addHighlight(List<Highlight> highlights, Row row, int firstToken, int lastToken) {
+        int field = row.getField(firstToken);
+        int start = row.getStart(firstToken);
+        int end = row.getEnd(lastToken);
+        if (!highlights.isEmpty()) {
+            Highlight previous = highlights.get(highlights.size() - 1);
+            if (previous.getField() == field && start <= previous.getEnd()) {
+                // ex: "spicy spicy" found twice in "spicy spicy spicy"
+                highlights.set(highlights.size() - 1, new Highlight(field, previous.getStart(), end));
+                return;
+            }
+        }
+        highlights.add(new Highlight(field, start, end));
+    }
+
+    /**
+     * Merge the position lists of the terms of a phrase
+     * @param row tokens of a row
+     * @param terms terms of the phrase in order
+     * @param field field the phrase must be in, -1 for any field
+     * @return sorted tokens ending an occurrence of the phrase, empty if none
+     */
+    private static int[] phraseEnds(Row row, List<String> terms, int field) {
+        if (terms.isEmpty()) {
+            return PostingLists.EMPTY;
+        }
+        int[] ends = match(row, terms.get(0));
+        for (int i = 1; i < terms.size() && ends.length > 0; i++) {
+            int[] next = match(row, terms.get(i));
+            // keep the occurrences followed by the next term in the same field, both lists being sorted
+            int count = 0;
+            int j = 0;
+            for (int end : ends) {
+                while (j < next.length && next[j] <= end) {
+                    j++;
+                }
+                if (j == next.length) {
+                    break;
+                }
+                if (next[j] == end + 1 && row.getField(end) == row.getField(end + 1)) {
+                    ends[count++] = end + 1;
+                }
+            }
+            ends = Arrays.copyOf(ends, count);
+        }
+        if (field >= 0) {
+            int count = 0;
+            for (int end : ends) {
+                if (row.getField(end) == field) {
+                    ends[count++] = end;
+                }
+            }
+            ends = Arrays.copyOf(ends, count);
+        }
+        return ends;
+    }
+
+    /**
+     * Get the position list of a term in a row
+     * @param row tokens of a row
+     * @param term query term, matched as a prefix unless it is a plural (see TriesSearch.getTermPostings)
+     * @return sorted tokens whose word starts with the term, or has the same singular as a plural term
+     */
+    private static int[] match(Row row, String term) {
+        term = term.toLowerCase(Locale.ROOT);
+        String singular = Analyzer.PluralFilter.singular(term);
+        boolean plural = !singular.equals(term);
+        // words are compared once, not once per token
+        boolean[] matchingWords = new boolean[row.words.length];
+        boolean matches = false;
+        for (int word = 0; word < row.words.length; word++) {
+            String rowWord = row.words[word];
+            matchingWords[word] = plural
+                    ? rowWord.startsWith(singular) && Analyzer.PluralFilter.singular(rowWord).equals(singular)
+                    : rowWord.startsWith(term);
+            matches |= matchingWords[word];
+        }
+        if (!matches) {
+            return PostingLists.EMPTY;
+        }
+        int[] tokens = new int[row.size()];
+        int count = 0;
+        for (int token = 0; token < tokens.length; token++) {
+            if (matchingWords[row.tokens[token * TOKEN_SIZE + 1]]) {
+                tokens[count++] = token;
+            }
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /**
+     * @param ordinal row ordinal
+     * @return tokens of the row, null if it has no positions
+     */
+    Row get(int ordinal) {
+        return (ordinal < this.rows.length) ? this.rows[ordinal] : null;
+    }
+
+    /**
+     * Copy this index with renumbered row ordinals, dropping removed rows
+     * @param newOrdinals new ordinal of each current ordinal, -1 for removed rows
+     * @return compacted copy
+     */
+    PositionIndex remap(int[] newOrdinals) {
+        Row[] remapped = new Row[Math.max(newOrdinals.length, INITIAL_CAPACITY)];
+        for (int ordinal = 0; ordinal < Math.min(newOrdinals.length, this.rows.length); ordinal++) {
+            if (newOrdinals[ordinal] >= 0) {
+                remapped[newOrdinals[ordinal]] = this.rows[ordinal];
+            }
+        }
+        return new PositionIndex(remapped);
+    }
+
+    /**
+     * Estimate the heap used by the index, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = 16 + 16 + 4L * this.rows.length;
+        for (Row row : this.rows) {
+            if (row != null) {
+                // row object, both arrays, and each word String with its chars
+                bytes += 16 + 16 + 4L * row.tokens.length + 16 + 4L * row.words.length;
+                for (String word : row.words) {
+                    bytes += 40 + 2L * word.length();
+                }
+            }
+        }
+        return bytes;
+    }
+}
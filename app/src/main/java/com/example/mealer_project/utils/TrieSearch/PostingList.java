@@ -0,0 +1,336 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Arrays;
+
+/**
+ * A compact, sorted list of document ordinals (a "posting list")
+ * Ordinals are stored in a primitive int array to avoid boxing, kept in ascending order without duplicates.
+ * Each ordinal has an int payload packing, for up to MAX_FIELDS fields, how many of the document's words in
+ * that field lead through the node owning the list (4 bits per field, saturating at 15).
+ * A list may be a view over a range of arrays it doesn't own (see FrozenDictionary.getPostings): it is read in
+ * place, and copied to arrays of its own the first time it is modified
+ */
+public class PostingList {
+
+    /**
+     * Maximum number of fields a payload can hold term frequencies for
+     */
+    public static final int MAX_FIELDS = 8;
+
+    // bits used for the term frequency of one field
+    private static final int FIELD_BITS = 4;
+
+    // largest term frequency a field can hold
+    private static final int MAX_FREQUENCY = (1 << FIELD_BITS) - 1;
+
+    // initial capacity of a new posting list, most trie nodes are shared by only a few documents
+    private static final int INITIAL_CAPACITY = 2;
+
+    // sorted document ordinals, from index offset
+    int[] ordinals;
+
+    // packed per-field term frequencies, payloads[offset + i] belongs to ordinals[offset + i]
+    int[] payloads;
+
+    // index of the first ordinal in the arrays, 0 unless the list is a view
+    int offset;
+
+    // number of ordinals currently stored
+    int size;
+
+    // true if the arrays belong to another object, which the list must not write to
+    private boolean view;
+
+    /**
+     * Constructor to initialize an empty posting list
+     */
+    public PostingList() {
+        this.ordinals = new int[INITIAL_CAPACITY];
+        this.payloads = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Constructor to wrap arrays already holding a sorted posting list, used when loading a snapshot
+     * @param ordinals sorted document ordinals
+     * @param payloads packed per-field term frequencies, payloads[i] belongs to ordinals[i]
+     * @param size number of ordinals stored
+     */
+    PostingList(int[] ordinals, int[] payloads, int size) {
+        this.ordinals = ordinals;
+        this.payloads = payloads;
+        this.size = size;
+    }
+
+    /**
+     * Constructor to view a range of arrays holding a sorted posting list, without copying it
+     * @param ordinals sorted document ordinals, left unchanged
+     * @param payloads packed per-field term frequencies, payloads[i] belongs to ordinals[i], left unchanged
+     * @param offset index of the first ordinal of the list
+     * @param size number of ordinals of the list
+     */
+    PostingList(int[] ordinals, int[] payloads, int offset, int size) {
+        this(ordinals, payloads, size);
+        this.offset = offset;
+        this.view = true;
+    }
+
+    /**
+     * @return true if the list is read from arrays it doesn't own
+     */
+    boolean isView() {
+        return view;
+    }
+
+    /**
+     * Copy this list, the copy can be modified without changing this one
+     * A view is viewed again rather than copied, it copies itself when first modified
+     * @return copy of the list
+     */
+    PostingList copy() {
+        if (view) {
+            return new PostingList(ordinals, payloads, offset, size);
+        }
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        return new PostingList(copyRange(ordinals, capacity), copyRange(payloads, capacity), size);
+    }
+
+    /**
+     * Copy this list without spare capacity, for lists which won't grow anymore
+     * A view has no spare capacity of its own, it is viewed again rather than copied
+     * @return copy of the list, trimmed to size
+     */
+    PostingList trim() {
+        if (view) {
+            return new PostingList(ordinals, payloads, offset, size);
+        }
+        return new PostingList(copyRange(ordinals, size), copyRange(payloads, size), size);
+    }
+
+    /**
+     * Copy the ordinals or payloads of this list to a new array starting at index 0
+     */
+    private int[] copyRange(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, offset, copy, 0, size);
+        return copy;
+    }
+
+    /**
+     * Copy this list with renumbered ordinals, dropping the ones which no longer exist
+     * @param newOrdinals new ordinal of each current ordinal, -1 to drop it; must preserve the order of ordinals
+     * @return renumbered copy, null if no ordinal is left
+     */
+    PostingList remap(int[] newOrdinals) {
+        int[] newOrdinalsList = new int[size];
+        int[] newPayloads = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int newOrdinal = newOrdinals[ordinals[offset + i]];
+            if (newOrdinal >= 0) {
+                newOrdinalsList[count] = newOrdinal;
+                newPayloads[count] = payloads[offset + i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return new PostingList(Arrays.copyOf(newOrdinalsList, count), Arrays.copyOf(newPayloads, count), count);
+    }
+
+    /**
+     * Append the ordinals and payloads of another list, whose ordinals all follow the ordinals of this list
+     * Used to merge indexes built separately over consecutive ranges of documents
+     * @param other list to append, left unchanged
+     */
+    void appendAll(PostingList other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size > 0 && other.get(0) <= get(size - 1)) {
+            throw new IllegalArgumentException("Ordinal " + other.get(0) + " doesn't follow " + get(size - 1));
+        }
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.ordinals, other.offset, ordinals, size, other.size);
+        System.arraycopy(other.payloads, other.offset, payloads, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Merge this list with another one, the frequencies of documents both lists hold are added up
+     * @param other list to merge with, left unchanged
+     * @return new list holding the documents of both lists
+     */
+    PostingList union(PostingList other) {
+        int[] newOrdinals = new int[size + other.size];
+        int[] newPayloads = new int[newOrdinals.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && get(i) < other.get(j))) {
+                newOrdinals[count] = get(i);
+                newPayloads[count++] = getPayload(i++);
+            } else if (i == size || other.get(j) < get(i)) {
+                newOrdinals[count] = other.get(j);
+                newPayloads[count++] = other.getPayload(j++);
+            } else {
+                newOrdinals[count] = get(i);
+                newPayloads[count++] = addFrequencies(getPayload(i++), other.getPayload(j++));
+            }
+        }
+        return new PostingList(newOrdinals, newPayloads, count);
+    }
+
+    /**
+     * Add up the term frequencies of two payloads field by field, saturating
+     */
+    private static int addFrequencies(int payload, int otherPayload) {
+        int sum = 0;
+        for (int field = 0; field < MAX_FIELDS; field++) {
+            int shift = field * FIELD_BITS;
+            int frequency = ((payload >>> shift) & MAX_FREQUENCY) + ((otherPayload >>> shift) & MAX_FREQUENCY);
+            sum |= Math.min(frequency, MAX_FREQUENCY) << shift;
+        }
+        return sum;
+    }
+
+    /**
+     * Add a document ordinal to the list, keeping the list sorted and free of duplicates
+     * Appending an ordinal larger than the last one (the common case while indexing) is O(1)
+     * @param ordinal document ordinal
+     */
+    public void add(int ordinal) {
+        add(ordinal, 0);
+    }
+
+    /**
+     * Add one occurrence of a word in a field of a document, keeping the list sorted and free of duplicates
+     * Appending an ordinal larger than the last one, or adding to the last ordinal (the common cases while
+     * indexing) is O(1)
+     * @param ordinal document ordinal
+     * @param field field the word occurs in, between 0 and MAX_FIELDS - 1
+     */
+    public void add(int ordinal, int field) {
+        if (view) {
+            ensureCapacity(size + 1);
+        }
+        int index;
+        if (size > 0 && ordinals[size - 1] == ordinal) {
+            // another word of the document being indexed
+            index = size - 1;
+        } else if (size == 0 || ordinals[size - 1] < ordinal) {
+            // fast path: ordinals are usually added in increasing order
+            ensureCapacity(size + 1);
+            index = size++;
+            ordinals[index] = ordinal;
+            payloads[index] = 0;
+        } else {
+            // find where the ordinal belongs
+            index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (index < 0) {
+                // insert, shifting the larger ordinals right
+                index = -(index + 1);
+                ensureCapacity(size + 1);
+                System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+                System.arraycopy(payloads, index, payloads, index + 1, size - index);
+                ordinals[index] = ordinal;
+                payloads[index] = 0;
+                size++;
+            }
+        }
+        // count the occurrence, saturating
+        int shift = field * FIELD_BITS;
+        if (((payloads[index] >>> shift) & MAX_FREQUENCY) < MAX_FREQUENCY) {
+            payloads[index] += 1 << shift;
+        }
+    }
+
+    /**
+     * Find the index of a document ordinal
+     * @param ordinal document ordinal
+     * @return index in the list, negative if not present
+     */
+    public int indexOf(int ordinal) {
+        int index = Arrays.binarySearch(ordinals, offset, offset + size, ordinal);
+        return (index >= 0) ? index - offset : index + offset;
+    }
+
+    /**
+     * Check if the list contains a document ordinal
+     * @param ordinal document ordinal
+     * @return true if present, else false
+     */
+    public boolean contains(int ordinal) {
+        return indexOf(ordinal) >= 0;
+    }
+
+    /**
+     * Get the ordinal stored at an index
+     * @param index index in the list
+     * @return document ordinal
+     */
+    public int get(int index) {
+        return ordinals[offset + index];
+    }
+
+    /**
+     * Get the term frequency of a field for the ordinal stored at an index
+     * @param index index in the list
+     * @param field field number
+     * @return number of the document's words in the field leading through this node, at most 15
+     */
+    public int getFrequency(int index, int field) {
+        return (getPayload(index) >>> (field * FIELD_BITS)) & MAX_FREQUENCY;
+    }
+
+    /**
+     * Get the packed term frequencies of the ordinal stored at an index
+     * @param index index in the list
+     * @return term frequencies of every field, 4 bits per field
+     */
+    int getPayload(int index) {
+        return payloads[offset + index];
+    }
+
+    /**
+     * @return number of ordinals in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the ordinals, trimmed to size
+     */
+    public int[] toArray() {
+        return copyRange(ordinals, size);
+    }
+
+    /**
+     * Estimate the heap used by this posting list, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // object header + two array references + offset, size and view fields, then the two arrays
+        // unless they belong to another object
+        return view ? 32 : 32 + 2 * 16 + 8L * ordinals.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (view) {
+            // the first write to a view copies it, the viewed arrays are left unchanged
+            int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+            ordinals = copyRange(ordinals, newCapacity);
+            payloads = copyRange(payloads, newCapacity);
+            offset = 0;
+            view = false;
+        } else if (capacity > ordinals.length) {
+            // grow by half, compact for the many small lists while amortizing growth of large ones
+            int newCapacity = Math.max(capacity, ordinals.length + (ordinals.length >> 1) + 1);
+            ordinals = Arrays.copyOf(ordinals, newCapacity);
+            payloads = Arrays.copyOf(payloads, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted arrays of document ordinals
+ * All methods take sorted arrays (with an explicit length) or posting lists, which are used without copying,
+ * and return a new sorted array trimmed to size
+ */
+public final class PostingLists {
+
+    // an empty result
+    public static final int[] EMPTY = new int[0];
+
+    private PostingLists() {}
+
+    /**
+     * Intersect two sorted ordinal arrays
+     * Walks the smaller array and gallops (exponential then binary search) through the larger one,
+     * so the cost is O(small * log(large / small)) rather than O(small + large)
+     * @param a first sorted array
+     * @param aLength number of valid ordinals in a
+     * @param b second sorted array
+     * @param bLength number of valid ordinals in b
+     * @return sorted array of ordinals present in both
+     */
+    public static int[] intersect(int[] a, int aLength, int[] b, int bLength) {
+        return intersect(a, 0, aLength, b, 0, bLength);
+    }
+
+    /**
+     * Intersect a sorted ordinal array with a posting list, which may be a view (see PostingList)
+     * @param a first sorted array
+     * @param aLength number of valid ordinals in a
+     * @param b posting list
+     * @return sorted array of ordinals present in both
+     */
+    public static int[] intersect(int[] a, int aLength, PostingList b) {
+        return intersect(a, 0, aLength, b.ordinals, b.offset, b.offset + b.size());
+    }
+
+    /**
+     * Intersect the ordinals of two sorted array ranges, from index (inclusive) to index (exclusive)
+     */
+    private static int[] intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        // always walk the smaller range
+        if (aTo - aFrom > bTo - bFrom) {
+            return intersect(b, bFrom, bTo, a, aFrom, aTo);
+        }
+        int[] result = new int[aTo - aFrom];
+        int count = 0;
+        // position in the larger range, never moves backwards
+        int low = bFrom;
+        for (int i = aFrom; i < aTo && low < bTo; i++) {
+            int target = a[i];
+            // gallop: double the step until we pass the target
+            int step = 1;
+            int high = low;
+            while (high < bTo && b[high] < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            // binary search the bracketed range
+            int index = Arrays.binarySearch(b, low, Math.min(high + 1, bTo), target);
+            if (index >= 0) {
+                result[count++] = target;
+                low = index + 1;
+            } else {
+                low = -(index + 1);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Merge two sorted ordinal arrays
+     * @param a first sorted array
+     * @param aLength number of valid ordinals in a
+     * @param b second sorted array
+     * @param bLength number of valid ordinals in b
+     * @return sorted array of ordinals present in either, without duplicates
+     */
+    public static int[] union(int[] a, int aLength, int[] b, int bLength) {
+        return union(a, 0, aLength, b, 0, bLength);
+    }
+
+    /**
+     * Merge a sorted ordinal array with a posting list, which may be a view (see PostingList)
+     * @param a first sorted array
+     * @param aLength number of valid ordinals in a
+     * @param b posting list
+     * @return sorted array of ordinals present in either, without duplicates
+     */
+    public static int[] union(int[] a, int aLength, PostingList b) {
+        return union(a, 0, aLength, b.ordinals, b.offset, b.offset + b.size());
+    }
+
+    /**
+     * Merge the ordinals of two sorted array ranges, from index (inclusive) to index (exclusive)
+     */
+    private static int[] union(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int[] result = new int[(aTo - aFrom) + (bTo - bFrom)];
+        int count = 0;
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            if (a[i] < b[j]) {
+                result[count++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i++];
+                j++;
+            }
+        }
+        while (i < aTo) {
+            result[count++] = a[i++];
+        }
+        while (j < bTo) {
+            result[count++] = b[j++];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Remove from a sorted ordinal array the ordinals present in another one
+     * @param a sorted array to remove from
+     * @param aLength number of valid ordinals in a
+     * @param b sorted array of ordinals to remove
+     * @param bLength number of valid ordinals in b
+     * @return sorted array of ordinals present in a but not in b
+     */
+    public static int[] difference(int[] a, int aLength, int[] b, int bLength) {
+        int[] result = new int[aLength];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < aLength; i++) {
+            while (j < bLength && b[j] < a[i]) {
+                j++;
+            }
+            if (j >= bLength || b[j] != a[i]) {
+                result[count++] = a[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+/**
+ * How the terms of a multi-term query are combined
+ */
+public enum QueryMode {
+    // a row matches only if it matches every term
+    AND,
+    // a row matches if it matches any term
+    OR
+}
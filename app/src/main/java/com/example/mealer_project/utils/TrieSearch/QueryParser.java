@@ -0,0 +1,179 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the query language of power users into a SearchQuery, ex: cuisine:thai chef:smith -peanut "green curry" price<20
+ * <ul>
+ *     <li>word: rows having a word starting with it, in any field</li>
+ *     <li>field:word or field:"words": the word or phrase must be in that field</li>
+ *     <li>"words": rows having the words next to each other, in that order</li>
+ *     <li>-clause: rows must not satisfy the clause</li>
+ *     <li>attribute&lt;n, &lt;=, &gt;, &gt;= or =: rows whose value of a numeric attribute is within the range</li>
+ * </ul>
+ * Words are analyzed like any query (see Analyzer.QUERY). Parsing never fails: unknown field names, values which
+ * aren't numbers and unclosed quotes are read as plain words or as a phrase running to the end of the query.
+ * A parser can be shared by threads
+ */
+public class QueryParser {
+
+    // field of each field name, lower case
+    private final Map<String, Integer> fields;
+
+    // names of the numeric attributes, lower case
+    private final Set<String> attributes;
+
+    /**
+     * Sink collecting every term of a text, duplicates included, in order
+     */
+    private static final class TermList implements KeywordTokenizer.TokenSink {
+        final List<String> terms = new ArrayList<>();
+
+        @Override
+        public void token(char[] chars, int length, int start, int end) {
+            terms.add(new String(chars, 0, length));
+        }
+    }
+
+    /**
+     * Constructor to initialize a parser
+     * @param fields field of each field name queries may scope words to (ex: "cuisine"), in the order of the
+     *               field weights of the index searched
+     * @param attributes names of the numeric attributes queries may compare (ex: "price")
+     */
+    public QueryParser(Map<String, Integer> fields, Collection<String> attributes) {
+        this.fields = new HashMap<>();
+        for (Map.Entry<String, Integer> field : fields.entrySet()) {
+            this.fields.put(field.getKey().toLowerCase(Locale.ROOT), field.getValue());
+        }
+        this.attributes = new HashSet<>();
+        for (String attribute : attributes) {
+            this.attributes.add(attribute.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Parse a query
+     * @param text query entered by the client, may be null
+     * @return parsed query, without clauses if the text has no words
+     */
+    public SearchQuery parse(String text) {
+        List<SearchQuery.Clause> clauses = new ArrayList<>();
+        if (text == null) {
+            return new SearchQuery(clauses);
+        }
+        KeywordTokenizer tokenizer = new KeywordTokenizer(Analyzer.QUERY);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            boolean negated = false;
+            if (text.charAt(i) == '-' && i + 1 < length && !Character.isWhitespace(text.charAt(i + 1))) {
+                negated = true;
+                i++;
+            }
+            // a field or attribute name is made of letters, followed by a colon or a comparison
+            int nameEnd = i;
+            while (nameEnd < length && Character.isLetter(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            String name = text.substring(i, nameEnd).toLowerCase(Locale.ROOT);
+            int field = -1;
+            String fieldName = null;
+            if (nameEnd < length && text.charAt(nameEnd) == ':' && this.fields.containsKey(name)) {
+                field = this.fields.get(name);
+                fieldName = name;
+                i = nameEnd + 1;
+            } else if (nameEnd < length && isComparison(text.charAt(nameEnd)) && this.attributes.contains(name)) {
+                int end = wordEnd(text, nameEnd);
+                SearchQuery.RangeClause range = parseRange(name, text.substring(nameEnd, end), negated);
+                if (range != null) {
+                    clauses.add(range);
+                    i = end;
+                    continue;
+                }
+                // not a number, read as words
+            }
+            String value;
+            boolean phrase = i < length && text.charAt(i) == '"';
+            if (phrase) {
+                int close = text.indexOf('"', i + 1);
+                value = text.substring(i + 1, (close < 0) ? length : close);
+                i = (close < 0) ? length : close + 1;
+            } else {
+                int end = wordEnd(text, i);
+                // ex: "unknown:word" is read as two words
+                value = text.substring(i, end).replace(':', ' ');
+                i = end;
+            }
+            TermList terms = new TermList();
+            tokenizer.tokenize(value, terms);
+            if (phrase && terms.terms.size() > 1) {
+                clauses.add(new SearchQuery.PhraseClause(terms.terms, field, fieldName, negated));
+            } else {
+                for (String term : terms.terms) {
+                    clauses.add(new SearchQuery.TermClause(term, field, fieldName, negated));
+                }
+            }
+        }
+        return new SearchQuery(clauses);
+    }
+
+    /**
+     * Parse a comparison of an attribute with a number
+     * @param attribute lower case name of the attribute
+     * @param comparison operator followed by a number, ex: "<=20"
+     * @param negated whether the clause is negated
+     * @return range clause, null if the comparison isn't followed by a number
+     */
+    private static SearchQuery.RangeClause parseRange(String attribute, String comparison, boolean negated) {
+        String operator = (comparison.length() > 1 && comparison.charAt(1) == '=') ? comparison.substring(0, 2)
+                : comparison.substring(0, 1);
+        double value;
+        try {
+            value = Double.parseDouble(comparison.substring(operator.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        switch (operator) {
+            case "<": max = Math.nextAfter(value, Double.NEGATIVE_INFINITY); break;
+            case "<=": max = value; break;
+            case ">": min = Math.nextAfter(value, Double.POSITIVE_INFINITY); break;
+            case ">=": min = value; break;
+            case "=": min = value; max = value; break;
+            // ex: "=="
+            default: return null;
+        }
+        return new SearchQuery.RangeClause(attribute, min, max, attribute + comparison, negated);
+    }
+
+    private static boolean isComparison(char c) {
+        return c == '<' || c == '>' || c == '=';
+    }
+
+    /**
+     * @return index of the whitespace or quote ending the word starting at an index, the length of the text if none
+     */
+    private static int wordEnd(String text, int start) {
+        int end = start;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') {
+            end++;
+        }
+        return end;
+    }
+}
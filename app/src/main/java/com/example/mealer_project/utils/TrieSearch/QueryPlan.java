@@ -0,0 +1,193 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Order in which the clauses of a parsed query are evaluated on an index, and the statistics of the last execution
+ * Every clause estimates how many rows satisfy it from the index (the size of a posting list, or a binary search
+ * in sorted values) before anything is evaluated. The most selective clause produces the first candidates from
+ * its own posting list; each following clause, in increasing order of estimate, only probes the remaining
+ * candidates, and negated clauses come last since they can only remove candidates. The remaining candidates are
+ * ranked like any other query. A plan isn't thread safe, and its index must not be modified while it is executed
+ */
+public class QueryPlan {
+
+    /**
+     * A clause prepared for evaluation on an index
+     */
+    abstract static class Step {
+        // clause evaluated
+        final SearchQuery.Clause clause;
+        // estimated number of rows satisfying the clause, removed rows included
+        final int estimate;
+        // number of candidates left after this step, -1 if it wasn't evaluated
+        int candidates = -1;
+        // time spent evaluating this step
+        long nanos;
+
+        Step(SearchQuery.Clause clause, int estimate) {
+            this.clause = clause;
+            this.estimate = estimate;
+        }
+
+        /**
+         * @return sorted ordinals of the rows satisfying the clause, removed rows included; a new array
+         */
+        abstract int[] match();
+
+        /**
+         * @param ordinal row ordinal
+         * @return true if the row satisfies the clause
+         */
+        abstract boolean matches(int ordinal);
+    }
+
+    // clauses which aren't negated first, most selective first
+    private static final Comparator<Step> EVALUATION_ORDER = (s1, s2) -> (s1.clause.isNegated() != s2.clause.isNegated())
+            ? (s1.clause.isNegated() ? 1 : -1) : Integer.compare(s1.estimate, s2.estimate);
+
+    // index the query is evaluated on
+    private final TriesSearch index;
+
+    // query planned
+    private final SearchQuery query;
+
+    // steps in evaluation order
+    private final List<Step> steps;
+
+    // number of candidates ranked by the last execution, -1 if never executed
+    private int rankedCount = -1;
+
+    // number of rows returned by the last execution
+    private int resultCount;
+
+    // time spent ranking the candidates
+    private long rankNanos;
+
+    /**
+     * Constructor to plan a query, see TriesSearch.plan
+     * @param index index the query is evaluated on
+     * @param query parsed query
+     */
+    QueryPlan(TriesSearch index, SearchQuery query) {
+        this.index = index;
+        this.query = query;
+        this.steps = new ArrayList<>(query.getClauses().size());
+        for (SearchQuery.Clause clause : query.getClauses()) {
+            this.steps.add(clause.prepare(index));
+        }
+        // stable sort: clauses with equal estimates keep the order they were written in
+        Collections.sort(this.steps, EVALUATION_ORDER);
+    }
+
+    /**
+     * @return clauses of the query in the order they are evaluated
+     */
+    public List<SearchQuery.Clause> getEvaluationOrder() {
+        List<SearchQuery.Clause> clauses = new ArrayList<>(this.steps.size());
+        for (Step step : this.steps) {
+            clauses.add(step.clause);
+        }
+        return clauses;
+    }
+
+    /**
+     * Find the best rows allowed by a filter satisfying every clause, ranked by relevance to the query's terms
+     * Evaluation stops as soon as no candidate is left
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first
+     */
+    public List<String> execute(int k, Comparator<String> tieBreaker, FacetFilter filter) {
+        int[] candidates = null;
+        for (Step step : this.steps) {
+            step.candidates = -1;
+            step.nanos = 0;
+        }
+        for (Step step : this.steps) {
+            long start = System.nanoTime();
+            if (candidates == null && !step.clause.isNegated()) {
+                // the most selective clause produces the candidates
+                int[] matches = step.match();
+                candidates = this.index.withoutDeleted(matches, matches.length);
+            } else {
+                // a query made only of negations starts from every row
+                if (candidates == null) {
+                    candidates = getLiveRows();
+                }
+                int[] kept = new int[candidates.length];
+                int count = 0;
+                for (int ordinal : candidates) {
+                    if (step.matches(ordinal) != step.clause.isNegated()) {
+                        kept[count++] = ordinal;
+                    }
+                }
+                candidates = Arrays.copyOf(kept, count);
+            }
+            step.candidates = candidates.length;
+            step.nanos = System.nanoTime() - start;
+            if (candidates.length == 0) {
+                break;
+            }
+        }
+        if (candidates == null) {
+            // an empty query
+            candidates = getLiveRows();
+        }
+        long start = System.nanoTime();
+        List<String> result = this.index.rank(candidates, this.query.getTerms(), k, tieBreaker,
+                this.index.getAllowedRows(filter));
+        this.rankNanos = System.nanoTime() - start;
+        this.rankedCount = candidates.length;
+        this.resultCount = result.size();
+        return result;
+    }
+
+    /**
+     * Describe the plan: the clauses in evaluation order with their estimates, and once executed, the number of
+     * candidates left after each clause and the time it took
+     * @return one line per clause, then a line for the ranking
+     */
+    public String explain() {
+        StringBuilder explanation = new StringBuilder("query: ").append(this.query).append('\n');
+        for (int i = 0; i < this.steps.size(); i++) {
+            Step step = this.steps.get(i);
+            explanation.append(i + 1).append(". ").append(step.clause).append(": estimated ")
+                    .append(step.estimate).append(" rows, ");
+            if (step.candidates < 0) {
+                explanation.append("not evaluated\n");
+            } else {
+                explanation.append(step.candidates).append(" candidates left, ")
+                        .append(formatMillis(step.nanos)).append('\n');
+            }
+        }
+        if (this.rankedCount < 0) {
+            explanation.append("not executed");
+        } else {
+            explanation.append("ranked ").append(this.rankedCount).append(" candidates, returned ")
+                    .append(this.resultCount).append(", ").append(formatMillis(this.rankNanos));
+        }
+        return explanation.toString();
+    }
+
+    /**
+     * @return ordinals of every row which wasn't removed
+     */
+    private int[] getLiveRows() {
+        int[] rows = new int[this.index.ids.size()];
+        for (int ordinal = 0; ordinal < rows.length; ordinal++) {
+            rows[ordinal] = ordinal;
+        }
+        return this.index.withoutDeleted(rows, rows.length);
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numeric values of the rows (ex: prices), sorted so the rows within a range are found by binary search
+ * Values and row ordinals are held in two parallel primitive arrays sorted by value, so neither a range query
+ * nor a walk in value order boxes anything. Values added out of order are appended after the sorted ones and
+ * sorted all at once (see sort), so loading many rows costs a sort rather than a shift of the arrays per row
+ */
+public class RangeIndex {
+
+    // initial capacity of the arrays
+    private static final int INITIAL_CAPACITY = 16;
+
+    // values in ascending order, rows with equal values in the order they were added
+    double[] values;
+
+    // ordinals[i] is the row having values[i]
+    int[] ordinals;
+
+    // number of values
+    int size;
+
+    // number of values at the start of the arrays which are sorted, the values after them were just added
+    private int sortedSize;
+
+    /**
+     * Constructor to initialize an empty index
+     */
+    public RangeIndex() {
+        this(new double[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+    }
+
+    /**
+     * Constructor to wrap arrays already sorted by value, used when loading a snapshot
+     * @param values values in ascending order
+     * @param ordinals row of each value
+     * @param size number of values
+     */
+    RangeIndex(double[] values, int[] ordinals, int size) {
+        this.values = values;
+        this.ordinals = ordinals;
+        this.size = size;
+        this.sortedSize = size;
+    }
+
+    /**
+     * Copy this index, the copy can be modified without changing this one
+     * @return copy of the index
+     */
+    RangeIndex copy() {
+        RangeIndex copy = new RangeIndex(Arrays.copyOf(values, Math.max(size, INITIAL_CAPACITY)),
+                Arrays.copyOf(ordinals, Math.max(size, INITIAL_CAPACITY)), size);
+        copy.sortedSize = sortedSize;
+        return copy;
+    }
+
+    /**
+     * Add the value of a row, in O(1)
+     * A value smaller than the largest one leaves the index unsorted until sort is called
+     * @param ordinal row ordinal
+     * @param value value of the row, not NaN
+     */
+    void add(int ordinal, double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Invalid value for row " + ordinal + ": " + value);
+        }
+        if (size == values.length) {
+            int capacity = Math.max(size * 2, INITIAL_CAPACITY);
+            values = Arrays.copyOf(values, capacity);
+            ordinals = Arrays.copyOf(ordinals, capacity);
+        }
+        values[size] = value;
+        ordinals[size] = ordinal;
+        // values added in ascending order (ex: loading a snapshot) keep the index sorted
+        if (sortedSize == size && (size == 0 || values[size - 1] <= value)) {
+            sortedSize++;
+        }
+        size++;
+    }
+
+    /**
+     * Sort the values added since the last sort, then merge them with the sorted values in a single pass
+     * Rows with equal values stay in the order they were added. Must be called before the index is searched,
+     * and before it is shared with other threads
+     */
+    void sort() {
+        if (sortedSize == size) {
+            return;
+        }
+        // sort the new values, stable so rows with equal values keep their order
+        int added = size - sortedSize;
+        double[] addedValues = Arrays.copyOfRange(values, sortedSize, size);
+        int[] addedOrdinals = Arrays.copyOfRange(ordinals, sortedSize, size);
+        mergeSort(addedValues, addedOrdinals, new double[added], new int[added], 0, added);
+        // merge them after the sorted values with equal values
+        double[] newValues = new double[values.length];
+        int[] newOrdinals = new int[ordinals.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j == added || (i < sortedSize && values[i] <= addedValues[j])) {
+                newValues[k] = values[i];
+                newOrdinals[k] = ordinals[i++];
+            } else {
+                newValues[k] = addedValues[j];
+                newOrdinals[k] = addedOrdinals[j++];
+            }
+        }
+        values = newValues;
+        ordinals = newOrdinals;
+        sortedSize = size;
+    }
+
+    /**
+     * Stable sort of parallel arrays by value, between from (inclusive) and to (exclusive)
+     * @param bufferValues buffer as long as values
+     * @param bufferOrdinals buffer as long as ordinals
+     */
+    private static void mergeSort(double[] values, int[] ordinals, double[] bufferValues, int[] bufferOrdinals,
+                                  int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(values, ordinals, bufferValues, bufferOrdinals, from, middle);
+        mergeSort(values, ordinals, bufferValues, bufferOrdinals, middle, to);
+        // halves already in order
+        if (values[middle - 1] <= values[middle]) {
+            return;
+        }
+        System.arraycopy(values, from, bufferValues, from, to - from);
+        System.arraycopy(ordinals, from, bufferOrdinals, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j == to || (i < middle && bufferValues[i] <= bufferValues[j])) {
+                values[k] = bufferValues[i];
+                ordinals[k] = bufferOrdinals[i++];
+            } else {
+                values[k] = bufferValues[j];
+                ordinals[k] = bufferOrdinals[j++];
+            }
+        }
+    }
+
+    /**
+     * Find the rows whose value is within a range
+     * @param min smallest value allowed
+     * @param max largest value allowed
+     * @param rows set receiving the ordinals of the rows within the range
+     */
+    void range(double min, double max, BitSet rows) {
+        for (int i = lowerBound(min), end = upperBound(max); i < end; i++) {
+            rows.set(ordinals[i]);
+        }
+    }
+
+    /**
+     * @param value value searched
+     * @return index of the first value not smaller than the value searched, size if none
+     */
+    int lowerBound(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param value value searched
+     * @return index of the first value larger than the value searched, size if none
+     */
+    int upperBound(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copy this index with renumbered row ordinals, dropping removed rows
+     * @param newOrdinals new ordinal of each current ordinal, -1 for removed rows
+     * @return compacted copy
+     */
+    RangeIndex remap(int[] newOrdinals) {
+        sort();
+        double[] newValues = new double[Math.max(size, INITIAL_CAPACITY)];
+        int[] remapped = new int[newValues.length];
+        int count = 0;
+        // the order of the values is unchanged
+        for (int i = 0; i < size; i++) {
+            if (ordinals[i] < newOrdinals.length && newOrdinals[ordinals[i]] >= 0) {
+                newValues[count] = values[i];
+                remapped[count] = newOrdinals[ordinals[i]];
+                count++;
+            }
+        }
+        return new RangeIndex(newValues, remapped, count);
+    }
+
+    /**
+     * @return number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimate the heap used by the index, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // object header and fields, plus both arrays
+        return 24 + 16 + 8L * values.length + 16 + 4L * ordinals.length;
+    }
+}
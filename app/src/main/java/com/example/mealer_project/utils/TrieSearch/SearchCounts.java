@@ -0,0 +1,81 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Number of times clients searched words, held apart from the index until they are folded into it
+ * (see TriesSearch.recordSearches). Recording a search is a map update rather than a new version of the index,
+ * so searches don't copy the index nor invalidate the results cached for its current version.
+ * Suggestions add these counts to the ones of the index (see TriesSearch.suggest)
+ * Words are recorded one at a time, and may be read by any thread meanwhile
+ */
+public class SearchCounts {
+
+    // searches of each word since the counts were last folded into the index
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Record that clients searched a word once more
+     * @param word lower case word
+     */
+    public synchronized void record(String word) {
+        Integer count = this.counts.get(word);
+        this.counts.put(word, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * @param word lower case word
+     * @return number of searches of the word not folded into the index yet
+     */
+    public int get(String word) {
+        Integer count = this.counts.get(word);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * @return number of distinct words searched since the counts were last folded into the index
+     */
+    public int size() {
+        return this.counts.size();
+    }
+
+    /**
+     * @param prefix lower case prefix
+     * @return the words searched starting with the prefix
+     */
+    List<String> getWords(String prefix) {
+        List<String> words = new ArrayList<>();
+        for (String word : this.counts.keySet()) {
+            if (word.startsWith(prefix)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return a copy of the counts, to fold into the index
+     */
+    public synchronized Map<String, Integer> getCounts() {
+        return new HashMap<>(this.counts);
+    }
+
+    /**
+     * Forget the counts folded into the index, searches recorded since they were read are kept
+     * @param folded counts folded, as returned by getCounts
+     */
+    public synchronized void remove(Map<String, Integer> folded) {
+        for (Map.Entry<String, Integer> entry : folded.entrySet()) {
+            int count = get(entry.getKey()) - entry.getValue();
+            if (count > 0) {
+                this.counts.put(entry.getKey(), count);
+            } else {
+                this.counts.remove(entry.getKey());
+            }
+        }
+    }
+}
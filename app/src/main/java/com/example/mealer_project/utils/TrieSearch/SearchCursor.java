@@ -0,0 +1,268 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A stateful search-as-you-type session over a TriesSearch
+ * The cursor remembers the Trie node reached by the last term and the rows matched by the previous query.
+ * When the next query only appends characters to the last term, or appends a new term, the previous
+ * matches are narrowed instead of running the query from scratch.
+ * Any other edit (deletion, edit in the middle of the query) falls back to a full query.
+ * A cursor can follow an index replaced by newer versions (see TriesSearch.copy): the previous result is only
+ * narrowed when the query runs on the same version as the previous one
+ */
+public class SearchCursor {
+
+    // index searched by the previous query, or the index the cursor was created for
+    private TriesSearch triesSearch;
+
+    // how terms are combined, only AND queries can be narrowed incrementally
+    private final QueryMode mode;
+
+    // terms of the previous query, null if there was none
+    private List<String> terms;
+
+    // node reached by the last term of the previous query, null if the term had no match or is a plural
+    private TrieNode lastTermNode;
+
+    // sorted ordinals of the rows matched by the previous query
+    private int[] matches;
+
+    // generation of the index when the previous query was run
+    private long generation;
+
+    // whether the previous query was answered by narrowing the result of the one before
+    private boolean narrowed;
+
+    /**
+     * Create a cursor over an index
+     * @param triesSearch index to search
+     * @param mode how the terms of a query are combined
+     */
+    SearchCursor(TriesSearch triesSearch, QueryMode mode) {
+        this.triesSearch = triesSearch;
+        this.mode = mode;
+        this.reset();
+    }
+
+    /**
+     * Forget the previous query, the next query will be run from scratch
+     */
+    public void reset() {
+        this.terms = null;
+        this.lastTermNode = null;
+        this.matches = null;
+        this.generation = -1;
+        this.narrowed = false;
+    }
+
+    /**
+     * pMatch - Pattern Match, narrowing the previous result when possible
+     * @param terms list of query terms, each matched as a prefix
+     * @return list of string values identifying the rows in which matches were found, null if no terms or no data
+     */
+    public List<String> pMatch(List<String> terms) {
+        return pMatch(this.triesSearch, terms);
+    }
+
+    /**
+     * pMatch - Pattern Match on a version of the index, narrowing the previous result when possible
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms, each matched as a prefix
+     * @return list of string values identifying the rows in which matches were found, null if no terms or no data
+     */
+    public List<String> pMatch(TriesSearch triesSearch, List<String> terms) {
+        // ensure we have valid data & query
+        if (triesSearch.size() == 0 || terms == null || terms.isEmpty()) {
+            reset();
+            return null;
+        }
+        int[] result = matchOrdinals(triesSearch, terms);
+        return triesSearch.toIds(result, result.length);
+    }
+
+    /**
+     * Find the best rows matching the query, ranked by relevance, narrowing the previous result when possible
+     * @param terms list of query terms, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first, null if no terms or no data
+     */
+    public List<String> topMatches(List<String> terms, int k, Comparator<String> tieBreaker) {
+        return topMatches(this.triesSearch, terms, k, tieBreaker);
+    }
+
+    /**
+     * Find the best rows of a version of the index matching the query, narrowing the previous result when possible
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first, null if no terms or no data
+     */
+    public List<String> topMatches(TriesSearch triesSearch, List<String> terms, int k, Comparator<String> tieBreaker) {
+        return topMatches(triesSearch, terms, k, tieBreaker, null);
+    }
+
+    /**
+     * Find the best rows of a version of the index allowed by a filter and matching the query
+     * Only the text matches are narrowed from the previous result, so the filter may change between queries
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first, null if no terms or no data
+     */
+    public List<String> topMatches(TriesSearch triesSearch, List<String> terms, int k, Comparator<String> tieBreaker,
+                                   FacetFilter filter) {
+        // ensure we have valid data & query
+        if (triesSearch.size() == 0 || terms == null || terms.isEmpty()) {
+            reset();
+            return null;
+        }
+        return triesSearch.rank(matchOrdinals(triesSearch, terms), terms, k, tieBreaker, triesSearch.getAllowedRows(filter));
+    }
+
+    /**
+     * Find the best rows of a version of the index allowed by a filter and matching the query, visiting the shards
+     * closest to the client first (see TriesSearch.topMatchesNearestFirst); the text matches are narrowed from the
+     * previous result, then split by shard
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param distance distance from the client to each shard
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, nearest first then best first, null if no terms or no data
+     */
+    public List<String> topMatchesNearestFirst(TriesSearch triesSearch, List<String> terms, int k,
+                                               ShardIndex.Distance distance, Comparator<String> tieBreaker,
+                                               FacetFilter filter) {
+        // ensure we have valid data & query
+        if (triesSearch.size() == 0 || terms == null || terms.isEmpty()) {
+            reset();
+            return null;
+        }
+        return triesSearch.topMatchesNearestFirst(matchOrdinals(triesSearch, terms), terms, k, distance, tieBreaker,
+                triesSearch.getAllowedRows(filter));
+    }
+
+    /**
+     * @return true if the previous query was answered by narrowing the result of the one before
+     */
+    boolean isNarrowed() {
+        return this.narrowed;
+    }
+
+    /**
+     * Find the ordinals of rows matching the query, narrowing the previous result when possible
+     * @param terms list of query terms
+     * @return sorted array of matching row ordinals
+     */
+    int[] matchOrdinals(List<String> terms) {
+        return matchOrdinals(this.triesSearch, terms);
+    }
+
+    /**
+     * Find the ordinals of rows of a version of the index matching the query, narrowing the previous result when possible
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms
+     * @return sorted array of matching row ordinals
+     */
+    int[] matchOrdinals(TriesSearch triesSearch, List<String> terms) {
+        int[] result;
+        this.narrowed = canNarrow(triesSearch, terms);
+        if (this.narrowed) {
+            String lastTerm = lowerCase(terms.get(terms.size() - 1));
+            int previousCount = this.terms.size();
+            PostingList postings;
+            if (isPlural(lastTerm)) {
+                // plurals match the words having their singular, not the words they start
+                this.lastTermNode = null;
+                postings = triesSearch.getTermPostings(lastTerm);
+            } else {
+                if (terms.size() == previousCount) {
+                    // the last term was extended: step down from the node we stopped at last time
+                    String previousLastTerm = lowerCase(this.terms.get(previousCount - 1));
+                    this.lastTermNode = (this.lastTermNode == null) ? null :
+                            this.lastTermNode.find(lastTerm.substring(previousLastTerm.length()));
+                } else {
+                    // a new term was started: look it up from the root
+                    this.lastTermNode = triesSearch.root.find(lastTerm);
+                }
+                postings = (this.lastTermNode == null) ? null : this.lastTermNode.postings;
+            }
+            // keep only the previous matches which also match the new last term
+            result = (postings == null) ? PostingLists.EMPTY :
+                    PostingLists.intersect(this.matches, this.matches.length, postings);
+        } else {
+            // run the full query and remember where its last term ended
+            result = triesSearch.matchOrdinals(terms, mode);
+            String lastTerm = lowerCase(terms.get(terms.size() - 1));
+            this.lastTermNode = isPlural(lastTerm) ? null : triesSearch.root.find(lastTerm);
+        }
+        // remember this query for the next keystroke
+        this.triesSearch = triesSearch;
+        this.terms = new ArrayList<>(terms);
+        this.matches = result;
+        this.generation = triesSearch.getGeneration();
+        return result;
+    }
+
+    /**
+     * Check if a query can be answered by narrowing the previous result
+     * This is the case when the index hasn't changed, and the query only appends characters to the
+     * previous last term or appends a new term, leaving all the other terms untouched.
+     * A plural term doesn't match the words it starts, so a last term which was a plural or became one without
+     * keeping the previous term in its singular (ex: "tomatoe" to "tomatoes", matching "tomato") isn't narrowed
+     * @param triesSearch version of the index to search
+     * @param terms list of query terms
+     * @return true if the previous result can be narrowed
+     */
+    private boolean canNarrow(TriesSearch triesSearch, List<String> terms) {
+        // OR queries widen as terms are added, and a changed index invalidates the previous result
+        if (mode != QueryMode.AND || this.matches == null || triesSearch != this.triesSearch
+                || this.generation != triesSearch.getGeneration()) {
+            return false;
+        }
+        int previousCount = this.terms.size();
+        if (terms.size() == previousCount) {
+            // all terms except the last one unchanged, and the last one extended
+            String lastTerm = lowerCase(terms.get(previousCount - 1));
+            String previousLastTerm = lowerCase(this.terms.get(previousCount - 1));
+            return samePrefixTerms(terms, previousCount - 1)
+                    && lastTerm.length() > previousLastTerm.length()
+                    && !isPlural(previousLastTerm)
+                    && Analyzer.PluralFilter.singular(lastTerm).startsWith(previousLastTerm);
+        }
+        // all previous terms unchanged, and one new term appended
+        return terms.size() == previousCount + 1 && samePrefixTerms(terms, previousCount);
+    }
+
+    /**
+     * Check if the first terms of a query are the same as the previous query's
+     * @param terms list of query terms
+     * @param count number of leading terms to compare
+     * @return true if the leading terms are equal
+     */
+    private boolean samePrefixTerms(List<String> terms, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!lowerCase(terms.get(i)).equals(lowerCase(this.terms.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlural(String term) {
+        return !Analyzer.PluralFilter.singular(term).equals(term);
+    }
+
+    private static String lowerCase(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed search query (see QueryParser): clauses every matching row must satisfy, or must not satisfy when negated
+ * Each clause knows how to estimate and evaluate itself on an index, the order clauses are evaluated in being
+ * decided by QueryPlan. A query never changes once parsed, so it can be shared by threads
+ */
+public final class SearchQuery {
+
+    // clauses, in the order they were written
+    private final List<Clause> clauses;
+
+    /**
+     * Constructor to initialize a query
+     * @param clauses clauses of the query, in the order they were written
+     */
+    SearchQuery(List<Clause> clauses) {
+        this.clauses = Collections.unmodifiableList(new ArrayList<>(clauses));
+    }
+
+    /**
+     * @return clauses of the query, in the order they were written
+     */
+    public List<Clause> getClauses() {
+        return this.clauses;
+    }
+
+    /**
+     * @return terms of the clauses which aren't negated, used to rank the matching rows
+     */
+    public List<String> getTerms() {
+        List<String> terms = new ArrayList<>();
+        for (Clause clause : this.clauses) {
+            if (!clause.isNegated()) {
+                clause.addTerms(terms);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return true if the query is only made of words, without fields, negations, phrases or ranges
+     */
+    public boolean isSimple() {
+        for (Clause clause : this.clauses) {
+            if (clause.isNegated() || !(clause instanceof TermClause) || ((TermClause) clause).getField() >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the query as it would be written, normalized
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Clause clause : this.clauses) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(clause);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Condition on the rows matching a query
+     */
+    public abstract static class Clause {
+
+        // whether the rows must not satisfy the condition
+        private final boolean negated;
+
+        Clause(boolean negated) {
+            this.negated = negated;
+        }
+
+        /**
+         * @return true if matching rows must not satisfy this clause (ex: "-peanut")
+         */
+        public boolean isNegated() {
+            return this.negated;
+        }
+
+        /**
+         * Look up what the clause needs in an index, and estimate how many rows satisfy it
+         * @param index index searched
+         * @return step evaluating the clause on the index
+         */
+        abstract QueryPlan.Step prepare(TriesSearch index);
+
+        /**
+         * Find the characters of a row satisfying the clause
+         * @param index index searched
+         * @param ordinal row ordinal
+         * @return highlights of the row, empty if none
+         */
+        abstract List<Highlight> highlight(TriesSearch index, int ordinal);
+
+        /**
+         * Add the terms of the clause, used to rank rows
+         * @param terms list receiving the terms
+         */
+        abstract void addTerms(List<String> terms);
+
+        /**
+         * @return "-" if the clause is negated, followed by the name of the field if any
+         */
+        String getPrefix(String fieldName) {
+            return (this.negated ? "-" : "") + ((fieldName == null) ? "" : fieldName + ":");
+        }
+    }
+
+    /**
+     * Rows having a word starting with a term, in any field or in one field (ex: "thai", "cuisine:thai")
+     */
+    public static final class TermClause extends Clause {
+
+        private final String term;
+        private final int field;
+        private final String fieldName;
+
+        /**
+         * @param term lower case term, matched as a prefix unless it is a plural
+         * @param field field the word must be in, -1 for any field
+         * @param fieldName name of the field as written in queries, null for any field
+         * @param negated true if matching rows must not have the word
+         */
+        TermClause(String term, int field, String fieldName, boolean negated) {
+            super(negated);
+            this.term = term;
+            this.field = field;
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * @return lower case term, matched as a prefix unless it is a plural
+         */
+        public String getTerm() {
+            return this.term;
+        }
+
+        /**
+         * @return field the word must be in, -1 for any field
+         */
+        public int getField() {
+            return this.field;
+        }
+
+        @Override
+        QueryPlan.Step prepare(TriesSearch index) {
+            final PostingList postings = index.getTermPostings(this.term);
+            return new QueryPlan.Step(this, (postings == null) ? 0 : postings.size()) {
+                @Override
+                int[] match() {
+                    if (postings == null) {
+                        return PostingLists.EMPTY;
+                    }
+                    int[] ordinals = new int[postings.size()];
+                    int count = 0;
+                    for (int i = 0; i < postings.size(); i++) {
+                        // the payload tells which fields the word is in
+                        if (field < 0 || postings.getFrequency(i, field) > 0) {
+                            ordinals[count++] = postings.get(i);
+                        }
+                    }
+                    return Arrays.copyOf(ordinals, count);
+                }
+
+                @Override
+                boolean matches(int ordinal) {
+                    int index = (postings == null) ? -1 : postings.indexOf(ordinal);
+                    return index >= 0 && (field < 0 || postings.getFrequency(index, field) > 0);
+                }
+            };
+        }
+
+        @Override
+        List<Highlight> highlight(TriesSearch index, int ordinal) {
+            return index.positions.highlight(ordinal, Collections.singletonList(this.term), false, this.field);
+        }
+
+        @Override
+        void addTerms(List<String> terms) {
+            terms.add(this.term);
+        }
+
+        @Override
+        public String toString() {
+            return getPrefix(this.fieldName) + this.term;
+        }
+    }
+
+    /**
+     * Rows having words starting with terms next to each other in that order, in any field or in one field
+     * (ex: "\"green curry\"", "name:\"green curry\"")
+     */
+    public static final class PhraseClause extends Clause {
+
+        private final List<String> terms;
+        private final int field;
+        private final String fieldName;
+
+        /**
+         * @param terms lower case terms of the phrase, each matched as a prefix
+         * @param field field the phrase must be in, -1 for any field
+         * @param fieldName name of the field as written in queries, null for any field
+         * @param negated true if matching rows must not have the phrase
+         */
+        PhraseClause(List<String> terms, int field, String fieldName, boolean negated) {
+            super(negated);
+            this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+            this.field = field;
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * @return lower case terms of the phrase, each matched as a prefix
+         */
+        public List<String> getTerms() {
+            return this.terms;
+        }
+
+        /**
+         * @return field the phrase must be in, -1 for any field
+         */
+        public int getField() {
+            return this.field;
+        }
+
+        @Override
+        QueryPlan.Step prepare(final TriesSearch index) {
+            // a row holding the phrase holds each of its terms, so the rarest term bounds the matches
+            final PostingList[] termPostings = new PostingList[this.terms.size()];
+            PostingList shortest = null;
+            for (int i = 0; i < termPostings.length; i++) {
+                PostingList postings = index.getTermPostings(this.terms.get(i));
+                termPostings[i] = (postings == null) ? new PostingList() : postings;
+                if (shortest == null || termPostings[i].size() < shortest.size()) {
+                    shortest = termPostings[i];
+                }
+            }
+            final PostingList driver = (shortest == null) ? new PostingList() : shortest;
+            return new QueryPlan.Step(this, driver.size()) {
+                @Override
+                int[] match() {
+                    int[] ordinals = new int[driver.size()];
+                    int count = 0;
+                    for (int i = 0; i < driver.size(); i++) {
+                        if (matches(driver.get(i))) {
+                            ordinals[count++] = driver.get(i);
+                        }
+                    }
+                    return Arrays.copyOf(ordinals, count);
+                }
+
+                @Override
+                boolean matches(int ordinal) {
+                    for (PostingList postings : termPostings) {
+                        if (!postings.contains(ordinal)) {
+                            return false;
+                        }
+                    }
+                    // only rows holding every term have their position lists merged
+                    return index.positions.matchesPhrase(ordinal, terms, field);
+                }
+            };
+        }
+
+        @Override
+        List<Highlight> highlight(TriesSearch index, int ordinal) {
+            return index.positions.highlight(ordinal, this.terms, true, this.field);
+        }
+
+        @Override
+        void addTerms(List<String> terms) {
+            terms.addAll(this.terms);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder phrase = new StringBuilder(getPrefix(this.fieldName)).append('"');
+            for (int i = 0; i < this.terms.size(); i++) {
+                phrase.append((i == 0) ? "" : " ").append(this.terms.get(i));
+            }
+            return phrase.append('"').toString();
+        }
+    }
+
+    /**
+     * Rows whose value of a numeric attribute is within a range (ex: "price<20")
+     */
+    public static final class RangeClause extends Clause {
+
+        private final String attribute;
+        private final double min;
+        private final double max;
+        // condition as written, ex: "price<20"
+        private final String text;
+
+        /**
+         * @param attribute name of the attribute
+         * @param min smallest value allowed
+         * @param max largest value allowed
+         * @param text condition as written, without the negation
+         * @param negated true if matching rows must not be within the range
+         */
+        RangeClause(String attribute, double min, double max, String text, boolean negated) {
+            super(negated);
+            this.attribute = attribute;
+            this.min = min;
+            this.max = max;
+            this.text = text;
+        }
+
+        /**
+         * @return name of the attribute
+         */
+        public String getAttribute() {
+            return this.attribute;
+        }
+
+        /**
+         * @return smallest value allowed
+         */
+        public double getMin() {
+            return this.min;
+        }
+
+        /**
+         * @return largest value allowed
+         */
+        public double getMax() {
+            return this.max;
+        }
+
+        @Override
+        QueryPlan.Step prepare(TriesSearch index) {
+            final RangeIndex range = index.getRange(this.attribute);
+            // values are sorted, so the rows within the range are counted by binary search
+            int count = (range == null) ? 0 : Math.max(0, range.upperBound(this.max) - range.lowerBound(this.min));
+            return new QueryPlan.Step(this, count) {
+                // rows within the range, collected when first needed
+                private BitSet rows;
+
+                private BitSet getRows() {
+                    if (this.rows == null) {
+                        this.rows = new BitSet();
+                        if (range != null) {
+                            range.range(min, max, this.rows);
+                        }
+                    }
+                    return this.rows;
+                }
+
+                @Override
+                int[] match() {
+                    BitSet rows = getRows();
+                    int[] ordinals = new int[rows.cardinality()];
+                    int count = 0;
+                    for (int ordinal = rows.nextSetBit(0); ordinal >= 0; ordinal = rows.nextSetBit(ordinal + 1)) {
+                        ordinals[count++] = ordinal;
+                    }
+                    return ordinals;
+                }
+
+                @Override
+                boolean matches(int ordinal) {
+                    return getRows().get(ordinal);
+                }
+            };
+        }
+
+        @Override
+        List<Highlight> highlight(TriesSearch index, int ordinal) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        void addTerms(List<String> terms) {
+            // values don't rank rows
+        }
+
+        @Override
+        public String toString() {
+            return getPrefix(null) + this.text;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Rows partitioned into shards by a key (ex: the postal district of a meal's chef), so a query can visit the
+ * shards closest to the client first and stop once it found enough rows (see TriesSearch.topMatchesNearestFirst)
+ * Each shard holds the sorted ordinals of its rows, so the rows of a shard matching a query are found by
+ * intersecting its ordinals with the posting lists of the query terms, at a cost depending on the shard's size only
+ */
+public class ShardIndex {
+
+    /**
+     * Distance from the client to the rows of a shard
+     */
+    public interface Distance {
+        /**
+         * @param shard key of the shard
+         * @return distance to the shard's rows, shards at the same distance are visited together;
+         *         Integer.MAX_VALUE if unknown, those shards are visited last
+         */
+        int get(String shard);
+    }
+
+    // sorted ordinals of the rows of each shard, by key
+    private final Map<String, PostingList> shards;
+
+    // key of the shard of each ordinal, null for rows without a shard
+    private final List<String> shardKeys;
+
+    // ordinal lists belonging to this index, the other ones are shared with the index this one was copied from
+    // and are copied before being modified, null if this index owns every list
+    private final Set<PostingList> ownedRows;
+
+    // rings of the last distance the shards were grouped by, null until then or once a shard changed: an index
+    // being searched no longer changes, so the shards are grouped once per client location
+    private volatile Rings rings;
+
+    /**
+     * Constructor to initialize an empty index
+     */
+    public ShardIndex() {
+        this.shards = new HashMap<>();
+        this.shardKeys = new ArrayList<>();
+        this.ownedRows = null;
+    }
+
+    /**
+     * Constructor to copy an index, sharing its ordinal lists until they are modified
+     * @param other index to copy
+     */
+    private ShardIndex(ShardIndex other) {
+        this.shards = new HashMap<>(other.shards);
+        this.shardKeys = new ArrayList<>(other.shardKeys);
+        this.ownedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Create a copy of this index which can be modified while this one is being searched
+     * This index must not be modified anymore
+     * @return a modifiable copy
+     */
+    ShardIndex copy() {
+        return new ShardIndex(this);
+    }
+
+    /**
+     * Put a row in a shard, moving it out of its previous shard if it had one
+     * @param ordinal row ordinal
+     * @param shard key of the shard
+     */
+    void set(int ordinal, String shard) {
+        String previous = getShard(ordinal);
+        if (shard.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            // rare: rows are usually updated under a new ordinal, so the list is rebuilt rather than made removable
+            PostingList rows = this.shards.get(previous);
+            PostingList remaining = new PostingList();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i) != ordinal) {
+                    remaining.add(rows.get(i));
+                }
+            }
+            putRows(previous, remaining);
+        }
+        while (this.shardKeys.size() <= ordinal) {
+            this.shardKeys.add(null);
+        }
+        this.shardKeys.set(ordinal, shard);
+        PostingList rows = this.shards.get(shard);
+        if (rows == null) {
+            rows = new PostingList();
+            putRows(shard, rows);
+        } else if (this.ownedRows != null && !this.ownedRows.contains(rows)) {
+            // first change of a list shared with the index this one was copied from
+            rows = rows.copy();
+            putRows(shard, rows);
+        }
+        rows.add(ordinal);
+    }
+
+    /**
+     * @param ordinal row ordinal
+     * @return key of the row's shard, null if it has none
+     */
+    String getShard(int ordinal) {
+        return (ordinal < this.shardKeys.size()) ? this.shardKeys.get(ordinal) : null;
+    }
+
+    /**
+     * @return number of rows having a shard, removed rows included
+     */
+    int size() {
+        int size = 0;
+        for (PostingList rows : this.shards.values()) {
+            size += rows.size();
+        }
+        return size;
+    }
+
+    /**
+     * Group the shards by distance, nearest first
+     * Only the shard keys are compared, there are far fewer shards than rows. The groups are kept for the next
+     * call with the same distance, until a shard changes
+     * @param distance distance to each shard, the same instance for every search from the same location
+     * @return sorted ordinals of the rows of each shard, shards at the same distance grouped together;
+     *         must not be modified
+     */
+    List<List<PostingList>> getRings(Distance distance) {
+        Rings cached = this.rings;
+        if (cached != null && cached.distance == distance) {
+            return cached.rings;
+        }
+        TreeMap<Integer, List<PostingList>> rings = new TreeMap<>();
+        for (Map.Entry<String, PostingList> shard : this.shards.entrySet()) {
+            int shardDistance = distance.get(shard.getKey());
+            List<PostingList> ring = rings.get(shardDistance);
+            if (ring == null) {
+                ring = new ArrayList<>();
+                rings.put(shardDistance, ring);
+            }
+            ring.add(shard.getValue());
+        }
+        List<List<PostingList>> result = new ArrayList<>(rings.values());
+        this.rings = new Rings(distance, result);
+        return result;
+    }
+
+    /**
+     * Copy this index with renumbered row ordinals, dropping removed rows and the shards left without rows
+     * @param newOrdinals new ordinal of each current ordinal, -1 for removed rows
+     * @return compacted copy
+     */
+    ShardIndex remap(int[] newOrdinals) {
+        ShardIndex remapped = new ShardIndex();
+        for (int ordinal = 0; ordinal < newOrdinals.length; ordinal++) {
+            String shard = getShard(ordinal);
+            if (shard != null && newOrdinals[ordinal] >= 0) {
+                remapped.set(newOrdinals[ordinal], shard);
+            }
+        }
+        return remapped;
+    }
+
+    /**
+     * Estimate the heap used by the index, in bytes
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // a list slot per row, the keys being shared with the map
+        long bytes = 4L * this.shardKeys.size();
+        // each shard: map entry + key string + ordinal list
+        for (Map.Entry<String, PostingList> shard : this.shards.entrySet()) {
+            bytes += 48 + 40 + 2L * shard.getKey().length() + shard.getValue().estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Shards grouped by distance, for one distance
+     */
+    private static final class Rings {
+        final Distance distance;
+        final List<List<PostingList>> rings;
+
+        Rings(Distance distance, List<List<PostingList>> rings) {
+            this.distance = distance;
+            this.rings = rings;
+        }
+    }
+
+    /**
+     * Replace the ordinal list of a shard, recording it as owned by this index
+     */
+    private void putRows(String shard, PostingList rows) {
+        this.shards.put(shard, rows);
+        this.rings = null;
+        if (this.ownedRows != null) {
+            this.ownedRows.add(rows);
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.mealer_project.utils.TrieSearch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class StopWords {
 
@@ -139,4 +144,56 @@ public class StopWords {
         return engStopWords.containsKey(word);
     }
 
+    // French stop words written without accents
+    static private final String[] FRENCH_STOP_WORDS = {
+            "a", "au", "aux", "avec", "c", "ce", "ces", "d", "dans", "de", "des", "du", "elle", "en", "est", "et",
+            "eux", "il", "j", "je", "l", "la", "le", "les", "leur", "lui", "m", "ma", "mais", "me", "mes", "moi",
+            "mon", "n", "ne", "nos", "notre", "nous", "on", "ou", "par", "pas", "pour", "qu", "que", "qui", "s", "sa",
+            "se", "ses", "son", "sont", "sur", "t", "ta", "te", "tes", "toi", "ton", "tu", "un", "une", "vos",
+            "votre", "vous", "y"
+    };
+
+    // French stop words written with accents, accents folded (ex: "a" for "à", "etre" for "être") like the words
+    // they are checked against
+    static private final String[] FRENCH_ACCENTED_STOP_WORDS = {"a", "ete", "etre", "meme", "ou"};
+
+    /**
+     * Get the stop words of one or more languages written without accents as a frozen set: a minimal automaton
+     * whose lookups take a character buffer, so words are checked without creating a String (see KeywordFst)
+     * Words written with accents must be checked against accentedForLanguages instead, so a food is never dropped
+     * for being spelled like a stop word once its accents are folded (ex: "thé" and "the", "maïs" and "mais")
+     * @param languages languages of the stop words, only English and French are known
+     * @return set of the stop words of every language
+     */
+    static public KeywordFst forLanguages(Locale... languages) {
+        return getStopWords(languages, false);
+    }
+
+    /**
+     * Get the stop words of one or more languages written with accents, accents folded (ex: "ete" for "été")
+     * @param languages languages of the stop words, only English and French are known
+     * @return set of the stop words of every language
+     */
+    static public KeywordFst accentedForLanguages(Locale... languages) {
+        return getStopWords(languages, true);
+    }
+
+    private static KeywordFst getStopWords(Locale[] languages, boolean accented) {
+        Set<String> words = new TreeSet<>();
+        for (Locale language : languages) {
+            if (language.getLanguage().equals(Locale.ENGLISH.getLanguage())) {
+                // English stop words have no accents
+                if (!accented) {
+                    words.addAll(engStopWords.keySet());
+                }
+            } else if (language.getLanguage().equals(Locale.FRENCH.getLanguage())) {
+                words.addAll(Arrays.asList(accented ? FRENCH_ACCENTED_STOP_WORDS : FRENCH_STOP_WORDS));
+            } else {
+                throw new IllegalArgumentException("No stop words for language: " + language);
+            }
+        }
+        // sorted by the tree set
+        return new KeywordFst(new ArrayList<>(words));
+    }
+
 }
@@ -0,0 +1,155 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable map of each word to its synonyms (ex: "soda" and "pop", "chickpea" and "garbanzo"), applied when rows
+ * are indexed (see TriesSearch.setSynonyms): a row containing a word is also indexed under its synonyms, so a
+ * query for any of them finds the row with a single lookup.
+ * Synonyms are read from groups of equivalent words, one group per line separated by commas, "#" starting a
+ * comment. Words are lower cased and accents folded like keywords; entries of more than one word are ignored.
+ * Words are held in a KeywordFst, so a word is looked up without hashing a String
+ */
+public final class SynonymMap {
+
+    /**
+     * Name of the resource holding the bundled synonyms, next to this class
+     */
+    public static final String RESOURCE = "synonyms.txt";
+
+    // shared by every index of the process, loaded when first needed
+    private static SynonymMap bundled;
+
+    // every word having synonyms, mapped to its id
+    private final KeywordFst words;
+
+    // synonyms of each word, by id, sorted
+    private final String[][] synonyms;
+
+    // checksum of the synonyms, to tell whether an index was built with the same ones
+    private final long checksum;
+
+    private static final String[] NONE = new String[0];
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Analyzer.TokenFilter SINGULAR = new Analyzer.PluralFilter();
+
+    /**
+     * Constructor to initialize a map
+     * @param groups synonyms of each word, words sorted
+     */
+    private SynonymMap(TreeMap<String, Set<String>> groups) {
+        this.words = new KeywordFst(new ArrayList<>(groups.keySet()));
+        this.synonyms = new String[groups.size()][];
+        StringBuilder text = new StringBuilder();
+        int id = 0;
+        for (Map.Entry<String, Set<String>> group : groups.entrySet()) {
+            this.synonyms[id++] = group.getValue().toArray(new String[0]);
+            text.append(group.getKey()).append('=').append(group.getValue()).append('\n');
+        }
+        CRC32 crc = new CRC32();
+        crc.update(text.toString().getBytes(UTF_8));
+        this.checksum = crc.getValue();
+    }
+
+    /**
+     * Read synonyms, one group of equivalent words per line separated by commas
+     * @param reader text of the synonyms
+     * @return the synonyms read
+     * @throws IOException if the text can't be read
+     */
+    public static SynonymMap parse(Reader reader) throws IOException {
+        TreeMap<String, Set<String>> groups = new TreeMap<>();
+        // words are normalized without dropping any of them
+        KeywordTokenizer tokenizer = new KeywordTokenizer(new Analyzer());
+        KeywordTokenizer.KeywordList entryWords = new KeywordTokenizer.KeywordList();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            List<String> group = new ArrayList<>();
+            for (String entry : line.split(",")) {
+                entryWords.clear();
+                tokenizer.tokenize(entry, entryWords);
+                if (entryWords.getKeywords().size() == 1) {
+                    group.add(entryWords.getKeywords().get(0));
+                }
+            }
+            // a word is a synonym of every other word of its groups
+            for (String word : group) {
+                for (String synonym : group) {
+                    if (!synonym.equals(word)) {
+                        if (!groups.containsKey(word)) {
+                            groups.put(word, new TreeSet<String>());
+                        }
+                        groups.get(word).add(synonym);
+                    }
+                }
+            }
+        }
+        return new SynonymMap(groups);
+    }
+
+    /**
+     * Get the synonyms bundled with the app, loaded once and shared by every index
+     * @return the bundled synonyms, empty if the resource is missing
+     * @throws IOException if the resource can't be read
+     */
+    public static synchronized SynonymMap getBundled() throws IOException {
+        if (bundled == null) {
+            InputStream in = SynonymMap.class.getResourceAsStream(RESOURCE);
+            if (in == null) {
+                bundled = new SynonymMap(new TreeMap<String, Set<String>>());
+            } else {
+                try (Reader reader = new InputStreamReader(in, UTF_8)) {
+                    bundled = parse(reader);
+                }
+            }
+        }
+        return bundled;
+    }
+
+    /**
+     * Get the synonyms of a word, or of its singular when the word itself has none (ex: "chickpeas")
+     * @param word lower case word
+     * @return synonyms of the word, empty if none; must not be modified
+     */
+    public String[] getSynonyms(String word) {
+        int id = this.words.getWordId(word);
+        if (id < 0 && word.length() > 3 && (word.endsWith("s") || word.endsWith("x"))) {
+            char[] singular = word.toCharArray();
+            id = this.words.getWordId(singular, SINGULAR.filter(singular, singular.length));
+        }
+        return (id < 0) ? NONE : this.synonyms[id];
+    }
+
+    /**
+     * @return number of words having synonyms
+     */
+    public int size() {
+        return this.synonyms.length;
+    }
+
+    /**
+     * @return checksum of the synonyms, equal for maps holding the same synonyms
+     */
+    public long getChecksum() {
+        return this.checksum;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded heap keeping the k best scored row ordinals seen so far
+ * Scores and ordinals are kept in primitive arrays, and the worst kept row is at the root, so offering a row
+ * which doesn't make the cut is O(1) and keeping one is O(log k). Selecting the top k of n matches costs
+ * O(n log k) instead of sorting all n matches
+ */
+public class TopK {
+
+    // maximum number of rows kept
+    private final int k;
+
+    // heap of scores and their ordinals, the worst row at index 0
+    private final float[] scores;
+    private final int[] ordinals;
+
+    // number of rows in the heap
+    private int size;
+
+    // row keys, to break score ties with the tie breaker
+    private final List<String> ids;
+
+    // order between rows with equal scores, null to prefer lower ordinals
+    private final Comparator<String> tieBreaker;
+
+    /**
+     * Create an empty heap
+     * @param k maximum number of rows kept
+     * @param ids row keys indexed by ordinal, passed to the tie breaker
+     * @param tieBreaker order between rows with equal scores (smaller first), null to prefer lower ordinals
+     */
+    TopK(int k, List<String> ids, Comparator<String> tieBreaker) {
+        this.k = k;
+        this.scores = new float[k];
+        this.ordinals = new int[k];
+        this.size = 0;
+        this.ids = ids;
+        this.tieBreaker = tieBreaker;
+    }
+
+    /**
+     * Offer a row to the heap, it is kept if it is among the k best rows so far
+     * @param ordinal row ordinal
+     * @param score row score, higher is better
+     */
+    void offer(int ordinal, float score) {
+        if (k == 0) {
+            return;
+        }
+        if (size < k) {
+            // heap not full yet, add at the bottom and sift up
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!isWorse(ordinal, score, ordinals[parent], scores[parent])) {
+                    break;
+                }
+                ordinals[index] = ordinals[parent];
+                scores[index] = scores[parent];
+                index = parent;
+            }
+            ordinals[index] = ordinal;
+            scores[index] = score;
+        } else if (isWorse(ordinals[0], scores[0], ordinal, score)) {
+            // better than the worst kept row: replace the root and sift down
+            siftDown(ordinal, score, size);
+        }
+    }
+
+    /**
+     * Empty the heap into an array of ordinals, best row first
+     * @return ordinals of the best rows, in decreasing order of score
+     */
+    int[] drain() {
+        int[] result = new int[size];
+        // repeatedly move the worst row to the end
+        for (int last = size - 1; last >= 0; last--) {
+            result[last] = ordinals[0];
+            siftDown(ordinals[last], scores[last], last);
+        }
+        size = 0;
+        return result;
+    }
+
+    /**
+     * Place a row at the root and sift it down
+     * @param ordinal row ordinal
+     * @param score row score
+     * @param length number of rows in the heap
+     */
+    private void siftDown(int ordinal, float score, int length) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= length) {
+                break;
+            }
+            // pick the worse child
+            if (child + 1 < length && isWorse(ordinals[child + 1], scores[child + 1], ordinals[child], scores[child])) {
+                child++;
+            }
+            if (!isWorse(ordinals[child], scores[child], ordinal, score)) {
+                break;
+            }
+            ordinals[index] = ordinals[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+        if (length > 0) {
+            ordinals[index] = ordinal;
+            scores[index] = score;
+        }
+    }
+
+    /**
+     * Check if a row ranks below another one
+     * @return true if row a ranks below row b
+     */
+    private boolean isWorse(int ordinalA, float scoreA, int ordinalB, float scoreB) {
+        if (scoreA != scoreB) {
+            return scoreA < scoreB;
+        }
+        if (tieBreaker != null) {
+            int order = tieBreaker.compare(ids.get(ordinalA), ids.get(ordinalB));
+            if (order != 0) {
+                return order > 0;
+            }
+        }
+        return ordinalA > ordinalB;
+    }
+}
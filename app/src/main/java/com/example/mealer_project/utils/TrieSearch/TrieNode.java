@@ -1,28 +1,258 @@
 package com.example.mealer_project.utils.TrieSearch;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * Represent a single Trie-node
+ * Children are stored in two parallel arrays sorted by character, instead of a map, so characters are
+ * never boxed and a node costs two small arrays rather than a hash table. Lookups use a binary search,
+ * which is faster than hashing for the handful of children a typical node has.
+ * A node may be shared by several versions of an index (see TriesSearch.copy): it is only modified in place
+ * by its owner, any other version copies it first (copy-on-write)
  */
 public class TrieNode {
 
-    // map to store children nodes
-    Map<Character, TrieNode> children;
+    // shared empty arrays for nodes without children (most nodes are leaves)
+    private static final char[] NO_KEYS = new char[0];
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    // characters leading to children nodes, sorted in ascending order
+    char[] keys;
+
+    // children nodes, childNodes[i] is reached by the character keys[i]
+    TrieNode[] childNodes;
+
+    // number of children
+    int childCount;
 
     // flag to indicate if a complete word
     boolean isCompleteWord;
 
+    // ordinals of documents containing a word which starts with the characters leading to this node
+    PostingList postings;
+
+    // ordinals of documents containing exactly the word ending at this node, null if not a complete word
+    // or if every such document is held by the frozen dictionary of the index (see TriesSearch.freeze)
+    PostingList wordPostings;
+
+    // ordinals of documents indexed under the word ending at this node only as a synonym of one of their words
+    // (see TriesSearch.setSynonyms), null if none; they find the word but don't count in its popularity
+    PostingList synonymPostings;
+
+    // number of documents containing the word ending at this node held by the frozen dictionary of the index
+    int frozenRowCount;
+
+    // number of times clients searched the word ending at this node
+    int searchCount;
+
+    // highest popularity (see getPopularity) of the words ending at or below this node, it is an upper bound:
+    // it isn't lowered when rows are removed, until the index is compacted
+    int bestPopularity;
+
+    // version of the index allowed to modify this node in place, null if the node is never shared
+    final Object owner;
+
     /**
      * Constructor to initialize a Trie node
      */
     protected TrieNode() {
-        this.children = new HashMap<>();
+        this(null);
+    }
+
+    /**
+     * Constructor to initialize a Trie node belonging to a version of an index
+     * @param owner version of the index allowed to modify the node in place
+     */
+    TrieNode(Object owner) {
+        this.owner = owner;
+        this.keys = NO_KEYS;
+        this.childNodes = NO_CHILDREN;
+        this.childCount = 0;
         this.isCompleteWord = false;
     }
 
+    /**
+     * Get the child node reached by a character
+     * @param c character leading to the child
+     * @return child node, null if there is no child for the character
+     */
+    protected TrieNode getChild(char c) {
+        int index = Arrays.binarySearch(keys, 0, childCount, c);
+        return (index >= 0) ? childNodes[index] : null;
+    }
+
+    /**
+     * Copy this node for another version of the index, sharing its children
+     * The children are copied in turn when the new owner modifies them. The posting lists of the node are copied,
+     * so a copy costs as many rows as start with the node's prefix: nearly every row for the nodes near the root
+     * @param owner version of the index owning the copy
+     * @return copy of this node
+     */
+    TrieNode copy(Object owner) {
+        TrieNode copy = new TrieNode(owner);
+        if (childCount > 0) {
+            copy.keys = Arrays.copyOf(keys, childCount);
+            copy.childNodes = Arrays.copyOf(childNodes, childCount);
+            copy.childCount = childCount;
+        }
+        copy.isCompleteWord = isCompleteWord;
+        copy.postings = (postings == null) ? null : postings.copy();
+        copy.wordPostings = (wordPostings == null) ? null : wordPostings.copy();
+        copy.synonymPostings = (synonymPostings == null) ? null : synonymPostings.copy();
+        copy.frozenRowCount = frozenRowCount;
+        copy.searchCount = searchCount;
+        copy.bestPopularity = bestPopularity;
+        return copy;
+    }
+
+    /**
+     * Copy this node and the nodes below it without the posting lists of their words, which were moved into a
+     * frozen dictionary. A node which only one word goes through (ex: "rot" in "carrot") has the rows of the word
+     * as its prefix posting list, so it views them in the dictionary; other prefix posting lists are copied to
+     * their exact size. This node is left untouched
+     * @param owner version of the index owning the copy
+     * @param dictionary frozen dictionary holding the words below this node
+     * @param path characters leading to this node, restored on return
+     * @return frozen copy
+     */
+    TrieNode freeze(Object owner, FrozenDictionary dictionary, StringBuilder path) {
+        TrieNode copy = new TrieNode(owner);
+        if (childCount > 0) {
+            copy.keys = Arrays.copyOf(keys, childCount);
+            copy.childNodes = new TrieNode[childCount];
+            for (int i = 0; i < childCount; i++) {
+                path.append(keys[i]);
+                copy.childNodes[i] = childNodes[i].freeze(owner, dictionary, path);
+                path.setLength(path.length() - 1);
+            }
+            copy.childCount = childCount;
+        }
+        copy.isCompleteWord = isCompleteWord;
+        PostingList wordRows = null;
+        if (childCount == 0 && hasWrittenWord() && synonymPostings == null) {
+            // the last node of a word no other word starts with
+            wordRows = dictionary.getPostings(dictionary.getWordId(path));
+        } else if (childCount == 1 && !isCompleteWord && copy.childNodes[0].postings != null
+                && copy.childNodes[0].postings.isView()) {
+            // a node leading to a single word
+            wordRows = copy.childNodes[0].postings.copy();
+        }
+        if (postings == null) {
+            copy.postings = null;
+        } else if (wordRows != null && wordRows.size() == postings.size()) {
+            // a prefix list holds the rows of the words below, so a list of the same size holds the same rows
+            copy.postings = wordRows;
+        } else {
+            copy.postings = postings.trim();
+        }
+        copy.synonymPostings = (synonymPostings == null) ? null : synonymPostings.trim();
+        copy.frozenRowCount = frozenRowCount + ((wordPostings == null) ? 0 : wordPostings.size());
+        copy.searchCount = searchCount;
+        copy.bestPopularity = bestPopularity;
+        return copy;
+    }
+
+    /**
+     * @return true if documents are indexed under the word ending at this node, as written or as a synonym
+     */
+    boolean hasWord() {
+        return hasWrittenWord() || synonymPostings != null;
+    }
+
+    /**
+     * @return true if documents contain the word ending at this node as written, not only as a synonym
+     */
+    boolean hasWrittenWord() {
+        return wordPostings != null || frozenRowCount > 0;
+    }
+
+    /**
+     * Get the child node reached by a character, creating it if it doesn't exist
+     * A child shared with another version of the index is replaced by a copy owned by this node's owner
+     * @param c character leading to the child
+     * @return existing (and modifiable) or newly created child node
+     */
+    protected TrieNode getOrAddChild(char c) {
+        int index = Arrays.binarySearch(keys, 0, childCount, c);
+        if (index >= 0) {
+            if (childNodes[index].owner != owner) {
+                childNodes[index] = childNodes[index].copy(owner);
+            }
+            return childNodes[index];
+        }
+        // insertion point keeps keys sorted
+        TrieNode child = new TrieNode(owner);
+        addChild(-(index + 1), c, child);
+        return child;
+    }
+
+    /**
+     * Merge another Trie into this one, the other Trie holding documents whose ordinals all follow the ordinals
+     * of this Trie (ex: built in parallel over the next range of documents)
+     * Subtrees only the other Trie has are moved over as they are, so only the paths both Tries share are visited.
+     * The other Trie must not be used anymore, and its nodes must belong to this node's owner
+     * @param other root of the Trie to merge
+     */
+    void merge(TrieNode other) {
+        if (other.postings != null) {
+            if (postings == null) {
+                postings = other.postings;
+            } else {
+                postings.appendAll(other.postings);
+            }
+        }
+        if (other.wordPostings != null) {
+            if (wordPostings == null) {
+                wordPostings = other.wordPostings;
+            } else {
+                wordPostings.appendAll(other.wordPostings);
+            }
+        }
+        if (other.synonymPostings != null) {
+            if (synonymPostings == null) {
+                synonymPostings = other.synonymPostings;
+            } else {
+                synonymPostings.appendAll(other.synonymPostings);
+            }
+        }
+        isCompleteWord |= other.isCompleteWord;
+        searchCount += other.searchCount;
+        // the word ending here may now be more popular than either Trie knew
+        bestPopularity = Math.max(Math.max(bestPopularity, other.bestPopularity), getPopularity());
+        for (int i = 0; i < other.childCount; i++) {
+            TrieNode otherChild = other.childNodes[i];
+            int index = Arrays.binarySearch(keys, 0, childCount, other.keys[i]);
+            if (index < 0) {
+                addChild(-(index + 1), other.keys[i], otherChild);
+            } else {
+                TrieNode child = getOrAddChild(other.keys[i]);
+                child.merge(otherChild);
+                bestPopularity = Math.max(bestPopularity, child.bestPopularity);
+            }
+        }
+    }
+
+    /**
+     * Insert a child node at an index of the sorted children arrays
+     * @param index insertion point, keeping keys sorted
+     * @param c character leading to the child
+     * @param child child node
+     */
+    private void addChild(int index, char c, TrieNode child) {
+        if (childCount == keys.length) {
+            // grow by one or two slots: nodes rarely have many children
+            int capacity = childCount + (childCount < 4 ? 1 : 2);
+            keys = Arrays.copyOf(keys, capacity);
+            childNodes = Arrays.copyOf(childNodes, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, childCount - index);
+        System.arraycopy(childNodes, index, childNodes, index + 1, childCount - index);
+        keys[index] = c;
+        childNodes[index] = child;
+        childCount++;
+    }
+
     /**
      * Insert a word into the Trie
      * @param word string representing the word
@@ -34,17 +264,215 @@ public class TrieNode {
         word = word.toLowerCase(Locale.ROOT);
 
         // add each character
-        for (char c : word.toCharArray()) {
-            // store a new child if character not already there
-            if (currentNode.children.get(c) == null) {
-                currentNode.children.put(c, new TrieNode());
+        for (int i = 0; i < word.length(); i++) {
+            // store a new child if character not already there, and move to it
+            currentNode = currentNode.getOrAddChild(word.charAt(i));
+        }
+
+        // once all characters added, mark the word as complete
+        currentNode.isCompleteWord = true;
+    }
+
+    /**
+     * Insert a word into the Trie, recording the document it belongs to on every node along its path
+     * @param word string representing the word
+     * @param ordinal ordinal of the document containing the word
+     */
+    protected void insert(String word, int ordinal) {
+        insert(word, ordinal, 0);
+    }
+
+    /**
+     * Insert a word into the Trie, recording the document and field it belongs to on every node along its path
+     * @param word string representing the word
+     * @param ordinal ordinal of the document containing the word
+     * @param field field of the document containing the word
+     */
+    protected void insert(String word, int ordinal, int field) {
+        // use only lower case characters
+        word = word.toLowerCase(Locale.ROOT);
+        TrieNode currentNode = insertPath(word, ordinal, field);
+        if (currentNode.wordPostings == null) {
+            currentNode.wordPostings = new PostingList();
+        }
+        currentNode.wordPostings.add(ordinal, field);
+        raiseBestPopularity(word, currentNode.getPopularity());
+    }
+
+    /**
+     * Insert a synonym of a document's word into the Trie, so the document is found by the synonym too
+     * The document doesn't count in the synonym's popularity, unless it also contains the synonym as written:
+     * a word documents only have as a synonym is never suggested
+     * @param synonym lower case synonym
+     * @param ordinal ordinal of the document containing the word
+     * @param field field of the document containing the word
+     */
+    void insertSynonym(String synonym, int ordinal, int field) {
+        TrieNode currentNode = insertPath(synonym, ordinal, field);
+        if (currentNode.wordPostings != null && currentNode.wordPostings.contains(ordinal)) {
+            // the document also contains the synonym as written
+            currentNode.wordPostings.add(ordinal, field);
+            return;
+        }
+        if (currentNode.synonymPostings == null) {
+            currentNode.synonymPostings = new PostingList();
+        }
+        currentNode.synonymPostings.add(ordinal, field);
+    }
+
+    /**
+     * Follow the path of a word, creating its nodes, and record the document on every node along it
+     * @param word lower case word
+     * @param ordinal ordinal of the document containing the word
+     * @param field field of the document containing the word
+     * @return node ending the word, marked as a complete word
+     */
+    private TrieNode insertPath(String word, int ordinal, int field) {
+        // currentNode will initially be root
+        TrieNode currentNode = this;
+
+        // add each character
+        for (int i = 0; i < word.length(); i++) {
+            // store a new child if character not already there, and move to it
+            currentNode = currentNode.getOrAddChild(word.charAt(i));
+            // every word passing through this node is a prefix match for the document
+            if (currentNode.postings == null) {
+                currentNode.postings = new PostingList();
             }
-            // next node
-            currentNode = currentNode.children.get(c);
+            currentNode.postings.add(ordinal, field);
         }
 
         // once all characters added, mark the word as complete
         currentNode.isCompleteWord = true;
+        return currentNode;
+    }
+
+    /**
+     * Popularity of the word ending at this node: the number of rows containing it plus the number of times
+     * clients searched it
+     * @return popularity of the word, 0 if this node doesn't end a word or documents only have it as a synonym
+     */
+    int getPopularity() {
+        if (!hasWrittenWord()) {
+            return 0;
+        }
+        return frozenRowCount + ((wordPostings == null) ? 0 : wordPostings.size()) + searchCount;
+    }
+
+    /**
+     * Raise the best popularity of the nodes along the path of a word, this node included
+     * Every node of the path must already be modifiable by this node's owner
+     * @param word lower case word whose path is followed
+     * @param popularity new popularity of the word
+     */
+    void raiseBestPopularity(String word, int popularity) {
+        TrieNode currentNode = this;
+        for (int i = 0; i <= word.length() && currentNode != null; i++) {
+            if (currentNode.bestPopularity < popularity) {
+                currentNode.bestPopularity = popularity;
+            }
+            currentNode = (i < word.length()) ? currentNode.getChild(word.charAt(i)) : null;
+        }
+    }
+
+    /**
+     * Recompute the best popularity of this node and the nodes below it, after they were loaded or rebuilt
+     * @return best popularity of this node
+     */
+    int updateBestPopularity() {
+        int best = getPopularity();
+        for (int i = 0; i < childCount; i++) {
+            best = Math.max(best, childNodes[i].updateBestPopularity());
+        }
+        bestPopularity = best;
+        return best;
+    }
+
+    /**
+     * Find the node reached by following the characters of a prefix
+     * @param prefix characters to follow from this node
+     * @return node at the end of the prefix, null if the prefix is not in the Trie
+     */
+    protected TrieNode find(String prefix) {
+        // start from this node
+        TrieNode currentNode = this;
+        // follow each character
+        for (int i = 0; i < prefix.length() && currentNode != null; i++) {
+            currentNode = currentNode.getChild(prefix.charAt(i));
+        }
+        return currentNode;
+    }
+
+    /**
+     * Estimate the heap used by this node and all nodes below it, in bytes
+     * @return estimated size in bytes
+     */
+    protected long estimateBytes() {
+        // node object: header, two array references, child count, flag, two posting list references, owner,
+        // frozen row count, search count and best popularity
+        long bytes = 56;
+        // the two child arrays, leaves share the empty arrays
+        if (keys.length > 0) {
+            bytes += 16 + 2L * keys.length + 16 + 4L * childNodes.length;
+        }
+        if (postings != null) {
+            bytes += postings.estimateBytes();
+        }
+        if (wordPostings != null) {
+            bytes += wordPostings.estimateBytes();
+        }
+        if (synonymPostings != null) {
+            bytes += synonymPostings.estimateBytes();
+        }
+        for (int i = 0; i < childCount; i++) {
+            bytes += childNodes[i].estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Copy this node and the nodes below it with renumbered document ordinals, dropping removed documents
+     * and the nodes no document reaches anymore. This node is left untouched
+     * The words must not be frozen (see TriesSearch.thaw)
+     * @param newOrdinals new ordinal of each current ordinal, -1 for removed documents
+     * @param owner version of the index owning the copy
+     * @return compacted copy, null if no document reaches this node anymore
+     */
+    TrieNode compact(int[] newOrdinals, Object owner) {
+        TrieNode copy = new TrieNode(owner);
+        if (postings != null) {
+            copy.postings = postings.remap(newOrdinals);
+            if (copy.postings == null) {
+                // every word below this node belonged to removed documents
+                return null;
+            }
+        }
+        if (wordPostings != null || synonymPostings != null) {
+            copy.wordPostings = (wordPostings == null) ? null : wordPostings.remap(newOrdinals);
+            copy.synonymPostings = (synonymPostings == null) ? null : synonymPostings.remap(newOrdinals);
+            copy.isCompleteWord = copy.wordPostings != null || copy.synonymPostings != null;
+        } else {
+            copy.isCompleteWord = isCompleteWord;
+        }
+        // search counts are kept, best popularity is recomputed by the caller (see updateBestPopularity)
+        copy.searchCount = searchCount;
+        int count = 0;
+        char[] newKeys = new char[childCount];
+        TrieNode[] newChildNodes = new TrieNode[childCount];
+        for (int i = 0; i < childCount; i++) {
+            TrieNode child = childNodes[i].compact(newOrdinals, owner);
+            if (child != null) {
+                newKeys[count] = keys[i];
+                newChildNodes[count] = child;
+                count++;
+            }
+        }
+        if (count > 0) {
+            copy.keys = Arrays.copyOf(newKeys, count);
+            copy.childNodes = Arrays.copyOf(newChildNodes, count);
+            copy.childCount = count;
+        }
+        return copy;
     }
 
     /**
@@ -65,10 +493,10 @@ public class TrieNode {
         TrieNode currentNode = this;
 
         // check presence of characters
-        for (char c: query.toCharArray()) {
+        for (int i = 0; i < query.length(); i++) {
 
             // get the node for current character
-            currentNode = currentNode.children.get(c);
+            currentNode = currentNode.getChild(query.charAt(i));
             // if character doesn't exist, means no match
             if (currentNode == null) {
                 return false;
@@ -93,10 +521,10 @@ public class TrieNode {
         TrieNode currentNode = this;
 
         // check presence of characters
-        for (char c: word.toCharArray()) {
+        for (int i = 0; i < word.length(); i++) {
 
             // get the node for current character
-            currentNode = currentNode.children.get(c);
+            currentNode = currentNode.getChild(word.charAt(i));
             // if character doesn't exist, means no match
             if (currentNode == null) {
                 return false;
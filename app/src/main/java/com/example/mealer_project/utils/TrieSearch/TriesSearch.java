@@ -1,43 +1,258 @@
 package com.example.mealer_project.utils.TrieSearch;
 
+import androidx.annotation.RequiresApi;
+
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * Class to work with a collection of Trie data structure
- * Each Trie inside this collection of TriesSearch represents one row of a table of data
- * This row could be a sentence or a list of keywords
+ * Class to search a collection of rows of data, where each row could be a sentence or a list of keywords
+ * All rows share a single Trie (an inverted prefix index): every node of the Trie holds a posting list
+ * of the rows containing a word which starts with the characters leading to that node.
+ * A query therefore costs O(query length + matches), independent of the number of rows
  */
 public class TriesSearch {
 
     /**
-     * Map to store all Trie data structures
-     * Each key-value pair represents a String key to identify which Trie had a match and
-     * value is the Trie instance containing all words for that key
+     * Maximum number of Trie nodes a fuzzy query may visit, bounding its latency however large the index is
+     */
+    public static final int FUZZY_NODE_BUDGET = 50000;
+
+    /**
+     * BM25 term frequency saturation: how quickly more occurrences stop increasing a row's score
+     */
+    public static final float BM25_K1 = 1.2f;
+
+    /**
+     * BM25 length normalization: how much a long field is penalized compared to a short one
+     */
+    public static final float BM25_B = 0.75f;
+
+    /**
+     * Minimum number of removed rows before compaction is worth it
+     */
+    public static final int COMPACTION_MIN_DELETED = 64;
+
+    /**
+     * Fraction of removed rows (among all rows, removed or not) above which the index should be compacted
+     */
+    public static final float COMPACTION_DELETED_RATIO = 0.2f;
+
+    /**
+     * Number of rows of a bulk load (see addAllFieldData) indexed by a single task
+     */
+    public static final int BULK_SHARD_SIZE = 256;
+
+    // synonyms of keywords without any
+    private static final String[] NO_SYNONYMS = new String[0];
+
+    // order of highlights: by field, then offset
+    private static final Comparator<Highlight> HIGHLIGHT_ORDER = (h1, h2) -> (h1.getField() != h2.getField())
+            ? Integer.compare(h1.getField(), h2.getField()) : Integer.compare(h1.getStart(), h2.getStart());
+
+    /**
+     * Rows to add in bulk, whose keywords are extracted on worker threads (see addAllFieldData)
+     */
+    public interface RowSource {
+        /**
+         * @return number of rows
+         */
+        int size();
+
+        /**
+         * @param index index of the row
+         * @return id of the row
+         */
+        String getId(int index);
+
+        /**
+         * Get the keywords of each field of a row, may be called from any thread
+         * @param index index of the row
+         * @return list of string keywords for each field, in the order of the field weights
+         */
+        List<List<String>> getFieldKeywords(int index);
+    }
+
+    /**
+     * Root of the shared Trie containing the words of all rows
+     */
+    TrieNode root;
+
+    /**
+     * String keys identifying each row, indexed by the row's ordinal
+     * The ordinal is the compact int stored in posting lists
+     */
+    List<String> ids;
+
+    /**
+     * Map from a row's String key to its ordinal
+     */
+    Map<String, Integer> ordinals;
+
+    /**
+     * Counter incremented every time data is added, so cursors can tell when their results are stale
+     */
+    long generation;
+
+    /**
+     * Weight of each field of a row when scoring matches, a row has as many fields as there are weights
+     */
+    float[] fieldWeights;
+
+    /**
+     * Number of words in each field of each row, the length of field f of row r is at r * fields + f
+     */
+    int[] fieldLengths;
+
+    /**
+     * Total number of words in each field over all rows, to compute average field lengths
+     */
+    long[] fieldLengthTotals;
+
+    /**
+     * Ordinals of removed rows (tombstones): their postings stay in the Trie, filtered out of every result,
+     * until the index is compacted
+     */
+    BitSet deleted;
+
+    /**
+     * Number of removed rows
+     */
+    int deletedCount;
+
+    /**
+     * Trigram index of the distinct words, answering substring queries, null unless substring search is enabled
+     */
+    NGramIndex ngrams;
+
+    /**
+     * Words frozen into a compact dictionary with the rows containing them (see freeze), null if never frozen
+     * Rows indexed since the last freeze are held by the Trie nodes
+     */
+    FrozenDictionary frozen;
+
+    /**
+     * Synonyms a row is also indexed under (see setSynonyms), null for none
+     */
+    SynonymMap synonyms;
+
+    /**
+     * Bitmaps of the rows having each facet value, to filter the rows matching a query
+     */
+    FacetIndex facets;
+
+    /**
+     * Sorted numeric values of the rows by attribute (ex: price), to filter the rows matching a query on a range
+     * and list them in value order
+     */
+    Map<String, RangeIndex> ranges;
+
+    /**
+     * Words of each row in text order with their offsets, answering phrase queries and highlighting matches
+     */
+    PositionIndex positions;
+
+    /**
+     * Rows grouped by shard (ex: the postal district of a meal's chef), to visit the rows closest to the client first
      */
-    Map<String, TrieNode> tries;
+    ShardIndex shards;
+
+    /**
+     * Time spent ranking the candidates of each query, in nanoseconds (see setRankLatencies), null if not recorded
+     */
+    volatile Histogram rankLatencies;
+
+    /**
+     * Token identifying this version of the index: Trie nodes owned by it are modified in place,
+     * nodes shared with another version are copied first
+     */
+    Object owner;
 
     /**
      * Constructor to initialize an empty Trie
      */
     public TriesSearch() {
-        this.tries = new HashMap<>();
+        this(0);
     }
 
     /**
      * Constructor to initialize an empty Trie with a fixed size
      */
     public TriesSearch(int size) {
-        this.tries = new HashMap<>(size);
+        this(size, new float[]{1f});
     }
 
     /**
-     * Constructor to initialize an empty Trie with a fixed size
+     * Constructor to initialize an empty Trie for rows made of several weighted fields
+     * @param size expected number of rows
+     * @param fieldWeights weight of each field when scoring matches, at most PostingList.MAX_FIELDS fields
+     */
+    public TriesSearch(int size, float[] fieldWeights) {
+        if (fieldWeights.length == 0 || fieldWeights.length > PostingList.MAX_FIELDS) {
+            throw new IllegalArgumentException("Invalid number of fields: " + fieldWeights.length);
+        }
+        this.fieldWeights = fieldWeights.clone();
+        this.owner = new Object();
+        this.root = new TrieNode(this.owner);
+        this.ids = new ArrayList<>(size);
+        this.ordinals = new HashMap<>(size);
+        this.fieldLengths = new int[Math.max(size, 1) * fieldWeights.length];
+        this.fieldLengthTotals = new long[fieldWeights.length];
+        this.deleted = new BitSet();
+        this.facets = new FacetIndex();
+        this.ranges = new HashMap<>();
+        this.positions = new PositionIndex();
+        this.shards = new ShardIndex();
+    }
+
+    /**
+     * Constructor to copy an index, sharing its Trie
+     * @param other index to copy
+     */
+    private TriesSearch(TriesSearch other) {
+        this.fieldWeights = other.fieldWeights;
+        this.owner = new Object();
+        this.root = other.root;
+        this.ids = new ArrayList<>(other.ids);
+        this.ordinals = new HashMap<>(other.ordinals);
+        this.fieldLengths = other.fieldLengths.clone();
+        this.fieldLengthTotals = other.fieldLengthTotals.clone();
+        this.deleted = (BitSet) other.deleted.clone();
+        this.deletedCount = other.deletedCount;
+        this.generation = other.generation;
+        this.ngrams = (other.ngrams == null) ? null : other.ngrams.copy();
+        // the frozen dictionary and the synonyms are never modified, so they are shared
+        this.frozen = other.frozen;
+        this.synonyms = other.synonyms;
+        this.facets = other.facets.copy();
+        this.ranges = new HashMap<>();
+        for (Map.Entry<String, RangeIndex> range : other.ranges.entrySet()) {
+            this.ranges.put(range.getKey(), range.getValue().copy());
+        }
+        this.positions = other.positions.copy();
+        this.shards = other.shards.copy();
+        this.rankLatencies = other.rankLatencies;
+    }
+
+    /**
+     * Constructor to initialize a Trie containing the data provided
      */
     public TriesSearch(Map<String, List<String>> wordsData) {
-        this.tries = getTries(wordsData);
+        this(wordsData.size());
+        this.setTries(wordsData);
     }
 
     /**
@@ -73,73 +288,1765 @@ public class TriesSearch {
     }
 
     /**
-     * Set the data map containing String keys identifying each Trie and values representing
-     * the corresponding Trie instance containing all list of words for that key
-     * @param wordsData a map in which keys represent string value to identify a trie (or row of data)
+     * Replace the data of this TriesSearch with the rows provided
+     * @param wordsData a map in which keys represent string value to identify a row of data
      *                  and values are a list of words (like keywords)
      */
     public void setTries(Map<String, List<String>> wordsData) {
-        this.tries = getTries(wordsData);
+        // start from an empty index
+        clear(wordsData.size());
+        // index each row
+        for (String wordKey : wordsData.keySet()) {
+            addData(wordKey, wordsData.get(wordKey));
+        }
+    }
+
+    /**
+     * Remove all rows, keeping the field weights
+     */
+    public void clear() {
+        clear(0);
+    }
+
+    /**
+     * Remove all rows, keeping the field weights
+     * @param size expected number of rows to be added next
+     */
+    private void clear(int size) {
+        this.root = new TrieNode(this.owner);
+        this.ids = new ArrayList<>(size);
+        this.ordinals = new HashMap<>(size);
+        this.fieldLengths = new int[Math.max(size, 1) * fieldWeights.length];
+        this.fieldLengthTotals = new long[fieldWeights.length];
+        this.deleted = new BitSet();
+        this.deletedCount = 0;
+        this.generation++;
+        if (this.ngrams != null) {
+            this.ngrams = new NGramIndex();
+        }
+        this.frozen = null;
+        this.facets = new FacetIndex();
+        this.ranges = new HashMap<>();
+        this.positions = new PositionIndex();
+        this.shards = new ShardIndex();
+    }
+
+    /**
+     * Enable substring search (see sMatch), building a trigram index of the words already indexed
+     * The trigram index is then kept up to date as data is added
+     */
+    public void enableSubstringSearch() {
+        if (this.ngrams == null) {
+            this.ngrams = NGramIndex.build(this.root);
+        }
+    }
+
+    /**
+     * @return true if substring search is enabled
+     */
+    public boolean isSubstringSearchEnabled() {
+        return this.ngrams != null;
+    }
+
+    /**
+     * Index every row added from now on under the synonyms of its keywords too (ex: a row containing "pop" is
+     * also found by "soda"), so queries don't have to look up each synonym. Synonyms count as occurrences of
+     * the keyword's field but not in the field's length, nor in the popularity of the synonym: a word rows only
+     * have as a synonym (ex: "carotte" for rows containing "carrot") is never suggested. Rows already indexed
+     * aren't changed
+     * @param synonyms synonyms to apply, null for none
+     */
+    public void setSynonyms(SynonymMap synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    /**
+     * @return synonyms rows are indexed under, null for none
+     */
+    public SynonymMap getSynonyms() {
+        return this.synonyms;
+    }
+
+    /**
+     * Record the time spent ranking the candidates of every query from now on, copies of the index included
+     * @param rankLatencies histogram receiving the ranking times in nanoseconds, null to stop recording
+     */
+    public void setRankLatencies(Histogram rankLatencies) {
+        this.rankLatencies = rankLatencies;
+    }
+
+    /**
+     * Freeze the words indexed so far into a compact, immutable dictionary (see FrozenDictionary)
+     * The posting lists of the words move out of the Trie nodes into flat arrays, the nodes only one word goes
+     * through view the word's rows in those arrays, and the other prefix posting lists are trimmed to size,
+     * which suits an index built once (ex: loaded in bulk) and then mostly searched.
+     * Rows indexed afterwards are held by the Trie nodes as before, until the next freeze. Results are unchanged,
+     * and the nodes shared with other versions of the index are left untouched
+     */
+    public void freeze() {
+        List<String> words = new ArrayList<>();
+        List<PostingList> postings = new ArrayList<>();
+        // children are sorted, so words are collected in ascending order
+        collectWords(this.root, new StringBuilder(), words, postings);
+        this.frozen = new FrozenDictionary(words, postings);
+        this.root = this.root.freeze(this.owner, this.frozen, new StringBuilder());
+    }
+
+    private void collectWords(TrieNode node, StringBuilder path, List<String> words, List<PostingList> postings) {
+        // rows having the word only as a synonym stay on the node
+        if (node.hasWrittenWord()) {
+            words.add(path.toString());
+            postings.add(getWrittenPostings(node, path));
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            path.append(node.keys[i]);
+            collectWords(node.childNodes[i], path, words, postings);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    /**
+     * Move the frozen posting lists back into the Trie nodes, so the Trie holds every row again
+     */
+    private void thaw() {
+        if (this.frozen != null) {
+            this.root = thaw(this.root, new StringBuilder());
+            this.frozen = null;
+        }
+    }
+
+    private TrieNode thaw(TrieNode node, StringBuilder path) {
+        TrieNode copy = node.copy(this.owner);
+        if (node.frozenRowCount > 0) {
+            copy.wordPostings = getWrittenPostings(node, path);
+            copy.frozenRowCount = 0;
+        }
+        for (int i = 0; i < copy.childCount; i++) {
+            path.append(copy.keys[i]);
+            copy.childNodes[i] = thaw(copy.childNodes[i], path);
+            path.setLength(path.length() - 1);
+        }
+        return copy;
+    }
+
+    /**
+     * @return the frozen dictionary of the index, null if the index was never frozen
+     */
+    public FrozenDictionary getFrozenDictionary() {
+        return this.frozen;
+    }
+
+    /**
+     * Get the rows containing exactly the word ending at a node, frozen or not, or indexed under it as a synonym
+     * @param node node ending the word
+     * @param word lower case word
+     * @return rows containing the word, null if none; must not be modified
+     */
+    PostingList getWordPostings(TrieNode node, CharSequence word) {
+        PostingList postings = getWrittenPostings(node, word);
+        if (node.synonymPostings == null) {
+            return postings;
+        }
+        return (postings == null) ? node.synonymPostings : postings.union(node.synonymPostings);
+    }
+
+    /**
+     * Get the rows containing exactly the word ending at a node as written, frozen or not
+     * @param node node ending the word
+     * @param word lower case word
+     * @return rows containing the word as written, null if none; must not be modified
+     */
+    PostingList getWrittenPostings(TrieNode node, CharSequence word) {
+        if (node.frozenRowCount == 0 || this.frozen == null) {
+            return node.wordPostings;
+        }
+        PostingList postings = this.frozen.getPostings(this.frozen.getWordId(word));
+        // rows indexed since the freeze usually follow, but words added to an existing row don't
+        return (node.wordPostings == null) ? postings : postings.union(node.wordPostings);
+    }
+
+    /**
+     * Get the rows matching a query term
+     * A plural term matches the words having the same singular, exactly (ex: "peas" matches "pea" and "peas" but
+     * not "peanut", "tomatoes" matches "tomato"); any other term matches the words it starts (ex: "pea")
+     * @param term lower case query term
+     * @return rows matching the term, null if none; must not be modified
+     */
+    PostingList getTermPostings(String term) {
+        String singular = Analyzer.PluralFilter.singular(term);
+        if (singular.equals(term)) {
+            TrieNode node = this.root.find(term);
+            return (node == null) ? null : node.postings;
+        }
+        PostingList postings = null;
+        for (String form : Analyzer.PluralFilter.getForms(singular)) {
+            TrieNode node = this.root.find(form);
+            PostingList formPostings = (node == null || !node.isCompleteWord) ? null : getWordPostings(node, form);
+            if (formPostings != null && formPostings.size() > 0) {
+                postings = (postings == null) ? formPostings : postings.union(formPostings);
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Create a copy of this index which can be modified while this one is being searched
+     * The copy shares the Trie with this index, and a node is only copied when either index first modifies it.
+     * Still, a copy and the writes made to it cost O(rows): the row tables, the ranges, the positions and the
+     * n-gram tables are copied whole, and each node copied along the paths of the words indexed afterwards
+     * copies its prefix posting list, the root's and its children's holding most rows. Writers batch their
+     * changes so the index is copied once per batch (see SearchMeals)
+     * This index is left untouched, so searching it is safe while the copy is modified on another thread;
+     * it must not be modified anymore, as it still owns the nodes it shares with the copy
+     * @return a modifiable copy of this index
+     */
+    public TriesSearch copy() {
+        return new TriesSearch(this);
     }
 
     /**
      * Add data to TrieSearch dataset by providing an id and the keywords
+     * Adding keywords for an id which already exists adds them to that id's existing keywords
      * @param trieId id which is returned if match found in provided keywords
      * @param keywords list of string keywords
      */
     public void addData(String trieId, List<String> keywords) {
-        this.tries.put(trieId, getTrie(keywords));
+        addFieldData(trieId, Collections.singletonList(keywords));
     }
 
     /**
-     * pMatch - Pattern Match
-     * Method performs a non-exact search of a query in all the tries
-     * @param query string representing characters to be found
-     * @return list of string values identifying the TriesSearch in which matches were found, empty list if no matches
+     * Add data made of several fields to TrieSearch dataset by providing an id and the keywords of each field
+     * Adding keywords for an id which already exists adds them to that id's existing keywords
+     * @param trieId id which is returned if match found in provided keywords
+     * @param fieldKeywords list of string keywords for each field, in the order of the field weights
      */
-    public List<String> pMatch(String query) {
-        // ensure we have valid data & query
-        if (this.tries == null || this.tries.isEmpty() || query == null || query.isEmpty())
-            return null;
+    public void addFieldData(String trieId, List<List<String>> fieldKeywords) {
+        if (fieldKeywords.size() > this.fieldWeights.length) {
+            throw new IllegalArgumentException("Too many fields: " + fieldKeywords.size());
+        }
+        // get the ordinal for this id, assigning the next one if the id is new
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            ordinal = this.ids.size();
+            this.ids.add(trieId);
+            this.ordinals.put(trieId, ordinal);
+            ensureFieldLengthsCapacity(this.ids.size());
+        }
+        this.generation++;
+        // a root shared with another version of the index is copied before being modified
+        if (this.root.owner != this.owner) {
+            this.root = this.root.copy(this.owner);
+        }
+        for (int field = 0; field < fieldKeywords.size(); field++) {
+            List<String> keywords = fieldKeywords.get(field);
+            // nothing to index
+            if (keywords == null) {
+                continue;
+            }
+            // add each keyword to the shared Trie, tagged with the row's ordinal and field
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.isEmpty()) {
+                    this.root.insert(keyword, ordinal, field);
+                    if (this.ngrams != null) {
+                        this.ngrams.addWord(keyword.toLowerCase(Locale.ROOT));
+                    }
+                    for (String synonym : getSynonyms(keyword)) {
+                        this.root.insertSynonym(synonym, ordinal, field);
+                        if (this.ngrams != null) {
+                            this.ngrams.addWord(synonym);
+                        }
+                    }
+                    this.fieldLengths[ordinal * this.fieldWeights.length + field]++;
+                    this.fieldLengthTotals[field]++;
+                }
+            }
+        }
+    }
 
-        // list to store matches
-        List<String> matches = new ArrayList<>();
+    /**
+     * Add many rows at once, extracting their keywords and indexing them in parallel
+     * The new rows are split into shards of BULK_SHARD_SIZE rows, each indexed into its own Trie by a fork-join task;
+     * as shards cover consecutive ordinals, the shard Tries are merged pairwise by appending posting lists, and
+     * finally merged into this index. Rows whose id already exists get their keywords added one by one afterwards
+     * @param rows rows to add
+     * @param pool pool running the tasks
+     */
+    @RequiresApi(21)
+    public void addAllFieldData(RowSource rows, ForkJoinPool pool) {
+        // assign the ordinals of the new rows up front, so each shard knows its range
+        int firstOrdinal = this.ids.size();
+        int[] newRows = new int[rows.size()];
+        int newCount = 0;
+        List<Integer> existingRows = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            String trieId = rows.getId(i);
+            if (this.ordinals.containsKey(trieId)) {
+                existingRows.add(i);
+            } else {
+                this.ordinals.put(trieId, this.ids.size());
+                this.ids.add(trieId);
+                newRows[newCount++] = i;
+            }
+        }
+        ensureFieldLengthsCapacity(this.ids.size());
+        this.generation++;
 
-        // iterate through all tries
-        for (String trieKey: this.tries.keySet()) {
-            // if current trie has a pMatch, add the Trie key to matches
-            if (this.tries.get(trieKey) != null && this.tries.get(trieKey).pMatch(query)) {
-                matches.add(trieKey);
+        if (newCount > 0) {
+            Shard shard = pool.invoke(new BuildTask(rows, newRows, 0, newCount, firstOrdinal, this.ngrams != null));
+            // a root shared with another version of the index is copied before being modified
+            if (this.root.owner != this.owner) {
+                this.root = this.root.copy(this.owner);
+            }
+            this.root.merge(shard.root);
+            for (int field = 0; field < this.fieldWeights.length; field++) {
+                this.fieldLengthTotals[field] += shard.fieldLengthTotals[field];
+            }
+            if (this.ngrams != null) {
+                for (String word : shard.words) {
+                    this.ngrams.addWord(word);
+                }
             }
         }
+        for (int i : existingRows) {
+            addFieldData(rows.getId(i), rows.getFieldKeywords(i));
+        }
+    }
 
-        // return the result
-        return matches;
+    /**
+     * Part of the index built by a task of a bulk load, covering consecutive ordinals
+     */
+    private static final class Shard {
+        // Trie of the shard's rows
+        final TrieNode root;
+        // number of words in each field over the shard's rows
+        final long[] fieldLengthTotals;
+        // distinct lower case words, for the trigram index, null if it isn't enabled
+        final Set<String> words;
+
+        Shard(Object owner, int fields, boolean collectWords) {
+            this.root = new TrieNode(owner);
+            this.fieldLengthTotals = new long[fields];
+            this.words = collectWords ? new HashSet<>() : null;
+        }
+
+        /**
+         * Merge the shard covering the ordinals following this shard's ordinals
+         * @param next next shard, must not be used anymore
+         */
+        void merge(Shard next) {
+            this.root.merge(next.root);
+            for (int field = 0; field < this.fieldLengthTotals.length; field++) {
+                this.fieldLengthTotals[field] += next.fieldLengthTotals[field];
+            }
+            if (this.words != null) {
+                this.words.addAll(next.words);
+            }
+        }
     }
 
     /**
-     * eMatch - Exact Match
-     * Method performs a search to find an exact match of the query provided in all tries
-     * @param query string representing characters to be found
-     * @return list of string values identifying the TriesSearch in which matches were found, empty list if no matches
+     * Task indexing a range of the new rows of a bulk load, split in two halves until small enough
      */
-    public List<String> eMatch(String query) {
-        // ensure we have valid data & query
-        if (this.tries == null || this.tries.isEmpty() || query == null || query.isEmpty())
-            return null;
+    @RequiresApi(21)
+    private final class BuildTask extends RecursiveTask<Shard> {
+        // tasks are never serialized, declared since ForkJoinTask is Serializable
+        private static final long serialVersionUID = 1L;
 
-        // list to store matches
-        List<String> matches = new ArrayList<>();
+        private final RowSource rows;
+        // index in rows of each new row, the new row at index i gets ordinal firstOrdinal + i
+        private final int[] newRows;
+        private final int from;
+        private final int to;
+        private final int firstOrdinal;
+        private final boolean collectWords;
+
+        BuildTask(RowSource rows, int[] newRows, int from, int to, int firstOrdinal, boolean collectWords) {
+            this.rows = rows;
+            this.newRows = newRows;
+            this.from = from;
+            this.to = to;
+            this.firstOrdinal = firstOrdinal;
+            this.collectWords = collectWords;
+        }
 
-        // iterate through all tries
-        for (String trieKey: this.tries.keySet()) {
-            // if current trie has a eMatch, add the Trie key to matches
-            if (this.tries.get(trieKey) != null && this.tries.get(trieKey).eMatch(query)) {
-                matches.add(trieKey);
+        @Override
+        protected Shard compute() {
+            if (to - from <= BULK_SHARD_SIZE) {
+                return build();
             }
+            int middle = (from + to) >>> 1;
+            BuildTask right = new BuildTask(rows, newRows, middle, to, firstOrdinal, collectWords);
+            right.fork();
+            Shard shard = new BuildTask(rows, newRows, from, middle, firstOrdinal, collectWords).compute();
+            // the right half holds the larger ordinals, so its posting lists are appended
+            shard.merge(right.join());
+            return shard;
         }
 
-        // return the result
+        private Shard build() {
+            int fields = fieldWeights.length;
+            Shard shard = new Shard(owner, fields, collectWords);
+            for (int i = from; i < to; i++) {
+                int ordinal = firstOrdinal + i;
+                List<List<String>> fieldKeywords = rows.getFieldKeywords(newRows[i]);
+                if (fieldKeywords.size() > fields) {
+                    throw new IllegalArgumentException("Too many fields: " + fieldKeywords.size());
+                }
+                for (int field = 0; field < fieldKeywords.size(); field++) {
+                    List<String> keywords = fieldKeywords.get(field);
+                    if (keywords == null) {
+                        continue;
+                    }
+                    for (String keyword : keywords) {
+                        if (keyword != null && !keyword.isEmpty()) {
+                            shard.root.insert(keyword, ordinal, field);
+                            if (shard.words != null) {
+                                shard.words.add(keyword.toLowerCase(Locale.ROOT));
+                            }
+                            for (String synonym : getSynonyms(keyword)) {
+                                shard.root.insertSynonym(synonym, ordinal, field);
+                                if (shard.words != null) {
+                                    shard.words.add(synonym);
+                                }
+                            }
+                            // each task writes the lengths of its own rows only
+                            fieldLengths[ordinal * fields + field]++;
+                            shard.fieldLengthTotals[field]++;
+                        }
+                    }
+                }
+            }
+            return shard;
+        }
+    }
+
+    /**
+     * @param keyword keyword of a row
+     * @return synonyms the row is also indexed under, empty if none
+     */
+    private String[] getSynonyms(String keyword) {
+        return (this.synonyms == null) ? NO_SYNONYMS : this.synonyms.getSynonyms(keyword.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Add values of a facet to a row, so queries can be filtered on them (see FacetFilter)
+     * Updating a row's keywords drops its facet values, they must be added again
+     * @param trieId id of the row
+     * @param facet name of the facet (ex: "cuisine")
+     * @param values values of the facet for the row (ex: "italian"), matched ignoring case
+     * @return true if the row exists
+     */
+    public boolean addFacetValues(String trieId, String facet, Collection<String> values) {
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            return false;
+        }
+        this.facets.add(ordinal, facet, values);
+        this.generation++;
+        return true;
+    }
+
+    /**
+     * Set the value of a numeric attribute of a row, so queries can be filtered on a range of values
+     * (see FacetFilter.requireRange) and rows listed in value order (see topMatchesByValue)
+     * Updating a row's keywords drops its values, they must be set again
+     * @param trieId id of the row
+     * @param attribute name of the attribute (ex: "price")
+     * @param value value of the attribute for the row, not NaN
+     * @return true if the row exists
+     */
+    public boolean addValue(String trieId, String attribute, double value) {
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            return false;
+        }
+        RangeIndex range = this.ranges.get(attribute);
+        if (range == null) {
+            range = new RangeIndex();
+            this.ranges.put(attribute, range);
+        }
+        range.add(ordinal, value);
+        this.generation++;
+        return true;
+    }
+
+    /**
+     * Sort the values set since the last sort (see addValue), so searching the index doesn't modify it anymore
+     * Values are sorted once per batch of rows rather than once per row; an index must be sorted before being
+     * searched by other threads than the one modifying it
+     */
+    public void sortValues() {
+        for (RangeIndex range : this.ranges.values()) {
+            range.sort();
+        }
+    }
+
+    /**
+     * Get the sorted values of a numeric attribute, sorting the values set since the last sort
+     * @param attribute name of the attribute
+     * @return values of the rows, null if no row has a value
+     */
+    RangeIndex getRange(String attribute) {
+        RangeIndex range = this.ranges.get(attribute);
+        if (range != null) {
+            range.sort();
+        }
+        return range;
+    }
+
+    /**
+     * Record the words of a row in the order they appear, with their offsets in the row's texts, so the row can
+     * match phrase queries (see phraseMatch) and tell which characters match a query (see getHighlights)
+     * Updating a row's keywords drops its positions, they must be added again
+     * @param trieId id of the row
+     * @param fieldTexts text of each field the row's keywords were extracted from, in the order of the field weights
+     * @param analyzer analysis chain the keywords were extracted with, ex: Analyzer.INDEX
+     * @return true if the row exists
+     */
+    public boolean addPositions(String trieId, List<String> fieldTexts, Analyzer analyzer) {
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            return false;
+        }
+        this.positions.set(ordinal, PositionIndex.tokenize(fieldTexts, analyzer));
+        this.generation++;
+        return true;
+    }
+
+    /**
+     * Put a row in a shard, so queries can visit the rows closest to the client first (see topMatchesNearestFirst)
+     * Updating a row's keywords drops its shard, it must be set again
+     * @param trieId id of the row
+     * @param shard key of the shard (ex: "K1N", the postal district of a meal's chef)
+     * @return true if the row exists
+     */
+    public boolean setShard(String trieId, String shard) {
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            return false;
+        }
+        this.shards.set(ordinal, shard);
+        this.generation++;
+        return true;
+    }
+
+    /**
+     * Count the rows having each value of a facet, among the rows allowed by a filter
+     * Counts are computed on the facet bitmaps, the rows themselves are never scanned
+     * @param facet name of the facet
+     * @param filter facet values the rows must have or must not have, null to count every row
+     * @return number of rows having each value, values sorted alphabetically, values no row has are left out
+     */
+    public Map<String, Integer> getFacetCounts(String facet, FacetFilter filter) {
+        BitSet rows = getAllowedRows(filter);
+        if (rows == null) {
+            // every row which wasn't removed
+            rows = new BitSet(this.ids.size());
+            rows.set(0, this.ids.size());
+            rows.andNot(this.deleted);
+        }
+        return this.facets.getCounts(facet, rows);
+    }
+
+    /**
+     * Find the rows allowed by a filter, whatever their keywords
+     * @param filter facet values the rows must have or must not have
+     * @return list of string values identifying the allowed rows, in index order
+     */
+    public List<String> filter(FacetFilter filter) {
+        BitSet allowed = getAllowedRows(filter);
+        if (allowed == null) {
+            // every row, removed rows are left out below
+            allowed = new BitSet(this.ids.size());
+            allowed.set(0, this.ids.size());
+        }
+        int[] ordinals = toOrdinals(allowed);
+        return toIds(ordinals, ordinals.length);
+    }
+
+    /**
+     * Get the rows allowed by a filter
+     * @param filter facet values the rows must have or must not have, may be null
+     * @return rows allowed by the filter, removed rows excluded, null if the filter allows every row
+     */
+    BitSet getAllowedRows(FacetFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        BitSet allowed = this.facets.filter(filter, this.ids.size());
+        // rows must also be within every range, found by binary search in the sorted values
+        for (Map.Entry<String, double[]> range : filter.ranges.entrySet()) {
+            BitSet rangeRows = new BitSet(this.ids.size());
+            RangeIndex rangeIndex = getRange(range.getKey());
+            if (rangeIndex != null) {
+                rangeIndex.range(range.getValue()[0], range.getValue()[1], rangeRows);
+            }
+            allowed.and(rangeRows);
+        }
+        allowed.andNot(this.deleted);
+        return allowed;
+    }
+
+    /**
+     * Replace the keywords of a row
+     * @param trieId id of the row, added if it doesn't exist
+     * @param keywords list of string keywords
+     */
+    public void update(String trieId, List<String> keywords) {
+        updateFieldData(trieId, Collections.singletonList(keywords));
+    }
+
+    /**
+     * Replace the keywords of each field of a row
+     * @param trieId id of the row, added if it doesn't exist
+     * @param fieldKeywords list of string keywords for each field, in the order of the field weights
+     */
+    public void updateFieldData(String trieId, List<List<String>> fieldKeywords) {
+        // the old row is tombstoned and the new keywords indexed under a new ordinal
+        remove(trieId);
+        addFieldData(trieId, fieldKeywords);
+    }
+
+    /**
+     * Remove a row, it is no longer returned by any query
+     * The row is only marked as removed; its postings are dropped when the index is compacted
+     * @param trieId id of the row
+     * @return true if the row existed
+     */
+    public boolean remove(String trieId) {
+        Integer ordinal = this.ordinals.remove(trieId);
+        if (ordinal == null) {
+            return false;
+        }
+        this.deleted.set(ordinal);
+        this.deletedCount++;
+        this.positions.remove(ordinal);
+        // the row no longer counts towards the average field lengths
+        int fields = this.fieldWeights.length;
+        for (int field = 0; field < fields; field++) {
+            this.fieldLengthTotals[field] -= this.fieldLengths[ordinal * fields + field];
+            this.fieldLengths[ordinal * fields + field] = 0;
+        }
+        this.generation++;
+        return true;
+    }
+
+    /**
+     * @return true once enough rows were removed that the index should be compacted
+     */
+    public boolean needsCompaction() {
+        return this.deletedCount >= COMPACTION_MIN_DELETED
+                && this.deletedCount >= COMPACTION_DELETED_RATIO * this.ids.size();
+    }
+
+    /**
+     * Drop the postings of removed rows and renumber the remaining rows, so ordinals are dense again
+     * The compacted Trie is built next to the current one, which is left untouched
+     */
+    public void compact() {
+        if (this.deletedCount == 0) {
+            return;
+        }
+        int fields = this.fieldWeights.length;
+        int rows = size();
+        // new ordinal of each current ordinal, -1 for removed rows
+        int[] newOrdinals = new int[this.ids.size()];
+        List<String> newIds = new ArrayList<>(rows);
+        Map<String, Integer> newOrdinalMap = new HashMap<>(rows);
+        int[] newFieldLengths = new int[Math.max(rows, 1) * fields];
+        for (int ordinal = 0; ordinal < this.ids.size(); ordinal++) {
+            if (this.deleted.get(ordinal)) {
+                newOrdinals[ordinal] = -1;
+                continue;
+            }
+            int newOrdinal = newIds.size();
+            newOrdinals[ordinal] = newOrdinal;
+            newIds.add(this.ids.get(ordinal));
+            newOrdinalMap.put(this.ids.get(ordinal), newOrdinal);
+            System.arraycopy(this.fieldLengths, ordinal * fields, newFieldLengths, newOrdinal * fields, fields);
+        }
+        // compaction renumbers every posting, frozen ones included
+        thaw();
+        TrieNode newRoot = this.root.compact(newOrdinals, this.owner);
+
+        this.root = (newRoot == null) ? new TrieNode(this.owner) : newRoot;
+        // popularities counted removed rows until now
+        this.root.updateBestPopularity();
+        this.ids = newIds;
+        this.ordinals = newOrdinalMap;
+        this.fieldLengths = newFieldLengths;
+        this.deleted = new BitSet();
+        this.deletedCount = 0;
+        this.generation++;
+        // drop the words no row contains anymore
+        if (this.ngrams != null) {
+            this.ngrams = NGramIndex.build(this.root);
+        }
+        this.facets = this.facets.remap(newOrdinals);
+        Map<String, RangeIndex> newRanges = new HashMap<>();
+        for (Map.Entry<String, RangeIndex> range : this.ranges.entrySet()) {
+            newRanges.put(range.getKey(), range.getValue().remap(newOrdinals));
+        }
+        this.ranges = newRanges;
+        this.positions = this.positions.remap(newOrdinals);
+        this.shards = this.shards.remap(newOrdinals);
+    }
+
+    /**
+     * @return number of removed rows waiting for compaction
+     */
+    public int getDeletedCount() {
+        return this.deletedCount;
+    }
+
+    /**
+     * Remove the ordinals of removed rows from a sorted array
+     * @param ordinals sorted row ordinals
+     * @param length number of valid ordinals in the array
+     * @return ordinals of rows which weren't removed, the array itself if there is nothing to remove
+     */
+    int[] withoutDeleted(int[] ordinals, int length) {
+        if (this.deletedCount == 0) {
+            return (length == ordinals.length) ? ordinals : Arrays.copyOf(ordinals, length);
+        }
+        int[] result = new int[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (!this.deleted.get(ordinals[i])) {
+                result[count++] = ordinals[i];
+            }
+        }
+        return (count == length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Remove the ordinals of removed rows from a posting list
+     * @param postings posting list, which may be a view (see PostingList)
+     * @return ordinals of rows which weren't removed, the list's own array if there is nothing to remove
+     */
+    int[] withoutDeleted(PostingList postings) {
+        if (!postings.isView()) {
+            return withoutDeleted(postings.ordinals, postings.size());
+        }
+        int[] result = new int[postings.size()];
+        int count = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            if (this.deletedCount == 0 || !this.deleted.get(postings.get(i))) {
+                result[count++] = postings.get(i);
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    private void ensureFieldLengthsCapacity(int rows) {
+        if (rows * this.fieldWeights.length > this.fieldLengths.length) {
+            this.fieldLengths = Arrays.copyOf(this.fieldLengths, Math.max(rows, this.fieldLengths.length / this.fieldWeights.length * 2) * this.fieldWeights.length);
+        }
+    }
+
+    /**
+     * @return number of rows indexed, removed rows excluded
+     */
+    public int size() {
+        return this.ids.size() - this.deletedCount;
+    }
+
+    /**
+     * Check if a row was indexed
+     * @param trieId id of the row
+     * @return true if the index has a row with this id
+     */
+    public boolean contains(String trieId) {
+        return this.ordinals.containsKey(trieId);
+    }
+
+    /**
+     * @return the current generation of the data, which changes every time data is added or removed
+     */
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Create a search-as-you-type cursor over this index
+     * @param mode how the terms of a query are combined
+     * @return a new cursor
+     */
+    public SearchCursor newCursor(QueryMode mode) {
+        return new SearchCursor(this, mode);
+    }
+
+    /**
+     * Estimate the heap used by the index (Trie, posting lists and id mappings), in bytes
+     * @return estimated size in bytes
+     */
+    public long getEstimatedMemoryBytes() {
+        // each id is held by the list and the map: list slot + map entry + boxed ordinal
+        long idBytes = this.ids.size() * (4L + 48L + 16L);
+        // plus the field lengths used for scoring, the trigram index, the frozen dictionary, the facet bitmaps,
+        // the sorted values, the positions and the shards
+        long ngramBytes = (this.ngrams == null) ? 0 : this.ngrams.estimateBytes();
+        long frozenBytes = (this.frozen == null) ? 0 : this.frozen.estimateBytes();
+        long rangeBytes = 0;
+        for (RangeIndex range : this.ranges.values()) {
+            rangeBytes += range.estimateBytes();
+        }
+        return this.root.estimateBytes() + idBytes + 4L * this.fieldLengths.length + ngramBytes + frozenBytes
+                + this.facets.estimateBytes() + rangeBytes + this.positions.estimateBytes()
+                + this.shards.estimateBytes();
+    }
+
+    /**
+     * Estimate the heap used by the index per row indexed, in bytes
+     * @return estimated bytes per row, 0 if there are no rows
+     */
+    public long getEstimatedBytesPerItem() {
+        return (size() == 0) ? 0 : getEstimatedMemoryBytes() / size();
+    }
+
+    /**
+     * pMatch - Pattern Match
+     * Method performs a non-exact search of a query in all rows
+     * @param query string representing characters to be found
+     * @return list of string values identifying the rows in which matches were found, empty list if no matches
+     */
+    public List<String> pMatch(String query) {
+        // ensure we have valid data & query
+        if (size() == 0 || query == null || query.isEmpty())
+            return null;
+
+        // follow the query down the shared Trie, the node reached holds all matching rows
+        TrieNode node = this.root.find(query.toLowerCase(Locale.ROOT));
+
+        // return the result
+        return (node == null) ? new ArrayList<>() : toIds(node.postings);
+    }
+
+    /**
+     * pMatch - Pattern Match for a query made of several terms
+     * Each term is matched as a prefix; the rows matching each term are then intersected (AND) or merged (OR)
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @return list of string values identifying the rows in which matches were found, empty list if no matches
+     */
+    public List<String> pMatch(List<String> terms, QueryMode mode) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        // return the result
+        int[] matches = matchOrdinals(terms, mode);
+        return toIds(matches, matches.length);
+    }
+
+    /**
+     * Find the ordinals of rows matching a multi-term query
+     * @param terms list of query terms, each matched as a prefix
+     * @param mode how to combine the rows matching each term
+     * @return sorted array of matching row ordinals
+     */
+    int[] matchOrdinals(List<String> terms, QueryMode mode) {
+        // get the posting list of every term
+        List<PostingList> termPostings = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            PostingList postings = getTermPostings(term.toLowerCase(Locale.ROOT));
+            if (postings == null || postings.size() == 0) {
+                // a term without matches empties an AND query, and adds nothing to an OR query
+                if (mode == QueryMode.AND) {
+                    return PostingLists.EMPTY;
+                }
+            } else {
+                termPostings.add(postings);
+            }
+        }
+        if (termPostings.isEmpty()) {
+            return PostingLists.EMPTY;
+        }
+
+        if (mode == QueryMode.AND) {
+            // intersect starting from the shortest list, so intermediate results stay small
+            Collections.sort(termPostings, (p1, p2) -> Integer.compare(p1.size(), p2.size()));
+            PostingList shortest = termPostings.get(0);
+            // removed rows are dropped first, so they are never intersected
+            int[] result = withoutDeleted(shortest);
+            for (int i = 1; i < termPostings.size() && result.length > 0; i++) {
+                result = PostingLists.intersect(result, result.length, termPostings.get(i));
+            }
+            return result;
+        } else {
+            int[] result = PostingLists.EMPTY;
+            for (PostingList postings : termPostings) {
+                result = PostingLists.union(result, result.length, postings);
+            }
+            return withoutDeleted(result, result.length);
+        }
+    }
+
+    /**
+     * Phrase Match - find the rows holding the terms of a query as adjacent words of a field, in order
+     * (ex: "butter chicken" but not "chicken in butter sauce"). Only rows whose positions were added can match
+     * @param terms terms of the phrase in order, each matched as a prefix
+     * @return list of string values identifying the matching rows, in index order, null if no data or no terms
+     */
+    public List<String> phraseMatch(List<String> terms) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        int[] matches = phraseMatchOrdinals(terms);
+        return toIds(matches, matches.length);
+    }
+
+    /**
+     * Find the best rows allowed by a filter holding the terms of a phrase as adjacent words, ranked by relevance
+     * @param terms terms of the phrase in order, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     */
+    public List<String> topPhraseMatches(List<String> terms, int k, Comparator<String> tieBreaker, FacetFilter filter) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        return rank(phraseMatchOrdinals(terms), terms, k, tieBreaker, getAllowedRows(filter));
+    }
+
+    /**
+     * Find the ordinals of rows holding a phrase: the rows holding every term are found in the Trie,
+     * then only their position lists are merged
+     * @param terms terms of the phrase in order, each matched as a prefix
+     * @return sorted array of matching row ordinals
+     */
+    int[] phraseMatchOrdinals(List<String> terms) {
+        int[] candidates = matchOrdinals(terms, QueryMode.AND);
+        // candidates may be a posting list's own array, it is left untouched
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int ordinal : candidates) {
+            if (this.positions.matchesPhrase(ordinal, terms, -1)) {
+                matches[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Find the characters of a row matching a query, ex: to highlight them where the row is displayed
+     * Offsets come from the row's positions, the row's texts aren't searched again
+     * @param trieId id of the row
+     * @param terms query terms, each matched as a prefix
+     * @param phrase true to highlight the terms only where they appear as a phrase (see phraseMatch),
+     *               false to highlight every word matching a term
+     * @return highlights sorted by field then offset, empty if the row doesn't exist or has no positions
+     */
+    public List<Highlight> getHighlights(String trieId, List<String> terms, boolean phrase) {
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null || terms == null) {
+            return new ArrayList<>();
+        }
+        return this.positions.highlight(ordinal, terms, phrase, -1);
+    }
+
+    /**
+     * Find the characters of a row matching the clauses of a parsed query, ex: to highlight them where the row
+     * is displayed. Field clauses only highlight their field, negated and range clauses highlight nothing
+     * @param trieId id of the row
+     * @param query parsed query
+     * @return highlights sorted by field then offset, empty if the row doesn't exist or has no positions
+     */
+    public List<Highlight> getHighlights(String trieId, SearchQuery query) {
+        List<Highlight> highlights = new ArrayList<>();
+        Integer ordinal = this.ordinals.get(trieId);
+        if (ordinal == null) {
+            return highlights;
+        }
+        for (SearchQuery.Clause clause : query.getClauses()) {
+            if (!clause.isNegated()) {
+                highlights.addAll(clause.highlight(this, ordinal));
+            }
+        }
+        Collections.sort(highlights, HIGHLIGHT_ORDER);
+        return highlights;
+    }
+
+    /**
+     * Plan the evaluation of a parsed query on this index (see QueryPlan)
+     * This index must not be modified while the plan is executed
+     * @param query parsed query
+     * @return plan of the query, ready to be executed
+     */
+    public QueryPlan plan(SearchQuery query) {
+        return new QueryPlan(this, query);
+    }
+
+    /**
+     * fMatch - Fuzzy Match
+     * Method performs a typo-tolerant search: each term matches words starting with a prefix within a few
+     * edits of the term (see getMaxEdits). Results include the rows an exact pMatch would return
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @return list of string values identifying the rows in which matches were found, empty list if no matches
+     */
+    public List<String> fMatch(List<String> terms, QueryMode mode) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        // return the result
+        int[] matches = fuzzyMatchOrdinals(terms, mode, FUZZY_NODE_BUDGET);
+        return toIds(matches, matches.length);
+    }
+
+    /**
+     * Get the number of edits tolerated for a term, longer terms tolerate more typos
+     * @param termLength number of characters in the term
+     * @return maximum number of edits
+     */
+    public static int getMaxEdits(int termLength) {
+        if (termLength < 3) {
+            // too short, any edit would match almost everything
+            return 0;
+        }
+        return (termLength <= 5) ? 1 : 2;
+    }
+
+    /**
+     * Find the ordinals of rows matching a multi-term query approximately
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @param nodeBudget maximum number of Trie nodes visited by the whole query
+     * @return sorted array of matching row ordinals
+     */
+    int[] fuzzyMatchOrdinals(List<String> terms, QueryMode mode, int nodeBudget) {
+        BitSet result = null;
+        // remaining node budget, shared by all terms
+        int[] budget = {nodeBudget};
+        for (String term : terms) {
+            BitSet termMatches = new BitSet(this.ids.size());
+            int maxEdits = getMaxEdits(term.length());
+            if (maxEdits == 0) {
+                // exact prefix match only
+                addAll(termMatches, getTermPostings(term.toLowerCase(Locale.ROOT)));
+            } else {
+                // walk the Levenshtein automaton along the Trie
+                LevenshteinAutomaton automaton = new LevenshteinAutomaton(term, maxEdits);
+                collectFuzzyMatches(this.root, automaton, automaton.start(), 0, termMatches, budget);
+            }
+            if (result == null) {
+                result = termMatches;
+            } else if (mode == QueryMode.AND) {
+                result.and(termMatches);
+            } else {
+                result.or(termMatches);
+            }
+        }
+        return toOrdinals(result);
+    }
+
+    /**
+     * Convert a set of matching rows to a sorted array of ordinals, leaving out removed rows
+     * @param matches set of row ordinals, may be null
+     * @return sorted array of ordinals
+     */
+    private int[] toOrdinals(BitSet matches) {
+        if (matches == null) {
+            return PostingLists.EMPTY;
+        }
+        matches.andNot(this.deleted);
+        // bits are visited in increasing order, so the array is sorted
+        int[] ordinals = new int[matches.cardinality()];
+        int count = 0;
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            ordinals[count++] = i;
+        }
+        return ordinals;
+    }
+
+    /**
+     * Collect the rows of every node whose path is within the automaton's edit distance of the query
+     * @param node current node
+     * @param automaton automaton for the query term
+     * @param state automaton state after consuming the path to the current node
+     * @param depth length of the path to the current node
+     * @param matches set of matching row ordinals
+     * @param budget remaining number of nodes which may be visited
+     */
+    private void collectFuzzyMatches(TrieNode node, LevenshteinAutomaton automaton, int[] state, int depth,
+                                     BitSet matches, int[] budget) {
+        for (int i = 0; i < node.childCount && budget[0] > 0; i++) {
+            budget[0]--;
+            TrieNode child = node.childNodes[i];
+            int[] childState = automaton.step(state, node.keys[i], depth);
+            if (automaton.isMatch(childState)) {
+                // every word below this node starts with a matching prefix
+                addAll(matches, child.postings);
+            } else if (automaton.canMatch(childState)) {
+                collectFuzzyMatches(child, automaton, childState, depth + 1, matches, budget);
+            }
+        }
+    }
+
+    private static void addAll(BitSet set, PostingList postings) {
+        if (postings != null) {
+            for (int i = 0; i < postings.size(); i++) {
+                set.set(postings.get(i));
+            }
+        }
+    }
+
+    /**
+     * sMatch - Substring Match
+     * Method performs an infix search: each term matches words containing it anywhere ("burger" matches
+     * "cheeseburger"). Terms shorter than NGramIndex.GRAM_LENGTH are matched as prefixes.
+     * Results include the rows an exact pMatch would return
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @return list of string values identifying the rows in which matches were found, empty list if no matches
+     * @throws IllegalStateException if substring search isn't enabled
+     */
+    public List<String> sMatch(List<String> terms, QueryMode mode) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        // return the result
+        int[] matches = substringMatchOrdinals(terms, mode);
+        return toIds(matches, matches.length);
+    }
+
+    /**
+     * Find the ordinals of rows matching a multi-term query, each term matched as a substring of words
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @return sorted array of matching row ordinals
+     */
+    int[] substringMatchOrdinals(List<String> terms, QueryMode mode) {
+        if (this.ngrams == null) {
+            throw new IllegalStateException("Substring search is not enabled");
+        }
+        BitSet result = null;
+        for (String term : terms) {
+            term = term.toLowerCase(Locale.ROOT);
+            BitSet termMatches = new BitSet(this.ids.size());
+            if (term.length() < NGramIndex.GRAM_LENGTH) {
+                // too short to be looked up by trigrams, and would match almost every word anyway
+                TrieNode node = this.root.find(term);
+                addAll(termMatches, node == null ? null : node.postings);
+            } else {
+                // rows containing each word which contains the term
+                for (String word : this.ngrams.getWordsContaining(term)) {
+                    TrieNode node = this.root.find(word);
+                    addAll(termMatches, node == null ? null : getWordPostings(node, word));
+                }
+            }
+            if (result == null) {
+                result = termMatches;
+            } else if (mode == QueryMode.AND) {
+                result.and(termMatches);
+            } else {
+                result.or(termMatches);
+            }
+        }
+        return toOrdinals(result);
+    }
+
+    /**
+     * Find the best rows matching a multi-term query only when matching terms anywhere in words, ranked by relevance
+     * Rows returned by topMatches for the same query are excluded, so these rows can be listed after them
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     * @throws IllegalStateException if substring search isn't enabled
+     */
+    public List<String> topSubstringMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker) {
+        return topSubstringMatches(terms, mode, k, tieBreaker, null);
+    }
+
+    /**
+     * Find the best rows allowed by a filter matching a multi-term query only when matching terms anywhere in words
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     * @throws IllegalStateException if substring search isn't enabled
+     */
+    public List<String> topSubstringMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker,
+                                            FacetFilter filter) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        int[] substringMatches = substringMatchOrdinals(terms, mode);
+        int[] exactMatches = matchOrdinals(terms, mode);
+        return rank(PostingLists.difference(substringMatches, substringMatches.length, exactMatches, exactMatches.length),
+                terms, k, tieBreaker, getAllowedRows(filter));
+    }
+
+    /**
+     * Find the best rows matching a multi-term query, ranked by relevance
+     * Rows are scored with BM25F: matches in heavily weighted and short fields, and matches of rare terms,
+     * score higher. Only the k best rows are kept while scoring, the full list of matches is never sorted
+     * @param terms list of query terms, each matched as a prefix
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     */
+    public List<String> topMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker) {
+        return topMatches(terms, mode, k, tieBreaker, null);
+    }
+
+    /**
+     * Find the best rows allowed by a filter matching a multi-term query, ranked by relevance
+     * @param terms list of query terms, each matched as a prefix
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     */
+    public List<String> topMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker,
+                                   FacetFilter filter) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        return rank(matchOrdinals(terms, mode), terms, k, tieBreaker, getAllowedRows(filter));
+    }
+
+    /**
+     * Find the best rows allowed by a filter matching every term of a query, visiting the shards closest to the
+     * client first (see setShard). Shards at the same distance form a ring; the rows of a ring are ranked by
+     * relevance and listed before the rows of farther rings, and farther rings are never visited once k rows were
+     * found. The matches of a ring are found by intersecting its rows with the posting lists of the terms, so the
+     * cost of a query depends on the number of rows close to the client rather than on the size of the index.
+     * Rows without a shard are listed last
+     * @param terms list of query terms, each matched as a prefix
+     * @param k maximum number of rows returned
+     * @param distance distance from the client to each shard
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, nearest first then best first,
+     *         null if no data or no terms
+     */
+    public List<String> topMatchesNearestFirst(List<String> terms, int k, ShardIndex.Distance distance,
+                                               Comparator<String> tieBreaker, FacetFilter filter) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        // get the posting list of every term, a term without matches empties the query
+        List<PostingList> termPostings = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            PostingList postings = getTermPostings(term.toLowerCase(Locale.ROOT));
+            if (postings == null || postings.size() == 0) {
+                return new ArrayList<>();
+            }
+            termPostings.add(postings);
+        }
+        // intersect with the shortest lists first, so intermediate results stay small
+        Collections.sort(termPostings, (p1, p2) -> Integer.compare(p1.size(), p2.size()));
+        return topMatchesNearestFirst(termPostings.toArray(new PostingList[0]), terms, k, distance, tieBreaker,
+                getAllowedRows(filter));
+    }
+
+    /**
+     * Find the best rows among the rows known to match a query, visiting the shards closest to the client first
+     * (see topMatchesNearestFirst), ex: the matches a search cursor narrowed from the previous query
+     * @param candidates sorted ordinals of the rows matching the query, removed rows left out
+     * @param terms list of query terms, to rank the rows
+     * @param k maximum number of rows returned
+     * @param distance distance from the client to each shard
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param allowedRows rows allowed by the filter, null for no filter
+     * @return list of string values identifying the best rows, nearest first then best first
+     */
+    List<String> topMatchesNearestFirst(int[] candidates, List<String> terms, int k, ShardIndex.Distance distance,
+                                        Comparator<String> tieBreaker, BitSet allowedRows) {
+        // the candidates have no payloads, which ranking doesn't read from the match lists
+        PostingList matches = new PostingList(candidates, null, candidates.length);
+        return topMatchesNearestFirst(new PostingList[]{matches}, terms, k, distance, tieBreaker, allowedRows);
+    }
+
+    /**
+     * Walk the rings of shards nearest first, ranking the rows of each ring found in every list of matches
+     * @param matchLists rows matching each term, or the rows matching the whole query
+     */
+    private List<String> topMatchesNearestFirst(PostingList[] matchLists, List<String> terms, int k,
+                                                ShardIndex.Distance distance, Comparator<String> tieBreaker,
+                                                BitSet allowedRows) {
+        List<String> matches = new ArrayList<>();
+        for (List<PostingList> ring : this.shards.getRings(distance)) {
+            int[] candidates = PostingLists.EMPTY;
+            for (PostingList shard : ring) {
+                // removed rows are dropped first, so they are never intersected
+                int[] shardMatches = withoutDeleted(shard);
+                for (int i = 0; i < matchLists.length && shardMatches.length > 0; i++) {
+                    shardMatches = PostingLists.intersect(shardMatches, shardMatches.length, matchLists[i]);
+                }
+                candidates = PostingLists.union(candidates, candidates.length, shardMatches, shardMatches.length);
+            }
+            if (candidates.length > 0) {
+                matches.addAll(rank(candidates, terms, k - matches.size(), tieBreaker, allowedRows));
+            }
+            // the page is full, farther shards can't rank above the rows found
+            if (matches.size() >= k) {
+                return matches;
+            }
+        }
+        // every shard was visited, only then are rows without a shard searched
+        if (this.shards.size() < this.ids.size()) {
+            int[] unsharded = withoutDeleted(matchLists[0]);
+            for (int i = 1; i < matchLists.length && unsharded.length > 0; i++) {
+                unsharded = PostingLists.intersect(unsharded, unsharded.length, matchLists[i]);
+            }
+            // the matches may be the caller's array, they are copied rather than filtered in place
+            int[] withoutShard = new int[unsharded.length];
+            int count = 0;
+            for (int ordinal : unsharded) {
+                if (this.shards.getShard(ordinal) == null) {
+                    withoutShard[count++] = ordinal;
+                }
+            }
+            matches.addAll(rank(Arrays.copyOf(withoutShard, count), terms, k - matches.size(), tieBreaker, allowedRows));
+        }
+        return matches;
+    }
+
+    /**
+     * Find the rows allowed by a filter matching a multi-term query, in the order of a numeric attribute
+     * (ex: cheapest first) rather than by relevance. Rows are collected walking the sorted values of the attribute,
+     * so nothing is sorted while answering the query. Rows without a value of the attribute are left out
+     * @param terms list of query terms, each matched as a prefix, null or empty to list every row
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param attribute name of the attribute to order rows by
+     * @param ascending true for the smallest values first, false for the largest first
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the rows, in value order, null if no data
+     */
+    public List<String> topMatchesByValue(List<String> terms, QueryMode mode, int k, String attribute, boolean ascending,
+                                          FacetFilter filter) {
+        // ensure we have valid data
+        if (size() == 0)
+            return null;
+
+        List<String> matches = new ArrayList<>();
+        RangeIndex rangeIndex = getRange(attribute);
+        if (rangeIndex == null) {
+            return matches;
+        }
+        // rows which may be returned
+        BitSet candidates = getAllowedRows(filter);
+        if (terms != null && !terms.isEmpty()) {
+            BitSet textMatches = new BitSet(this.ids.size());
+            for (int ordinal : matchOrdinals(terms, mode)) {
+                textMatches.set(ordinal);
+            }
+            if (candidates == null) {
+                candidates = textMatches;
+            } else {
+                candidates.and(textMatches);
+            }
+        } else if (candidates == null) {
+            candidates = new BitSet(this.ids.size());
+            candidates.set(0, this.ids.size());
+            candidates.andNot(this.deleted);
+        }
+        for (int i = 0; i < rangeIndex.size && matches.size() < k; i++) {
+            int ordinal = rangeIndex.ordinals[ascending ? i : rangeIndex.size - 1 - i];
+            // a row whose values changed has its old ordinal removed, so each row is listed once
+            if (candidates.get(ordinal)) {
+                matches.add(this.ids.get(ordinal));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the best rows matching a multi-term query only when tolerating typos, ranked by relevance
+     * Rows returned by topMatches for the same query are excluded, so these rows can be listed after them
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     */
+    public List<String> topFuzzyMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker) {
+        return topFuzzyMatches(terms, mode, k, tieBreaker, null);
+    }
+
+    /**
+     * Find the best rows allowed by a filter matching a multi-term query only when tolerating typos
+     * @param terms list of query terms
+     * @param mode how to combine the rows matching each term
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param filter facet values the rows must have or must not have, null for no filter
+     * @return list of string values identifying the best rows, best first, null if no data or no terms
+     */
+    public List<String> topFuzzyMatches(List<String> terms, QueryMode mode, int k, Comparator<String> tieBreaker,
+                                        FacetFilter filter) {
+        // ensure we have valid data & query
+        if (size() == 0 || terms == null || terms.isEmpty())
+            return null;
+
+        int[] fuzzyMatches = fuzzyMatchOrdinals(terms, mode, FUZZY_NODE_BUDGET);
+        int[] exactMatches = matchOrdinals(terms, mode);
+        return rank(PostingLists.difference(fuzzyMatches, fuzzyMatches.length, exactMatches, exactMatches.length),
+                terms, k, tieBreaker, getAllowedRows(filter));
+    }
+
+    /**
+     * Score rows for a query and keep the best ones
+     * @param candidates ordinals of the rows to score
+     * @param terms list of query terms
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @return list of string values identifying the best rows, best first
+     */
+    List<String> rank(int[] candidates, List<String> terms, int k, Comparator<String> tieBreaker) {
+        return rank(candidates, terms, k, tieBreaker, null);
+    }
+
+    /**
+     * Score the rows allowed by a filter for a query and keep the best ones
+     * @param candidates ordinals of the rows to score
+     * @param terms list of query terms
+     * @param k maximum number of rows returned
+     * @param tieBreaker order of rows with equal scores (smaller first), null to keep index order
+     * @param allowedRows rows which may be returned (see getAllowedRows), null if every candidate may be returned
+     * @return list of string values identifying the best rows, best first
+     */
+    List<String> rank(int[] candidates, List<String> terms, int k, Comparator<String> tieBreaker, BitSet allowedRows) {
+        Histogram rankLatencies = this.rankLatencies;
+        long start = (rankLatencies == null) ? 0 : System.nanoTime();
+        // rows filtered out are never scored
+        if (allowedRows != null) {
+            int count = 0;
+            int[] allowed = new int[candidates.length];
+            for (int ordinal : candidates) {
+                if (allowedRows.get(ordinal)) {
+                    allowed[count++] = ordinal;
+                }
+            }
+            candidates = Arrays.copyOf(allowed, count);
+        }
+        // postings and inverse document frequencies of each term, computed once for all candidates
+        PostingList[] termPostings = new PostingList[terms.size()];
+        float[] idfs = new float[terms.size()];
+        int rows = size();
+        for (int i = 0; i < termPostings.length; i++) {
+            PostingList postings = getTermPostings(terms.get(i).toLowerCase(Locale.ROOT));
+            if (postings != null) {
+                termPostings[i] = postings;
+                // postings of removed rows are still counted until compaction, a slight underestimate of the idf
+                int documentFrequency = Math.min(postings.size(), rows);
+                idfs[i] = (float) Math.log(1 + (rows - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            }
+        }
+        // average length of each field
+        float[] averageLengths = new float[this.fieldWeights.length];
+        for (int field = 0; field < averageLengths.length; field++) {
+            averageLengths[field] = Math.max(1f, (float) this.fieldLengthTotals[field] / Math.max(rows, 1));
+        }
+
+        TopK topK = new TopK(Math.min(k, candidates.length), this.ids, tieBreaker);
+        for (int ordinal : candidates) {
+            topK.offer(ordinal, score(ordinal, termPostings, idfs, averageLengths));
+        }
+        int[] best = topK.drain();
+        List<String> result = toIds(best, best.length);
+        if (rankLatencies != null) {
+            rankLatencies.record(System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Compute the BM25F score of a row for a query
+     * @param ordinal row ordinal
+     * @param termPostings rows matching each query term, null if the term has no match
+     * @param idfs inverse document frequency of each term
+     * @param averageLengths average length of each field
+     * @return score of the row, 0 if no term matches it
+     */
+    private float score(int ordinal, PostingList[] termPostings, float[] idfs, float[] averageLengths) {
+        float score = 0;
+        int fields = this.fieldWeights.length;
+        for (int i = 0; i < termPostings.length; i++) {
+            if (termPostings[i] == null) {
+                continue;
+            }
+            PostingList postings = termPostings[i];
+            int index = postings.indexOf(ordinal);
+            if (index < 0) {
+                continue;
+            }
+            // weighted term frequency, each field normalized by its length relative to the average
+            float frequency = 0;
+            for (int field = 0; field < fields; field++) {
+                int fieldFrequency = postings.getFrequency(index, field);
+                if (fieldFrequency > 0) {
+                    float lengthRatio = this.fieldLengths[ordinal * fields + field] / averageLengths[field];
+                    frequency += this.fieldWeights[field] * fieldFrequency / (1 - BM25_B + BM25_B * lengthRatio);
+                }
+            }
+            score += idfs[i] * frequency * (BM25_K1 + 1) / (frequency + BM25_K1);
+        }
+        return score;
+    }
+
+    /**
+     * eMatch - Exact Match
+     * Method performs a search to find an exact match of the query provided in all rows
+     * @param query string representing characters to be found
+     * @return list of string values identifying the rows in which matches were found, empty list if no matches
+     */
+    public List<String> eMatch(String query) {
+        // ensure we have valid data & query
+        if (size() == 0 || query == null || query.isEmpty())
+            return null;
+
+        // follow the query down the shared Trie, only a complete word holds exact matches
+        TrieNode node = this.root.find(query);
+
+        // return the result
+        return (node == null || !node.isCompleteWord) ? new ArrayList<>() : toIds(getWordPostings(node, query));
+    }
+
+    /**
+     * Suggest the most popular words starting with a prefix, to complete the word being typed
+     * A word's popularity is the number of rows containing it plus the number of times it was searched
+     * (see recordSearch). Every node knows the best popularity below it, so the Trie is explored best first
+     * and only the branches leading to the suggested words are visited, never the whole subtree of the prefix
+     * @param prefix characters typed so far
+     * @param n maximum number of suggestions
+     * @return suggested words, most popular first (alphabetical order among equally popular words),
+     *         empty list if no word starts with the prefix
+     */
+    public List<String> suggest(String prefix, int n) {
+        List<String> suggestions = new ArrayList<>();
+        // ensure we have a valid prefix
+        if (prefix == null || prefix.isEmpty() || n <= 0)
+            return suggestions;
+
+        prefix = prefix.toLowerCase(Locale.ROOT);
+        TrieNode start = this.root.find(prefix);
+        if (start == null)
+            return suggestions;
+
+        // a word is suggested once no node left in the queue can lead to a more popular word
+        PriorityQueue<Suggestion> queue = new PriorityQueue<>();
+        queue.add(new Suggestion(prefix, start, start.bestPopularity));
+        while (!queue.isEmpty() && suggestions.size() < n) {
+            Suggestion best = queue.poll();
+            if (best.node == null) {
+                suggestions.add(best.word);
+                continue;
+            }
+            TrieNode node = best.node;
+            // the word ending at this node competes with the branches below it
+            if (node.hasWrittenWord()) {
+                int popularity = getLivePopularity(node, best.word);
+                if (popularity > 0) {
+                    queue.add(new Suggestion(best.word, null, popularity));
+                }
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                TrieNode child = node.childNodes[i];
+                if (child.bestPopularity > 0) {
+                    queue.add(new Suggestion(best.word + node.keys[i], child, child.bestPopularity));
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Suggest the most popular words starting with a prefix, counting searches not folded into the index yet
+     * Those searches only make words more popular, so the only words which may beat the ones suggested from the
+     * Trie are the words they searched
+     * @param prefix characters typed so far
+     * @param n maximum number of suggestions
+     * @param pendingSearches searches recorded apart from the index, null if none
+     * @return suggested words, most popular first (alphabetical order among equally popular words),
+     *         empty list if no word starts with the prefix
+     */
+    public List<String> suggest(String prefix, int n, SearchCounts pendingSearches) {
+        List<String> suggestions = suggest(prefix, n);
+        if (pendingSearches == null || pendingSearches.size() == 0 || suggestions.isEmpty()) {
+            return suggestions;
+        }
+        Set<String> words = new HashSet<>(suggestions);
+        words.addAll(pendingSearches.getWords(prefix.toLowerCase(Locale.ROOT)));
+        List<Suggestion> ranked = new ArrayList<>(words.size());
+        for (String word : words) {
+            TrieNode node = this.root.find(word);
+            int popularity = (node == null || !node.hasWrittenWord()) ? 0 : getLivePopularity(node, word);
+            // like searches folded into the index, a search only counts while rows contain the word
+            if (popularity > 0) {
+                ranked.add(new Suggestion(word, null, popularity + pendingSearches.get(word)));
+            }
+        }
+        Collections.sort(ranked);
+        suggestions.clear();
+        for (int i = 0; i < Math.min(n, ranked.size()); i++) {
+            suggestions.add(ranked.get(i).word);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Check whether a row contains a word as written, to record searches of the word
+     * @param word lower case word
+     * @return true if the word is indexed, not only as a synonym
+     */
+    public boolean containsWord(String word) {
+        TrieNode node = (word == null || word.isEmpty()) ? null : this.root.find(word);
+        return node != null && node.hasWrittenWord();
+    }
+
+    /**
+     * Fold searches recorded apart from the index into it (see SearchCounts)
+     * @param counts number of searches of each word
+     * @return true if at least one of the words is indexed and was recorded
+     */
+    public boolean recordSearches(Map<String, Integer> counts) {
+        boolean recorded = false;
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            recorded |= recordSearch(count.getKey(), count.getValue());
+        }
+        return recorded;
+    }
+
+    /**
+     * Record that clients searched a word, making it a more popular suggestion (see suggest)
+     * Only words of indexed rows are recorded, searching a word no row contains suggests nothing
+     * @param word word searched
+     * @return true if the word was recorded
+     */
+    public boolean recordSearch(String word) {
+        return recordSearch(word, 1);
+    }
+
+    /**
+     * Record that clients searched a word a number of times
+     * @param word word searched
+     * @param count number of searches
+     * @return true if the word was recorded
+     */
+    private boolean recordSearch(String word, int count) {
+        // ensure we have a valid word
+        if (word == null || word.isEmpty())
+            return false;
+
+        word = word.toLowerCase(Locale.ROOT);
+        if (!containsWord(word))
+            return false;
+
+        // copy the root and the nodes along the word's path if they are shared with another version of the index
+        if (this.root.owner != this.owner) {
+            this.root = this.root.copy(this.owner);
+        }
+        TrieNode node = this.root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.getOrAddChild(word.charAt(i));
+        }
+        node.searchCount += count;
+        this.root.raiseBestPopularity(word, node.getPopularity());
+        return true;
+    }
+
+    /**
+     * Popularity of the word ending at a node, counting only rows which weren't removed
+     * @param node node ending a word
+     * @param word the word
+     * @return popularity of the word, 0 if no remaining row contains it
+     */
+    private int getLivePopularity(TrieNode node, String word) {
+        PostingList wordPostings = node.wordPostings;
+        int rows = (wordPostings == null) ? 0 : wordPostings.size();
+        if (this.deletedCount > 0 && wordPostings != null) {
+            for (int i = 0; i < wordPostings.size(); i++) {
+                if (this.deleted.get(wordPostings.get(i))) {
+                    rows--;
+                }
+            }
+        }
+        if (node.frozenRowCount > 0 && this.frozen != null) {
+            // counted without copying the frozen rows
+            rows += (this.deletedCount == 0) ? node.frozenRowCount
+                    : this.frozen.getRowCount(this.frozen.getWordId(word), this.deleted);
+        }
+        return (rows == 0) ? 0 : rows + node.searchCount;
+    }
+
+    /**
+     * Entry of the suggestion queue: either a node whose words are yet to be explored, or a word ready to be suggested
+     */
+    private static final class Suggestion implements Comparable<Suggestion> {
+
+        // characters leading to the node, or the word itself
+        final String word;
+
+        // node to explore, null for a word ready to be suggested
+        final TrieNode node;
+
+        // best popularity below the node, or popularity of the word
+        final int popularity;
+
+        Suggestion(String word, TrieNode node, int popularity) {
+            this.word = word;
+            this.node = node;
+            this.popularity = popularity;
+        }
+
+        @Override
+        public int compareTo(Suggestion other) {
+            // most popular first
+            if (this.popularity != other.popularity) {
+                return Integer.compare(other.popularity, this.popularity);
+            }
+            // a word is suggested before exploring nodes which can't beat it
+            if ((this.node == null) != (other.node == null)) {
+                return (this.node == null) ? -1 : 1;
+            }
+            return this.word.compareTo(other.word);
+        }
+    }
+
+    /**
+     * Convert a posting list of ordinals to the String keys of the rows
+     * @param postings posting list, may be null
+     * @return list of row keys
+     */
+    private List<String> toIds(PostingList postings) {
+        if (postings == null) {
+            return new ArrayList<>();
+        }
+        int[] ordinals = withoutDeleted(postings);
+        return toIds(ordinals, ordinals.length);
+    }
+
+    /**
+     * Convert an array of ordinals to the String keys of the rows
+     * @param ordinals row ordinals
+     * @param length number of valid ordinals in the array
+     * @return list of row keys
+     */
+    List<String> toIds(int[] ordinals, int length) {
+        // list to store matches
+        List<String> matches = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            matches.add(this.ids.get(ordinals[i]));
+        }
         return matches;
     }
 
@@ -0,0 +1,489 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves a built TriesSearch to a file and loads it back, so a new session can search before its data is re-indexed
+ * The file is a header (magic number, format version, CRC32 checksum and length of the payload) followed by the
+ * payload: the checksum of the synonyms applied, the row ids, the field lengths, the removed rows, the Trie in
+ * pre-order, the facet bitmaps, the sorted numeric values and an opaque attachment owned by the caller.
+ * Loading memory-maps the file and decodes the Trie straight from the mapped buffer. A file with another version,
+ * a wrong length, a checksum mismatch or other synonyms is rejected, so a stale or corrupt snapshot is never loaded
+ */
+public final class TriesSearchSnapshot {
+
+    /**
+     * Magic number at the start of every snapshot file
+     */
+    public static final int MAGIC = 0x4D4C5253;
+
+    /**
+     * Version of the format, increment whenever the layout of the payload changes
+     */
+    public static final int VERSION = 7;
+
+    // magic number, version, checksum and payload length
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+
+    // node flags
+    private static final int COMPLETE_WORD = 1;
+    private static final int HAS_CHILDREN = 2;
+    private static final int HAS_POSTINGS = 4;
+    private static final int HAS_WORD_POSTINGS = 8;
+    private static final int HAS_SEARCH_COUNT = 16;
+    private static final int HAS_SYNONYM_POSTINGS = 32;
+
+    // size of the chunks copied out of the mapped buffer to compute its checksum
+    private static final int CHECKSUM_CHUNK_BYTES = 8192;
+
+    private TriesSearchSnapshot() {}
+
+    /**
+     * Write a snapshot of an index to a file, replacing the file only once the snapshot is completely written
+     * @param triesSearch index to save, must not be modified while it is written
+     * @param attachment bytes stored along the index (ex: the data rows are built from), may be null
+     * @param file file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(TriesSearch triesSearch, byte[] attachment, File file) throws IOException {
+        // write next to the target, so a crash never leaves a partially written snapshot in place
+        File tempFile = new File(file.getPath() + ".tmp");
+        CRC32 checksum = new CRC32();
+        long payloadLength;
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            // room for the header, filled in once the checksum is known
+            fileOut.write(new byte[HEADER_BYTES]);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, checksum)));
+            writePayload(out, triesSearch, attachment);
+            out.flush();
+            payloadLength = fileOut.getChannel().position() - HEADER_BYTES;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(checksum.getValue()).putLong(payloadLength);
+            header.flip();
+            fileOut.getChannel().write(header, 0);
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        // some platforms can't rename over an existing file
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            tempFile.delete();
+            throw new IOException("Unable to replace snapshot " + file);
+        }
+    }
+
+    /**
+     * Load a snapshot into an index, replacing its data
+     * The index is left untouched if the file is missing, has another version, or is corrupt
+     * @param file file to read
+     * @param target index to load into, must have as many fields as the saved index
+     * @return the attachment saved with the index (backed by the mapped file), null if the file isn't a valid snapshot
+     * @throws IOException if the file exists but can't be read
+     */
+    public static ByteBuffer read(File file, TriesSearch target) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                return null;
+            }
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long checksum = buffer.getLong();
+            long payloadLength = buffer.getLong();
+            if (payloadLength != length - HEADER_BYTES || checksum(buffer.slice()) != checksum) {
+                return null;
+            }
+            return readPayload(buffer.slice(), target);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // the checksum matched but the payload doesn't decode: treat it as corrupt
+            return null;
+        }
+    }
+
+    private static void writePayload(DataOutputStream out, TriesSearch triesSearch, byte[] attachment) throws IOException {
+        int fields = triesSearch.fieldWeights.length;
+        int rows = triesSearch.ids.size();
+        // rows were indexed under these synonyms
+        out.writeLong(getSynonymsChecksum(triesSearch));
+        out.writeInt(fields);
+        out.writeInt(rows);
+        for (String id : triesSearch.ids) {
+            writeString(out, id);
+        }
+        for (int i = 0; i < rows * fields; i++) {
+            out.writeInt(triesSearch.fieldLengths[i]);
+        }
+        // removed rows stay tombstoned, their postings are still in the Trie
+        out.writeInt(triesSearch.deletedCount);
+        for (int i = triesSearch.deleted.nextSetBit(0); i >= 0; i = triesSearch.deleted.nextSetBit(i + 1)) {
+            out.writeInt(i);
+        }
+        writeNode(out, triesSearch, triesSearch.root, new StringBuilder());
+        writeFacets(out, triesSearch.facets);
+        writeRanges(out, triesSearch.ranges);
+        if (attachment == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(attachment.length);
+            out.write(attachment);
+        }
+    }
+
+    private static long getSynonymsChecksum(TriesSearch triesSearch) {
+        return (triesSearch.synonyms == null) ? 0 : triesSearch.synonyms.getChecksum();
+    }
+
+    private static void writeNode(DataOutputStream out, TriesSearch triesSearch, TrieNode node, StringBuilder path)
+            throws IOException {
+        // frozen words are saved like the others, a loaded index is frozen again by its owner if needed
+        PostingList wordPostings = triesSearch.getWrittenPostings(node, path);
+        int flags = (node.isCompleteWord ? COMPLETE_WORD : 0)
+                | (node.childCount > 0 ? HAS_CHILDREN : 0)
+                | (node.postings != null ? HAS_POSTINGS : 0)
+                | (wordPostings != null ? HAS_WORD_POSTINGS : 0)
+                | (node.searchCount > 0 ? HAS_SEARCH_COUNT : 0)
+                | (node.synonymPostings != null ? HAS_SYNONYM_POSTINGS : 0);
+        out.writeByte(flags);
+        if (node.postings != null) {
+            writePostings(out, node.postings);
+        }
+        if (wordPostings != null) {
+            writePostings(out, wordPostings);
+        }
+        if (node.searchCount > 0) {
+            writeVarInt(out, node.searchCount);
+        }
+        if (node.synonymPostings != null) {
+            writePostings(out, node.synonymPostings);
+        }
+        // most nodes are leaves, which need nothing more
+        if (node.childCount > 0) {
+            out.writeInt(node.childCount);
+            for (int i = 0; i < node.childCount; i++) {
+                out.writeChar(node.keys[i]);
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                path.append(node.keys[i]);
+                writeNode(out, triesSearch, node.childNodes[i], path);
+                path.setLength(path.length() - 1);
+            }
+        }
+    }
+
+    private static void writeFacets(DataOutputStream out, FacetIndex facets) throws IOException {
+        out.writeInt(facets.getFacets().size());
+        for (Map.Entry<String, Map<String, BitSet>> facet : facets.getFacets().entrySet()) {
+            writeString(out, facet.getKey());
+            out.writeInt(facet.getValue().size());
+            for (Map.Entry<String, BitSet> value : facet.getValue().entrySet()) {
+                writeString(out, value.getKey());
+                // bitmaps are saved as sorted ordinals, compressed like posting lists
+                BitSet rows = value.getValue();
+                writeVarInt(out, rows.cardinality());
+                int previous = 0;
+                for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                    writeVarInt(out, i - previous);
+                    previous = i;
+                }
+            }
+        }
+    }
+
+    private static void writeRanges(DataOutputStream out, Map<String, RangeIndex> ranges) throws IOException {
+        out.writeInt(ranges.size());
+        for (Map.Entry<String, RangeIndex> range : ranges.entrySet()) {
+            writeString(out, range.getKey());
+            RangeIndex rangeIndex = range.getValue();
+            rangeIndex.sort();
+            writeVarInt(out, rangeIndex.size);
+            // already sorted by value, so loading needs no sort
+            for (int i = 0; i < rangeIndex.size; i++) {
+                writeVarInt(out, rangeIndex.ordinals[i]);
+                out.writeDouble(rangeIndex.values[i]);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    private static void writePostings(DataOutputStream out, PostingList postings) throws IOException {
+        writeVarInt(out, postings.size);
+        // ordinals are sorted, so the gaps between them are small and take a byte or two
+        int previous = 0;
+        for (int i = 0; i < postings.size; i++) {
+            writeVarInt(out, postings.get(i) - previous);
+            previous = postings.get(i);
+        }
+        for (int i = 0; i < postings.size; i++) {
+            writeVarInt(out, postings.getPayload(i));
+        }
+    }
+
+    private static ByteBuffer readPayload(ByteBuffer in, TriesSearch target) {
+        // an index built with other synonyms would miss or keep synonyms of the saved rows
+        if (in.getLong() != getSynonymsChecksum(target)) {
+            return null;
+        }
+        int fields = in.getInt();
+        if (fields != target.fieldWeights.length) {
+            return null;
+        }
+        int rows = in.getInt();
+        // every row takes at least its id length and field lengths
+        if (rows < 0 || rows > in.remaining() / (4 + 4 * fields)) {
+            return null;
+        }
+        List<String> ids = new ArrayList<>(rows);
+        for (int ordinal = 0; ordinal < rows; ordinal++) {
+            ids.add(readString(in));
+        }
+        int[] fieldLengths = new int[Math.max(rows, 1) * fields];
+        long[] fieldLengthTotals = new long[fields];
+        for (int i = 0; i < rows * fields; i++) {
+            fieldLengths[i] = in.getInt();
+            fieldLengthTotals[i % fields] += fieldLengths[i];
+        }
+        int deletedCount = in.getInt();
+        if (deletedCount < 0 || deletedCount > rows) {
+            return null;
+        }
+        BitSet deleted = new BitSet(rows);
+        for (int i = 0; i < deletedCount; i++) {
+            int ordinal = in.getInt();
+            if (ordinal < 0 || ordinal >= rows) {
+                return null;
+            }
+            deleted.set(ordinal);
+        }
+        // only rows which weren't removed can be looked up by id
+        Map<String, Integer> ordinals = new HashMap<>(rows - deletedCount);
+        for (int ordinal = 0; ordinal < rows; ordinal++) {
+            if (!deleted.get(ordinal)) {
+                ordinals.put(ids.get(ordinal), ordinal);
+            }
+        }
+        TrieNode root = readNode(in, rows, target.owner);
+        // popularities aren't saved, they are recomputed from the postings and search counts
+        root.updateBestPopularity();
+        FacetIndex facets = readFacets(in, rows);
+        Map<String, RangeIndex> ranges = readRanges(in, rows);
+        int attachmentLength = in.getInt();
+        if (attachmentLength < 0 || attachmentLength != in.remaining()) {
+            return null;
+        }
+        ByteBuffer attachment = in.slice();
+
+        // the whole snapshot decoded, replace the data of the index
+        target.root = root;
+        target.ids = ids;
+        target.ordinals = ordinals;
+        target.fieldLengths = fieldLengths;
+        target.fieldLengthTotals = fieldLengthTotals;
+        target.deleted = deleted;
+        target.deletedCount = deletedCount;
+        target.facets = facets;
+        target.ranges = ranges;
+        target.frozen = null;
+        // positions aren't saved either, they are added again from the rows' texts (see TriesSearch.addPositions)
+        target.positions = new PositionIndex();
+        // and neither are shards, they are set again from the rows (see TriesSearch.setShard)
+        target.shards = new ShardIndex();
+        // the trigram index isn't saved, it is rebuilt from the words of the Trie
+        if (target.ngrams != null) {
+            target.ngrams = NGramIndex.build(root);
+        }
+        target.generation++;
+        return attachment;
+    }
+
+    private static TrieNode readNode(ByteBuffer in, int rows, Object owner) {
+        TrieNode node = new TrieNode(owner);
+        int flags = in.get();
+        node.isCompleteWord = (flags & COMPLETE_WORD) != 0;
+        if ((flags & HAS_POSTINGS) != 0) {
+            node.postings = readPostings(in, rows);
+        }
+        if ((flags & HAS_WORD_POSTINGS) != 0) {
+            node.wordPostings = readPostings(in, rows);
+        }
+        if ((flags & HAS_SEARCH_COUNT) != 0) {
+            node.searchCount = readVarInt(in);
+        }
+        if ((flags & HAS_SYNONYM_POSTINGS) != 0) {
+            node.synonymPostings = readPostings(in, rows);
+        }
+        if ((flags & HAS_CHILDREN) != 0) {
+            int childCount = in.getInt();
+            if (childCount <= 0 || childCount > in.remaining() / 3) {
+                throw new IllegalArgumentException("Invalid child count: " + childCount);
+            }
+            node.keys = new char[childCount];
+            node.childNodes = new TrieNode[childCount];
+            for (int i = 0; i < childCount; i++) {
+                node.keys[i] = in.getChar();
+            }
+            for (int i = 0; i < childCount; i++) {
+                node.childNodes[i] = readNode(in, rows, owner);
+            }
+            node.childCount = childCount;
+        }
+        return node;
+    }
+
+    private static FacetIndex readFacets(ByteBuffer in, int rows) {
+        FacetIndex facets = new FacetIndex();
+        int facetCount = in.getInt();
+        if (facetCount < 0 || facetCount > in.remaining() / 8) {
+            throw new IllegalArgumentException("Invalid facet count: " + facetCount);
+        }
+        for (int f = 0; f < facetCount; f++) {
+            String facet = readString(in);
+            int valueCount = in.getInt();
+            if (valueCount < 0 || valueCount > in.remaining() / 5) {
+                throw new IllegalArgumentException("Invalid facet value count: " + valueCount);
+            }
+            for (int v = 0; v < valueCount; v++) {
+                String value = readString(in);
+                int size = readVarInt(in);
+                if (size < 0 || size > rows) {
+                    throw new IllegalArgumentException("Invalid facet size: " + size);
+                }
+                BitSet valueRows = new BitSet(rows);
+                int ordinal = 0;
+                for (int i = 0; i < size; i++) {
+                    ordinal += readVarInt(in);
+                    if (ordinal >= rows) {
+                        throw new IllegalArgumentException("Invalid ordinal: " + ordinal);
+                    }
+                    valueRows.set(ordinal);
+                }
+                facets.putRows(facet, value, valueRows);
+            }
+        }
+        return facets;
+    }
+
+    private static Map<String, RangeIndex> readRanges(ByteBuffer in, int rows) {
+        int rangeCount = in.getInt();
+        if (rangeCount < 0 || rangeCount > in.remaining() / 5) {
+            throw new IllegalArgumentException("Invalid range count: " + rangeCount);
+        }
+        Map<String, RangeIndex> ranges = new HashMap<>();
+        for (int r = 0; r < rangeCount; r++) {
+            String attribute = readString(in);
+            int size = readVarInt(in);
+            // values of removed rows are kept until compaction, so a row may have several
+            if (size < 0 || size > in.remaining() / 9) {
+                throw new IllegalArgumentException("Invalid range size: " + size);
+            }
+            double[] values = new double[size];
+            int[] ordinals = new int[size];
+            for (int i = 0; i < size; i++) {
+                ordinals[i] = readVarInt(in);
+                values[i] = in.getDouble();
+                if (ordinals[i] < 0 || ordinals[i] >= rows || Double.isNaN(values[i]) || (i > 0 && values[i] < values[i - 1])) {
+                    throw new IllegalArgumentException("Invalid value of row " + ordinals[i] + ": " + values[i]);
+                }
+            }
+            ranges.put(attribute, new RangeIndex(values, ordinals, size));
+        }
+        return ranges;
+    }
+
+    private static PostingList readPostings(ByteBuffer in, int rows) {
+        int size = readVarInt(in);
+        if (size < 0 || size > rows) {
+            throw new IllegalArgumentException("Invalid posting list size: " + size);
+        }
+        int[] ordinals = new int[size];
+        int[] payloads = new int[size];
+        int ordinal = 0;
+        for (int i = 0; i < size; i++) {
+            ordinal += readVarInt(in);
+            if (ordinal >= rows) {
+                throw new IllegalArgumentException("Invalid ordinal: " + ordinal);
+            }
+            ordinals[i] = ordinal;
+        }
+        for (int i = 0; i < size; i++) {
+            payloads[i] = readVarInt(in);
+        }
+        return new PostingList(ordinals, payloads, size);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / 2) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        char[] chars = new char[length];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + 2 * length);
+        return new String(chars);
+    }
+
+    /**
+     * Write an int using 7 bits per byte, small values taking a single byte
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid variable length int");
+    }
+
+    /**
+     * Compute the CRC32 of the remaining bytes of a buffer, copying them out a chunk at a time
+     */
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 checksum = new CRC32();
+        byte[] chunk = new byte[CHECKSUM_CHUNK_BYTES];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            checksum.update(chunk, 0, length);
+        }
+        return checksum.getValue();
+    }
+}
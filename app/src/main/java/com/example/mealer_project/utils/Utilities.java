@@ -1,8 +1,7 @@
 package com.example.mealer_project.utils;
 
-import android.util.Log;
-
-import com.example.mealer_project.utils.TrieSearch.StopWords;
+import com.example.mealer_project.utils.TrieSearch.Analyzer;
+import com.example.mealer_project.utils.TrieSearch.KeywordTokenizer;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -11,6 +10,7 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -65,55 +65,47 @@ public class Utilities {
      * A utility method to extract a list of keywords from a string
      * Keywords include all words except common words which are irrelevant for a search like verbs (ex: is, are, doing)
      * @param data a list in which each value contains a sequence of words separated by space
-     * @return a list of string in which each value represents one keyword, empty string if no keywords
+     * @return a list of distinct lower case keywords in the order they appear, empty list if no keywords
      */
     static public List<String> getKeywords(List<String> data) {
+        return getKeywords(data, Analyzer.INDEX);
+    }
+
+    /**
+     * A utility method to extract a list of keywords from a string, through an analysis chain
+     * @param data a list in which each value contains a sequence of words separated by space
+     * @param analyzer analysis chain applied to each word
+     * @return a list of distinct lower case keywords in the order they appear, empty list if no keywords
+     */
+    static private List<String> getKeywords(List<String> data, Analyzer analyzer) {
         // validate data
         if (Preconditions.isNotNull(data)) {
-            // list to store our keywords
-            Map<String, Boolean> keywords = new HashMap<>();
-            // iterate through each row containing sequence of words
+            // scans each row once, keeping the distinct keywords in the order they appear
+            KeywordTokenizer tokenizer = new KeywordTokenizer(analyzer);
+            KeywordTokenizer.KeywordList keywords = new KeywordTokenizer.KeywordList();
             for (String rawWords: data) {
-                // validate the row containing words is not a null value or empty string
-                if (Preconditions.isNotEmptyString(rawWords)) {
-                    // split on space
-                    String[] words = rawWords.split("\\s+");
-                    // store normalized word, ex: remove commas or semicolons
-                    String normalizedWord;
-                    // for each word
-                    for (String word: words) {
-                        Log.e("wordK", "w: " + word);
-                        // if current word is not an empty string
-                        if (Preconditions.isNotEmptyString(word)) {
-                            // get normalized word
-                            normalizedWord = getNormalizedWord(word);
-                            // if word is a valid keyword, add it to our list of keywords
-                            if (isKeyword(normalizedWord)) {
-                                Log.e("wordK", "N: " + normalizedWord);
-                                // if the keyword has not already been added
-                                if (keywords.get(normalizedWord) == null) {
-                                    keywords.put(normalizedWord, true);
-                                }
-                            }
-                        }
-                    }
-                }
+                tokenizer.tokenize(rawWords, keywords);
             }
             // return the list of keywords
-            return new ArrayList<>(keywords.keySet());
+            return new ArrayList<>(keywords.getKeywords());
         }
 
         // if in valid value, or can't find any keywords, we return empty list
         return new ArrayList<>();
     }
 
-    static private String getNormalizedWord(String word) {
-        // returns string only containing a-z, A-Z, and apostrophe
-        return word.replaceAll("[^a-zA-Z0-9'-]","");
-    }
-
-    static private boolean isKeyword(String word) {
-        // return true is word is not a stop word, else return false
-        return !StopWords.isStopWord(word);
+    /**
+     * A utility method to extract the terms of a search query
+     * Uses the same rules as getKeywords, so queries are tokenized the same way as the data they search
+     * (see Analyzer.QUERY)
+     * @param query search query, a sequence of words separated by space
+     * @return a list of lower case terms in the order they appear in the query, empty list if no terms
+     */
+    static public List<String> getQueryTerms(String query) {
+        // validate query
+        if (!Preconditions.isNotEmptyString(query)) {
+            return new ArrayList<>();
+        }
+        return getKeywords(Collections.singletonList(query), Analyzer.QUERY);
     }
 }
@@ -0,0 +1,255 @@
+package com.example.mealer_project.ui.screens.search;
+
+import static org.junit.Assert.*;
+
+import com.example.mealer_project.data.models.Address;
+import com.example.mealer_project.data.models.meals.Meal;
+import com.example.mealer_project.data.models.orders.ChefInfo;
+import com.example.mealer_project.utils.TrieSearch.QueryMode;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SearchMealsTest {
+
+    private SearchMealItem getSampleItem(String chefId, int mealNumber, String name) {
+        Meal meal = new Meal(name, "meal" + mealNumber, chefId, "Indian", "Main dish", "chicken, rice, spices",
+                new ArrayList<>(Arrays.asList("dairy")), "A slow cooked dish served hot", true, 12.5);
+        return new SearchMealItem(meal, new ChefInfo(chefId, "Gordon Ramsey", "I am a good chef", 4, Address.getSampleAddress()));
+    }
+
+    private SearchMealItem getSampleItem(String chefId, int mealNumber, String name, String postalCode) {
+        Meal meal = new Meal(name, "meal" + mealNumber, chefId, "Indian", "Main dish", "chicken, rice, spices",
+                new ArrayList<>(Arrays.asList("dairy")), "A slow cooked dish served hot", true, 12.5);
+        return new SearchMealItem(meal, new ChefInfo(chefId, "Gordon Ramsey", "I am a good chef", 4,
+                new Address("23 St", "Ottawa", postalCode, "Canada")));
+    }
+
+    //Testing searched meals are found, and removed meals are no longer found
+    @Test
+    public void addAndRemoveItems() {
+        SearchMeals searchMeals = new SearchMeals();
+        SearchMealItem curry = getSampleItem("chef1", 1, "Butter curry");
+        searchMeals.addItems(Arrays.asList(curry, getSampleItem("chef1", 2, "Lasagna")));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(Arrays.asList(curry), searchMeals.searchMealItems("curry"));
+        assertTrue(searchMeals.removeItem(curry.getId()));
+        assertTrue(searchMeals.searchMealItems("curry").isEmpty());
+        assertEquals(1, searchMeals.getSearchMealItems().size());
+    }
+
+    //Testing repeated searches are answered from the cache, until meals are added
+    @Test
+    public void resultCache() {
+        SearchMeals searchMeals = new SearchMeals();
+        SearchMealItem curry = getSampleItem("chef1", 1, "Butter curry");
+        searchMeals.addItems(Arrays.asList(curry));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(Arrays.asList(curry), searchMeals.searchMealItems("Curry", searchMeals.newSearchCursor(), null));
+        assertEquals(Arrays.asList(curry), searchMeals.searchMealItems("curry ", searchMeals.newSearchCursor(), null));
+        assertEquals(0.5, searchMeals.getResultCacheHitRate(), 1e-9);
+        assertTrue(searchMeals.getResultCacheMemoryBytes() > 0);
+        // a new meal invalidates the cached result
+        SearchMealItem paneer = getSampleItem("chef2", 2, "Paneer curry");
+        searchMeals.addItems(Arrays.asList(paneer));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(2, searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null).size());
+    }
+
+    //Testing meals delivered one chef at a time are indexed as one batch, frozen once enough of them arrived
+    @Test
+    public void deliveryBurst() {
+        SearchMeals searchMeals = new SearchMeals();
+        int chefCount = SearchMeals.BULK_INDEX_MIN_ITEMS / 8;
+        for (int chef = 0; chef < chefCount; chef++) {
+            List<SearchMealItem> items = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                items.add(getSampleItem("chef" + chef, chef * 8 + i, (i % 2 == 0) ? "Chicken curry" : "Fried rice"));
+            }
+            searchMeals.addItems(items);
+        }
+        // searches read the previous catalog until the writer pass publishes the burst
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(SearchMeals.BULK_INDEX_MIN_ITEMS / 2, searchMeals.searchMealItems("curry").size());
+        assertNotNull(searchMeals.getTriesSearch().getFrozenDictionary());
+        assertEquals(SearchMeals.BULK_INDEX_MIN_ITEMS, searchMeals.getSearchMealItems().size());
+        // a chef delivering again replaces the previous version of their meals
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef0", 0, "Paneer curry")));
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef0", 0, "Paneer tikka")));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(1, searchMeals.searchMealItems("paneer tikka").size());
+        assertTrue(searchMeals.searchMealItems("paneer curry").isEmpty());
+    }
+
+    //Testing searched words are suggested first, without invalidating the cached results
+    @Test
+    public void recordSearches() {
+        SearchMeals searchMeals = new SearchMeals();
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef1", 1, "Butter curry"),
+                getSampleItem("chef1", 2, "Butter chicken")));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(2, searchMeals.searchMealItems("butter", searchMeals.newSearchCursor(), null).size());
+        for (int i = 0; i < 3; i++) {
+            searchMeals.recordSearch("Curry");
+        }
+        searchMeals.recordSearch("sushi");
+        assertEquals(2, searchMeals.searchMealItems("butter", searchMeals.newSearchCursor(), null).size());
+        assertEquals(0.5, searchMeals.getResultCacheHitRate(), 1e-9);
+        assertEquals(Arrays.asList("curry"), searchMeals.getSuggestions("c", 1));
+        // the counts are folded into the index by the next write, and still count afterwards
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef2", 3, "Chicken tikka")));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(Arrays.asList("curry"), searchMeals.getSuggestions("c", 1));
+    }
+
+    //Testing searches are measured, and queries finding nothing are reported
+    @Test
+    public void searchMetrics() throws IOException {
+        SearchMeals searchMeals = new SearchMeals();
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef1", 1, "Butter curry")));
+        searchMeals.awaitPendingDeliveries();
+        searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null);
+        searchMeals.searchMealItems("sushi \"rolls\"", searchMeals.newSearchCursor(), null);
+        String report = searchMeals.getMetrics().takeReport();
+        assertTrue(report, report.contains("\"searches\":2,"));
+        assertTrue(report, report.contains("\"result_count\":{\"count\":2,\"p50\":0,"));
+        assertTrue(report, report.contains("\"rank_latency_us\":{\"count\":"));
+        assertTrue(report, report.contains("\"zero_results\":1,\"zero_result_queries\":[\"sushi \\\"rolls\\\"\"]}"));
+        // nothing searched since the last report
+        assertNull(searchMeals.getMetrics().takeReport());
+        // every kind of search is measured
+        searchMeals.searchMealItems("curry");
+        searchMeals.searchMealItems("sushi", QueryMode.OR);
+        searchMeals.searchMealItemsByPrice("curry", null, true);
+        report = searchMeals.getMetrics().takeReport();
+        assertTrue(report, report.contains("\"searches\":3,"));
+        assertTrue(report, report.contains("\"zero_results\":1,\"zero_result_queries\":[\"sushi\"]}"));
+
+        // reports are appended to the file, one per line
+        File file = File.createTempFile("search_metrics", ".log");
+        file.deleteOnExit();
+        SearchMetrics metrics = new SearchMetrics(SearchMeals.RESULT_LIMIT);
+        metrics.enable(file);
+        metrics.recordSearch("pizza", 2_000_000, 0);
+        metrics.flush();
+        metrics.recordSearch("pizza", 1_000_000, 3);
+        metrics.flush();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains("\"search_latency_us\":{\"count\":1,\"p50\":2000,"));
+        assertTrue(lines.get(1), lines.get(1).contains("\"zero_results\":0,\"zero_result_queries\":[]}"));
+    }
+
+    //Testing meals of the postal districts closest to the client are listed first
+    @Test
+    public void nearestFirst() {
+        SearchMeals searchMeals = new SearchMeals();
+        SearchMealItem toronto = getSampleItem("chef1", 1, "Butter curry", "M5V 2T6");
+        SearchMealItem barrie = getSampleItem("chef2", 2, "Curry", "L4M7B6");
+        SearchMealItem ottawa = getSampleItem("chef3", 3, "Lentil curry", "k1n 6n5");
+        SearchMealItem unknown = getSampleItem("chef4", 4, "Curry", "");
+        searchMeals.addItems(Arrays.asList(toronto, barrie, ottawa, unknown));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals("K1N", SearchMeals.getShard(ottawa));
+        // a meal of an unknown district has no shard, it is searched after every district
+        assertNull(SearchMeals.getShard(unknown));
+        assertEquals(4, searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null).size());
+        searchMeals.setOrigin("K1N 1A1");
+        assertEquals(Arrays.asList(ottawa, barrie, toronto, unknown),
+                searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null));
+        // closest districts first among the matches of every term
+        assertEquals(Arrays.asList(barrie, toronto),
+                searchMeals.searchMealItems("curry chicken dish", searchMeals.newSearchCursor(), null).subList(1, 3));
+        // an edited meal moves to its chef's new district
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef1", 1, "Butter curry", "K1N 9Z9")));
+        searchMeals.awaitPendingDeliveries();
+        assertEquals(2, searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null)
+                .indexOf(searchMeals.getSearchMealItems().get(barrie.getId())));
+        // a meal whose chef no longer has a postal code leaves its district
+        searchMeals.addItems(Arrays.asList(getSampleItem("chef3", 3, "Lentil curry", "")));
+        searchMeals.awaitPendingDeliveries();
+        List<SearchMealItem> results = searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null);
+        assertEquals(4, results.size());
+        assertEquals(barrie.getId(), results.get(1).getId());
+        assertTrue(results.subList(2, 4).contains(searchMeals.getSearchMealItems().get(ottawa.getId())));
+    }
+
+    //Testing searches running while meals are added and removed never fail nor see a partially updated catalog
+    @Test
+    public void concurrentReadersAndWriters() throws InterruptedException {
+        SearchMeals searchMeals = new SearchMeals();
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        int readerCount = 4;
+        CountDownLatch readersDone = new CountDownLatch(readerCount);
+
+        for (int r = 0; r < readerCount; r++) {
+            new Thread(() -> {
+                try {
+                    com.example.mealer_project.utils.TrieSearch.SearchCursor cursor = searchMeals.newSearchCursor();
+                    String[] keystrokes = {"c", "cu", "cur", "curr", "curry", "curry ri"};
+                    int step = 0;
+                    while (writing.get()) {
+                        for (SearchMealItem item : searchMeals.searchMealItems(keystrokes[step++ % keystrokes.length], cursor, null)) {
+                            // every id returned by the index has its item in the same catalog
+                            assertNotNull(item);
+                        }
+                        // iterating the items never races with writers
+                        for (String id : searchMeals.getSearchMealItems().keySet()) {
+                            assertNotNull(id);
+                        }
+                        assertNotNull(searchMeals.searchMealItems("curry rice"));
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    readersDone.countDown();
+                }
+            }).start();
+        }
+
+        // writer: add meals in batches, removing and editing some of them as it goes
+        List<SearchMealItem> added = new ArrayList<>();
+        for (int batch = 0; batch < 200; batch++) {
+            List<SearchMealItem> items = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                items.add(getSampleItem("chef" + batch, batch * 5 + i, (i % 2 == 0) ? "Chicken curry" : "Fried rice"));
+            }
+            searchMeals.addItems(items);
+            added.addAll(items);
+            searchMeals.removeItem(added.get(batch * 3).getId());
+            searchMeals.addItems(Arrays.asList(getSampleItem("chef" + batch, batch * 5, "Paneer curry")));
+        }
+        writing.set(false);
+        readersDone.await();
+
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.peek());
+        }
+        // readers never take the writers' lock: a search completes while a writer holds it
+        searchMeals.awaitPendingDeliveries();
+        synchronized (searchMeals) {
+            Thread reader = new Thread(() -> {
+                searchMeals.searchMealItems("curry", searchMeals.newSearchCursor(), null);
+                searchMeals.getSuggestions("cu", SearchMeals.SUGGESTION_LIMIT);
+                searchMeals.getSearchMealItems();
+            });
+            reader.start();
+            reader.join(10_000);
+            assertFalse(reader.isAlive());
+        }
+        // the final catalog holds every meal which wasn't removed
+        assertEquals(searchMeals.getSearchMealItems().size(), searchMeals.searchMealItems("dish").size());
+    }
+}
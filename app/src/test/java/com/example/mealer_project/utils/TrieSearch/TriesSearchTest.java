@@ -0,0 +1,765 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import static org.junit.Assert.*;
+
+import com.example.mealer_project.utils.Utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TriesSearchTest {
+
+    private TriesSearch getSampleTriesSearch() {
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.addData("meal1", Arrays.asList("Chicken", "curry", "spicy"));
+        triesSearch.addData("meal2", Arrays.asList("chickpea", "salad"));
+        triesSearch.addData("meal3", Arrays.asList("lasagna", "cheese"));
+        return triesSearch;
+    }
+
+    //Testing a prefix shared by several rows returns all of them
+    @Test
+    public void pMatchSharedPrefix() {
+        List<String> actual = getSampleTriesSearch().pMatch("chi");
+        Collections.sort(actual);
+        assertEquals(Arrays.asList("meal1", "meal2"), actual);
+    }
+
+    //Testing prefix match is case insensitive
+    @Test
+    public void pMatchIgnoresCase() {
+        assertEquals(Collections.singletonList("meal3"), getSampleTriesSearch().pMatch("LAS"));
+    }
+
+    //Testing a prefix which isn't in any row
+    @Test
+    public void pMatchNoResult() {
+        assertTrue(getSampleTriesSearch().pMatch("pizza").isEmpty());
+    }
+
+    //Testing exact match only returns complete words
+    @Test
+    public void eMatchCompleteWord() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        assertEquals(Collections.singletonList("meal1"), triesSearch.eMatch("curry"));
+        assertTrue(triesSearch.eMatch("cur").isEmpty());
+    }
+
+    //Testing the memory estimate grows with the data indexed
+    @Test
+    public void estimatedMemory() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        long before = triesSearch.getEstimatedMemoryBytes();
+        triesSearch.addData("meal4", Arrays.asList("shawarma", "garlic"));
+        assertTrue(triesSearch.getEstimatedMemoryBytes() > before);
+        assertTrue(triesSearch.getEstimatedBytesPerItem() > 0);
+    }
+
+    //Testing children added out of order can all be found again
+    @Test
+    public void childrenOutOfOrder() {
+        TrieNode root = new TrieNode();
+        String words = "zyxwvutsrqponmlkjihgfedcba0987654321";
+        for (int i = 0; i < words.length(); i++) {
+            root.insert(words.substring(i));
+        }
+        for (int i = 0; i < words.length(); i++) {
+            assertTrue(root.eMatch(words.substring(i)));
+            assertNotNull(root.getChild(words.charAt(i)));
+        }
+        assertNull(root.getChild('#'));
+    }
+
+    //Testing every term must match in AND mode
+    @Test
+    public void pMatchTermsAnd() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        assertEquals(Collections.singletonList("meal1"), triesSearch.pMatch(Arrays.asList("spicy", "chi"), QueryMode.AND));
+        assertTrue(triesSearch.pMatch(Arrays.asList("spicy", "salad"), QueryMode.AND).isEmpty());
+    }
+
+    //Testing any term may match in OR mode
+    @Test
+    public void pMatchTermsOr() {
+        List<String> actual = getSampleTriesSearch().pMatch(Arrays.asList("salad", "lasagna", "pizza"), QueryMode.OR);
+        Collections.sort(actual);
+        assertEquals(Arrays.asList("meal2", "meal3"), actual);
+    }
+
+    //Testing galloping intersection and merge on sorted arrays
+    @Test
+    public void postingListOperations() {
+        int[] small = {3, 50, 99, 400};
+        int[] large = new int[201];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = i * 2;
+        }
+        assertArrayEquals(new int[]{50, 400}, PostingLists.intersect(small, small.length, large, large.length));
+        assertArrayEquals(new int[]{1, 2, 3, 5}, PostingLists.union(new int[]{1, 3}, 2, new int[]{2, 3, 5}, 3));
+    }
+
+    //Testing the cursor narrows results as characters and terms are appended, and handles deletions
+    @Test
+    public void cursorNarrowsAsYouType() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        SearchCursor cursor = triesSearch.newCursor(QueryMode.AND);
+        assertEquals(3, cursor.pMatch(Collections.singletonList("c")).size());
+        assertEquals(2, cursor.pMatch(Collections.singletonList("chi")).size());
+        assertEquals(2, cursor.pMatch(Collections.singletonList("chic")).size());
+        assertEquals(Collections.singletonList("meal2"), cursor.pMatch(Arrays.asList("chic", "sal")));
+        assertTrue(cursor.pMatch(Arrays.asList("chic", "salx")).isEmpty());
+        assertTrue(cursor.pMatch(Arrays.asList("chic", "salxy")).isEmpty());
+        // deletion falls back to a full query
+        assertEquals(Collections.singletonList("meal2"), cursor.pMatch(Arrays.asList("chic", "sa")));
+        // new data invalidates the previous result
+        triesSearch.addData("meal4", Arrays.asList("chickpea", "samosa"));
+        assertEquals(Collections.singletonList("meal4"), cursor.pMatch(Arrays.asList("chic", "sam")));
+    }
+
+    //Testing nearest-first searches narrow the cursor's matches as the client types, nearest shards first
+    @Test
+    public void cursorNarrowsNearestFirst() {
+        TriesSearch triesSearch = new TriesSearch();
+        String[][] meals = {{"meal1", "K1N", "curry"}, {"meal2", "M5V", "curry"}, {"meal3", "K1N", "currant"},
+                {"meal4", "K2P", "curry"}, {"meal5", null, "curry"}};
+        for (String[] meal : meals) {
+            triesSearch.addData(meal[0], Collections.singletonList(meal[2]));
+            if (meal[1] != null) {
+                triesSearch.setShard(meal[0], meal[1]);
+            }
+        }
+        ShardIndex.Distance distance = shard -> shard.equals("K1N") ? 0 : shard.startsWith("K") ? 1 : 2;
+        SearchCursor cursor = triesSearch.newCursor(QueryMode.AND);
+        assertEquals(Arrays.asList("meal1", "meal3", "meal4", "meal2", "meal5"),
+                cursor.topMatchesNearestFirst(triesSearch, Collections.singletonList("cur"), 10, distance, null, null));
+        assertFalse(cursor.isNarrowed());
+        assertEquals(Arrays.asList("meal1", "meal4", "meal2", "meal5"),
+                cursor.topMatchesNearestFirst(triesSearch, Collections.singletonList("curry"), 10, distance, null, null));
+        assertTrue(cursor.isNarrowed());
+        assertEquals(Arrays.asList("meal1", "meal4"),
+                cursor.topMatchesNearestFirst(triesSearch, Collections.singletonList("curry"), 2, distance, null, null));
+        // without a cursor, the matches of each shard are found from the posting lists
+        assertEquals(Arrays.asList("meal1", "meal4", "meal2", "meal5"),
+                triesSearch.topMatchesNearestFirst(Collections.singletonList("curry"), 10, distance, null, null));
+        // the shards are grouped once per distance, until a shard changes
+        assertSame(triesSearch.shards.getRings(distance), triesSearch.shards.getRings(distance));
+        triesSearch.setShard("meal5", "K1N");
+        assertEquals(Arrays.asList("meal1", "meal5", "meal4", "meal2"),
+                triesSearch.topMatchesNearestFirst(Collections.singletonList("curry"), 10, distance, null, null));
+    }
+
+    //Testing typos are tolerated by fuzzy matching, and exact matches are still returned
+    @Test
+    public void fMatchToleratesTypos() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        assertTrue(triesSearch.pMatch("lasgna").isEmpty());
+        assertEquals(Collections.singletonList("meal3"), triesSearch.fMatch(Collections.singletonList("lasgna"), QueryMode.AND));
+        assertEquals(Collections.singletonList("meal3"), triesSearch.fMatch(Collections.singletonList("lasagna"), QueryMode.AND));
+        assertTrue(triesSearch.fMatch(Collections.singletonList("pizza"), QueryMode.AND).isEmpty());
+    }
+
+    //Testing the Levenshtein automaton's edit distance
+    @Test
+    public void levenshteinDistance() {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton("shawarmna", 2);
+        int[] state = automaton.start();
+        String word = "shawarma";
+        for (int i = 0; i < word.length(); i++) {
+            state = automaton.step(state, word.charAt(i), i);
+        }
+        assertEquals(1, automaton.distance(state));
+        assertTrue(automaton.isMatch(state));
+    }
+
+    //Testing a fuzzy query over 100k keywords stays within its node budget and still finds the typo
+    @Test
+    public void fMatchLargeIndex() {
+        TriesSearch triesSearch = new TriesSearch(100000);
+        java.util.Random random = new java.util.Random(4);
+        char[] word = new char[8];
+        for (int i = 0; i < 100000; i++) {
+            for (int j = 0; j < word.length; j++) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            triesSearch.addData("meal" + i, Collections.singletonList(new String(word)));
+        }
+        triesSearch.addData("lasagna", Collections.singletonList("lasagna"));
+        assertTrue(triesSearch.fMatch(Collections.singletonList("lasgna"), QueryMode.AND).contains("lasagna"));
+    }
+
+    //Testing a match in a heavily weighted field ranks above a match in a lightly weighted one
+    @Test
+    public void topMatchesFieldWeights() {
+        // field 0: name, field 1: description
+        TriesSearch triesSearch = new TriesSearch(0, new float[]{3f, 0.5f});
+        triesSearch.addFieldData("curry", Arrays.asList(Arrays.asList("chicken", "curry"), Arrays.asList("served", "rice")));
+        triesSearch.addFieldData("friedRice", Arrays.asList(Arrays.asList("fried", "rice"), Arrays.asList("wok", "tossed")));
+        triesSearch.addFieldData("salad", Arrays.asList(Arrays.asList("salad"), Arrays.asList("fresh", "greens")));
+        assertEquals(Arrays.asList("friedRice", "curry"), triesSearch.topMatches(Collections.singletonList("rice"), QueryMode.AND, 10, null));
+        assertEquals(Collections.singletonList("friedRice"), triesSearch.topMatches(Collections.singletonList("rice"), QueryMode.AND, 1, null));
+    }
+
+    //Testing the top k heap keeps the best rows, best first, breaking ties with the tie breaker
+    @Test
+    public void topKOrder() {
+        List<String> ids = Arrays.asList("a", "b", "c", "d", "e");
+        TopK topK = new TopK(3, ids, java.util.Comparator.reverseOrder());
+        float[] scores = {1f, 5f, 3f, 5f, 0.5f};
+        for (int i = 0; i < scores.length; i++) {
+            topK.offer(i, scores[i]);
+        }
+        assertArrayEquals(new int[]{3, 1, 2}, topK.drain());
+    }
+
+    //Testing a snapshot loads back into an index answering the same queries, with its attachment
+    @Test
+    public void snapshotRoundTrip() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("search", ".snapshot");
+        try {
+            TriesSearch triesSearch = new TriesSearch(0, new float[]{3f, 0.5f});
+            triesSearch.addFieldData("curry", Arrays.asList(Arrays.asList("chicken", "curry"), Arrays.asList("served", "rice")));
+            triesSearch.addFieldData("friedRice", Arrays.asList(Arrays.asList("fried", "rice"), Arrays.asList("wok", "tossed")));
+            triesSearch.addFacetValues("friedRice", "allergen", Collections.singletonList("Soy"));
+            triesSearch.recordSearch("fried");
+            triesSearch.addValue("curry", "price", 12.5);
+            TriesSearchSnapshot.write(triesSearch, new byte[]{7, 8}, file);
+
+            TriesSearch loaded = new TriesSearch(0, new float[]{3f, 0.5f});
+            java.nio.ByteBuffer attachment = TriesSearchSnapshot.read(file, loaded);
+            assertNotNull(attachment);
+            assertEquals(2, attachment.remaining());
+            assertEquals(7, attachment.get());
+            assertEquals(2, loaded.size());
+            assertEquals(triesSearch.topMatches(Collections.singletonList("ri"), QueryMode.AND, 10, null),
+                    loaded.topMatches(Collections.singletonList("ri"), QueryMode.AND, 10, null));
+            assertEquals(Collections.singletonList("curry"), loaded.eMatch("chicken"));
+            assertEquals(Collections.singletonList("curry"), loaded.filter(new FacetFilter().exclude("allergen", "soy")));
+            assertEquals(Collections.singletonList("curry"), loaded.filter(new FacetFilter().requireRange("price", 10, 15)));
+            // one row plus one search
+            assertEquals(2, loaded.root.find("fried").getPopularity());
+        } finally {
+            file.delete();
+        }
+    }
+
+    //Testing a corrupt snapshot is rejected and leaves the index untouched
+    @Test
+    public void snapshotCorrupt() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("search", ".snapshot");
+        try {
+            TriesSearchSnapshot.write(getSampleTriesSearch(), null, file);
+            try (java.io.RandomAccessFile randomAccessFile = new java.io.RandomAccessFile(file, "rw")) {
+                randomAccessFile.seek(randomAccessFile.length() - 6);
+                randomAccessFile.write(0x55);
+            }
+            TriesSearch loaded = getSampleTriesSearch();
+            assertNull(TriesSearchSnapshot.read(file, loaded));
+            assertEquals(Collections.singletonList("meal3"), loaded.pMatch("las"));
+            // another number of fields is rejected as well
+            TriesSearchSnapshot.write(getSampleTriesSearch(), null, file);
+            assertNull(TriesSearchSnapshot.read(file, new TriesSearch(0, new float[]{1f, 1f})));
+            // and an index built with other synonyms
+            TriesSearch withSynonyms = new TriesSearch();
+            withSynonyms.setSynonyms(SynonymMap.getBundled());
+            assertNull(TriesSearchSnapshot.read(file, withSynonyms));
+        } finally {
+            file.delete();
+        }
+    }
+
+    //Testing a removed row is no longer returned, and an updated row only matches its new keywords
+    @Test
+    public void removeAndUpdate() {
+        TriesSearch triesSearch = getSampleTriesSearch();
+        assertTrue(triesSearch.remove("meal2"));
+        assertFalse(triesSearch.remove("meal2"));
+        assertEquals(2, triesSearch.size());
+        assertEquals(Collections.singletonList("meal1"), triesSearch.pMatch("chi"));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.pMatch(Arrays.asList("chi"), QueryMode.OR));
+        assertTrue(triesSearch.fMatch(Collections.singletonList("salad"), QueryMode.AND).isEmpty());
+
+        triesSearch.update("meal3", Arrays.asList("pizza", "cheese"));
+        assertTrue(triesSearch.pMatch("las").isEmpty());
+        assertEquals(Collections.singletonList("meal3"), triesSearch.pMatch("piz"));
+        assertEquals(Collections.singletonList("meal3"), triesSearch.eMatch("cheese"));
+    }
+
+    //Testing compaction drops removed rows and keeps every query answering the same
+    @Test
+    public void compact() {
+        TriesSearch triesSearch = new TriesSearch();
+        for (int i = 0; i < 200; i++) {
+            triesSearch.addData("meal" + i, Arrays.asList("dish" + i, (i % 2 == 0) ? "even" : "odd"));
+        }
+        for (int i = 0; i < 200; i += 3) {
+            triesSearch.remove("meal" + i);
+        }
+        assertTrue(triesSearch.needsCompaction());
+        List<String> before = triesSearch.pMatch(Collections.singletonList("even"), QueryMode.AND);
+        long generation = triesSearch.getGeneration();
+        triesSearch.compact();
+        assertEquals(0, triesSearch.getDeletedCount());
+        assertFalse(triesSearch.needsCompaction());
+        assertTrue(triesSearch.getGeneration() > generation);
+        assertEquals(before, triesSearch.pMatch(Collections.singletonList("even"), QueryMode.AND));
+        assertEquals(133, triesSearch.size());
+        // a node only reached by removed rows is pruned
+        assertNull(triesSearch.root.find("dish0"));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.eMatch("dish1"));
+    }
+
+    //Testing a copy can be modified without changing the index it was copied from, which is left untouched
+    @Test
+    public void copyOnWrite() {
+        TriesSearch original = getSampleTriesSearch();
+        TrieNode originalRoot = original.root;
+        TriesSearch copy = original.copy();
+        copy.addData("meal4", Arrays.asList("chili", "beans"));
+        copy.remove("meal1");
+        assertEquals(Arrays.asList("meal2", "meal4"), copy.pMatch("chi"));
+        List<String> actual = original.pMatch("chi");
+        Collections.sort(actual);
+        assertEquals(Arrays.asList("meal1", "meal2"), actual);
+        assertEquals(3, original.size());
+        assertSame(originalRoot, original.root);
+
+        // a copy of the copy is independent in turn
+        TriesSearch next = copy.copy();
+        next.addData("meal5", Collections.singletonList("chips"));
+        assertEquals(Arrays.asList("meal2", "meal4"), copy.pMatch("chi"));
+        assertEquals(Collections.singletonList("meal5"), next.pMatch("chip"));
+        assertTrue(original.pMatch("chip").isEmpty());
+    }
+
+    //Testing a substring query finds words containing it anywhere, and candidates holding its trigrams apart are rejected
+    @Test
+    public void sMatchInfix() {
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.enableSubstringSearch();
+        triesSearch.addData("meal1", Arrays.asList("cheeseburger", "fries"));
+        triesSearch.addData("meal2", Arrays.asList("garlicnaan"));
+        triesSearch.addData("meal3", Arrays.asList("burxurger"));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.sMatch(Collections.singletonList("burger"), QueryMode.AND));
+        assertEquals(Collections.singletonList("meal2"), triesSearch.sMatch(Collections.singletonList("NAAN"), QueryMode.AND));
+        assertEquals(Arrays.asList("meal1", "meal2"), triesSearch.sMatch(Arrays.asList("burger", "naan"), QueryMode.OR));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.topSubstringMatches(Collections.singletonList("eseb"), QueryMode.AND, 10, null));
+        // removed rows and words survive neither the query nor compaction
+        triesSearch.remove("meal2");
+        assertTrue(triesSearch.sMatch(Collections.singletonList("naan"), QueryMode.AND).isEmpty());
+        triesSearch.compact();
+        assertEquals(3, triesSearch.ngrams.size());
+    }
+
+    //Testing suggestions are ranked by how many rows contain a word and how often it was searched
+    @Test
+    public void suggestByPopularity() {
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.addData("meal1", Arrays.asList("chicken", "chili"));
+        triesSearch.addData("meal2", Arrays.asList("chicken", "chickpea"));
+        triesSearch.addData("meal3", Arrays.asList("chili", "rice"));
+        triesSearch.addData("meal4", Arrays.asList("chicken"));
+        assertEquals(Arrays.asList("chicken", "chili", "chickpea"), triesSearch.suggest("Chi", 5));
+        assertEquals(Collections.singletonList("chicken"), triesSearch.suggest("chi", 1));
+        // searches make a word more popular, words no row contains aren't recorded
+        triesSearch.recordSearch("chickpea");
+        triesSearch.recordSearch("chickpea");
+        assertFalse(triesSearch.recordSearch("chips"));
+        assertEquals(Arrays.asList("chicken", "chickpea", "chili"), triesSearch.suggest("chi", 5));
+        // a copy keeps the counts, and recording in the copy leaves the original untouched
+        TriesSearch copy = triesSearch.copy();
+        copy.recordSearch("chili");
+        copy.recordSearch("chili");
+        assertEquals(Arrays.asList("chili", "chicken"), copy.suggest("ch", 2));
+        assertEquals(Arrays.asList("chicken", "chickpea"), triesSearch.suggest("ch", 2));
+        // searches recorded apart from the index count as well
+        SearchCounts pendingSearches = new SearchCounts();
+        pendingSearches.record("chili");
+        pendingSearches.record("chili");
+        assertEquals(Arrays.asList("chili", "chicken"), triesSearch.suggest("ch", 2, pendingSearches));
+        // words of removed rows are no longer suggested, before and after compaction
+        copy.remove("meal2");
+        assertEquals(Arrays.asList("chili", "chicken"), copy.suggest("chi", 5));
+        copy.compact();
+        assertEquals(Arrays.asList("chili", "chicken"), copy.suggest("chi", 5));
+        assertTrue(copy.suggest("x", 5).isEmpty());
+    }
+
+    //Testing facet filters combine with text matches, and facet counts follow the filter
+    @Test
+    public void facetFilters() {
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.addData("lasagna", Arrays.asList("beef", "lasagna"));
+        triesSearch.addFacetValues("lasagna", "cuisine", Collections.singletonList("Italian"));
+        triesSearch.addFacetValues("lasagna", "allergen", Arrays.asList("dairy", "gluten"));
+        triesSearch.addData("pizza", Arrays.asList("beef", "pizza"));
+        triesSearch.addFacetValues("pizza", "cuisine", Collections.singletonList("italian"));
+        triesSearch.addFacetValues("pizza", "allergen", Collections.singletonList("gluten"));
+        triesSearch.addData("satay", Arrays.asList("beef", "satay"));
+        triesSearch.addFacetValues("satay", "cuisine", Collections.singletonList("Thai"));
+        triesSearch.addFacetValues("satay", "allergen", Collections.singletonList("peanuts"));
+
+        List<String> beef = Collections.singletonList("beef");
+        FacetFilter italian = new FacetFilter().require("cuisine", "ITALIAN");
+        assertEquals(Arrays.asList("lasagna", "pizza"), triesSearch.topMatches(beef, QueryMode.AND, 10, null, italian));
+        FacetFilter noDairyNoPeanuts = new FacetFilter().exclude("allergen", "dairy").exclude("allergen", "peanuts");
+        assertEquals(Collections.singletonList("pizza"), triesSearch.topMatches(beef, QueryMode.AND, 10, null, noDairyNoPeanuts));
+        // values of the same facet are alternatives
+        assertEquals(3, triesSearch.filter(new FacetFilter(italian).require("cuisine", "thai")).size());
+
+        Map<String, Integer> counts = triesSearch.getFacetCounts("allergen", italian);
+        assertEquals(Integer.valueOf(2), counts.get("gluten"));
+        assertEquals(Integer.valueOf(1), counts.get("dairy"));
+        assertFalse(counts.containsKey("peanuts"));
+
+        // removed rows are left out, and compaction keeps the values of the remaining rows
+        triesSearch.remove("lasagna");
+        assertEquals(Collections.singletonList("pizza"), triesSearch.filter(italian));
+        triesSearch.compact();
+        assertEquals(Collections.singletonList("pizza"), triesSearch.filter(italian));
+        assertEquals(Integer.valueOf(1), triesSearch.getFacetCounts("cuisine", null).get("thai"));
+    }
+
+    //Testing price ranges filter text matches, and matches can be listed cheapest first
+    @Test
+    public void priceRanges() {
+        TriesSearch triesSearch = new TriesSearch();
+        String[] meals = {"curry", "pizza", "salad", "steak"};
+        double[] prices = {14.5, 12, 9.99, 30};
+        for (int i = 0; i < meals.length; i++) {
+            triesSearch.addData(meals[i], Arrays.asList("dinner", meals[i]));
+            triesSearch.addValue(meals[i], "price", prices[i]);
+        }
+        List<String> dinner = Collections.singletonList("dinner");
+        FacetFilter under15 = new FacetFilter().requireRange("price", 0, 15);
+        assertEquals(Arrays.asList("curry", "pizza", "salad"), triesSearch.topMatches(dinner, QueryMode.AND, 10, null, under15));
+        assertEquals(Arrays.asList("salad", "pizza", "curry", "steak"), triesSearch.topMatchesByValue(dinner, QueryMode.AND, 10, "price", true, null));
+        assertEquals(Arrays.asList("steak", "curry"), triesSearch.topMatchesByValue(null, QueryMode.AND, 2, "price", false, null));
+        // bounds are inclusive
+        assertEquals(Collections.singletonList("pizza"), triesSearch.filter(new FacetFilter().requireRange("price", 12, 12)));
+
+        // an updated row takes its new price, and compaction keeps the order
+        triesSearch.update("steak", Arrays.asList("dinner", "steak"));
+        triesSearch.addValue("steak", "price", 5);
+        assertEquals(Arrays.asList("steak", "salad"), triesSearch.topMatchesByValue(dinner, QueryMode.AND, 2, "price", true, under15));
+        triesSearch.compact();
+        assertEquals(Arrays.asList("steak", "salad", "pizza", "curry"), triesSearch.topMatchesByValue(dinner, QueryMode.AND, 10, "price", true, null));
+        // values added out of order are sorted together, rows with equal values in the order they were added
+        triesSearch.addData("soup", Arrays.asList("dinner", "soup"));
+        triesSearch.addValue("soup", "price", 12);
+        triesSearch.addData("bread", Arrays.asList("dinner", "bread"));
+        triesSearch.addValue("bread", "price", 2);
+        assertEquals(Arrays.asList("bread", "steak", "salad", "pizza", "soup", "curry"), triesSearch.topMatchesByValue(dinner, QueryMode.AND, 10, "price", true, null));
+    }
+
+    //Testing an index built in parallel answers queries exactly like an index built one row at a time
+    @Test
+    public void parallelBulkBuild() {
+        java.util.Random random = new java.util.Random(16);
+        String[] words = {"chicken", "chili", "chickpea", "curry", "rice", "ricotta", "naan", "garlicnaan", "soup", "salad"};
+        List<String> ids = new java.util.ArrayList<>();
+        List<List<List<String>>> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add("meal" + i);
+            List<List<String>> fields = new java.util.ArrayList<>();
+            for (int field = 0; field < 2; field++) {
+                List<String> keywords = new java.util.ArrayList<>();
+                for (int w = random.nextInt(4); w >= 0; w--) {
+                    keywords.add(words[random.nextInt(words.length)]);
+                }
+                fields.add(keywords);
+            }
+            rows.add(fields);
+        }
+        TriesSearch sequential = new TriesSearch(0, new float[]{2f, 1f});
+        sequential.enableSubstringSearch();
+        TriesSearch parallel = new TriesSearch(0, new float[]{2f, 1f});
+        parallel.enableSubstringSearch();
+        // rows already indexed: the bulk rows must follow them, and an existing id gets more keywords
+        for (int i = 0; i < 10; i++) {
+            sequential.addFieldData(ids.get(i), rows.get(i));
+            parallel.addFieldData(ids.get(i), rows.get(i));
+        }
+        for (int i = 10; i < rows.size(); i++) {
+            sequential.addFieldData(ids.get(i), rows.get(i));
+        }
+        sequential.addFieldData(ids.get(0), rows.get(1));
+        List<String> bulkIds = new java.util.ArrayList<>(ids.subList(10, ids.size()));
+        List<List<List<String>>> bulkRows = new java.util.ArrayList<>(rows.subList(10, rows.size()));
+        bulkIds.add(ids.get(0));
+        bulkRows.add(rows.get(1));
+        parallel.addAllFieldData(new TriesSearch.RowSource() {
+            @Override
+            public int size() {
+                return bulkIds.size();
+            }
+
+            @Override
+            public String getId(int index) {
+                return bulkIds.get(index);
+            }
+
+            @Override
+            public List<List<String>> getFieldKeywords(int index) {
+                return bulkRows.get(index);
+            }
+        }, new java.util.concurrent.ForkJoinPool(4));
+
+        assertEquals(sequential.size(), parallel.size());
+        for (String query : new String[]{"chi", "rice", "naan", "s", "curry rice"}) {
+            List<String> terms = Arrays.asList(query.split(" "));
+            assertEquals(sequential.topMatches(terms, QueryMode.AND, 50, null), parallel.topMatches(terms, QueryMode.AND, 50, null));
+            assertEquals(sequential.pMatch(terms, QueryMode.OR), parallel.pMatch(terms, QueryMode.OR));
+        }
+        assertEquals(sequential.sMatch(Collections.singletonList("icnaa"), QueryMode.AND), parallel.sMatch(Collections.singletonList("icnaa"), QueryMode.AND));
+        assertEquals(sequential.suggest("c", 5), parallel.suggest("c", 5));
+    }
+
+    //Testing a frozen index answers queries like before, and rows added or removed after freezing are searched with it
+    @Test
+    public void frozenDictionary() {
+        String[] words = {"baking", "boiling", "cooking", "cookie", "cook", "roasting", "roast", "sauce", "saucepan"};
+        TriesSearch unfrozen = new TriesSearch(0, new float[]{2f, 1f});
+        unfrozen.enableSubstringSearch();
+        TriesSearch frozen = new TriesSearch(0, new float[]{2f, 1f});
+        frozen.enableSubstringSearch();
+        for (int i = 0; i < 40; i++) {
+            List<List<String>> fields = Arrays.asList(Arrays.asList(words[i % words.length], words[(i * 7) % words.length]),
+                    Collections.singletonList(words[(i * 3) % words.length]));
+            unfrozen.addFieldData("meal" + i, fields);
+            frozen.addFieldData("meal" + i, fields);
+        }
+        frozen.freeze();
+        // suffixes such as "ing" are shared by the automaton
+        KeywordFst fst = frozen.getFrozenDictionary().words;
+        assertEquals(words.length, fst.size());
+        assertEquals(0, fst.getWordId("baking"));
+        assertEquals("cookie", fst.getWord(fst.getWordId("cookie")));
+        assertEquals(-1, fst.getWordId("coo"));
+        int[] range = fst.getPrefixRange("cook");
+        assertEquals(3, range[1] - range[0]);
+        // nodes only one word goes through view its rows in the dictionary rather than copying them
+        TrieNode roasti = frozen.root.find("roasti");
+        assertTrue(roasti.postings.isView());
+        assertSame(roasti.postings.ordinals, frozen.root.find("roasting").postings.ordinals);
+        assertTrue(frozen.root.find("cookie").postings.isView());
+        assertFalse(frozen.root.find("cook").postings.isView());
+        assertFalse(frozen.root.find("roast").postings.isView());
+        // the overlay: a new row, a new word for a frozen row, and a removed row
+        for (TriesSearch triesSearch : Arrays.asList(unfrozen, frozen)) {
+            triesSearch.addFieldData("meal40", Arrays.asList(Arrays.asList("cookie", "stew"), Collections.<String>emptyList()));
+            triesSearch.addFieldData("meal3", Arrays.asList(Collections.singletonList("sauce"), Collections.<String>emptyList()));
+            triesSearch.remove("meal5");
+        }
+        for (String query : new String[]{"cook", "cookie", "roast sauce", "stew", "s"}) {
+            List<String> terms = Arrays.asList(query.split(" "));
+            assertEquals(unfrozen.topMatches(terms, QueryMode.AND, 50, null), frozen.topMatches(terms, QueryMode.AND, 50, null));
+            assertEquals(unfrozen.eMatch(terms.get(0)), frozen.eMatch(terms.get(0)));
+        }
+        assertEquals(unfrozen.sMatch(Collections.singletonList("ucep"), QueryMode.AND), frozen.sMatch(Collections.singletonList("ucep"), QueryMode.AND));
+        assertEquals(unfrozen.suggest("c", 3), frozen.suggest("c", 3));
+        // compaction moves the frozen words back into the Trie
+        frozen.compact();
+        unfrozen.compact();
+        assertNull(frozen.getFrozenDictionary());
+        assertEquals(unfrozen.topMatches(Collections.singletonList("cook"), QueryMode.AND, 50, null),
+                frozen.topMatches(Collections.singletonList("cook"), QueryMode.AND, 50, null));
+    }
+
+    //Testing the tokenizer lower cases words, strips punctuation, drops stop words and keeps distinct keywords in order
+    @Test
+    public void tokenizeKeywords() {
+        KeywordTokenizer tokenizer = new KeywordTokenizer(Analyzer.INDEX);
+        KeywordTokenizer.KeywordList keywords = new KeywordTokenizer.KeywordList();
+        tokenizer.tokenize("The Chef's  Garlic-Naan,\twith ; the spicy\nCURRY and garlic-naan", keywords);
+        tokenizer.tokenize(null, keywords);
+        assertEquals(Arrays.asList("chef's", "garlic-naan", "spicy", "curry"), keywords.getKeywords());
+    }
+
+    //Testing accents are folded, French stop words and elisions are dropped, and plural query terms match their singular
+    @Test
+    public void analyzeFrenchAndPlurals() {
+        KeywordTokenizer.KeywordList keywords = new KeywordTokenizer.KeywordList();
+        new KeywordTokenizer(Analyzer.INDEX).tokenize("Crème BRÛLÉE et crêpes à l\u2019érable, sœur", keywords);
+        assertEquals(Arrays.asList("creme", "brulee", "crepes", "erable", "soeur"), keywords.getKeywords());
+        keywords.clear();
+        new KeywordTokenizer(new Analyzer(new Analyzer.PluralFilter()))
+                .tokenize("Tomatoes peaches gâteaux chef's couscous crêpes glass", keywords);
+        assertEquals(Arrays.asList("tomato", "peach", "gateau", "chef", "couscous", "crepe", "glass"), keywords.getKeywords());
+        assertEquals(Arrays.asList("pea", "peas", "pea's"), Analyzer.PluralFilter.getForms("pea"));
+
+        // a singular query term finds the plural meal by prefix, a plural term the singular meal
+        TriesSearch triesSearch = new TriesSearch();
+        KeywordTokenizer.KeywordList mealKeywords = new KeywordTokenizer.KeywordList();
+        new KeywordTokenizer(Analyzer.INDEX).tokenize("Crêpes with tomatoes", mealKeywords);
+        triesSearch.addData("meal1", mealKeywords.getKeywords());
+        triesSearch.addData("meal3", Arrays.asList("tomato", "soup"));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.pMatch(Utilities.getQueryTerms("crepe tomatoes"), QueryMode.AND));
+        assertEquals(Arrays.asList("meal1", "meal3"), triesSearch.pMatch(Utilities.getQueryTerms("tomatoes"), QueryMode.AND));
+
+        // a plural term only matches the words having its singular, not the words it starts
+        triesSearch.addData("meal4", Arrays.asList("peanut", "satay"));
+        triesSearch.addData("meal5", Arrays.asList("green", "peas"));
+        triesSearch.addPositions("meal5", Collections.singletonList("Green peas"), Analyzer.INDEX);
+        triesSearch.addData("meal6", Arrays.asList("nutmeg", "pea", "soup"));
+        assertEquals(Arrays.asList("meal5", "meal6"), triesSearch.pMatch(Utilities.getQueryTerms("peas"), QueryMode.AND));
+        assertEquals(Arrays.asList("meal4", "meal5", "meal6"), triesSearch.pMatch(Utilities.getQueryTerms("pea"), QueryMode.AND));
+        SearchQuery query = new QueryParser(Collections.<String, Integer>emptyMap(), Collections.<String>emptyList())
+                .parse("soup -nuts");
+        assertEquals(new java.util.HashSet<>(Arrays.asList("meal3", "meal6")),
+                new java.util.HashSet<>(triesSearch.plan(query).execute(10, null, null)));
+        assertEquals(Collections.singletonList(new Highlight(0, 6, 10)),
+                triesSearch.getHighlights("meal5", Utilities.getQueryTerms("peas"), false));
+
+        // foods spelled like a stop word once their accents are folded are kept, the stop words are dropped
+        keywords.clear();
+        new KeywordTokenizer(Analyzer.INDEX).tokenize("Thé vert et soupe de maïs, the best mais l'été", keywords);
+        assertEquals(Arrays.asList("the", "vert", "soupe", "mais", "best"), keywords.getKeywords());
+        triesSearch.addData("meal2", keywords.getKeywords());
+        assertEquals(Collections.singletonList("meal2"), triesSearch.pMatch(Utilities.getQueryTerms("maïs"), QueryMode.AND));
+        assertEquals(Collections.singletonList("meal2"), triesSearch.pMatch(Utilities.getQueryTerms("thé"), QueryMode.AND));
+    }
+
+    //Testing rows are found by the synonyms of their keywords, plural keywords included, with a single lookup
+    @Test
+    public void synonyms() throws java.io.IOException {
+        SynonymMap synonyms = SynonymMap.parse(new java.io.StringReader("# drinks\nsoda, Pop, boisson gazeuse\nchickpea, garbanzo, pois-chiche\n"));
+        assertEquals(5, synonyms.size());
+        assertArrayEquals(new String[]{"chickpea", "pois-chiche"}, synonyms.getSynonyms("garbanzos"));
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.setSynonyms(synonyms);
+        triesSearch.addData("meal1", Arrays.asList("orange", "pop"));
+        triesSearch.addData("meal2", Arrays.asList("chickpeas", "curry"));
+        assertEquals(Collections.singletonList("meal1"), triesSearch.pMatch("soda"));
+        assertEquals(Collections.singletonList("meal2"), triesSearch.pMatch(Arrays.asList("garbanzo", "curry"), QueryMode.AND));
+        // the bundled synonyms are loaded once
+        assertSame(SynonymMap.getBundled(), SynonymMap.getBundled());
+        assertTrue(SynonymMap.getBundled().getSynonyms("soda").length > 0);
+    }
+
+    //Testing words rows only have as synonyms find the rows, but are never suggested nor made popular by searches
+    @Test
+    public void synonymsNotSuggested() throws java.io.IOException {
+        TriesSearch triesSearch = new TriesSearch();
+        triesSearch.setSynonyms(SynonymMap.getBundled());
+        for (int i = 0; i < 20; i++) {
+            triesSearch.addData("meal" + i, Arrays.asList("carrot", "cake"));
+        }
+        triesSearch.addData("meal20", Collections.singletonList("cabbage"));
+        assertEquals(20, triesSearch.pMatch("carotte").size());
+        assertEquals(Arrays.asList("cake", "carrot", "cabbage"), triesSearch.suggest("c", 5));
+        assertFalse(triesSearch.containsWord("chou"));
+        assertFalse(triesSearch.recordSearch("carotte"));
+        // still left out once the index is compacted, until a row contains the word as written
+        triesSearch.remove("meal0");
+        triesSearch.compact();
+        assertEquals(Arrays.asList("cake", "carrot", "cabbage"), triesSearch.suggest("c", 5));
+        triesSearch.addData("meal21", Collections.singletonList("chou"));
+        assertEquals(Arrays.asList("cake", "carrot", "cabbage", "chou"), triesSearch.suggest("c", 5));
+        // and once frozen or saved to a snapshot
+        triesSearch.freeze();
+        assertEquals(Arrays.asList("cake", "carrot", "cabbage", "chou"), triesSearch.suggest("c", 5));
+        assertEquals(2, triesSearch.pMatch("chou").size());
+        java.io.File file = java.io.File.createTempFile("search", ".snapshot");
+        try {
+            TriesSearchSnapshot.write(triesSearch, null, file);
+            TriesSearch loaded = new TriesSearch();
+            loaded.setSynonyms(SynonymMap.getBundled());
+            TriesSearchSnapshot.read(file, loaded);
+            assertEquals(Arrays.asList("cake", "carrot", "cabbage", "chou"), loaded.suggest("c", 5));
+            assertEquals(19, loaded.eMatch("carotte").size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    //Testing phrases match adjacent words of a field only, and highlights give the offsets of the matches in the text
+    @Test
+    public void phrasesAndHighlights() {
+        TriesSearch triesSearch = new TriesSearch(0, new float[]{1f, 1f});
+        List<String> meal1 = Arrays.asList("Butter Chicken", "Crème brûlée, with chicken butter");
+        List<String> meal2 = Arrays.asList("Chicken in butter sauce", null);
+        triesSearch.addFieldData("meal1", Arrays.asList(Arrays.asList("butter", "chicken"), Arrays.asList("creme", "brulee", "chicken", "butter")));
+        triesSearch.addFieldData("meal2", Arrays.asList(Arrays.asList("chicken", "butter", "sauce"), null));
+        triesSearch.addPositions("meal1", meal1, Analyzer.INDEX);
+        triesSearch.addPositions("meal2", meal2, Analyzer.INDEX);
+        assertEquals(Collections.singletonList("meal1"), triesSearch.phraseMatch(Arrays.asList("butter", "chick")));
+        // stop words aren't positions, words of different fields aren't adjacent
+        assertEquals(Collections.singletonList("meal2"), triesSearch.phraseMatch(Arrays.asList("chicken", "butter", "sauce")));
+        assertEquals(Collections.emptyList(), triesSearch.phraseMatch(Arrays.asList("chicken", "creme")));
+        // offsets are in the text as written, accents included
+        assertEquals(Arrays.asList(new Highlight(0, 0, 14)), triesSearch.getHighlights("meal1", Arrays.asList("butter", "chicken"), true));
+        assertEquals(Arrays.asList(new Highlight(0, 0, 6), new Highlight(1, 6, 12), new Highlight(1, 27, 33)),
+                triesSearch.getHighlights("meal1", Arrays.asList("butter", "brul"), false));
+        // an updated row loses its positions, and compaction keeps the positions of the other rows
+        triesSearch.updateFieldData("meal2", Collections.singletonList(Collections.singletonList("salad")));
+        assertTrue(triesSearch.getHighlights("meal2", Collections.singletonList("salad"), false).isEmpty());
+        triesSearch.compact();
+        assertEquals(Collections.singletonList("meal1"), triesSearch.phraseMatch(Arrays.asList("butter", "chicken")));
+    }
+
+    //Testing the query language: field scopes, negations, phrases and ranges, planned most selective first
+    @Test
+    public void queryLanguage() {
+        Map<String, Integer> fields = new java.util.HashMap<>();
+        fields.put("name", 0);
+        fields.put("cuisine", 1);
+        QueryParser parser = new QueryParser(fields, Collections.singletonList("price"));
+        SearchQuery query = parser.parse("cuisine:Thai -peanuts \"green curry\" price<20 unknown:x");
+        assertEquals("cuisine:thai -peanuts \"green curry\" price<20 unknown x", query.toString());
+        assertFalse(query.isSimple());
+        assertTrue(parser.parse("green curry").isSimple());
+
+        TriesSearch triesSearch = new TriesSearch(0, new float[]{1f, 1f});
+        String[][] meals = {{"Green curry", "Thai", "12"}, {"Green curry with peanuts", "Thai", "10"},
+                {"Red curry", "Thai", "15"}, {"Green thai curry", "Indian", "9"}, {"Curry green", "Thai", "25"}};
+        for (int i = 0; i < meals.length; i++) {
+            String id = "meal" + (i + 1);
+            List<String> texts = Arrays.asList(meals[i][0], meals[i][1]);
+            triesSearch.addFieldData(id, Arrays.asList(keywords(texts.get(0)), keywords(texts.get(1))));
+            triesSearch.addPositions(id, texts, Analyzer.INDEX);
+            triesSearch.addValue(id, "price", Double.parseDouble(meals[i][2]));
+        }
+        QueryPlan plan = triesSearch.plan(parser.parse("cuisine:thai -peanut \"green curry\" price<20"));
+        assertEquals(Collections.singletonList("meal1"), plan.execute(10, null, null));
+        // the phrase is the rarest clause, the negation comes last
+        assertEquals("\"green curry\"", plan.getEvaluationOrder().get(0).toString());
+        assertEquals("-peanut", plan.getEvaluationOrder().get(3).toString());
+        assertTrue(plan.explain().contains("4. -peanut: estimated 1 rows, 1 candidates left"));
+        assertEquals(Arrays.asList(new Highlight(0, 0, 11), new Highlight(1, 0, 4)),
+                triesSearch.getHighlights("meal1", parser.parse("\"green curry\" cuisine:thai price<20")));
+    }
+
+    //Testing histogram percentiles are within the precision of their bucket, and a reset starts over
+    @Test
+    public void histogram() {
+        Histogram histogram = new Histogram(60_000_000_000L);
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMean(), 1e-6);
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 64);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 64);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        // small values are counted exactly, values above the highest trackable value in the last bucket
+        Histogram copy = histogram.copyAndReset();
+        assertEquals(1000, copy.getCount());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(7);
+        histogram.record(100_000_000_000L);
+        assertEquals(7, histogram.getValueAtPercentile(50));
+        assertEquals(100_000_000_000L, histogram.getMax());
+    }
+
+    private static List<String> keywords(String text) {
+        KeywordTokenizer.KeywordList keywords = new KeywordTokenizer.KeywordList();
+        new KeywordTokenizer(Analyzer.INDEX).tokenize(text, keywords);
+        return keywords.getKeywords();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.mealer_project.benchmarks;
+
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+import com.example.mealer_project.utils.Utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of extracting the keywords of a meal, as done for every meal indexed
+ * The cost only depends on the meal's text, not on the size of the catalog, so the texts cycle through the meals
+ * of a single catalog
+ */
+@State(Scope.Thread)
+public class KeywordsBenchmark {
+
+    // number of meals whose texts are cycled through
+    private static final int MEAL_COUNT = 10000;
+
+    // searchable texts of each meal
+    private List<List<String>> texts;
+
+    // index of the next meal
+    private int next;
+
+    @Setup
+    public void setUp() {
+        this.texts = new ArrayList<>(MEAL_COUNT);
+        for (SearchMealItem sMItem : SyntheticCatalog.generate(MEAL_COUNT)) {
+            List<String> fieldTexts = new ArrayList<>();
+            for (String text : sMItem.getFieldTexts()) {
+                if (text != null) {
+                    fieldTexts.add(text);
+                }
+            }
+            this.texts.add(fieldTexts);
+        }
+        this.next = 0;
+    }
+
+    @Benchmark
+    public List<String> getKeywords() {
+        List<String> keywords = Utilities.getKeywords(this.texts.get(this.next));
+        this.next = (this.next + 1) % MEAL_COUNT;
+        return keywords;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mealer_project.benchmarks;
+
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+import com.example.mealer_project.ui.screens.search.SearchMeals;
+import com.example.mealer_project.utils.TrieSearch.SearchCursor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Cost of searching a catalog's meals the way the search screen does, from the query to the SearchMealItems
+ * Queries cycle through a seeded pool much larger than the result cache, drawn with the same skew as the catalog,
+ * so popular queries are sometimes answered from the cache like in the app
+ */
+@State(Scope.Thread)
+public class SearchMealsBenchmark {
+
+    // number of distinct queries cycled through
+    private static final int QUERY_COUNT = 4096;
+
+    // number of meals of the catalog
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private SearchMeals searchMeals;
+
+    // cursor of the search screen, narrowing results when a query extends the previous one
+    private SearchCursor cursor;
+
+    private List<String> queries;
+    private List<String> languageQueries;
+
+    // index of the next query
+    private int next;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        this.searchMeals = new SearchMeals();
+        SyntheticCatalog.load(this.searchMeals, this.size);
+        this.cursor = this.searchMeals.newSearchCursor();
+        this.queries = SyntheticCatalog.queries(QUERY_COUNT, SyntheticCatalog.SEED);
+        this.languageQueries = SyntheticCatalog.languageQueries(QUERY_COUNT, SyntheticCatalog.SEED);
+        this.next = 0;
+    }
+
+    private int nextQuery() {
+        int query = this.next;
+        this.next = (query + 1) % QUERY_COUNT;
+        return query;
+    }
+
+    /**
+     * Best matches of a query typed in the search screen, fuzzy matches included
+     */
+    @Benchmark
+    public List<SearchMealItem> searchMealItems() {
+        return this.searchMeals.searchMealItems(this.queries.get(nextQuery()), this.cursor, null);
+    }
+
+    /**
+     * Every match of a query, without the cursor or the result cache
+     */
+    @Benchmark
+    public List<SearchMealItem> searchAllMealItems() {
+        return this.searchMeals.searchMealItems(this.queries.get(nextQuery()));
+    }
+
+    /**
+     * Best matches of a query using fields, negations, phrases or price ranges, evaluated by a QueryPlan
+     */
+    @Benchmark
+    public List<SearchMealItem> searchMealItemsQueryLanguage() {
+        return this.searchMeals.searchMealItems(this.languageQueries.get(nextQuery()), this.cursor, null);
+    }
+}
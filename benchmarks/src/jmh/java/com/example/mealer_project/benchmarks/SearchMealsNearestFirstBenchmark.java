@@ -0,0 +1,62 @@
+package com.example.mealer_project.benchmarks;
+
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+import com.example.mealer_project.ui.screens.search.SearchMeals;
+import com.example.mealer_project.utils.TrieSearch.SearchCursor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Cost of searching a catalog's meals for a client whose postal code is known, the closest postal districts
+ * being searched first (see SearchMeals.setOrigin). Compare with SearchMealsBenchmark.searchMealItems, which ranks
+ * the matches of every postal district: here the cost should follow the number of meals near the client
+ */
+@State(Scope.Thread)
+public class SearchMealsNearestFirstBenchmark {
+
+    // number of distinct queries cycled through
+    private static final int QUERY_COUNT = 4096;
+
+    // postal code of the client, in one of the postal districts of the catalog's chefs
+    private static final String CLIENT_POSTAL_CODE = "K1N 6N5";
+
+    // number of meals of the catalog
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private SearchMeals searchMeals;
+
+    // cursor of the search screen, narrowing the matches from one query to the next like the search screen does
+    private SearchCursor cursor;
+
+    private List<String> queries;
+
+    // index of the next query
+    private int next;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        this.searchMeals = new SearchMeals();
+        SyntheticCatalog.load(this.searchMeals, this.size);
+        this.searchMeals.setOrigin(CLIENT_POSTAL_CODE);
+        this.cursor = this.searchMeals.newSearchCursor();
+        this.queries = SyntheticCatalog.queries(QUERY_COUNT, SyntheticCatalog.SEED);
+        this.next = 0;
+    }
+
+    /**
+     * Best matches of a query typed in the search screen, closest postal districts first
+     */
+    @Benchmark
+    public List<SearchMealItem> searchMealItemsNearestFirst() {
+        String query = this.queries.get(this.next);
+        this.next = (this.next + 1) % QUERY_COUNT;
+        return this.searchMeals.searchMealItems(query, this.cursor, null);
+    }
+}
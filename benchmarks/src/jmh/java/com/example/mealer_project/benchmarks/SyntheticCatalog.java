@@ -0,0 +1,242 @@
+package com.example.mealer_project.benchmarks;
+
+import com.example.mealer_project.data.models.Address;
+import com.example.mealer_project.data.models.meals.Meal;
+import com.example.mealer_project.data.models.orders.ChefInfo;
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+import com.example.mealer_project.ui.screens.search.SearchMeals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeded generator of meal catalogs and client queries, so every run of a benchmark searches the same meals
+ * Words are drawn from small vocabularies with a skewed distribution (a few cuisines and ingredients are very
+ * common, most are rare), and dish and chef names mix in made-up words, giving a long tail of rare keywords
+ * like a real catalog. The same seed and size always produce the same catalog
+ */
+public final class SyntheticCatalog {
+
+    // seed of the catalogs and query pools used by the benchmarks
+    public static final long SEED = 20221205L;
+
+    // number of meals offered by each chef
+    private static final int MEALS_PER_CHEF = 20;
+
+    private static final String[] CUISINES = {"Italian", "Indian", "Chinese", "Mexican", "Thai", "Japanese",
+            "French", "Lebanese", "Greek", "Korean", "Vietnamese", "Ethiopian", "Caribbean", "Spanish", "Turkish",
+            "Moroccan", "Peruvian", "Brazilian", "German", "Persian"};
+
+    private static final String[] MEAL_TYPES = {"Main course", "Appetizer", "Dessert", "Side dish", "Soup",
+            "Salad", "Beverage", "Breakfast"};
+
+    private static final String[] DISHES = {"curry", "pasta", "pizza", "noodles", "soup", "salad", "burger",
+            "tacos", "burrito", "dumplings", "stew", "risotto", "lasagna", "ramen", "sushi", "biryani", "kebab",
+            "falafel", "shawarma", "pancakes", "omelette", "sandwich", "wrap", "tart", "cake", "pie", "casserole",
+            "paella", "gnocchi", "pho", "bibimbap", "tagine", "empanadas", "ceviche", "moussaka", "samosas"};
+
+    private static final String[] ADJECTIVES = {"spicy", "crispy", "creamy", "smoky", "sweet", "tangy", "grilled",
+            "roasted", "fried", "steamed", "homemade", "classic", "vegan", "garlic", "butter", "lemon", "honey",
+            "herbed", "braised", "stuffed"};
+
+    private static final String[] INGREDIENTS = {"chicken", "rice", "tomato", "onion", "garlic", "beef", "pork",
+            "tofu", "cheese", "potato", "carrot", "spinach", "mushroom", "pepper", "shrimp", "salmon", "lamb",
+            "coconut milk", "chickpeas", "lentils", "eggplant", "zucchini", "basil", "cilantro", "ginger", "cumin",
+            "paprika", "yogurt", "cream", "butter", "egg", "flour", "beans", "corn", "avocado", "lime", "mint",
+            "peanuts", "cashews", "sesame", "soy sauce", "olive oil", "chili", "honey", "almonds", "broccoli"};
+
+    private static final String[] ALLERGENS = {"peanuts", "tree nuts", "milk", "eggs", "wheat", "soy", "fish",
+            "shellfish", "sesame", "mustard", "gluten"};
+
+    private static final String[] FIRST_NAMES = {"Amy", "Justin", "Kristen", "Rahul", "Pranav", "Anjali", "Maria",
+            "Omar", "Chen", "Fatima", "Luca", "Sofia", "Yuki", "Kwame", "Priya", "Diego", "Aisha", "Noah", "Mei",
+            "Hugo"};
+
+    private static final String[] LAST_NAMES = {"Smith", "Tremblay", "Nguyen", "Patel", "Garcia", "Wang", "Roy",
+            "Kim", "Haddad", "Rossi", "Okafor", "Dubois", "Silva", "Khan", "Lee", "Martin", "Gagnon", "Singh"};
+
+    private static final String[] STREETS = {"Rideau Street", "Bank Street", "Elgin Street", "King Edward Avenue",
+            "Laurier Avenue", "Somerset Street", "Preston Street", "Wellington Street", "Bronson Avenue",
+            "Main Street", "Carling Avenue", "Richmond Road"};
+
+    private static final String[] CITIES = {"Ottawa", "Gatineau", "Kanata", "Orleans", "Nepean", "Barrhaven"};
+
+    private static final String[] POSTAL_PREFIXES = {"K1N", "K1P", "K1R", "K1S", "K2P", "K1Y", "K2C", "J8X", "K2K",
+            "K1C", "K2G", "K2J"};
+
+    private static final String[] PHRASES = {"made fresh every morning", "served with a side of rice",
+            "a family recipe", "perfect for sharing", "slow cooked for hours", "with a hint of lime",
+            "topped with fresh herbs", "ready in minutes", "a customer favourite", "light and healthy"};
+
+    // syllables of made-up words, ex: "kalomi"
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "sa", "tu", "ren", "dor", "pa", "ve", "chi", "no",
+            "ba", "li", "zu", "mo", "ta", "ri", "gu", "fe", "shan"};
+
+    private SyntheticCatalog() {}
+
+    /**
+     * Generate a catalog of meals with their chefs
+     * @param size number of meals
+     * @return meals in generation order, the same for the same size
+     */
+    public static List<SearchMealItem> generate(int size) {
+        Random random = new Random(SEED);
+        int chefCount = Math.max(1, size / MEALS_PER_CHEF);
+        ChefInfo[] chefs = new ChefInfo[chefCount];
+        for (int i = 0; i < chefCount; i++) {
+            chefs[i] = newChef(random, i);
+        }
+        List<SearchMealItem> sMItems = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ChefInfo chef = chefs[random.nextInt(chefCount)];
+            sMItems.add(new SearchMealItem(newMeal(random, i, chef.getChefId()), chef));
+        }
+        return sMItems;
+    }
+
+    /**
+     * Add a catalog of meals to a meal search, and wait for the writer pass indexing it in the background
+     * @param searchMeals meal search to add the meals to, empty
+     * @param size number of meals
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void load(SearchMeals searchMeals, int size) throws InterruptedException {
+        searchMeals.addItems(generate(size));
+        // searches read the previous catalog until the writer pass publishes the meals
+        while (searchMeals.getSearchMealItems().size() < size) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Generate queries as clients type them: a word, the beginning of a word, or two words, drawn from the
+     * words of the catalogs with the same skew
+     * @param count number of queries
+     * @param seed seed of the queries
+     * @return queries, the same for the same count and seed
+     */
+    public static List<String> queries(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            String word = queryWord(random);
+            if (kind < 4) {
+                queries.add(word);
+            } else if (kind < 7) {
+                // typed so far, ex: "bir" for "biryani"
+                queries.add(word.substring(0, Math.min(word.length(), 2 + random.nextInt(3))));
+            } else {
+                queries.add(word + " " + queryWord(random));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Generate queries written in the query language (see QueryParser), ex: cuisine:thai -peanuts price<20
+     * @param count number of queries
+     * @param seed seed of the queries
+     * @return queries, the same for the same count and seed
+     */
+    public static List<String> languageQueries(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String cuisine = pick(random, CUISINES).toLowerCase(Locale.ROOT);
+            String dish = pick(random, DISHES);
+            switch (random.nextInt(4)) {
+                case 0:
+                    queries.add("cuisine:" + cuisine + " " + dish);
+                    break;
+                case 1:
+                    queries.add(dish + " -" + pick(random, ALLERGENS).split(" ")[0] + " price<" + (10 + random.nextInt(20)));
+                    break;
+                case 2:
+                    queries.add("\"" + pick(random, ADJECTIVES) + " " + dish + "\"");
+                    break;
+                default:
+                    queries.add("name:" + dish + " ingredient:" + pick(random, INGREDIENTS).split(" ")[0]);
+                    break;
+            }
+        }
+        return queries;
+    }
+
+    private static ChefInfo newChef(Random random, int index) {
+        String name = pick(random, FIRST_NAMES) + " " + (random.nextInt(4) == 0 ? capitalize(madeUpWord(random))
+                : pick(random, LAST_NAMES));
+        String postalCode = POSTAL_PREFIXES[random.nextInt(POSTAL_PREFIXES.length)] + " " + random.nextInt(10)
+                + (char) ('A' + random.nextInt(26)) + random.nextInt(10);
+        Address address = new Address((1 + random.nextInt(999)) + " " + pick(random, STREETS), pick(random, CITIES),
+                postalCode, "Canada");
+        return new ChefInfo("chef-" + index, name, "Home cook", 1 + random.nextInt(5), address);
+    }
+
+    private static Meal newMeal(Random random, int index, String chefId) {
+        String adjective = pick(random, ADJECTIVES);
+        String dish = pick(random, DISHES);
+        // half the meals have a made-up word in their name, ex: "Spicy Kalomi Curry"
+        String name = capitalize(adjective) + " " + (random.nextBoolean() ? capitalize(madeUpWord(random)) + " " : "")
+                + capitalize(dish);
+        int ingredientCount = 2 + random.nextInt(5);
+        List<String> ingredients = new ArrayList<>(ingredientCount);
+        for (int i = 0; i < ingredientCount; i++) {
+            ingredients.add(pick(random, INGREDIENTS));
+        }
+        ArrayList<String> allergens = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            allergens.add(pick(random, ALLERGENS));
+        }
+        String description = "A " + adjective + " " + dish + " with " + ingredients.get(0) + " and "
+                + ingredients.get(1) + ", " + pick(random, PHRASES) + ". " + capitalize(madeUpWord(random))
+                + " style.";
+        // prices in steps of 50 cents, from 5 to 40 dollars
+        double price = 5 + random.nextInt(71) * 0.5;
+        return new Meal(name, "meal-" + index, chefId, pick(random, CUISINES), pick(random, MEAL_TYPES),
+                join(ingredients), allergens, description, true, price);
+    }
+
+    /**
+     * @return a word a client could search for, from the vocabularies of the catalogs
+     */
+    private static String queryWord(Random random) {
+        String[][] vocabularies = {CUISINES, DISHES, INGREDIENTS, ADJECTIVES, LAST_NAMES};
+        int vocabulary = random.nextInt(vocabularies.length + 1);
+        String word = (vocabulary == vocabularies.length) ? madeUpWord(random) : pick(random, vocabularies[vocabulary]);
+        return word.split(" ")[0].toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return a word made of 2 or 3 syllables, the first syllables being the most common
+     */
+    private static String madeUpWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 2 + random.nextInt(2); i > 0; i--) {
+            word.append(pick(random, SYLLABLES));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Pick a value, the first values being picked more often than the last ones
+     */
+    private static String pick(Random random, String[] values) {
+        double r = random.nextDouble();
+        return values[(int) (values.length * r * r)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            joined.append((joined.length() == 0) ? "" : ", ").append(value);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import com.example.mealer_project.benchmarks.SyntheticCatalog;
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost of inserting the keywords of a meal into a Trie holding up to a catalog's worth of meals
+ * Each operation inserts every keyword of the next meal, with its ordinal and field; once the Trie holds the
+ * whole catalog it is dropped and filled again, so the measure covers Tries of every size up to the catalog's.
+ * The benchmark lives in the Trie's package to reach TrieNode.insert
+ */
+@State(Scope.Thread)
+public class TrieNodeBenchmark {
+
+    // number of meals of the catalog
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    // keywords of every meal, one after the other, and the field of each keyword
+    private String[] words;
+    private int[] fields;
+    // index in words of the first keyword of each meal, then the number of keywords of all meals
+    private int[] rowStarts;
+
+    // Trie being filled, and ordinal of the next meal inserted
+    private TrieNode trie;
+    private int ordinal;
+
+    @Setup
+    public void setUp() {
+        List<SearchMealItem> sMItems = SyntheticCatalog.generate(this.size);
+        // meals share most of their words, keep one String per distinct word
+        Map<String, String> distinctWords = new HashMap<>();
+        this.words = new String[16 * this.size];
+        this.fields = new int[this.words.length];
+        this.rowStarts = new int[this.size + 1];
+        int count = 0;
+        for (int row = 0; row < this.size; row++) {
+            this.rowStarts[row] = count;
+            List<List<String>> fieldKeywords = sMItems.get(row).getFieldKeywords();
+            for (int field = 0; field < fieldKeywords.size(); field++) {
+                if (fieldKeywords.get(field) == null) {
+                    continue;
+                }
+                for (String keyword : fieldKeywords.get(field)) {
+                    if (count == this.words.length) {
+                        this.words = Arrays.copyOf(this.words, count * 2);
+                        this.fields = Arrays.copyOf(this.fields, count * 2);
+                    }
+                    String word = distinctWords.get(keyword);
+                    if (word == null) {
+                        distinctWords.put(keyword, keyword);
+                        word = keyword;
+                    }
+                    this.words[count] = word;
+                    this.fields[count++] = field;
+                }
+            }
+        }
+        this.rowStarts[this.size] = count;
+        this.trie = new TrieNode();
+        this.ordinal = 0;
+    }
+
+    @Benchmark
+    public TrieNode insert() {
+        if (this.ordinal == this.size) {
+            this.trie = new TrieNode();
+            this.ordinal = 0;
+        }
+        for (int i = this.rowStarts[this.ordinal]; i < this.rowStarts[this.ordinal + 1]; i++) {
+            this.trie.insert(this.words[i], this.ordinal, this.fields[i]);
+        }
+        this.ordinal++;
+        return this.trie;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mealer_project.utils.TrieSearch;
+
+import com.example.mealer_project.benchmarks.SyntheticCatalog;
+import com.example.mealer_project.data.models.meals.MealSearchField;
+import com.example.mealer_project.ui.screens.search.SearchMealItem;
+import com.example.mealer_project.utils.Utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of matching queries on an index of a catalog's meals, indexed like SearchMeals indexes them
+ * Queries cycle through a seeded pool of typed words, prefixes and pairs of words. The benchmark lives in the
+ * Trie's package to reach the index's Trie for TrieNode.eMatch
+ */
+@State(Scope.Thread)
+public class TriesSearchBenchmark {
+
+    // number of distinct queries cycled through
+    private static final int QUERY_COUNT = 4096;
+
+    // number of meals of the catalog
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private TriesSearch index;
+
+    // terms of each query, first term of each query
+    private List<List<String>> queryTerms;
+    private String[] firstTerms;
+
+    // index of the next query
+    private int next;
+
+    @Setup
+    public void setUp() {
+        this.index = new TriesSearch(0, MealSearchField.getWeights());
+        for (SearchMealItem sMItem : SyntheticCatalog.generate(this.size)) {
+            this.index.addFieldData(sMItem.getId(), sMItem.getFieldKeywords());
+        }
+        this.queryTerms = new ArrayList<>(QUERY_COUNT);
+        this.firstTerms = new String[QUERY_COUNT];
+        for (String query : SyntheticCatalog.queries(QUERY_COUNT, SyntheticCatalog.SEED)) {
+            List<String> terms = Utilities.getQueryTerms(query);
+            if (!terms.isEmpty()) {
+                this.firstTerms[this.queryTerms.size()] = terms.get(0);
+                this.queryTerms.add(terms);
+            }
+        }
+        this.next = 0;
+    }
+
+    private int nextQuery() {
+        int query = this.next;
+        this.next = (query + 1) % this.queryTerms.size();
+        return query;
+    }
+
+    /**
+     * Rows having a word starting with a term
+     */
+    @Benchmark
+    public List<String> pMatch() {
+        return this.index.pMatch(this.firstTerms[nextQuery()]);
+    }
+
+    /**
+     * Rows having a word starting with each term of a query
+     */
+    @Benchmark
+    public List<String> pMatchTerms() {
+        return this.index.pMatch(this.queryTerms.get(nextQuery()), QueryMode.AND);
+    }
+
+    /**
+     * Whether a term is a word of the index
+     */
+    @Benchmark
+    public boolean eMatch() {
+        return this.index.root.eMatch(this.firstTerms[nextQuery()]);
+    }
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * Stand-in for the Android build information when the search classes run on a desktop JVM
+ * Reports a recent API level, so code paths guarded by an API level run like on current devices
+ */
+public final class Build {
+
+    private Build() {}
+
+    public static final class VERSION {
+        // Android 13, the app's target SDK
+        public static final int SDK_INT = 33;
+    }
+
+    public static final class VERSION_CODES {
+        public static final int LOLLIPOP = 21;
+    }
+}
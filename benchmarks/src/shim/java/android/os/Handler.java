@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stand-in for an Android handler when the search classes run on a desktop JVM
+ * There is no UI thread to post to, so posted tasks run immediately on the calling thread
+ */
+public class Handler {
+
+    public Handler(Looper looper) {}
+
+    public boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
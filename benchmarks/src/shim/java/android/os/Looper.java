@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stand-in for the Android main thread's message loop when the search classes run on a desktop JVM
+ */
+public final class Looper {
+
+    private static final Looper MAIN_LOOPER = new Looper();
+
+    private Looper() {}
+
+    public static Looper getMainLooper() {
+        return MAIN_LOOPER;
+    }
+}
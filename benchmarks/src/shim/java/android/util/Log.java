@@ -0,0 +1,29 @@
+package android.util;
+
+/**
+ * Stand-in for the Android logger when the search classes run on a desktop JVM, messages are dropped
+ */
+public final class Log {
+
+    private Log() {}
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.mealer_project.ui.screens.search;
+
+import java.util.List;
+
+/**
+ * Stand-in for the search activity when SearchMeals runs on a desktop JVM, nothing is displayed
+ */
+public class SearchScreen {
+
+    public void newSearchItemsAdded(List<?> sMItems) {}
+}